@@ -0,0 +1,41 @@
+package org.libre.ai.modules.rag.core.embedding.flat;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 JDK Vector API 的点积计算
+ *
+ * Vector API 仍在孵化，编译时会输出 incubating 模块警告，因此该类放在单独的源码目录中，只在以 simd profile 构建时编译。
+ * 运行时加载了 jdk.incubator.vector 模块时由 {@link FlatEmbeddingStore} 通过反射创建，否则该类不会被加载。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+final class SimdScorer implements DotProduct {
+
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	SimdScorer() {
+	}
+
+	@Override
+	public float dot(float[] block, int offset, float[] query) {
+		int length = query.length;
+		int bound = SPECIES.loopBound(length);
+		FloatVector acc = FloatVector.zero(SPECIES);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			FloatVector a = FloatVector.fromArray(SPECIES, block, offset + i);
+			FloatVector b = FloatVector.fromArray(SPECIES, query, i);
+			acc = a.fma(b, acc);
+		}
+		float sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			sum += block[offset + i] * query[i];
+		}
+		return sum;
+	}
+
+}
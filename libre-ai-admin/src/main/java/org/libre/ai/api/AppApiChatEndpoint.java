@@ -1,6 +1,7 @@
 package org.libre.ai.api;
 
 import cn.hutool.core.util.StrUtil;
+import dev.langchain4j.service.TokenStream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.libre.ai.api.auth.CompletionReq;
@@ -8,10 +9,13 @@ import org.libre.ai.api.auth.CompletionRes;
 import org.libre.ai.api.auth.OpenapiAuth;
 import org.libre.ai.modules.rag.core.consts.AppConst;
 import org.libre.ai.modules.rag.core.service.LangChatService;
+import org.libre.ai.modules.rag.core.stream.StreamCancellation;
+import org.libre.ai.modules.rag.core.stream.StreamCancellations;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.entity.AigcApp;
 import org.libre.ai.modules.rag.entity.AigcAppApi;
 import org.libre.ai.modules.rag.exception.ServiceException;
+import org.libre.ai.modules.rag.properties.ChatProperties;
 import org.libre.ai.modules.rag.store.AppChannelStore;
 import org.libre.ai.modules.rag.store.AppStore;
 import org.libre.ai.modules.rag.utils.StreamEmitter;
@@ -37,10 +41,14 @@ public class AppApiChatEndpoint {
 
 	private final AppStore appStore;
 
+	private final ChatProperties chatProperties;
+
+	private final StreamCancellations streamCancellations;
+
 	@OpenapiAuth(AppConst.CHANNEL_API)
 	@PostMapping(value = "/chat/completions")
 	public SseEmitter completions(@RequestBody CompletionReq req) {
-		StreamEmitter emitter = new StreamEmitter();
+		StreamEmitter emitter = new StreamEmitter().coalesce(chatProperties.getStream().coalesce("api"));
 		AigcAppApi appApi = AppChannelStore.getApiChannel();
 
 		return handler(emitter, appApi.getAppId(), req.getMessages());
@@ -64,16 +72,24 @@ public class AppApiChatEndpoint {
 			.setUserPromptTemplate(app.getUserPromptTemplate())
 			.setKnowledgeIds(app.getKnowledgeIds());
 
-		langChatService.singleChat(req).onPartialResponse(token -> {
-			CompletionRes res = CompletionRes.process(token);
-			emitter.send(res);
+		// client disconnect cancels the upstream generation
+		StreamCancellation cancellation = streamCancellations.create();
+		emitter.onClose(cancellation::cancel);
+
+		TokenStream tokenStream = langChatService.singleChat(req).onPartialResponse(token -> {
+			cancellation.partial();
+			emitter.partial(token, CompletionRes::process);
 		}).onCompleteResponse(c -> {
+			cancellation.complete(c.tokenUsage());
 			CompletionRes res = CompletionRes.end(c);
 			emitter.send(res);
 			emitter.complete();
 		}).onError(e -> {
-			emitter.error(e.getMessage());
-		}).start();
+			if (!cancellation.isCancelled()) {
+				emitter.error(e.getMessage());
+			}
+		});
+		cancellation.bind(tokenStream::start);
 
 		return emitter.get();
 	}
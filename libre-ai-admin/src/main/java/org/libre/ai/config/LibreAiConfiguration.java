@@ -1,11 +1,15 @@
 package org.libre.ai.config;
 
 import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.properties.EmbeddingProperties;
+import org.libre.ai.modules.rag.properties.IngestProperties;
+import org.libre.ai.modules.rag.properties.RetrievalProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration(proxyBeanMethods = false)
-@EnableConfigurationProperties(ChatProperties.class)
+@EnableConfigurationProperties({ ChatProperties.class, EmbeddingProperties.class, RetrievalProperties.class,
+		IngestProperties.class })
 public class LibreAiConfiguration {
 
 }
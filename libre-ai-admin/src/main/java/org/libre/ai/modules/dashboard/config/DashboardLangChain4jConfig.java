@@ -7,6 +7,7 @@ import dev.langchain4j.service.AiServices;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.libre.ai.modules.dashboard.assistant.StreamDashboardAiAssistant;
+import org.libre.ai.modules.rag.core.stream.CancellableHttpClientBuilder;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -43,6 +44,7 @@ public class DashboardLangChain4jConfig {
 			.parallelToolCalls(true)
 			.logRequests(false)
 			.logResponses(false)
+			.httpClientBuilder(new CancellableHttpClientBuilder())
 			.build();
 	}
 
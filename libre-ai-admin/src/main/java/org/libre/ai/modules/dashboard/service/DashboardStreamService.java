@@ -14,6 +14,7 @@ import org.libre.ai.modules.dashboard.prompt.DashboardPromptBuilder;
 import org.libre.ai.modules.dashboard.dto.DashboardRequest;
 import org.libre.ai.modules.dashboard.prompt.DashboardPromptTemplate;
 import org.libre.ai.modules.rag.core.provider.ModelProvider;
+import org.libre.ai.modules.rag.core.stream.StreamCancellations;
 import org.libre.ai.modules.rag.entity.AigcApp;
 import org.libre.ai.modules.rag.exception.ServiceException;
 import org.libre.ai.modules.rag.service.AigcAppService;
@@ -50,6 +51,8 @@ public class DashboardStreamService implements IDashboardStreamService {
 
 	private final DashboardPromptBuilder dashboardPromptBuilder;
 
+	private final StreamCancellations streamCancellations;
+
 	/**
 	 * 流式生成仪表板代码
 	 *
@@ -88,7 +91,7 @@ public class DashboardStreamService implements IDashboardStreamService {
 		//	.chatMemoryProvider(memoryId -> MessageWindowChatMemory.withMaxMessages(20))
 			.build();
 		// 调用AI生成
-		return assistant.generateDashboardFlux(prompt);
+		return streamCancellations.track(assistant.generateDashboardFlux(prompt));
 	}
 
 	@Override
@@ -112,7 +115,7 @@ public class DashboardStreamService implements IDashboardStreamService {
 		String prompt = dashboardPromptBuilder.buildOptimizeDashboardPrompt(request,
 				optimizeDashboardApp.getUserPromptTemplate());
 
-		return assistant.optimizeDashboardStream(request.getConversationId(), prompt);
+		return streamCancellations.track(assistant.optimizeDashboardStream(request.getConversationId(), prompt));
 	}
 
 	/**
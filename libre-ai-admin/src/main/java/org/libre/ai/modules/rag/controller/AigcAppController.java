@@ -4,6 +4,8 @@ import cn.hutool.core.lang.Dict;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
+import org.libre.ai.modules.rag.core.memory.ChatMemoryFactory;
+import org.libre.ai.modules.rag.core.provider.AgentStoreFactory;
 import org.libre.ai.modules.rag.entity.AigcApp;
 import org.libre.ai.modules.rag.entity.AigcAppApi;
 import org.libre.ai.modules.rag.entity.AigcKnowledge;
@@ -33,8 +35,12 @@ public class AigcAppController {
 
 	private final AppStore appStore;
 
+	private final ChatMemoryFactory chatMemoryFactory;
+
 	private final AigcKnowledgeService knowledgeService;
 
+	private final AgentStoreFactory agentStoreFactory;
+
 	@GetMapping("/channel/api/{appId}")
 	public R<AigcAppApi> getApiChanel(@PathVariable String appId) {
 		List<AigcAppApi> list = aigcAppApiService
@@ -66,6 +72,8 @@ public class AigcAppController {
 		data.setSaveTime(new Date());
 		aigcAppService.save(data);
 		appStore.init();
+		agentStoreFactory.invalidateAll();
+		chatMemoryFactory.invalidateApps();
 		return R.ok();
 	}
 
@@ -93,6 +101,8 @@ public class AigcAppController {
 		data.setSaveTime(new Date());
 		aigcAppService.updateById(data);
 		appStore.init();
+		agentStoreFactory.invalidateAll();
+		chatMemoryFactory.invalidateApps();
 		return R.ok();
 	}
 
@@ -100,6 +110,8 @@ public class AigcAppController {
 	public R delete(@PathVariable String id) {
 		aigcAppService.removeById(id);
 		appStore.init();
+		agentStoreFactory.invalidateAll();
+		chatMemoryFactory.invalidateApps();
 		return R.ok();
 	}
 
@@ -2,6 +2,8 @@ package org.libre.ai.modules.rag.controller;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.memory.ChatMemoryFactory;
+import org.libre.ai.modules.rag.core.persist.AigcMessageWriter;
 import org.libre.ai.modules.rag.entity.AigcConversation;
 import org.libre.ai.modules.rag.entity.AigcMessage;
 import org.libre.ai.modules.rag.service.AigcMessageService;
@@ -25,6 +27,10 @@ public class AigcConversationController {
 
 	private final AigcMessageService aigcMessageService;
 
+	private final ChatMemoryFactory chatMemoryFactory;
+
+	private final AigcMessageWriter aigcMessageWriter;
+
 	/**
 	 * conversation list, filter by user
 	 */
@@ -53,17 +59,21 @@ public class AigcConversationController {
 			return R.fail("conversation id is null");
 		}
 		aigcMessageService.updateConversation(conversation);
+		chatMemoryFactory.invalidate(conversation.getId());
 		return R.ok();
 	}
 
 	@DeleteMapping("/{conversationId}")
 	public R delConversation(@PathVariable String conversationId) {
+		aigcMessageWriter.discard(conversationId);
 		aigcMessageService.delConversation(conversationId);
+		chatMemoryFactory.invalidate(conversationId);
 		return R.ok();
 	}
 
 	@DeleteMapping("/message/{conversationId}")
 	public R clearMessage(@PathVariable String conversationId) {
+		aigcMessageWriter.discard(conversationId);
 		aigcMessageService.clearMessage(conversationId);
 		return R.ok();
 	}
@@ -93,6 +103,7 @@ public class AigcConversationController {
 	public R updateChatRoomSettings(@PathVariable String conversationId, @RequestBody AigcConversation settings) {
 		settings.setId(conversationId);
 		aigcMessageService.updateConversation(settings);
+		chatMemoryFactory.invalidate(conversationId);
 		return R.ok();
 	}
 
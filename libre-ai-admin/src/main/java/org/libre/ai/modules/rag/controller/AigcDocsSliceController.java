@@ -3,6 +3,7 @@ package org.libre.ai.modules.rag.controller;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import lombok.RequiredArgsConstructor;
+import org.libre.ai.modules.rag.core.retrieval.LexicalIndexes;
 import org.libre.ai.modules.rag.entity.AigcDocsSlice;
 import org.libre.ai.modules.rag.mapper.AigcDocsSliceMapper;
 import org.libre.ai.modules.rag.utils.MybatisUtil;
@@ -24,6 +25,8 @@ public class AigcDocsSliceController {
 
 	private final AigcDocsSliceMapper docsSliceMapper;
 
+	private final LexicalIndexes lexicalIndexes;
+
 	@GetMapping("/list")
 	public R<List<AigcDocsSlice>> list(AigcDocsSlice data) {
 		return R.ok(docsSliceMapper
@@ -49,19 +52,33 @@ public class AigcDocsSliceController {
 	public R add(@RequestBody AigcDocsSlice data) {
 		data.setCreateTime(new Date());
 		docsSliceMapper.insert(data);
+		lexicalIndexes.invalidate(data.getKnowledgeId());
 		return R.ok();
 	}
 
 	@PutMapping
 	public R update(@RequestBody AigcDocsSlice data) {
 		docsSliceMapper.updateById(data);
+		invalidateLexicalIndex(data.getId());
 		return R.ok();
 	}
 
 	@DeleteMapping("/{id}")
 	public R delete(@PathVariable String id) {
+		// 先查出所属知识库，删除后再失效索引，避免删除前被并发检索重新加载的索引仍包含该切片
+		AigcDocsSlice slice = docsSliceMapper.selectById(id);
 		docsSliceMapper.deleteById(id);
+		if (slice != null) {
+			lexicalIndexes.invalidate(slice.getKnowledgeId());
+		}
 		return R.ok();
 	}
 
+	private void invalidateLexicalIndex(String id) {
+		AigcDocsSlice slice = docsSliceMapper.selectById(id);
+		if (slice != null) {
+			lexicalIndexes.invalidate(slice.getKnowledgeId());
+		}
+	}
+
 }
@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import lombok.RequiredArgsConstructor;
+import org.libre.ai.modules.rag.core.provider.AgentStoreFactory;
 import org.libre.ai.modules.rag.core.provider.EmbeddingProvider;
 import org.libre.ai.modules.rag.core.provider.KnowledgeStoreFactory;
 import org.libre.ai.modules.rag.entity.AigcDocs;
@@ -45,6 +46,8 @@ public class AigcKnowledgeController {
 
 	private final KnowledgeStoreFactory knowledgeStore;
 
+	private final AgentStoreFactory agentStoreFactory;
+
 	@GetMapping("/list")
 	public R<List<AigcKnowledge>> list(AigcKnowledge data) {
 		List<AigcKnowledge> list = kbService
@@ -110,6 +113,7 @@ public class AigcKnowledgeController {
 		data.setCreateTime(String.valueOf(System.currentTimeMillis()));
 		kbService.save(data);
 		knowledgeStore.init();
+		agentStoreFactory.invalidateAll();
 		return R.ok();
 	}
 
@@ -117,6 +121,7 @@ public class AigcKnowledgeController {
 	public R update(@RequestBody AigcKnowledge data) {
 		kbService.updateById(data);
 		knowledgeStore.init();
+		agentStoreFactory.invalidateAll();
 		return R.ok();
 	}
 
@@ -124,6 +129,7 @@ public class AigcKnowledgeController {
 	public R delete(@PathVariable String id) {
 		kbService.removeKnowledge(id);
 		knowledgeStore.init();
+		agentStoreFactory.invalidateAll();
 		return R.ok();
 	}
 
@@ -10,10 +10,35 @@ public interface EmbedConst {
 
 	String ORIGIN_TYPE_UPLOAD = "UPLOAD";
 
+	/**
+	 * 文档切片状态：未切片或等待入库任务执行
+	 */
+	int SLICE_STATUS_PENDING = 0;
+
+	/**
+	 * 文档切片状态：已切片
+	 */
+	int SLICE_STATUS_DONE = 1;
+
+	/**
+	 * 文档切片状态：入库任务执行中
+	 */
+	int SLICE_STATUS_RUNNING = 2;
+
+	/**
+	 * 文档切片状态：入库任务失败
+	 */
+	int SLICE_STATUS_FAILED = 3;
+
 	String KNOWLEDGE = "knowledgeId";
 
 	String FILENAME = "docsName";
 
+	/**
+	 * 混合检索的融合得分，保存在切片元数据中，ContentMetadata.SCORE 保留向量检索的相似度
+	 */
+	String RRF_SCORE = "rrfScore";
+
 	String CLAZZ_NAME_OPENAI = "OpenAiEmbeddingModel";
 
 	String CLAZZ_NAME_QIANFAN = "QianfanEmbeddingModel";
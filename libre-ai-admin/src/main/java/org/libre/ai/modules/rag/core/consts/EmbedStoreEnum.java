@@ -25,6 +25,6 @@ import lombok.Getter;
 @Getter
 public enum EmbedStoreEnum {
 
-	REDIS, PGVECTOR, MILVUS,;
+	REDIS, PGVECTOR, MILVUS, LOCAL, MMAP, FLAT, QUANTIZED,;
 
 }
@@ -0,0 +1,31 @@
+package org.libre.ai.modules.rag.core.consts;
+
+/**
+ * 文档入库任务的状态
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public enum IngestStatusEnum {
+
+	/**
+	 * 等待执行，失败后等待重试的任务同样处于该状态
+	 */
+	PENDING,
+
+	/**
+	 * 执行中
+	 */
+	RUNNING,
+
+	/**
+	 * 执行成功
+	 */
+	SUCCEEDED,
+
+	/**
+	 * 重试次数用尽后失败
+	 */
+	FAILED,;
+
+}
@@ -9,6 +9,6 @@ import lombok.Getter;
 @Getter
 public enum ProviderEnum {
 
-	OPENAI, AZURE_OPENAI, GEMINI, OLLAMA, CLAUDE, Q_FAN, Q_WEN, ZHIPU, YI, DOUYIN, DEEPSEEK, SILICON, SPARK,;
+	OPENAI, AZURE_OPENAI, GEMINI, OLLAMA, CLAUDE, Q_FAN, Q_WEN, ZHIPU, YI, DOUYIN, DEEPSEEK, SILICON, SPARK, LOCAL,;
 
 }
@@ -0,0 +1,21 @@
+package org.libre.ai.modules.rag.core.consts;
+
+/**
+ * 量化向量库的向量编码方式
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public enum QuantizationEnum {
+
+	/**
+	 * 每个分量 1 字节，按向量的最大绝对值缩放，体积为 float 的 1/4
+	 */
+	INT8,
+
+	/**
+	 * 每个分量 1 位（符号），体积为 float 的 1/32，按汉明距离粗排
+	 */
+	BINARY,;
+
+}
@@ -0,0 +1,21 @@
+package org.libre.ai.modules.rag.core.consts;
+
+/**
+ * 上传文件写入对象存储的状态
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public enum UploadStatusEnum {
+
+	/**
+	 * 本地副本已保存，正在上传或等待重试
+	 */
+	PENDING,
+
+	/**
+	 * 已写入对象存储
+	 */
+	DONE,;
+
+}
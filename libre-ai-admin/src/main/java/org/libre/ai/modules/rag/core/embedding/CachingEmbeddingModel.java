@@ -0,0 +1,62 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * 缓存单条查询向量的 EmbeddingModel
+ *
+ * 只缓存 embed(String) / embed(TextSegment)，即检索时的查询向量；批量的 embedAll 用于文档入库，直接透传，避免文档切片占满缓存。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+	private final String modelId;
+
+	private final EmbeddingModel delegate;
+
+	private final EmbeddingCache cache;
+
+	public CachingEmbeddingModel(String modelId, EmbeddingModel delegate, EmbeddingCache cache) {
+		this.modelId = modelId;
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	@Override
+	public Response<Embedding> embed(String text) {
+		// 规范化的文本只用于缓存键，模型仍使用原文，结果与不经过缓存时一致
+		String key = EmbeddingCache.key(modelId, EmbeddingCache.normalize(text));
+		float[] vector = cache.get(key);
+		if (vector != null) {
+			// Embedding.normalize() 会原地修改数组，返回副本
+			return Response.from(Embedding.from(vector.clone()));
+		}
+
+		Response<Embedding> response = delegate.embed(text);
+		cache.put(key, response.content().vector().clone());
+		return response;
+	}
+
+	@Override
+	public Response<Embedding> embed(TextSegment textSegment) {
+		return embed(textSegment.text());
+	}
+
+	@Override
+	public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+		return delegate.embedAll(textSegments);
+	}
+
+	@Override
+	public int dimension() {
+		return delegate.dimension();
+	}
+
+}
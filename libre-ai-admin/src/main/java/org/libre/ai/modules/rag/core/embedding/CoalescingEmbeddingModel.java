@@ -0,0 +1,155 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.DistributionSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 合并并发单条向量化请求的 EmbeddingModel
+ *
+ * 单条 embed 调用先进入当前批次，批次在第一条请求到达 maxWait 毫秒后，或凑满 maxSize 条时，作为一次 embedAll 发送，各调用方拿到自己的向量。
+ * 高并发时多个查询只产生一次 HTTP 请求；embedAll 本身已是批量请求，直接透传。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class CoalescingEmbeddingModel implements EmbeddingModel {
+
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "embedding-coalesce-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final ExecutorService SENDER = Executors
+		.newThreadPerTaskExecutor(Thread.ofVirtual().name("embedding-coalesce-", 0).factory());
+
+	private final EmbeddingModel delegate;
+
+	private final long maxWait;
+
+	private final int maxSize;
+
+	private final DistributionSummary batchSizes;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private Batch current;
+
+	public CoalescingEmbeddingModel(EmbeddingModel delegate, long maxWait, int maxSize,
+			DistributionSummary batchSizes) {
+		this.delegate = delegate;
+		this.maxWait = maxWait;
+		this.maxSize = maxSize;
+		this.batchSizes = batchSizes;
+	}
+
+	@Override
+	public Response<Embedding> embed(String text) {
+		return embed(TextSegment.from(text));
+	}
+
+	@Override
+	public Response<Embedding> embed(TextSegment textSegment) {
+		CompletableFuture<Embedding> future = new CompletableFuture<>();
+		Batch full = null;
+		lock.lock();
+		try {
+			if (current == null) {
+				Batch batch = new Batch();
+				current = batch;
+				TIMER.schedule(() -> flush(batch), maxWait, TimeUnit.MILLISECONDS);
+			}
+			current.segments.add(textSegment);
+			current.futures.add(future);
+			if (current.segments.size() >= maxSize) {
+				full = current;
+				current = null;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		if (full != null) {
+			send(full);
+		}
+
+		try {
+			return Response.from(future.join());
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+		return delegate.embedAll(textSegments);
+	}
+
+	@Override
+	public int dimension() {
+		return delegate.dimension();
+	}
+
+	/**
+	 * 等待时间到达时发送批次，批次已因凑满而发送时忽略
+	 */
+	private void flush(Batch batch) {
+		lock.lock();
+		try {
+			if (current != batch) {
+				return;
+			}
+			current = null;
+		}
+		finally {
+			lock.unlock();
+		}
+		send(batch);
+	}
+
+	private void send(Batch batch) {
+		SENDER.execute(() -> {
+			batchSizes.record(batch.segments.size());
+			try {
+				List<Embedding> embeddings = delegate.embedAll(batch.segments).content();
+				if (embeddings == null || embeddings.size() != batch.futures.size()) {
+					// 数量不一致时无法确定对应关系，整批失败，避免调用方一直等待
+					throw new IllegalStateException("向量模型返回的结果数量与请求不一致：请求 " + batch.futures.size() + " 条，返回 "
+							+ (embeddings == null ? 0 : embeddings.size()) + " 条");
+				}
+				for (int i = 0; i < batch.futures.size(); i++) {
+					batch.futures.get(i).complete(embeddings.get(i));
+				}
+			}
+			catch (Throwable e) {
+				batch.futures.forEach(future -> future.completeExceptionally(e));
+			}
+		});
+	}
+
+	private static final class Batch {
+
+		private final List<TextSegment> segments = new ArrayList<>();
+
+		private final List<CompletableFuture<Embedding>> futures = new ArrayList<>();
+
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.properties.EmbeddingProperties;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 查询向量缓存
+ *
+ * 以 (模型ID, 规范化后的文本) 为 key，按估算字节数做 LRU 淘汰，可选过期时间。向量以 float[] 保存。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class EmbeddingCache {
+
+	/**
+	 * 每个缓存项的固定开销估算（Map 节点、key 对象、数组头等）
+	 */
+	private static final long ENTRY_OVERHEAD = 96;
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private final EmbeddingProperties.Cache properties;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+	private long bytes;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private final Counter evictions;
+
+	public EmbeddingCache(EmbeddingProperties embeddingProperties, MeterRegistry meterRegistry) {
+		this.properties = embeddingProperties.getCache();
+		Gauge.builder("langchat.embedding.cache.size", this, EmbeddingCache::size).register(meterRegistry);
+		Gauge.builder("langchat.embedding.cache.bytes", this, EmbeddingCache::bytes)
+			.baseUnit("bytes")
+			.register(meterRegistry);
+		this.hits = Counter.builder("langchat.embedding.cache.requests").tag("result", "hit").register(meterRegistry);
+		this.misses = Counter.builder("langchat.embedding.cache.requests")
+			.tag("result", "miss")
+			.register(meterRegistry);
+		this.evictions = Counter.builder("langchat.embedding.cache.evictions").register(meterRegistry);
+	}
+
+	public boolean enabled() {
+		return properties.isEnabled() && properties.getMaxBytes() > 0;
+	}
+
+	public static String key(String modelId, String normalizedText) {
+		return modelId + '\u0000' + normalizedText;
+	}
+
+	/**
+	 * 规范化查询文本：NFKC、去掉首尾空白、连续空白合并为一个空格
+	 */
+	public static String normalize(String text) {
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).strip();
+		return WHITESPACE.matcher(normalized).replaceAll(" ");
+	}
+
+	public float[] get(String key) {
+		lock.lock();
+		try {
+			Entry entry = cache.get(key);
+			if (entry != null && expired(entry)) {
+				remove(key);
+				entry = null;
+			}
+			if (entry == null) {
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			return entry.vector;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void put(String key, float[] vector) {
+		long size = ENTRY_OVERHEAD + key.length() * 2L + vector.length * 4L;
+		if (size > properties.getMaxBytes()) {
+			return;
+		}
+		lock.lock();
+		try {
+			Entry previous = cache.put(key, new Entry(vector, size, System.currentTimeMillis()));
+			bytes += size - (previous == null ? 0 : previous.size);
+			Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+			while (bytes > properties.getMaxBytes() && it.hasNext()) {
+				bytes -= it.next().getValue().size;
+				it.remove();
+				evictions.increment();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 清除某个模型的缓存，模型配置变更时调用
+	 */
+	public void invalidate(String modelId) {
+		String prefix = modelId + '\u0000';
+		lock.lock();
+		try {
+			cache.entrySet().removeIf(e -> {
+				if (e.getKey().startsWith(prefix)) {
+					bytes -= e.getValue().size;
+					return true;
+				}
+				return false;
+			});
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			log.info("clear embedding cache, size: {}", cache.size());
+			cache.clear();
+			bytes = 0;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean expired(Entry entry) {
+		return properties.getTtl() > 0 && System.currentTimeMillis() - entry.createTime > properties.getTtl();
+	}
+
+	private void remove(String key) {
+		Entry removed = cache.remove(key);
+		if (removed != null) {
+			bytes -= removed.size;
+		}
+	}
+
+	private int size() {
+		lock.lock();
+		try {
+			return cache.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private long bytes() {
+		lock.lock();
+		try {
+			return bytes;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private record Entry(float[] vector, long size, long createTime) {
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 本地向量库检索时的知识库ID预过滤
+ *
+ * 检索基本都带有知识库ID条件（单个知识库为相等条件，对话检索多个知识库为 isIn 条件），本地向量库为每条记录保存知识库ID的编号或 hash，
+ * 扫描时先比较它，再对候选记录执行完整的过滤条件。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public final class KnowledgeFilters {
+
+	private KnowledgeFilters() {
+	}
+
+	/**
+	 * 过滤条件允许的知识库ID集合，条件不限制知识库时返回 null
+	 */
+	public static Set<String> knowledgeIds(Filter filter) {
+		if (filter instanceof IsEqualTo eq && KNOWLEDGE.equals(eq.key())) {
+			return Set.of(String.valueOf(eq.comparisonValue()));
+		}
+		if (filter instanceof IsIn in && KNOWLEDGE.equals(in.key())) {
+			return in.comparisonValues().stream().map(String::valueOf).collect(Collectors.toUnmodifiableSet());
+		}
+		if (filter instanceof And and) {
+			Set<String> left = knowledgeIds(and.left());
+			Set<String> right = knowledgeIds(and.right());
+			if (left == null || right == null) {
+				return left != null ? left : right;
+			}
+			Set<String> both = new HashSet<>(left);
+			both.retainAll(right);
+			return both;
+		}
+		if (filter instanceof Or or) {
+			Set<String> left = knowledgeIds(or.left());
+			Set<String> right = knowledgeIds(or.right());
+			if (left == null || right == null) {
+				return null;
+			}
+			Set<String> either = new HashSet<>(left);
+			either.addAll(right);
+			return either;
+		}
+		return null;
+	}
+
+	/**
+	 * 按知识库编号过滤时允许的编号，knowledgeIds 为 null 时返回 null（不过滤）
+	 */
+	public static boolean[] tagMask(Set<String> knowledgeIds, Map<String, Integer> tagIds) {
+		if (knowledgeIds == null) {
+			return null;
+		}
+		boolean[] mask = new boolean[tagIds.size()];
+		for (String knowledgeId : knowledgeIds) {
+			Integer tag = tagIds.get(knowledgeId);
+			if (tag != null) {
+				mask[tag] = true;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * 编号是否被允许，没有知识库ID的记录（编号为 -1）只在不过滤时返回
+	 */
+	public static boolean allowed(boolean[] mask, int tag) {
+		return mask == null || tag >= 0 && tag < mask.length && mask[tag];
+	}
+
+	/**
+	 * 允许的编号是否为空，为空时无需扫描
+	 */
+	public static boolean isEmpty(boolean[] mask) {
+		if (mask == null) {
+			return false;
+		}
+		for (boolean allowed : mask) {
+			if (allowed) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.nio.file.Path;
+
+/**
+ * 数据保存在本机磁盘上的向量库，由 EmbeddingStoreFactory 定时写盘和整理
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public interface LocalEmbeddingStore extends EmbeddingStore<TextSegment> {
+
+	/**
+	 * 数据位置和维度与配置一致时可以复用当前实例
+	 */
+	boolean matches(Path location, int dimension);
+
+	/**
+	 * 有变更时写入磁盘
+	 */
+	void flush();
+
+	/**
+	 * 回收已删除数据占用的空间
+	 */
+	default void compact() {
+	}
+
+	/**
+	 * 写盘并释放文件句柄，实例被替换或服务关闭时调用
+	 */
+	default void close() {
+		flush();
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import java.util.Arrays;
+
+/**
+ * 以相似度为优先级的节点堆，节点和分数分别保存在 int[] / float[] 中，避免装箱
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public final class NodeHeap {
+
+	private final boolean max;
+
+	private int[] nodes;
+
+	private float[] scores;
+
+	private int size;
+
+	private NodeHeap(boolean max, int capacity) {
+		this.max = max;
+		this.nodes = new int[Math.max(capacity, 4)];
+		this.scores = new float[Math.max(capacity, 4)];
+	}
+
+	/**
+	 * 堆顶为相似度最高的节点
+	 */
+	public static NodeHeap max(int capacity) {
+		return new NodeHeap(true, capacity);
+	}
+
+	/**
+	 * 堆顶为相似度最低的节点
+	 */
+	public static NodeHeap min(int capacity) {
+		return new NodeHeap(false, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int topNode() {
+		return nodes[0];
+	}
+
+	public float topScore() {
+		return scores[0];
+	}
+
+	public void push(int node, float score) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(score, scores[parent])) {
+				break;
+			}
+			nodes[i] = nodes[parent];
+			scores[i] = scores[parent];
+			i = parent;
+		}
+		nodes[i] = node;
+		scores[i] = score;
+	}
+
+	/**
+	 * 弹出堆顶并返回其节点
+	 */
+	public int pop() {
+		int top = nodes[0];
+		int lastNode = nodes[--size];
+		float lastScore = scores[size];
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && before(scores[right], scores[child])) {
+				child = right;
+			}
+			if (!before(scores[child], lastScore)) {
+				break;
+			}
+			nodes[i] = nodes[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		if (size > 0) {
+			nodes[i] = lastNode;
+			scores[i] = lastScore;
+		}
+		return top;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	private boolean before(float a, float b) {
+		return max ? a > b : a < b;
+	}
+
+}
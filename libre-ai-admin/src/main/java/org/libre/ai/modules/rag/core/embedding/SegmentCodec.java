@@ -0,0 +1,91 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import dev.langchain4j.data.document.Metadata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 本地向量库中文本和元数据的二进制编码
+ *
+ * 元数据按值类型写入类型标记，读取后与 langchain4j {@link Metadata} 支持的类型一致，过滤条件（如知识库ID）可以直接比较。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public final class SegmentCodec {
+
+	private SegmentCodec() {
+	}
+
+	public static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public static void writeMetadata(DataOutput out, Metadata metadata) throws IOException {
+		Map<String, Object> map = metadata.toMap();
+		out.writeInt(map.size());
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			writeString(out, entry.getKey());
+			Object value = entry.getValue();
+			switch (value) {
+				case Integer v -> {
+					out.writeByte(1);
+					out.writeInt(v);
+				}
+				case Long v -> {
+					out.writeByte(2);
+					out.writeLong(v);
+				}
+				case Float v -> {
+					out.writeByte(3);
+					out.writeFloat(v);
+				}
+				case Double v -> {
+					out.writeByte(4);
+					out.writeDouble(v);
+				}
+				case UUID v -> {
+					out.writeByte(5);
+					writeString(out, v.toString());
+				}
+				default -> {
+					out.writeByte(0);
+					writeString(out, String.valueOf(value));
+				}
+			}
+		}
+	}
+
+	public static Metadata readMetadata(DataInput in) throws IOException {
+		int size = in.readInt();
+		Map<String, Object> map = new HashMap<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			Object value = switch (in.readByte()) {
+				case 1 -> in.readInt();
+				case 2 -> in.readLong();
+				case 3 -> in.readFloat();
+				case 4 -> in.readDouble();
+				case 5 -> UUID.fromString(readString(in));
+				default -> readString(in);
+			};
+			map.put(key, value);
+		}
+		return map.isEmpty() ? new Metadata() : Metadata.from(map);
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 向量计算
+ *
+ * 本地向量库中的向量写入时已归一化，余弦相似度等于点积。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public final class VectorMath {
+
+	private VectorMath() {
+	}
+
+	public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		int bound = length & ~3;
+		for (; i < bound; i += 4) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+			s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+			s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+			s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+		}
+		for (; i < length; i++) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+		}
+		return s0 + s1 + s2 + s3;
+	}
+
+	/**
+	 * buffer 中从 offset（字节）开始的 b.length 个 float 与 b 的点积，用于直接在内存映射文件上计算
+	 */
+	public static float dot(ByteBuffer buffer, int offset, float[] b) {
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		int bound = b.length & ~3;
+		for (; i < bound; i += 4) {
+			int p = offset + (i << 2);
+			s0 += buffer.getFloat(p) * b[i];
+			s1 += buffer.getFloat(p + 4) * b[i + 1];
+			s2 += buffer.getFloat(p + 8) * b[i + 2];
+			s3 += buffer.getFloat(p + 12) * b[i + 3];
+		}
+		for (; i < b.length; i++) {
+			s0 += buffer.getFloat(offset + (i << 2)) * b[i];
+		}
+		return s0 + s1 + s2 + s3;
+	}
+
+	/**
+	 * 返回归一化后的副本，零向量原样返回
+	 */
+	public static float[] normalize(float[] vector) {
+		double norm = 0;
+		for (float v : vector) {
+			norm += v * v;
+		}
+		float[] result = vector.clone();
+		if (norm == 0) {
+			return result;
+		}
+		float inv = (float) (1 / Math.sqrt(norm));
+		for (int i = 0; i < result.length; i++) {
+			result[i] *= inv;
+		}
+		return result;
+	}
+
+	/**
+	 * 余弦相似度转换为 [0, 1] 的相关性分数，与 langchain4j 的 RelevanceScore 一致
+	 */
+	public static double relevance(float cosine) {
+		return (cosine + 1) / 2.0;
+	}
+
+}
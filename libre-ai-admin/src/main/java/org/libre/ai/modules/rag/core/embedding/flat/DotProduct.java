@@ -0,0 +1,13 @@
+package org.libre.ai.modules.rag.core.embedding.flat;
+
+/**
+ * 点积计算，SIMD 实现（SimdScorer）只在以 simd profile 构建时编译
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+interface DotProduct {
+
+	float dot(float[] block, int offset, float[] query);
+
+}
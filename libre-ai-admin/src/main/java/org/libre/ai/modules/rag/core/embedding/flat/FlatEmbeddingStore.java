@@ -0,0 +1,580 @@
+package org.libre.ai.modules.rag.core.embedding.flat;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.embedding.KnowledgeFilters;
+import org.libre.ai.modules.rag.core.embedding.LocalEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.NodeHeap;
+import org.libre.ai.modules.rag.core.embedding.SegmentCodec;
+import org.libre.ai.modules.rag.core.embedding.VectorMath;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 精确检索的进程内向量库，适用于几十万条以内的知识库
+ *
+ * 向量归一化后按 4096 条一块连续保存在 float[] 中，检索时逐条计算点积（即余弦相似度），没有近似误差。
+ * 以 simd profile 构建并且运行时加载了 jdk.incubator.vector 模块时使用 SIMD 计算点积，否则使用标量实现。数据量较大时按范围拆分到 ForkJoinPool 并行扫描，
+ * 每个任务维护自己的前 N 小顶堆，最后合并。每条记录保存知识库ID的编号，按知识库过滤时先比较编号，只对能进入前 N 的记录执行完整的过滤条件。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class FlatEmbeddingStore implements LocalEmbeddingStore {
+
+	/**
+	 * SIMD 点积实现，需要以 simd profile 构建，并且运行时加载了 Vector API 模块（--add-modules jdk.incubator.vector）
+	 */
+	private static final DotProduct SIMD_SCORER = loadSimdScorer();
+
+	static final boolean SIMD_AVAILABLE = SIMD_SCORER != null;
+
+	private static final int MAGIC = 0x464C4154;
+
+	private static final int VERSION = 1;
+
+	private static final int BLOCK_SHIFT = 12;
+
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("flat-search-" + thread.getPoolIndex());
+		return thread;
+	}, null, false);
+
+	private final Path file;
+
+	private final int dimension;
+
+	private final double compactRatio;
+
+	private final boolean simd;
+
+	/**
+	 * 单个扫描任务处理的记录数
+	 */
+	private final int grain;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private float[][] blocks = new float[0][];
+
+	private String[] ids = new String[16];
+
+	private TextSegment[] segments = new TextSegment[16];
+
+	private int[] tags = new int[16];
+
+	private boolean[] deleted = new boolean[16];
+
+	private int count;
+
+	private int deletedCount;
+
+	private final Map<String, Integer> nodes = new HashMap<>();
+
+	/**
+	 * 知识库ID到编号的映射
+	 */
+	private final Map<String, Integer> tagIds = new HashMap<>();
+
+	private volatile boolean dirty;
+
+	public FlatEmbeddingStore(Path file, int dimension, boolean simd, double compactRatio) {
+		this.file = file;
+		this.dimension = dimension;
+		this.compactRatio = compactRatio;
+		this.simd = simd && SIMD_AVAILABLE;
+		this.grain = Math.max(1024, (1 << 20) / dimension);
+		if (simd && !SIMD_AVAILABLE) {
+			log.warn("未启用 SIMD，精确检索使用标量计算：需要以 -Psimd 构建，并在启动参数中添加 --add-modules jdk.incubator.vector");
+		}
+		load();
+	}
+
+	@Override
+	public String add(Embedding embedding) {
+		String id = UUID.randomUUID().toString();
+		add(id, embedding);
+		return id;
+	}
+
+	@Override
+	public void add(String id, Embedding embedding) {
+		addAll(List.of(id), List.of(embedding), null);
+	}
+
+	@Override
+	public String add(Embedding embedding, TextSegment textSegment) {
+		String id = UUID.randomUUID().toString();
+		addAll(List.of(id), List.of(embedding), List.of(textSegment));
+		return id;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, null);
+		return ids;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, embedded);
+		return ids;
+	}
+
+	@Override
+	public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+		if (embedded != null && embedded.size() != embeddings.size()) {
+			throw new IllegalArgumentException("embeddings 与 embedded 数量不一致");
+		}
+		List<float[]> vectors = new ArrayList<>(embeddings.size());
+		for (Embedding embedding : embeddings) {
+			if (embedding.dimension() != dimension) {
+				throw new ServiceException("向量维度不匹配，期望 " + dimension + "，实际 " + embedding.dimension());
+			}
+			vectors.add(VectorMath.normalize(embedding.vector()));
+		}
+
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < vectors.size(); i++) {
+				append(ids.get(i), vectors.get(i), embedded == null ? null : embedded.get(i));
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(id));
+	}
+
+	@Override
+	public void removeAll(Collection<String> ids) {
+		lock.writeLock().lock();
+		try {
+			for (String id : ids) {
+				Integer node = nodes.remove(id);
+				if (node != null) {
+					markDeleted(node);
+				}
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		lock.writeLock().lock();
+		try {
+			for (int node = 0; node < count; node++) {
+				if (!deleted[node] && segments[node] != null && filter.test(segments[node].metadata())) {
+					nodes.remove(ids[node]);
+					markDeleted(node);
+				}
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll() {
+		lock.writeLock().lock();
+		try {
+			blocks = new float[0][];
+			ids = new String[16];
+			segments = new TextSegment[16];
+			tags = new int[16];
+			deleted = new boolean[16];
+			count = 0;
+			deletedCount = 0;
+			nodes.clear();
+			tagIds.clear();
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+		Filter filter = request.filter();
+		Set<String> knowledgeIds = KnowledgeFilters.knowledgeIds(filter);
+		int maxResults = request.maxResults();
+
+		lock.readLock().lock();
+		try {
+			boolean[] tagMask = KnowledgeFilters.tagMask(knowledgeIds, tagIds);
+			if (KnowledgeFilters.isEmpty(tagMask)) {
+				return new EmbeddingSearchResult<>(List.of());
+			}
+			Scan scan = new Scan(query, maxResults, tagMask, filter, (float) (request.minScore() * 2 - 1));
+			NodeHeap results = count > grain * 4 ? POOL.invoke(new ScanTask(scan, 0, count)) : scan.scan(0, count);
+
+			int size = results.size();
+			int[] found = new int[size];
+			float[] scores = new float[size];
+			for (int i = size - 1; i >= 0; i--) {
+				scores[i] = results.topScore();
+				found[i] = results.pop();
+			}
+			List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				int node = found[i];
+				matches.add(new EmbeddingMatch<>(VectorMath.relevance(scores[i]), ids[node],
+						Embedding.from(vector(node)), segments[node]));
+			}
+			return new EmbeddingSearchResult<>(matches);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean matches(Path location, int dimension) {
+		return file.equals(location) && this.dimension == dimension;
+	}
+
+	/**
+	 * 删除的记录较多时将存活记录前移，释放数组空间
+	 */
+	@Override
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			if (deletedCount == 0 || deletedCount < count * compactRatio) {
+				return;
+			}
+			int write = 0;
+			for (int node = 0; node < count; node++) {
+				if (deleted[node]) {
+					continue;
+				}
+				if (write != node) {
+					System.arraycopy(blocks[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * dimension,
+							blocks[write >>> BLOCK_SHIFT], (write & BLOCK_MASK) * dimension, dimension);
+					ids[write] = ids[node];
+					segments[write] = segments[node];
+					tags[write] = tags[node];
+					deleted[write] = false;
+					nodes.put(ids[write], write);
+				}
+				write++;
+			}
+			Arrays.fill(ids, write, count, null);
+			Arrays.fill(segments, write, count, null);
+			log.info("整理精确检索向量库：{}，回收记录数：{}", file, count - write);
+			count = write;
+			deletedCount = 0;
+			blocks = Arrays.copyOf(blocks, (count + BLOCK_SIZE - 1) >>> BLOCK_SHIFT);
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 有变更时写入磁盘，只写存活的记录
+	 */
+	@Override
+	public void flush() {
+		if (!dirty) {
+			return;
+		}
+		flushLock.lock();
+		lock.readLock().lock();
+		try {
+			dirty = false;
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES);
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(dimension);
+				out.writeInt(count - deletedCount);
+				for (int node = 0; node < count; node++) {
+					if (deleted[node]) {
+						continue;
+					}
+					SegmentCodec.writeString(out, ids[node]);
+					buffer.clear();
+					buffer.asFloatBuffer()
+						.put(blocks[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * dimension, dimension);
+					out.write(buffer.array());
+					TextSegment segment = segments[node];
+					out.writeBoolean(segment != null);
+					if (segment != null) {
+						SegmentCodec.writeString(out, segment.text());
+						SegmentCodec.writeMetadata(out, segment.metadata());
+					}
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			dirty = true;
+			log.error("精确检索向量库写入磁盘失败：{}", file, e);
+		}
+		finally {
+			lock.readLock().unlock();
+			flushLock.unlock();
+		}
+	}
+
+	private void load() {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("文件格式不正确");
+			}
+			int fileDimension = in.readInt();
+			if (fileDimension != dimension) {
+				throw new IOException("向量维度不匹配，文件为 " + fileDimension + "，配置为 " + dimension);
+			}
+			int size = in.readInt();
+			byte[] bytes = new byte[dimension * Float.BYTES];
+			float[] vector = new float[dimension];
+			for (int i = 0; i < size; i++) {
+				String id = SegmentCodec.readString(in);
+				in.readFully(bytes);
+				ByteBuffer.wrap(bytes).asFloatBuffer().get(vector);
+				TextSegment segment = null;
+				if (in.readBoolean()) {
+					segment = TextSegment.from(SegmentCodec.readString(in), SegmentCodec.readMetadata(in));
+				}
+				append(id, vector, segment);
+			}
+			log.info("加载精确检索向量库：{}，向量数量：{}，SIMD：{}", file, count, simd);
+		}
+		catch (IOException e) {
+			throw new ServiceException("精确检索向量库加载失败：" + file + "，" + e.getMessage());
+		}
+	}
+
+	/**
+	 * 追加一条记录，调用方需持有写锁
+	 */
+	private void append(String id, float[] vector, TextSegment segment) {
+		Integer previous = nodes.get(id);
+		if (previous != null) {
+			markDeleted(previous);
+		}
+		int node = count;
+		ensureCapacity(node + 1);
+		System.arraycopy(vector, 0, blocks[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * dimension, dimension);
+		ids[node] = id;
+		segments[node] = segment;
+		tags[node] = tag(segment);
+		deleted[node] = false;
+		nodes.put(id, node);
+		count++;
+	}
+
+	private int tag(TextSegment segment) {
+		if (segment == null || !segment.metadata().containsKey(KNOWLEDGE)) {
+			return -1;
+		}
+		String knowledgeId = String.valueOf(segment.metadata().toMap().get(KNOWLEDGE));
+		return tagIds.computeIfAbsent(knowledgeId, k -> tagIds.size());
+	}
+
+	private void markDeleted(int node) {
+		if (!deleted[node]) {
+			deleted[node] = true;
+			deletedCount++;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		int blockCount = (capacity + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+		if (blockCount > blocks.length) {
+			int from = blocks.length;
+			blocks = Arrays.copyOf(blocks, blockCount);
+			for (int i = from; i < blockCount; i++) {
+				blocks[i] = new float[BLOCK_SIZE * dimension];
+			}
+		}
+		if (capacity <= ids.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+		ids = Arrays.copyOf(ids, newCapacity);
+		segments = Arrays.copyOf(segments, newCapacity);
+		tags = Arrays.copyOf(tags, newCapacity);
+		deleted = Arrays.copyOf(deleted, newCapacity);
+	}
+
+	private float[] vector(int node) {
+		int offset = (node & BLOCK_MASK) * dimension;
+		return Arrays.copyOfRange(blocks[node >>> BLOCK_SHIFT], offset, offset + dimension);
+	}
+
+	private static DotProduct loadSimdScorer() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return null;
+		}
+		try {
+			return (DotProduct) Class.forName(FlatEmbeddingStore.class.getPackageName() + ".SimdScorer")
+				.getDeclaredConstructor()
+				.newInstance();
+		}
+		catch (ClassNotFoundException e) {
+			// 未以 simd profile 构建
+			return null;
+		}
+		catch (ReflectiveOperationException e) {
+			log.warn("SIMD 点积实现加载失败：{}", e.getMessage());
+			return null;
+		}
+	}
+
+	private float score(int node, float[] query) {
+		float[] block = blocks[node >>> BLOCK_SHIFT];
+		int offset = (node & BLOCK_MASK) * dimension;
+		return simd ? SIMD_SCORER.dot(block, offset, query) : VectorMath.dot(block, offset, query, 0, dimension);
+	}
+
+	/**
+	 * 一次检索的参数，扫描时只读访问向量库的数组，由调用方持有读锁
+	 */
+	private class Scan {
+
+		private final float[] query;
+
+		private final int k;
+
+		private final boolean[] tagMask;
+
+		private final Filter filter;
+
+		private final float minCosine;
+
+		Scan(float[] query, int k, boolean[] tagMask, Filter filter, float minCosine) {
+			this.query = query;
+			this.k = k;
+			this.tagMask = tagMask;
+			this.filter = filter;
+			this.minCosine = minCosine;
+		}
+
+		NodeHeap scan(int from, int to) {
+			NodeHeap heap = NodeHeap.min(k + 1);
+			for (int node = from; node < to; node++) {
+				if (deleted[node] || !KnowledgeFilters.allowed(tagMask, tags[node])) {
+					continue;
+				}
+				float score = score(node, query);
+				if (score < minCosine || heap.size() == k && score <= heap.topScore()) {
+					continue;
+				}
+				if (filter != null && (segments[node] == null || !filter.test(segments[node].metadata()))) {
+					continue;
+				}
+				heap.push(node, score);
+				if (heap.size() > k) {
+					heap.pop();
+				}
+			}
+			return heap;
+		}
+
+		NodeHeap merge(NodeHeap a, NodeHeap b) {
+			while (!b.isEmpty()) {
+				float score = b.topScore();
+				int node = b.pop();
+				if (a.size() < k || score > a.topScore()) {
+					a.push(node, score);
+					if (a.size() > k) {
+						a.pop();
+					}
+				}
+			}
+			return a;
+		}
+
+	}
+
+	private class ScanTask extends RecursiveTask<NodeHeap> {
+
+		private final Scan scan;
+
+		private final int from;
+
+		private final int to;
+
+		ScanTask(Scan scan, int from, int to) {
+			this.scan = scan;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected NodeHeap compute() {
+			if (to - from <= grain) {
+				return scan.scan(from, to);
+			}
+			int mid = (from + to) >>> 1;
+			ScanTask left = new ScanTask(scan, from, mid);
+			left.fork();
+			NodeHeap right = new ScanTask(scan, mid, to).compute();
+			return scan.merge(left.join(), right);
+		}
+
+	}
+
+}
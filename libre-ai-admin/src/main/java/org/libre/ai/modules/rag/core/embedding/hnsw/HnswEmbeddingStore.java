@@ -0,0 +1,463 @@
+package org.libre.ai.modules.rag.core.embedding.hnsw;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.embedding.LocalEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.NodeHeap;
+import org.libre.ai.modules.rag.core.embedding.SegmentCodec;
+import org.libre.ai.modules.rag.core.embedding.VectorMath;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * 进程内 HNSW 向量库
+ *
+ * 向量写入时归一化后保存在 {@link HnswIndex} 的 float[] 中，文本和元数据按节点编号保存。删除只做标记，被删除的节点仍参与图遍历但不会出现在结果中，
+ * 删除（含被覆盖）的节点比例超过阈值后由 {@link #compact()} 用存活节点重建索引。
+ * 带过滤条件（如知识库ID）的检索在遍历时过滤结果；过滤后结果不足时对匹配的节点做一次精确扫描，保证小知识库的召回。
+ * 索引变更后标记为脏数据，由 {@link #flush()} 写入磁盘（先写临时文件再原子替换）。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class HnswEmbeddingStore implements LocalEmbeddingStore {
+
+	private static final int MAGIC = 0x484E5357;
+
+	private static final int VERSION = 1;
+
+	private final Path file;
+
+	private final int efSearch;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * 定时写入和关闭时的写入可能同时发生，写文件需要互斥
+	 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private final ReentrantLock compactLock = new ReentrantLock();
+
+	private HnswIndex index;
+
+	private String[] ids = new String[16];
+
+	private TextSegment[] segments = new TextSegment[16];
+
+	private boolean[] deleted = new boolean[16];
+
+	private final Map<String, Integer> nodes = new HashMap<>();
+
+	private int live;
+
+	private volatile boolean dirty;
+
+	private final int m;
+
+	private final int efConstruction;
+
+	private final int dimension;
+
+	private final double compactRatio;
+
+	public HnswEmbeddingStore(Path file, int dimension, int m, int efConstruction, int efSearch,
+			double compactRatio) {
+		this.file = file;
+		this.dimension = dimension;
+		this.m = m;
+		this.efConstruction = efConstruction;
+		this.efSearch = efSearch;
+		this.compactRatio = compactRatio;
+		this.index = new HnswIndex(dimension, m, efConstruction);
+		load();
+	}
+
+	@Override
+	public String add(Embedding embedding) {
+		String id = UUID.randomUUID().toString();
+		add(id, embedding);
+		return id;
+	}
+
+	@Override
+	public void add(String id, Embedding embedding) {
+		addAll(List.of(id), List.of(embedding), null);
+	}
+
+	@Override
+	public String add(Embedding embedding, TextSegment textSegment) {
+		String id = UUID.randomUUID().toString();
+		addAll(List.of(id), List.of(embedding), List.of(textSegment));
+		return id;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, null);
+		return ids;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, embedded);
+		return ids;
+	}
+
+	@Override
+	public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+		if (embedded != null && embedded.size() != embeddings.size()) {
+			throw new IllegalArgumentException("embeddings 与 embedded 数量不一致");
+		}
+		// 归一化在锁外完成
+		List<float[]> vectors = new ArrayList<>(embeddings.size());
+		for (Embedding embedding : embeddings) {
+			if (embedding.dimension() != dimension) {
+				throw new ServiceException("向量维度不匹配，期望 " + dimension + "，实际 " + embedding.dimension());
+			}
+			vectors.add(VectorMath.normalize(embedding.vector()));
+		}
+
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < vectors.size(); i++) {
+				String id = ids.get(i);
+				Integer previous = nodes.get(id);
+				if (previous != null) {
+					markDeleted(previous);
+				}
+				int node = index.add(vectors.get(i));
+				ensureCapacity(node + 1);
+				this.ids[node] = id;
+				segments[node] = embedded == null ? null : embedded.get(i);
+				deleted[node] = false;
+				nodes.put(id, node);
+				live++;
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(id));
+	}
+
+	@Override
+	public void removeAll(Collection<String> ids) {
+		lock.writeLock().lock();
+		try {
+			for (String id : ids) {
+				Integer node = nodes.remove(id);
+				if (node != null) {
+					markDeleted(node);
+				}
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		lock.writeLock().lock();
+		try {
+			for (int node = 0; node < index.size(); node++) {
+				if (!deleted[node] && segments[node] != null && filter.test(segments[node].metadata())) {
+					nodes.remove(ids[node]);
+					markDeleted(node);
+				}
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll() {
+		lock.writeLock().lock();
+		try {
+			index = new HnswIndex(dimension, m, efConstruction);
+			ids = new String[16];
+			segments = new TextSegment[16];
+			deleted = new boolean[16];
+			nodes.clear();
+			live = 0;
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+		Filter filter = request.filter();
+		int maxResults = request.maxResults();
+
+		lock.readLock().lock();
+		try {
+			IntPredicate accept = node -> !deleted[node]
+					&& (filter == null || segments[node] != null && filter.test(segments[node].metadata()));
+			NodeHeap results = index.search(query, Math.max(efSearch, maxResults), accept);
+			if (filter != null && results.size() < maxResults) {
+				results = exactSearch(query, maxResults, accept);
+			}
+
+			int count = results.size();
+			int[] found = new int[count];
+			float[] scores = new float[count];
+			for (int i = count - 1; i >= 0; i--) {
+				scores[i] = results.topScore();
+				found[i] = results.pop();
+			}
+
+			List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(Math.min(count, maxResults));
+			for (int i = 0; i < count && matches.size() < maxResults; i++) {
+				double score = VectorMath.relevance(scores[i]);
+				if (score < request.minScore()) {
+					break;
+				}
+				int node = found[i];
+				matches.add(new EmbeddingMatch<>(score, ids[node], Embedding.from(vector(node)), segments[node]));
+			}
+			return new EmbeddingSearchResult<>(matches);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		return live;
+	}
+
+	@Override
+	public boolean matches(Path file, int dimension) {
+		return this.file.equals(file) && this.dimension == dimension;
+	}
+
+	/**
+	 * 删除的节点比例达到阈值时用存活节点重建索引
+	 *
+	 * 重建时不持有写锁，检索和写入照常进行；重建完成后在写锁内补上重建期间新增的节点，按新的节点编号复制ID、文本和删除标记，再替换索引。
+	 */
+	@Override
+	public void compact() {
+		if (!compactLock.tryLock()) {
+			return;
+		}
+		try {
+			HnswIndex source;
+			int total;
+			int[] kept;
+			float[] vectors;
+			lock.readLock().lock();
+			try {
+				total = index.size();
+				if (total == 0 || (double) (total - live) / total < compactRatio) {
+					return;
+				}
+				source = index;
+				kept = IntStream.range(0, total).filter(node -> !deleted[node]).toArray();
+				vectors = Arrays.copyOf(index.vectors(), total * dimension);
+			}
+			finally {
+				lock.readLock().unlock();
+			}
+
+			HnswIndex rebuilt = new HnswIndex(dimension, m, efConstruction);
+			for (int node : kept) {
+				rebuilt.add(Arrays.copyOfRange(vectors, node * dimension, (node + 1) * dimension));
+			}
+
+			lock.writeLock().lock();
+			try {
+				if (index != source) {
+					// 重建期间向量库被清空
+					return;
+				}
+				int[] added = IntStream.range(total, index.size()).filter(node -> !deleted[node]).toArray();
+				for (int node : added) {
+					rebuilt.add(vector(node));
+				}
+				int size = rebuilt.size();
+				String[] newIds = new String[Math.max(size, 16)];
+				TextSegment[] newSegments = new TextSegment[newIds.length];
+				boolean[] newDeleted = new boolean[newIds.length];
+				nodes.clear();
+				live = 0;
+				for (int node = 0; node < size; node++) {
+					int old = node < kept.length ? kept[node] : added[node - kept.length];
+					newIds[node] = ids[old];
+					newSegments[node] = segments[old];
+					newDeleted[node] = deleted[old];
+					if (!deleted[old]) {
+						nodes.put(ids[old], node);
+						live++;
+					}
+				}
+				log.info("整理本地向量库：{}，回收记录数：{}", file, index.size() - size);
+				index = rebuilt;
+				ids = newIds;
+				segments = newSegments;
+				deleted = newDeleted;
+				dirty = true;
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+		finally {
+			compactLock.unlock();
+		}
+		flush();
+	}
+
+	private NodeHeap exactSearch(float[] query, int k, IntPredicate accept) {
+		NodeHeap results = NodeHeap.min(k + 1);
+		for (int node = 0; node < index.size(); node++) {
+			if (!accept.test(node)) {
+				continue;
+			}
+			float score = index.similarity(node, query);
+			if (results.size() < k || score > results.topScore()) {
+				results.push(node, score);
+				if (results.size() > k) {
+					results.pop();
+				}
+			}
+		}
+		return results;
+	}
+
+	private float[] vector(int node) {
+		int base = node * dimension;
+		return Arrays.copyOfRange(index.vectors(), base, base + dimension);
+	}
+
+	private void markDeleted(int node) {
+		if (!deleted[node]) {
+			deleted[node] = true;
+			live--;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= ids.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+		ids = Arrays.copyOf(ids, newCapacity);
+		segments = Arrays.copyOf(segments, newCapacity);
+		deleted = Arrays.copyOf(deleted, newCapacity);
+	}
+
+	@Override
+	public void flush() {
+		if (!dirty) {
+			return;
+		}
+		flushLock.lock();
+		lock.readLock().lock();
+		try {
+			dirty = false;
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				index.write(out);
+				for (int node = 0; node < index.size(); node++) {
+					SegmentCodec.writeString(out, ids[node]);
+					out.writeBoolean(deleted[node]);
+					TextSegment segment = segments[node];
+					out.writeBoolean(segment != null);
+					if (segment != null) {
+						SegmentCodec.writeString(out, segment.text());
+						SegmentCodec.writeMetadata(out, segment.metadata());
+					}
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			dirty = true;
+			log.error("本地向量库写入磁盘失败：{}", file, e);
+		}
+		finally {
+			lock.readLock().unlock();
+			flushLock.unlock();
+		}
+	}
+
+	private void load() {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("文件格式不正确");
+			}
+			HnswIndex loaded = HnswIndex.read(in, m, efConstruction);
+			if (loaded.dimension() != dimension) {
+				throw new IOException("向量维度不匹配，文件为 " + loaded.dimension() + "，配置为 " + dimension);
+			}
+			int size = loaded.size();
+			ensureCapacity(size);
+			for (int node = 0; node < size; node++) {
+				ids[node] = SegmentCodec.readString(in);
+				deleted[node] = in.readBoolean();
+				if (in.readBoolean()) {
+					segments[node] = TextSegment.from(SegmentCodec.readString(in), SegmentCodec.readMetadata(in));
+				}
+				if (!deleted[node]) {
+					nodes.put(ids[node], node);
+					live++;
+				}
+			}
+			index = loaded;
+			log.info("加载本地向量库：{}，向量数量：{}", file, live);
+		}
+		catch (IOException e) {
+			throw new ServiceException("本地向量库加载失败：" + file + "，" + e.getMessage());
+		}
+	}
+
+}
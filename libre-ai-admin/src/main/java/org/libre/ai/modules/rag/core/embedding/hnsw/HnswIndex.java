@@ -0,0 +1,346 @@
+package org.libre.ai.modules.rag.core.embedding.hnsw;
+
+import org.libre.ai.modules.rag.core.embedding.NodeHeap;
+import org.libre.ai.modules.rag.core.embedding.VectorMath;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW 图索引
+ *
+ * 向量按节点顺序保存在一个连续的 float[] 中（已归一化，相似度为点积），邻接表为 int[]，首元素为邻居数量。 本类不是线程安全的，由调用方加锁。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+final class HnswIndex {
+
+	private final int dimension;
+
+	private final int m;
+
+	private final int maxM0;
+
+	private final int efConstruction;
+
+	private final double levelMultiplier;
+
+	private final SplittableRandom random = new SplittableRandom(42);
+
+	private float[] vectors;
+
+	private int[] levels;
+
+	private int[][][] links;
+
+	private int size;
+
+	private int entryPoint = -1;
+
+	private int maxLevel = -1;
+
+	HnswIndex(int dimension, int m, int efConstruction) {
+		this.dimension = dimension;
+		this.m = m;
+		this.maxM0 = m * 2;
+		this.efConstruction = Math.max(efConstruction, m);
+		this.levelMultiplier = 1 / Math.log(Math.max(m, 2));
+		this.vectors = new float[dimension * 16];
+		this.levels = new int[16];
+		this.links = new int[16][][];
+	}
+
+	int dimension() {
+		return dimension;
+	}
+
+	int size() {
+		return size;
+	}
+
+	float[] vectors() {
+		return vectors;
+	}
+
+	/**
+	 * 插入一个已归一化的向量
+	 * @return 节点编号
+	 */
+	int add(float[] vector) {
+		int node = size;
+		ensureCapacity(node + 1);
+		System.arraycopy(vector, 0, vectors, node * dimension, dimension);
+		int level = randomLevel();
+		levels[node] = level;
+		links[node] = new int[level + 1][];
+		for (int l = 0; l <= level; l++) {
+			links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+		}
+		size++;
+
+		if (entryPoint < 0) {
+			entryPoint = node;
+			maxLevel = level;
+			return node;
+		}
+
+		int ep = entryPoint;
+		for (int l = maxLevel; l > level; l--) {
+			ep = greedy(vector, ep, l);
+		}
+		BitSet visited = new BitSet(size);
+		for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+			visited.clear();
+			NodeHeap candidates = searchLayer(vector, ep, efConstruction, l, visited, null);
+			int[] selected = selectNeighbors(vector, candidates, l == 0 ? maxM0 : m);
+			for (int neighbor : selected) {
+				connect(node, neighbor, l);
+				connect(neighbor, node, l);
+			}
+			if (selected.length > 0) {
+				ep = selected[0];
+			}
+		}
+		if (level > maxLevel) {
+			maxLevel = level;
+			entryPoint = node;
+		}
+		return node;
+	}
+
+	/**
+	 * 搜索与 query 最相似的节点
+	 * @param accept 结果过滤条件（已删除、元数据不匹配的节点仍参与图遍历，但不进入结果），可为 null
+	 * @return 按相似度从低到高排列的结果堆
+	 */
+	NodeHeap search(float[] query, int ef, IntPredicate accept) {
+		if (entryPoint < 0) {
+			return NodeHeap.min(0);
+		}
+		int ep = entryPoint;
+		for (int l = maxLevel; l > 0; l--) {
+			ep = greedy(query, ep, l);
+		}
+		return searchLayer(query, ep, ef, 0, new BitSet(size), accept);
+	}
+
+	float similarity(int node, float[] query) {
+		return VectorMath.dot(vectors, node * dimension, query, 0, dimension);
+	}
+
+	private float similarity(int a, int b) {
+		return VectorMath.dot(vectors, a * dimension, vectors, b * dimension, dimension);
+	}
+
+	private int greedy(float[] query, int ep, int level) {
+		float best = similarity(ep, query);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			int[] neighbors = links[ep][level];
+			for (int i = 1; i <= neighbors[0]; i++) {
+				float score = similarity(neighbors[i], query);
+				if (score > best) {
+					best = score;
+					ep = neighbors[i];
+					changed = true;
+				}
+			}
+		}
+		return ep;
+	}
+
+	private NodeHeap searchLayer(float[] query, int ep, int ef, int level, BitSet visited, IntPredicate accept) {
+		NodeHeap candidates = NodeHeap.max(ef * 2);
+		NodeHeap results = NodeHeap.min(ef + 1);
+		float epScore = similarity(ep, query);
+		visited.set(ep);
+		candidates.push(ep, epScore);
+		if (accept == null || accept.test(ep)) {
+			results.push(ep, epScore);
+		}
+
+		while (!candidates.isEmpty()) {
+			float score = candidates.topScore();
+			if (results.size() >= ef && score < results.topScore()) {
+				break;
+			}
+			int current = candidates.pop();
+			int[] neighbors = links[current][level];
+			for (int i = 1; i <= neighbors[0]; i++) {
+				int neighbor = neighbors[i];
+				if (visited.get(neighbor)) {
+					continue;
+				}
+				visited.set(neighbor);
+				float neighborScore = similarity(neighbor, query);
+				if (results.size() < ef || neighborScore > results.topScore()) {
+					candidates.push(neighbor, neighborScore);
+					if (accept == null || accept.test(neighbor)) {
+						results.push(neighbor, neighborScore);
+						if (results.size() > ef) {
+							results.pop();
+						}
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * 启发式选择邻居：优先保留与 query 的相似度高于与已选邻居相似度的候选，使邻居分布在不同方向
+	 */
+	private int[] selectNeighbors(float[] query, NodeHeap candidates, int max) {
+		int count = candidates.size();
+		int[] nodes = new int[count];
+		float[] scores = new float[count];
+		// 最小堆依次弹出，倒序填充为相似度从高到低
+		for (int i = count - 1; i >= 0; i--) {
+			scores[i] = candidates.topScore();
+			nodes[i] = candidates.pop();
+		}
+		return select(nodes, scores, count, max);
+	}
+
+	private int[] select(int[] nodes, float[] scores, int count, int max) {
+		int[] selected = new int[Math.min(count, max)];
+		int selectedCount = 0;
+		boolean[] pruned = new boolean[count];
+		for (int i = 0; i < count && selectedCount < max; i++) {
+			boolean keep = true;
+			for (int j = 0; j < selectedCount; j++) {
+				if (similarity(nodes[i], selected[j]) > scores[i]) {
+					keep = false;
+					break;
+				}
+			}
+			if (keep) {
+				selected[selectedCount++] = nodes[i];
+			}
+			else {
+				pruned[i] = true;
+			}
+		}
+		// 邻居不足时用被剪掉的候选补齐，保持连通性
+		for (int i = 0; i < count && selectedCount < max; i++) {
+			if (pruned[i]) {
+				selected[selectedCount++] = nodes[i];
+			}
+		}
+		return selectedCount == selected.length ? selected : Arrays.copyOf(selected, selectedCount);
+	}
+
+	private void connect(int node, int neighbor, int level) {
+		int[] list = links[node][level];
+		int count = list[0];
+		for (int i = 1; i <= count; i++) {
+			if (list[i] == neighbor) {
+				return;
+			}
+		}
+		int max = list.length - 1;
+		if (count < max) {
+			list[count + 1] = neighbor;
+			list[0] = count + 1;
+			return;
+		}
+
+		// 邻居已满，按启发式在原有邻居和新邻居中重新选择
+		int[] nodes = new int[count + 1];
+		float[] scores = new float[count + 1];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = list[i + 1];
+		}
+		nodes[count] = neighbor;
+		Integer[] order = new Integer[count + 1];
+		for (int i = 0; i <= count; i++) {
+			scores[i] = similarity(node, nodes[i]);
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+		int[] sortedNodes = new int[count + 1];
+		float[] sortedScores = new float[count + 1];
+		for (int i = 0; i <= count; i++) {
+			sortedNodes[i] = nodes[order[i]];
+			sortedScores[i] = scores[order[i]];
+		}
+		int[] selected = select(sortedNodes, sortedScores, count + 1, max);
+		list[0] = selected.length;
+		System.arraycopy(selected, 0, list, 1, selected.length);
+	}
+
+	private int randomLevel() {
+		double r = random.nextDouble();
+		return (int) (-Math.log(Math.max(r, Double.MIN_NORMAL)) * levelMultiplier);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= levels.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, levels.length + (levels.length >> 1));
+		vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+		levels = Arrays.copyOf(levels, newCapacity);
+		links = Arrays.copyOf(links, newCapacity);
+	}
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(dimension);
+		out.writeInt(m);
+		out.writeInt(size);
+		out.writeInt(entryPoint);
+		out.writeInt(maxLevel);
+		for (int node = 0; node < size; node++) {
+			int base = node * dimension;
+			for (int i = 0; i < dimension; i++) {
+				out.writeFloat(vectors[base + i]);
+			}
+			out.writeByte(levels[node]);
+			for (int l = 0; l <= levels[node]; l++) {
+				int[] list = links[node][l];
+				out.writeShort(list[0]);
+				for (int i = 1; i <= list[0]; i++) {
+					out.writeInt(list[i]);
+				}
+			}
+		}
+	}
+
+	static HnswIndex read(DataInputStream in, int m, int efConstruction) throws IOException {
+		int dimension = in.readInt();
+		int storedM = in.readInt();
+		HnswIndex index = new HnswIndex(dimension, storedM > 0 ? storedM : m, efConstruction);
+		int size = in.readInt();
+		index.ensureCapacity(size);
+		index.entryPoint = in.readInt();
+		index.maxLevel = in.readInt();
+		for (int node = 0; node < size; node++) {
+			int base = node * dimension;
+			for (int i = 0; i < dimension; i++) {
+				index.vectors[base + i] = in.readFloat();
+			}
+			int level = in.readByte();
+			index.levels[node] = level;
+			index.links[node] = new int[level + 1][];
+			for (int l = 0; l <= level; l++) {
+				int[] list = new int[(l == 0 ? index.maxM0 : index.m) + 1];
+				int count = in.readShort();
+				list[0] = count;
+				for (int i = 1; i <= count; i++) {
+					list[i] = in.readInt();
+				}
+				index.links[node][l] = list;
+			}
+		}
+		index.size = size;
+		return index;
+	}
+
+}
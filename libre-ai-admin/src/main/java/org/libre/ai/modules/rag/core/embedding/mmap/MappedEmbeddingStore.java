@@ -0,0 +1,522 @@
+package org.libre.ai.modules.rag.core.embedding.mmap;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.embedding.KnowledgeFilters;
+import org.libre.ai.modules.rag.core.embedding.LocalEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.SegmentCodec;
+import org.libre.ai.modules.rag.core.embedding.VectorMath;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 基于内存映射文件的向量库，用于超出堆内存的知识库
+ *
+ * 向量和文本写入只追加的分段文件（{@link MappedSegment}），启动时只映射文件、读取文件头，不反序列化数据，堆内存占用不随数据量增长。
+ * 检索对所有分段做精确扫描，只有能进入前 N 的记录才会解码元数据并检查过滤条件；按知识库ID过滤时先比较记录中的知识库ID hash。
+ * 写入已存在的ID时先给旧记录写删除标记。删除只写删除标记，已写满的分段中删除比例超过阈值后由 {@link #compact()} 复制存活记录到新分段，
+ * 删除旧文件并解除映射。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class MappedEmbeddingStore implements LocalEmbeddingStore {
+
+	private final Path dir;
+
+	private final int dimension;
+
+	private final int segmentRecords;
+
+	private final long segmentBytes;
+
+	private final double compactRatio;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final ReentrantLock compactLock = new ReentrantLock();
+
+	private final List<MappedSegment> segments = new ArrayList<>();
+
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	private MappedSegment active;
+
+	public MappedEmbeddingStore(Path dir, int dimension, int segmentRecords, long segmentBytes, double compactRatio) {
+		this.dir = dir;
+		this.dimension = dimension;
+		this.segmentRecords = Math.min(segmentRecords,
+				(Integer.MAX_VALUE - 64) / MappedSegment.recordSize(dimension));
+		this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE);
+		this.compactRatio = compactRatio;
+		open();
+	}
+
+	@Override
+	public String add(Embedding embedding) {
+		String id = UUID.randomUUID().toString();
+		add(id, embedding);
+		return id;
+	}
+
+	@Override
+	public void add(String id, Embedding embedding) {
+		addAll(List.of(id), List.of(embedding), null);
+	}
+
+	@Override
+	public String add(Embedding embedding, TextSegment textSegment) {
+		String id = UUID.randomUUID().toString();
+		addAll(List.of(id), List.of(embedding), List.of(textSegment));
+		return id;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings) {
+		List<String> ids = generateIds(embeddings.size());
+		append(ids, embeddings, null, false);
+		return ids;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+		List<String> ids = generateIds(embeddings.size());
+		append(ids, embeddings, embedded, false);
+		return ids;
+	}
+
+	/**
+	 * 按ID覆盖写入：ID已存在时先给旧记录写删除标记，再追加新记录
+	 */
+	@Override
+	public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+		append(ids, embeddings, embedded, true);
+	}
+
+	/**
+	 * 追加写入，upsert 为 false 时 ID 是新生成的，不需要检查是否已存在
+	 */
+	private void append(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded, boolean upsert) {
+		if (embedded != null && embedded.size() != embeddings.size()) {
+			throw new IllegalArgumentException("embeddings 与 embedded 数量不一致");
+		}
+		// 归一化和编码在锁外完成
+		List<float[]> vectors = new ArrayList<>(embeddings.size());
+		List<byte[]> metas = new ArrayList<>(embeddings.size());
+		for (int i = 0; i < embeddings.size(); i++) {
+			Embedding embedding = embeddings.get(i);
+			if (embedding.dimension() != dimension) {
+				throw new ServiceException("向量维度不匹配，期望 " + dimension + "，实际 " + embedding.dimension());
+			}
+			vectors.add(VectorMath.normalize(embedding.vector()));
+			byte[] meta = encode(ids.get(i), embedded == null ? null : embedded.get(i));
+			if (meta.length > segmentBytes) {
+				throw new ServiceException("文本过长，超出分段文件容量：" + meta.length);
+			}
+			metas.add(meta);
+		}
+
+		lock.writeLock().lock();
+		try {
+			if (upsert) {
+				delete(new HashSet<>(ids));
+			}
+			Map<String, Location> appended = upsert ? new HashMap<>() : null;
+			for (int i = 0; i < vectors.size(); i++) {
+				byte[] meta = metas.get(i);
+				if (active == null || !active.hasRoom(meta.length)) {
+					active = MappedSegment.create(dir, nextId.incrementAndGet(), dimension, segmentRecords,
+							segmentBytes, 0, false);
+					segments.add(active);
+				}
+				TextSegment segment = embedded == null ? null : embedded.get(i);
+				int ordinal = active.append(hash(ids.get(i)), tagHash(segment), vectors.get(i), meta);
+				if (appended != null) {
+					// 同一批中重复的ID以最后一条为准
+					Location previous = appended.put(ids.get(i), new Location(active, ordinal));
+					if (previous != null) {
+						previous.segment().delete(previous.ordinal());
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new ServiceException("本地向量库写入失败：" + e.getMessage());
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(id));
+	}
+
+	@Override
+	public void removeAll(Collection<String> ids) {
+		Set<String> targets = new HashSet<>(ids);
+		lock.writeLock().lock();
+		try {
+			delete(targets);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		long[] tags = tagHashes(filter);
+		lock.writeLock().lock();
+		try {
+			for (MappedSegment segment : segments) {
+				for (int ordinal = 0; ordinal < segment.count(); ordinal++) {
+					if (segment.isDeleted(ordinal) || !allowed(tags, segment.tagHash(ordinal))) {
+						continue;
+					}
+					TextSegment text = segment.read(ordinal).segment();
+					if (text != null && filter.test(text.metadata())) {
+						segment.delete(ordinal);
+					}
+				}
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 等待正在进行的整理结束后再删除分段，整理复制记录时不持有读写锁
+	 */
+	@Override
+	public void removeAll() {
+		compactLock.lock();
+		lock.writeLock().lock();
+		try {
+			for (MappedSegment segment : segments) {
+				segment.deleteFiles();
+				segment.unmap();
+			}
+			segments.clear();
+			active = null;
+		}
+		catch (IOException e) {
+			throw new ServiceException("本地向量库清空失败：" + e.getMessage());
+		}
+		finally {
+			lock.writeLock().unlock();
+			compactLock.unlock();
+		}
+	}
+
+	@Override
+	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+		Filter filter = request.filter();
+		long[] tags = tagHashes(filter);
+		int maxResults = request.maxResults();
+		// 相关性分数低于 minScore 的记录可以只比较余弦值跳过
+		float minCosine = (float) (request.minScore() * 2 - 1);
+		PriorityQueue<Candidate> top = new PriorityQueue<>(maxResults + 1,
+				Comparator.comparingDouble(Candidate::score));
+
+		lock.readLock().lock();
+		try {
+			for (MappedSegment segment : segments) {
+				for (int ordinal = 0; ordinal < segment.count(); ordinal++) {
+					if (segment.isDeleted(ordinal) || !allowed(tags, segment.tagHash(ordinal))) {
+						continue;
+					}
+					float score = segment.similarity(ordinal, query);
+					if (score < minCosine || top.size() == maxResults && score <= top.peek().score()) {
+						continue;
+					}
+					MappedSegment.Record record = segment.read(ordinal);
+					if (filter != null && (record.segment() == null || !filter.test(record.segment().metadata()))) {
+						continue;
+					}
+					top.add(new Candidate(segment, ordinal, score, record));
+					if (top.size() > maxResults) {
+						top.poll();
+					}
+				}
+			}
+
+			List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+			while (!top.isEmpty()) {
+				Candidate c = top.poll();
+				matches.add(new EmbeddingMatch<>(VectorMath.relevance(c.score()), c.record().id(),
+						Embedding.from(c.segment().vector(c.ordinal())), c.record().segment()));
+			}
+			return new EmbeddingSearchResult<>(matches.reversed());
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean matches(Path location, int dimension) {
+		return dir.equals(location) && this.dimension == dimension;
+	}
+
+	@Override
+	public void flush() {
+		lock.readLock().lock();
+		try {
+			segments.forEach(MappedSegment::force);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 写盘并解除全部分段的映射。检索和写入只在持有读写锁时访问映射，等待它们结束后解除映射是安全的
+	 */
+	@Override
+	public void close() {
+		compactLock.lock();
+		lock.writeLock().lock();
+		try {
+			for (MappedSegment segment : segments) {
+				segment.force();
+				segment.unmap();
+			}
+			segments.clear();
+			active = null;
+		}
+		finally {
+			lock.writeLock().unlock();
+			compactLock.unlock();
+		}
+	}
+
+	/**
+	 * 整理已写满且删除比例超过阈值的分段
+	 *
+	 * 复制存活记录时不持有写锁，检索和写入照常进行；复制完成后在写锁内补上复制期间新增的删除标记，再替换分段。
+	 */
+	@Override
+	public void compact() {
+		if (!compactLock.tryLock()) {
+			return;
+		}
+		try {
+			List<MappedSegment> candidates = new ArrayList<>();
+			lock.readLock().lock();
+			try {
+				for (MappedSegment segment : segments) {
+					if (segment != active && segment.deletedRatio() >= compactRatio) {
+						candidates.add(segment);
+					}
+				}
+			}
+			finally {
+				lock.readLock().unlock();
+			}
+			for (MappedSegment segment : candidates) {
+				compact(segment);
+			}
+		}
+		catch (IOException e) {
+			log.error("本地向量库整理失败：{}", dir, e);
+		}
+		finally {
+			compactLock.unlock();
+		}
+	}
+
+	private void compact(MappedSegment source) throws IOException {
+		int count = source.count();
+		int[] mapping = new int[count];
+		MappedSegment target = null;
+		if (source.live() > 0) {
+			target = MappedSegment.create(dir, nextId.incrementAndGet(), dimension, source.capacity(),
+					source.datCapacity(), source.id(), true);
+			for (int ordinal = 0; ordinal < count; ordinal++) {
+				mapping[ordinal] = source.isDeleted(ordinal) ? -1 : target.copy(source, ordinal);
+			}
+			target.commit();
+		}
+
+		lock.writeLock().lock();
+		try {
+			int index = segments.indexOf(source);
+			if (index < 0) {
+				// 整理期间向量库被清空
+				if (target != null) {
+					target.deleteFiles();
+					target.unmap();
+				}
+				return;
+			}
+			if (target == null) {
+				segments.remove(index);
+			}
+			else {
+				for (int ordinal = 0; ordinal < count; ordinal++) {
+					if (mapping[ordinal] >= 0 && source.isDeleted(ordinal)) {
+						target.delete(mapping[ordinal]);
+					}
+				}
+				segments.set(index, target);
+			}
+			source.deleteFiles();
+			// 检索只在持有读锁时访问映射，此时已没有线程使用旧分段
+			source.unmap();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		log.info("整理本地向量库分段：{}/{}，回收记录数：{}", dir, MappedSegment.name(source.id()),
+				count - (target == null ? 0 : target.live()));
+	}
+
+	/**
+	 * 映射已有分段。整理过程中异常退出时，新旧分段可能同时存在，以新分段为准；临时文件和没有 .vec 文件的 .dat 文件
+	 * （提交分段时在两次改名之间退出）直接删除。
+	 */
+	private void open() {
+		try {
+			Files.createDirectories(dir);
+			List<MappedSegment> opened = new ArrayList<>();
+			try (Stream<Path> files = Files.list(dir)) {
+				for (Path file : files.sorted().toList()) {
+					String name = file.getFileName().toString();
+					if (name.endsWith(MappedSegment.TMP)) {
+						Files.delete(file);
+					}
+					else if (name.endsWith(MappedSegment.VEC)) {
+						opened.add(MappedSegment.open(file));
+					}
+					else if (name.endsWith(MappedSegment.DAT) && !Files.exists(file.resolveSibling(
+							name.substring(0, name.length() - MappedSegment.DAT.length()) + MappedSegment.VEC))) {
+						log.warn("删除未提交的分段文件：{}", file);
+						Files.delete(file);
+					}
+				}
+			}
+			Set<Integer> replaced = new HashSet<>();
+			opened.forEach(segment -> replaced.add(segment.replaces()));
+			for (MappedSegment segment : opened) {
+				if (replaced.contains(segment.id())) {
+					segment.deleteFiles();
+					segment.unmap();
+					continue;
+				}
+				if (segment.dimension() != dimension) {
+					throw new IOException("向量维度不匹配，文件为 " + segment.dimension() + "，配置为 " + dimension);
+				}
+				segments.add(segment);
+				nextId.accumulateAndGet(segment.id(), Math::max);
+			}
+			// 最后一个分段继续追加，整理产生的分段容量可能与配置不同，也可以继续使用
+			active = segments.isEmpty() ? null : segments.getLast();
+			long live = segments.stream().mapToLong(MappedSegment::live).sum();
+			log.info("加载本地向量库：{}，分段数量：{}，向量数量：{}", dir, segments.size(), live);
+		}
+		catch (IOException e) {
+			throw new ServiceException("本地向量库加载失败：" + dir + "，" + e.getMessage());
+		}
+	}
+
+	/**
+	 * 给ID在目标集合中的存活记录写删除标记，调用方需持有写锁
+	 */
+	private void delete(Set<String> targets) {
+		Set<Long> hashes = new HashSet<>();
+		targets.forEach(id -> hashes.add(hash(id)));
+		for (MappedSegment segment : segments) {
+			for (int ordinal = 0; ordinal < segment.count(); ordinal++) {
+				if (!segment.isDeleted(ordinal) && hashes.contains(segment.idHash(ordinal))
+						&& targets.contains(segment.read(ordinal).id())) {
+					segment.delete(ordinal);
+				}
+			}
+		}
+	}
+
+	private static byte[] encode(String id, TextSegment segment) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			SegmentCodec.writeString(out, id);
+			out.writeBoolean(segment != null);
+			if (segment != null) {
+				SegmentCodec.writeString(out, segment.text());
+				SegmentCodec.writeMetadata(out, segment.metadata());
+			}
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long hash(String value) {
+		return MurmurHash.hash64(value);
+	}
+
+	private static long tagHash(TextSegment segment) {
+		if (segment == null || !segment.metadata().containsKey(KNOWLEDGE)) {
+			return 0;
+		}
+		return hash(String.valueOf(segment.metadata().toMap().get(KNOWLEDGE)));
+	}
+
+	/**
+	 * 过滤条件限定的知识库ID的 hash（已排序），用于在解码元数据前排除其他知识库的记录，不限定时返回 null
+	 */
+	private static long[] tagHashes(Filter filter) {
+		Set<String> knowledgeIds = KnowledgeFilters.knowledgeIds(filter);
+		if (knowledgeIds == null) {
+			return null;
+		}
+		long[] hashes = knowledgeIds.stream().mapToLong(MappedEmbeddingStore::hash).toArray();
+		Arrays.sort(hashes);
+		return hashes;
+	}
+
+	private static boolean allowed(long[] tags, long tagHash) {
+		return tags == null || Arrays.binarySearch(tags, tagHash) >= 0;
+	}
+
+	private record Candidate(MappedSegment segment, int ordinal, float score, MappedSegment.Record record) {
+	}
+
+	private record Location(MappedSegment segment, int ordinal) {
+	}
+
+}
@@ -0,0 +1,370 @@
+package org.libre.ai.modules.rag.core.embedding.mmap;
+
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.embedding.SegmentCodec;
+import org.libre.ai.modules.rag.core.embedding.VectorMath;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 向量库的一个分段，由两个内存映射文件组成，只追加写入
+ *
+ * <pre>
+ * .vec  文件头 | 记录 0 | 记录 1 | ...
+ *       记录 = 删除标记(1) 填充(3) 元数据长度(4) 元数据偏移(8) ID hash(8) 知识库ID hash(8) 向量(dimension * 4)
+ * .dat  ID、文本、元数据的编码，按记录中的偏移读取
+ * </pre>
+ *
+ * 文件按容量一次映射，未写入的部分在磁盘上是稀疏的。读取都使用绝对位置，可以被多个线程并发调用；写入由调用方加写锁。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+class MappedSegment {
+
+	static final String VEC = ".vec";
+
+	static final String DAT = ".dat";
+
+	static final String TMP = ".tmp";
+
+	private static final int MAGIC = 0x4C564543;
+
+	private static final int VERSION = 1;
+
+	private static final int H_DIMENSION = 8;
+
+	private static final int H_COUNT = 12;
+
+	private static final int H_DAT_END = 16;
+
+	private static final int H_REPLACES = 24;
+
+	private static final int H_DELETED = 28;
+
+	private static final int HEADER = 32;
+
+	private static final int R_META_LENGTH = 4;
+
+	private static final int R_META_OFFSET = 8;
+
+	private static final int R_ID_HASH = 16;
+
+	private static final int R_TAG_HASH = 24;
+
+	private static final int R_VECTOR = 32;
+
+	/**
+	 * sun.misc.Unsafe#invokeCleaner，不可用时映射在缓冲区被回收时释放
+	 */
+	private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+	private final int id;
+
+	private final int dimension;
+
+	private final int recordSize;
+
+	private final int capacity;
+
+	private final long datCapacity;
+
+	private final MappedByteBuffer vec;
+
+	private final MappedByteBuffer dat;
+
+	private Path vecPath;
+
+	private Path datPath;
+
+	private int count;
+
+	private long datEnd;
+
+	private int deleted;
+
+	private volatile boolean dirty;
+
+	private MappedSegment(int id, Path vecPath, Path datPath, int dimension, int capacity, long datCapacity)
+			throws IOException {
+		this.id = id;
+		this.vecPath = vecPath;
+		this.datPath = datPath;
+		this.dimension = dimension;
+		this.recordSize = recordSize(dimension);
+		this.capacity = capacity;
+		this.datCapacity = datCapacity;
+		this.vec = map(vecPath, HEADER + (long) capacity * recordSize);
+		this.dat = map(datPath, datCapacity);
+	}
+
+	static int recordSize(int dimension) {
+		return R_VECTOR + dimension * Float.BYTES;
+	}
+
+	/**
+	 * 创建新分段，tmp 为 true 时写入临时文件，完成后通过 {@link #commit()} 改为正式文件名
+	 */
+	static MappedSegment create(Path dir, int id, int dimension, int capacity, long datCapacity, int replaces,
+			boolean tmp) throws IOException {
+		String suffix = tmp ? TMP : "";
+		MappedSegment segment = new MappedSegment(id, dir.resolve(name(id) + VEC + suffix),
+				dir.resolve(name(id) + DAT + suffix), dimension, capacity, datCapacity);
+		segment.vec.putInt(0, MAGIC);
+		segment.vec.putInt(4, VERSION);
+		segment.vec.putInt(H_DIMENSION, dimension);
+		segment.vec.putInt(H_REPLACES, replaces);
+		segment.writeHeader();
+		return segment;
+	}
+
+	static MappedSegment open(Path vecPath) throws IOException {
+		String file = vecPath.getFileName().toString();
+		int id = Integer.parseInt(file.substring(0, file.length() - VEC.length()));
+		Path datPath = vecPath.resolveSibling(name(id) + DAT);
+		int dimension;
+		try (FileChannel channel = FileChannel.open(vecPath, StandardOpenOption.READ)) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException("分段文件格式不正确：" + vecPath);
+			}
+			dimension = header.getInt(H_DIMENSION);
+		}
+		int capacity = (int) ((Files.size(vecPath) - HEADER) / recordSize(dimension));
+		MappedSegment segment = new MappedSegment(id, vecPath, datPath, dimension, capacity, Files.size(datPath));
+		segment.count = segment.vec.getInt(H_COUNT);
+		segment.datEnd = segment.vec.getLong(H_DAT_END);
+		segment.deleted = segment.vec.getInt(H_DELETED);
+		return segment;
+	}
+
+	private static MethodHandle invokeCleaner() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return MethodHandles.lookup()
+				.findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+				.bindTo(field.get(null));
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			log.warn("无法立即解除分段文件映射，将在缓冲区回收时释放：{}", e.getMessage());
+			return null;
+		}
+	}
+
+	static String name(int id) {
+		return String.format("%08d", id);
+	}
+
+	private static MappedByteBuffer map(Path path, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return buffer;
+		}
+	}
+
+	boolean hasRoom(int metaLength) {
+		return count < capacity && datEnd + metaLength <= datCapacity;
+	}
+
+	int append(long idHash, long tagHash, float[] vector, byte[] meta) {
+		dat.put((int) datEnd, meta);
+		int base = offset(count);
+		vec.put(base, (byte) 0);
+		vec.putInt(base + R_META_LENGTH, meta.length);
+		vec.putLong(base + R_META_OFFSET, datEnd);
+		vec.putLong(base + R_ID_HASH, idHash);
+		vec.putLong(base + R_TAG_HASH, tagHash);
+		for (int i = 0; i < dimension; i++) {
+			vec.putFloat(base + R_VECTOR + i * Float.BYTES, vector[i]);
+		}
+		datEnd += meta.length;
+		// 记录写完后再更新文件头中的数量，异常退出时最多丢失未写完的记录
+		count++;
+		writeHeader();
+		return count - 1;
+	}
+
+	/**
+	 * 从另一个分段复制一条记录（整理时使用），返回新的记录编号
+	 */
+	int copy(MappedSegment source, int ordinal) {
+		int from = source.offset(ordinal);
+		int length = source.vec.getInt(from + R_META_LENGTH);
+		byte[] meta = new byte[length];
+		source.dat.get((int) source.vec.getLong(from + R_META_OFFSET), meta);
+		float[] vector = new float[dimension];
+		for (int i = 0; i < dimension; i++) {
+			vector[i] = source.vec.getFloat(from + R_VECTOR + i * Float.BYTES);
+		}
+		return append(source.idHash(ordinal), source.tagHash(ordinal), vector, meta);
+	}
+
+	boolean isDeleted(int ordinal) {
+		return vec.get(offset(ordinal)) != 0;
+	}
+
+	boolean delete(int ordinal) {
+		int base = offset(ordinal);
+		if (vec.get(base) != 0) {
+			return false;
+		}
+		vec.put(base, (byte) 1);
+		deleted++;
+		writeHeader();
+		return true;
+	}
+
+	long idHash(int ordinal) {
+		return vec.getLong(offset(ordinal) + R_ID_HASH);
+	}
+
+	long tagHash(int ordinal) {
+		return vec.getLong(offset(ordinal) + R_TAG_HASH);
+	}
+
+	float similarity(int ordinal, float[] query) {
+		return VectorMath.dot(vec, offset(ordinal) + R_VECTOR, query);
+	}
+
+	float[] vector(int ordinal) {
+		int base = offset(ordinal) + R_VECTOR;
+		float[] vector = new float[dimension];
+		for (int i = 0; i < dimension; i++) {
+			vector[i] = vec.getFloat(base + i * Float.BYTES);
+		}
+		return vector;
+	}
+
+	Record read(int ordinal) {
+		int base = offset(ordinal);
+		byte[] meta = new byte[vec.getInt(base + R_META_LENGTH)];
+		dat.get((int) vec.getLong(base + R_META_OFFSET), meta);
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(meta));
+			String recordId = SegmentCodec.readString(in);
+			TextSegment segment = null;
+			if (in.readBoolean()) {
+				segment = TextSegment.from(SegmentCodec.readString(in), SegmentCodec.readMetadata(in));
+			}
+			return new Record(recordId, segment);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("分段记录解析失败：" + vecPath + "#" + ordinal, e);
+		}
+	}
+
+	/**
+	 * 将临时文件改为正式文件名。先改 .dat，.vec 改名是提交点：启动时只识别存在 .vec 的分段，
+	 * 两次改名之间退出时留下的 .dat 文件在加载时删除
+	 */
+	void commit() throws IOException {
+		force();
+		Path finalDat = datPath.resolveSibling(name(id) + DAT);
+		Path finalVec = vecPath.resolveSibling(name(id) + VEC);
+		Files.move(datPath, finalDat, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.move(vecPath, finalVec, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		datPath = finalDat;
+		vecPath = finalVec;
+	}
+
+	void force() {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		vec.force();
+		dat.force();
+	}
+
+	/**
+	 * 删除分段文件，映射由 {@link #unmap()} 释放
+	 */
+	void deleteFiles() throws IOException {
+		Files.deleteIfExists(vecPath);
+		Files.deleteIfExists(datPath);
+	}
+
+	/**
+	 * 立即解除映射，不等缓冲区被回收。之后再访问该分段会导致进程崩溃，调用方需保证已没有线程使用该分段
+	 */
+	void unmap() {
+		if (INVOKE_CLEANER == null) {
+			return;
+		}
+		try {
+			INVOKE_CLEANER.invokeExact((ByteBuffer) vec);
+			INVOKE_CLEANER.invokeExact((ByteBuffer) dat);
+		}
+		catch (Throwable e) {
+			log.warn("解除分段文件映射失败：{}", vecPath, e);
+		}
+	}
+
+	private void writeHeader() {
+		vec.putInt(H_COUNT, count);
+		vec.putLong(H_DAT_END, datEnd);
+		vec.putInt(H_DELETED, deleted);
+		dirty = true;
+	}
+
+	private int offset(int ordinal) {
+		return HEADER + ordinal * recordSize;
+	}
+
+	int id() {
+		return id;
+	}
+
+	int replaces() {
+		return vec.getInt(H_REPLACES);
+	}
+
+	int dimension() {
+		return dimension;
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	long datCapacity() {
+		return datCapacity;
+	}
+
+	int count() {
+		return count;
+	}
+
+	int live() {
+		return count - deleted;
+	}
+
+	double deletedRatio() {
+		return count == 0 ? 0 : (double) deleted / count;
+	}
+
+	record Record(String id, TextSegment segment) {
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.libre.ai.modules.rag.core.embedding.onnx;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内运行的 ONNX 向量模型
+ *
+ * 所有 embed / embedAll 调用的文本进入同一个有界队列，推理线程（数量与 CPU 核数相当）每次取出队列中已有的文本，最多 maxBatch 条，合并为一次批量推理。
+ * 并发的查询向量化因此自然合并成批次，空闲时单条查询也不必等待；文档入库的大批量文本被拆成多个批次在各推理线程上并行执行。队列满时调用方阻塞等待。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class LocalOnnxEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+	private final OnnxBiEncoder encoder;
+
+	private final BlockingQueue<Pending> queue;
+
+	private final int maxBatch;
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private final MeterRegistry meterRegistry;
+
+	private final List<Meter> meters = new ArrayList<>();
+
+	private final DistributionSummary batchSizes;
+
+	private final Timer inference;
+
+	private volatile boolean running = true;
+
+	public LocalOnnxEmbeddingModel(String name, OnnxBiEncoder encoder, int threads, int maxBatch, int queueCapacity,
+			MeterRegistry meterRegistry) {
+		this.encoder = encoder;
+		this.queue = new LinkedBlockingQueue<>(queueCapacity);
+		this.maxBatch = maxBatch;
+		this.meterRegistry = meterRegistry;
+
+		meters.add(Gauge.builder("langchat.embedding.onnx.queue", queue, BlockingQueue::size)
+			.description("等待推理的文本数量")
+			.tag("model", name)
+			.register(meterRegistry));
+		this.batchSizes = DistributionSummary.builder("langchat.embedding.onnx.batch")
+			.description("单次推理的文本数量")
+			.tag("model", name)
+			.publishPercentiles(0.5, 0.95)
+			.register(meterRegistry);
+		meters.add(batchSizes);
+		this.inference = Timer.builder("langchat.embedding.onnx.inference")
+			.description("单次批量推理耗时")
+			.tag("model", name)
+			.publishPercentiles(0.5, 0.95, 0.99)
+			.register(meterRegistry);
+		meters.add(inference);
+
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(this::work, "onnx-embed-" + name + "-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+	}
+
+	@Override
+	public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+		List<Pending> pending = new ArrayList<>(textSegments.size());
+		try {
+			for (TextSegment segment : textSegments) {
+				Pending item = new Pending(segment.text(), new CompletableFuture<>());
+				// 队列满时分段等待，期间模型被关闭则不再入队
+				while (!queue.offer(item, 200, TimeUnit.MILLISECONDS)) {
+					if (!running) {
+						break;
+					}
+				}
+				pending.add(item);
+				if (!running) {
+					// 与 close 并发：close 清空队列之后才入队的文本不会再被处理，由调用方自己结束
+					pending.forEach(queued -> queued.future().completeExceptionally(new ServiceException("向量模型已关闭")));
+					break;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pending.forEach(item -> item.future().cancel(false));
+			throw new ServiceException("向量化被中断");
+		}
+
+		List<Embedding> embeddings = new ArrayList<>(pending.size());
+		try {
+			for (Pending item : pending) {
+				embeddings.add(Embedding.from(item.future().join()));
+			}
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+		return Response.from(embeddings);
+	}
+
+	private void work() {
+		List<Pending> batch = new ArrayList<>(maxBatch);
+		while (running) {
+			try {
+				Pending first = queue.poll(200, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatch - 1);
+				run(batch);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void run(List<Pending> batch) {
+		List<Pending> live = batch.stream().filter(item -> !item.future().isDone()).toList();
+		if (live.isEmpty()) {
+			return;
+		}
+		batchSizes.record(live.size());
+		try {
+			float[][] vectors = inference.record(() -> encoder.encode(live.stream().map(Pending::text).toList()));
+			for (int i = 0; i < live.size(); i++) {
+				live.get(i).future().complete(vectors[i]);
+			}
+		}
+		catch (Throwable e) {
+			// 包括原生推理抛出的 Error，本批请求全部失败，工作线程继续处理后续请求
+			log.error("ONNX 向量模型推理失败，batch: {}", live.size(), e);
+			live.forEach(item -> item.future().completeExceptionally(e));
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		workers.forEach(Thread::interrupt);
+		for (Thread worker : workers) {
+			try {
+				worker.join(5000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		List<Pending> rest = new ArrayList<>();
+		queue.drainTo(rest);
+		rest.forEach(item -> item.future().completeExceptionally(new ServiceException("向量模型已关闭")));
+		meters.forEach(meterRegistry::remove);
+		encoder.close();
+	}
+
+	private record Pending(String text, CompletableFuture<float[]> future) {
+	}
+
+}
@@ -0,0 +1,141 @@
+package org.libre.ai.modules.rag.core.embedding.onnx;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import org.libre.ai.modules.rag.core.embedding.VectorMath;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 ONNX Runtime 的句向量编码器
+ *
+ * 一次推理编码一批文本：批内按最长文本补齐，模型输出 token 向量时按 attention mask 做平均池化（或取 [CLS]），模型直接输出句向量时原样使用，最后做 L2
+ * 归一化。会话只使用一个推理线程，并行度由调用方的线程数决定。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class OnnxBiEncoder implements AutoCloseable {
+
+	public enum Pooling {
+
+		MEAN, CLS,;
+
+	}
+
+	private final OrtEnvironment environment;
+
+	private final OrtSession session;
+
+	private final HuggingFaceTokenizer tokenizer;
+
+	private final boolean tokenTypeIds;
+
+	private final Pooling pooling;
+
+	public OnnxBiEncoder(Path modelPath, Path tokenizerPath, int maxLength, Pooling pooling) {
+		this.pooling = pooling;
+		try {
+			this.environment = OrtEnvironment.getEnvironment();
+			OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+			options.setIntraOpNumThreads(1);
+			this.session = environment.createSession(modelPath.toString(), options);
+			this.tokenTypeIds = session.getInputNames().contains("token_type_ids");
+			this.tokenizer = HuggingFaceTokenizer.builder()
+				.optTokenizerPath(tokenizerPath)
+				.optMaxLength(maxLength)
+				.optTruncation(true)
+				.optPadding(true)
+				.build();
+		}
+		catch (OrtException | IOException e) {
+			throw new ServiceException("加载向量模型失败：" + e.getMessage());
+		}
+	}
+
+	public float[][] encode(List<String> texts) {
+		Encoding[] encodings = tokenizer.batchEncode(texts);
+		long[][] ids = new long[encodings.length][];
+		long[][] mask = new long[encodings.length][];
+		long[][] types = new long[encodings.length][];
+		for (int i = 0; i < encodings.length; i++) {
+			ids[i] = encodings[i].getIds();
+			mask[i] = encodings[i].getAttentionMask();
+			types[i] = encodings[i].getTypeIds();
+		}
+
+		Map<String, OnnxTensor> inputs = new HashMap<>();
+		try {
+			inputs.put("input_ids", OnnxTensor.createTensor(environment, ids));
+			inputs.put("attention_mask", OnnxTensor.createTensor(environment, mask));
+			if (tokenTypeIds) {
+				inputs.put("token_type_ids", OnnxTensor.createTensor(environment, types));
+			}
+			try (OrtSession.Result result = session.run(inputs)) {
+				Object output = result.get(0).getValue();
+				float[][] vectors = output instanceof float[][][] tokens ? pool(tokens, mask) : (float[][]) output;
+				for (int i = 0; i < vectors.length; i++) {
+					vectors[i] = VectorMath.normalize(vectors[i]);
+				}
+				return vectors;
+			}
+		}
+		catch (OrtException e) {
+			throw new ServiceException("向量模型推理失败：" + e.getMessage());
+		}
+		finally {
+			inputs.values().forEach(OnnxTensor::close);
+		}
+	}
+
+	private float[][] pool(float[][][] tokens, long[][] mask) {
+		float[][] vectors = new float[tokens.length][];
+		for (int i = 0; i < tokens.length; i++) {
+			if (pooling == Pooling.CLS) {
+				vectors[i] = tokens[i][0];
+				continue;
+			}
+			int dimension = tokens[i][0].length;
+			float[] vector = new float[dimension];
+			int count = 0;
+			for (int t = 0; t < tokens[i].length; t++) {
+				if (mask[i][t] == 0) {
+					continue;
+				}
+				float[] token = tokens[i][t];
+				for (int d = 0; d < dimension; d++) {
+					vector[d] += token[d];
+				}
+				count++;
+			}
+			if (count > 0) {
+				for (int d = 0; d < dimension; d++) {
+					vector[d] /= count;
+				}
+			}
+			vectors[i] = vector;
+		}
+		return vectors;
+	}
+
+	@Override
+	public void close() {
+		tokenizer.close();
+		try {
+			session.close();
+		}
+		catch (OrtException e) {
+			throw new ServiceException("关闭向量模型失败：" + e.getMessage());
+		}
+	}
+
+}
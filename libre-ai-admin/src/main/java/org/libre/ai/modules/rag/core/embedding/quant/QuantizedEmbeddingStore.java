@@ -0,0 +1,868 @@
+package org.libre.ai.modules.rag.core.embedding.quant;
+
+import cn.hutool.core.util.NumberUtil;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.consts.QuantizationEnum;
+import org.libre.ai.modules.rag.core.embedding.KnowledgeFilters;
+import org.libre.ai.modules.rag.core.embedding.LocalEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.NodeHeap;
+import org.libre.ai.modules.rag.core.embedding.SegmentCodec;
+import org.libre.ai.modules.rag.core.embedding.VectorMath;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 量化向量库
+ *
+ * 全精度向量按记录编号顺序写入磁盘上的 .vec 文件，堆内保存量化后的向量编码（INT8 为每分量 1 字节，BINARY 为每分量 1 位）
+ * 以及记录的 ID、文本和元数据，节省的是向量本身占用的内存。
+ * 检索先用编码对全部记录粗排，取前 maxResults * rescoreFactor 条候选，再从 .vec 文件读取候选的全精度向量重新计算相似度得到最终结果。
+ * 编码在加载时由 .vec 文件重新计算，因此切换量化方式不需要重建数据。
+ *
+ * 按 recallSampleRate 抽样的检索会在后台对同一查询做一次全精度精确检索，记录 recall@k，与编码占用的内存一起通过指标上报。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class QuantizedEmbeddingStore implements LocalEmbeddingStore {
+
+	private static final int MAGIC = 0x51564543;
+
+	private static final int VERSION = 1;
+
+	private static final int BLOCK_SHIFT = 12;
+
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	/**
+	 * 召回率抽样的精确检索在单独的线程中执行，正在执行时新的抽样直接丢弃
+	 */
+	private static final ThreadPoolExecutor RECALL_EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(1), r -> {
+				Thread thread = new Thread(r, "quantized-recall");
+				thread.setDaemon(true);
+				return thread;
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	private final Path file;
+
+	private final String name;
+
+	private final int dimension;
+
+	private final QuantizationEnum quantization;
+
+	private final int words;
+
+	private final int rescoreFactor;
+
+	private final double recallSampleRate;
+
+	private final double compactRatio;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private final DistributionSummary recall;
+
+	private final MeterRegistry meterRegistry;
+
+	private final List<Meter> meters = new ArrayList<>();
+
+	/**
+	 * .vec 文件的版本号，整理后递增，当前版本记录在 .q 文件中
+	 */
+	private int generation;
+
+	private FileChannel vectors;
+
+	private byte[][] int8Blocks = new byte[0][];
+
+	private float[] scales = new float[16];
+
+	private long[][] bitBlocks = new long[0][];
+
+	private String[] ids = new String[16];
+
+	private TextSegment[] segments = new TextSegment[16];
+
+	private int[] tags = new int[16];
+
+	private boolean[] deleted = new boolean[16];
+
+	private int count;
+
+	private int deletedCount;
+
+	private final Map<String, Integer> nodes = new HashMap<>();
+
+	private final Map<String, Integer> tagIds = new HashMap<>();
+
+	private volatile boolean dirty;
+
+	public QuantizedEmbeddingStore(Path file, int dimension, QuantizationEnum quantization, int rescoreFactor,
+			double recallSampleRate, double compactRatio, MeterRegistry meterRegistry) {
+		this.file = file;
+		String fileName = file.getFileName().toString();
+		this.name = fileName.substring(0, fileName.lastIndexOf('.'));
+		this.dimension = dimension;
+		this.quantization = quantization;
+		this.words = (dimension + 63) >>> 6;
+		this.rescoreFactor = Math.max(rescoreFactor, 1);
+		this.recallSampleRate = recallSampleRate;
+		this.compactRatio = compactRatio;
+		this.meterRegistry = meterRegistry;
+		load();
+
+		meters.add(Gauge.builder("langchat.embedding.quantized.bytes", this, QuantizedEmbeddingStore::codeBytes)
+			.description("量化编码占用的堆内存")
+			.baseUnit("bytes")
+			.tag("store", name)
+			.tag("type", "code")
+			.register(meterRegistry));
+		meters.add(Gauge.builder("langchat.embedding.quantized.bytes", this, QuantizedEmbeddingStore::fullBytes)
+			.description("同样数量的全精度向量需要的内存")
+			.baseUnit("bytes")
+			.tag("store", name)
+			.tag("type", "full")
+			.register(meterRegistry));
+		this.recall = DistributionSummary.builder("langchat.embedding.quantized.recall")
+			.description("抽样查询的 recall@k（相对全精度精确检索）")
+			.tag("store", name)
+			.tag("quantization", quantization.name())
+			.register(meterRegistry);
+		meters.add(recall);
+	}
+
+	public QuantizationEnum quantization() {
+		return quantization;
+	}
+
+	@Override
+	public String add(Embedding embedding) {
+		String id = UUID.randomUUID().toString();
+		add(id, embedding);
+		return id;
+	}
+
+	@Override
+	public void add(String id, Embedding embedding) {
+		addAll(List.of(id), List.of(embedding), null);
+	}
+
+	@Override
+	public String add(Embedding embedding, TextSegment textSegment) {
+		String id = UUID.randomUUID().toString();
+		addAll(List.of(id), List.of(embedding), List.of(textSegment));
+		return id;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, null);
+		return ids;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, embedded);
+		return ids;
+	}
+
+	@Override
+	public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+		if (embedded != null && embedded.size() != embeddings.size()) {
+			throw new IllegalArgumentException("embeddings 与 embedded 数量不一致");
+		}
+		List<float[]> normalized = new ArrayList<>(embeddings.size());
+		for (Embedding embedding : embeddings) {
+			if (embedding.dimension() != dimension) {
+				throw new ServiceException("向量维度不匹配，期望 " + dimension + "，实际 " + embedding.dimension());
+			}
+			normalized.add(VectorMath.normalize(embedding.vector()));
+		}
+
+		lock.writeLock().lock();
+		try {
+			ByteBuffer buffer = vectorBuffer();
+			for (int i = 0; i < normalized.size(); i++) {
+				float[] vector = normalized.get(i);
+				int node = append(ids.get(i), vector, embedded == null ? null : embedded.get(i));
+				buffer.clear();
+				buffer.asFloatBuffer().put(vector);
+				writeFully(vectors, buffer, (long) node * dimension * Float.BYTES);
+			}
+			dirty = true;
+		}
+		catch (IOException e) {
+			throw new ServiceException("量化向量库写入失败：" + e.getMessage());
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(id));
+	}
+
+	@Override
+	public void removeAll(Collection<String> ids) {
+		lock.writeLock().lock();
+		try {
+			for (String id : ids) {
+				Integer node = nodes.remove(id);
+				if (node != null) {
+					markDeleted(node);
+				}
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		lock.writeLock().lock();
+		try {
+			for (int node = 0; node < count; node++) {
+				if (!deleted[node] && segments[node] != null && filter.test(segments[node].metadata())) {
+					nodes.remove(ids[node]);
+					markDeleted(node);
+				}
+			}
+			dirty = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 清空后使用新版本号的空 .vec 文件，写入 .q 文件后才删除旧文件，中途异常退出时仍按旧版本加载
+	 */
+	@Override
+	public void removeAll() {
+		Path previous;
+		lock.writeLock().lock();
+		try {
+			previous = vectorFile(generation);
+			FileChannel next = FileChannel.open(vectorFile(generation + 1), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			vectors.close();
+			vectors = next;
+			generation++;
+			int8Blocks = new byte[0][];
+			bitBlocks = new long[0][];
+			scales = new float[16];
+			ids = new String[16];
+			segments = new TextSegment[16];
+			tags = new int[16];
+			deleted = new boolean[16];
+			count = 0;
+			deletedCount = 0;
+			nodes.clear();
+			tagIds.clear();
+			dirty = true;
+		}
+		catch (IOException e) {
+			throw new ServiceException("量化向量库清空失败：" + e.getMessage());
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		flush();
+		deleteIfFlushed(previous);
+	}
+
+	@Override
+	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+		Filter filter = request.filter();
+		Set<String> knowledgeIds = KnowledgeFilters.knowledgeIds(filter);
+		int k = request.maxResults();
+		float minCosine = (float) (request.minScore() * 2 - 1);
+
+		lock.readLock().lock();
+		try {
+			boolean[] tagMask = KnowledgeFilters.tagMask(knowledgeIds, tagIds);
+			if (KnowledgeFilters.isEmpty(tagMask)) {
+				return new EmbeddingSearchResult<>(List.of());
+			}
+
+			// 粗排：用量化编码取候选
+			NodeHeap candidates = coarse(query, k * rescoreFactor, tagMask, filter);
+
+			// 精排：读取候选的全精度向量重新计算
+			NodeHeap top = NodeHeap.min(k + 1);
+			Map<Integer, float[]> full = new HashMap<>();
+			ByteBuffer buffer = vectorBuffer();
+			while (!candidates.isEmpty()) {
+				int node = candidates.pop();
+				float[] vector = readVector(node, buffer);
+				float score = VectorMath.dot(vector, 0, query, 0, dimension);
+				if (score < minCosine) {
+					continue;
+				}
+				full.put(node, vector);
+				top.push(node, score);
+				if (top.size() > k) {
+					full.remove(top.pop());
+				}
+			}
+
+			int size = top.size();
+			int[] found = new int[size];
+			float[] scores = new float[size];
+			for (int i = size - 1; i >= 0; i--) {
+				scores[i] = top.topScore();
+				found[i] = top.pop();
+			}
+			List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				int node = found[i];
+				matches.add(new EmbeddingMatch<>(VectorMath.relevance(scores[i]), ids[node],
+						Embedding.from(full.get(node)), segments[node]));
+			}
+
+			if (recallSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < recallSampleRate) {
+				int generationSnapshot = generation;
+				int countSnapshot = count;
+				RECALL_EXECUTOR.execute(() -> sampleRecall(query, k, minCosine, tagMask, filter, found,
+						generationSnapshot, countSnapshot));
+			}
+			return new EmbeddingSearchResult<>(matches);
+		}
+		catch (IOException e) {
+			throw new ServiceException("量化向量库读取失败：" + e.getMessage());
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean matches(Path location, int dimension) {
+		return file.equals(location) && this.dimension == dimension;
+	}
+
+	/**
+	 * 删除的记录较多时重写 .vec 文件并前移存活记录
+	 *
+	 * 新的 .vec 文件使用新的版本号，写入 .q 文件后才删除旧文件，中途异常退出时仍按旧版本加载。
+	 */
+	@Override
+	public void compact() {
+		Path previous;
+		lock.writeLock().lock();
+		try {
+			if (deletedCount == 0 || deletedCount < count * compactRatio) {
+				return;
+			}
+			previous = vectorFile(generation);
+			Path next = vectorFile(generation + 1);
+			ByteBuffer buffer = vectorBuffer();
+			int write = 0;
+			try (FileChannel target = FileChannel.open(next, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				for (int node = 0; node < count; node++) {
+					if (deleted[node]) {
+						continue;
+					}
+					buffer.clear();
+					readFully(vectors, buffer, (long) node * dimension * Float.BYTES);
+					buffer.flip();
+					writeFully(target, buffer, (long) write * dimension * Float.BYTES);
+					if (write != node) {
+						moveCode(node, write);
+						ids[write] = ids[node];
+						segments[write] = segments[node];
+						tags[write] = tags[node];
+						deleted[write] = false;
+						nodes.put(ids[write], write);
+					}
+					write++;
+				}
+				target.force(false);
+			}
+			Arrays.fill(ids, write, count, null);
+			Arrays.fill(segments, write, count, null);
+			log.info("整理量化向量库：{}，回收记录数：{}", file, count - write);
+			count = write;
+			deletedCount = 0;
+			vectors.close();
+			vectors = openVectors(next);
+			generation++;
+			dirty = true;
+		}
+		catch (IOException e) {
+			log.error("量化向量库整理失败：{}", file, e);
+			return;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		flush();
+		deleteIfFlushed(previous);
+	}
+
+	/**
+	 * .q 文件已指向新版本时删除旧的 .vec 文件，否则留到下次加载时清理
+	 */
+	private void deleteIfFlushed(Path previous) {
+		if (dirty) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(previous);
+		}
+		catch (IOException e) {
+			log.warn("删除旧的向量文件失败：{}", previous, e);
+		}
+	}
+
+	/**
+	 * 先将 .vec 文件落盘，再写入记录编号对应的 ID、删除标记和文本
+	 */
+	@Override
+	public void flush() {
+		if (!dirty) {
+			return;
+		}
+		flushLock.lock();
+		lock.readLock().lock();
+		try {
+			dirty = false;
+			vectors.force(false);
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(dimension);
+				out.writeInt(generation);
+				out.writeInt(count);
+				for (int node = 0; node < count; node++) {
+					SegmentCodec.writeString(out, ids[node]);
+					out.writeBoolean(deleted[node]);
+					TextSegment segment = segments[node];
+					out.writeBoolean(segment != null);
+					if (segment != null) {
+						SegmentCodec.writeString(out, segment.text());
+						SegmentCodec.writeMetadata(out, segment.metadata());
+					}
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			dirty = true;
+			log.error("量化向量库写入磁盘失败：{}", file, e);
+		}
+		finally {
+			lock.readLock().unlock();
+			flushLock.unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+		// 实例被替换后同名指标由新实例重新注册
+		meters.forEach(meterRegistry::remove);
+		try {
+			vectors.close();
+		}
+		catch (IOException e) {
+			log.warn("关闭向量文件失败：{}", file, e);
+		}
+	}
+
+	private NodeHeap coarse(float[] query, int limit, boolean[] tagMask, Filter filter) {
+		long[] bits = quantization == QuantizationEnum.BINARY ? binarize(query) : null;
+		NodeHeap heap = NodeHeap.min(limit + 1);
+		for (int node = 0; node < count; node++) {
+			if (deleted[node] || !KnowledgeFilters.allowed(tagMask, tags[node])) {
+				continue;
+			}
+			float score = bits == null ? int8Score(node, query) : -hamming(node, bits);
+			if (heap.size() == limit && score <= heap.topScore()) {
+				continue;
+			}
+			if (filter != null && (segments[node] == null || !filter.test(segments[node].metadata()))) {
+				continue;
+			}
+			heap.push(node, score);
+			if (heap.size() > limit) {
+				heap.pop();
+			}
+		}
+		return heap;
+	}
+
+	/**
+	 * 非对称计算：查询保持 float，与 INT8 编码相乘后乘以该记录的缩放系数
+	 */
+	private float int8Score(int node, float[] query) {
+		byte[] block = int8Blocks[node >>> BLOCK_SHIFT];
+		int offset = (node & BLOCK_MASK) * dimension;
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		int bound = dimension & ~3;
+		for (; i < bound; i += 4) {
+			s0 += query[i] * block[offset + i];
+			s1 += query[i + 1] * block[offset + i + 1];
+			s2 += query[i + 2] * block[offset + i + 2];
+			s3 += query[i + 3] * block[offset + i + 3];
+		}
+		for (; i < dimension; i++) {
+			s0 += query[i] * block[offset + i];
+		}
+		return (s0 + s1 + s2 + s3) * scales[node];
+	}
+
+	private int hamming(int node, long[] bits) {
+		long[] block = bitBlocks[node >>> BLOCK_SHIFT];
+		int offset = (node & BLOCK_MASK) * words;
+		int distance = 0;
+		for (int i = 0; i < words; i++) {
+			distance += Long.bitCount(block[offset + i] ^ bits[i]);
+		}
+		return distance;
+	}
+
+	private long[] binarize(float[] vector) {
+		long[] bits = new long[words];
+		for (int i = 0; i < dimension; i++) {
+			if (vector[i] > 0) {
+				bits[i >>> 6] |= 1L << (i & 63);
+			}
+		}
+		return bits;
+	}
+
+	private void encode(int node, float[] vector) {
+		if (quantization == QuantizationEnum.BINARY) {
+			System.arraycopy(binarize(vector), 0, bitBlocks[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * words, words);
+			return;
+		}
+		float max = 0;
+		for (float v : vector) {
+			max = Math.max(max, Math.abs(v));
+		}
+		float scale = max == 0 ? 0 : max / 127f;
+		byte[] block = int8Blocks[node >>> BLOCK_SHIFT];
+		int offset = (node & BLOCK_MASK) * dimension;
+		for (int i = 0; i < dimension; i++) {
+			block[offset + i] = scale == 0 ? 0 : (byte) Math.round(vector[i] / scale);
+		}
+		scales[node] = scale;
+	}
+
+	private void moveCode(int from, int to) {
+		if (quantization == QuantizationEnum.BINARY) {
+			System.arraycopy(bitBlocks[from >>> BLOCK_SHIFT], (from & BLOCK_MASK) * words,
+					bitBlocks[to >>> BLOCK_SHIFT], (to & BLOCK_MASK) * words, words);
+			return;
+		}
+		System.arraycopy(int8Blocks[from >>> BLOCK_SHIFT], (from & BLOCK_MASK) * dimension,
+				int8Blocks[to >>> BLOCK_SHIFT], (to & BLOCK_MASK) * dimension, dimension);
+		scales[to] = scales[from];
+	}
+
+	private double codeBytes() {
+		long perBlock = quantization == QuantizationEnum.BINARY ? (long) BLOCK_SIZE * words * Long.BYTES
+				: (long) BLOCK_SIZE * dimension;
+		long blocks = quantization == QuantizationEnum.BINARY ? bitBlocks.length : int8Blocks.length;
+		return blocks * perBlock + (quantization == QuantizationEnum.INT8 ? (long) scales.length * Float.BYTES : 0);
+	}
+
+	private double fullBytes() {
+		return (double) count * dimension * Float.BYTES;
+	}
+
+	/**
+	 * 对抽样的查询做全精度精确检索，计算量化检索结果的召回率。精确检索与检索请求使用同样的过滤条件和最低相似度，只统计抽样时已有的记录。
+	 *
+	 * 按批读取 .vec 文件，每批单独持有读锁，不阻塞写入；期间向量库被整理或清空时放弃本次抽样。
+	 */
+	private void sampleRecall(float[] query, int k, float minCosine, boolean[] tagMask, Filter filter, int[] found,
+			int generationSnapshot, int countSnapshot) {
+		try {
+			NodeHeap exact = NodeHeap.min(k + 1);
+			int batch = Math.max(1, (1 << 20) / (dimension * Float.BYTES));
+			ByteBuffer buffer = ByteBuffer.allocate(batch * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			float[] vector = new float[dimension];
+			for (int start = 0; start < countSnapshot; start += batch) {
+				int end = Math.min(countSnapshot, start + batch);
+				lock.readLock().lock();
+				try {
+					if (generation != generationSnapshot) {
+						return;
+					}
+					buffer.clear().limit((end - start) * dimension * Float.BYTES);
+					readFully(vectors, buffer, (long) start * dimension * Float.BYTES);
+					buffer.flip();
+					FloatBuffer floats = buffer.asFloatBuffer();
+					for (int node = start; node < end; node++) {
+						if (deleted[node] || !KnowledgeFilters.allowed(tagMask, tags[node])) {
+							continue;
+						}
+						if (filter != null && (segments[node] == null || !filter.test(segments[node].metadata()))) {
+							continue;
+						}
+						floats.get((node - start) * dimension, vector);
+						float score = VectorMath.dot(vector, 0, query, 0, dimension);
+						if (score < minCosine) {
+							continue;
+						}
+						exact.push(node, score);
+						if (exact.size() > k) {
+							exact.pop();
+						}
+					}
+				}
+				finally {
+					lock.readLock().unlock();
+				}
+			}
+			if (exact.isEmpty()) {
+				return;
+			}
+			int total = exact.size();
+			int hit = 0;
+			while (!exact.isEmpty()) {
+				int node = exact.pop();
+				for (int f : found) {
+					if (f == node) {
+						hit++;
+						break;
+					}
+				}
+			}
+			recall.record((double) hit / total);
+		}
+		catch (Exception e) {
+			log.warn("量化向量库召回率抽样失败：{}", e.getMessage());
+		}
+	}
+
+	private void load() {
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			if (Files.exists(file)) {
+				loadRecords();
+			}
+			else {
+				vectors = openVectors(vectorFile(generation));
+			}
+			deleteStaleVectorFiles();
+		}
+		catch (IOException e) {
+			throw new ServiceException("量化向量库加载失败：" + file + "，" + e.getMessage());
+		}
+	}
+
+	private void loadRecords() throws IOException {
+		List<String> loadedIds;
+		List<Boolean> loadedDeleted;
+		List<TextSegment> loadedSegments;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("文件格式不正确");
+			}
+			int fileDimension = in.readInt();
+			if (fileDimension != dimension) {
+				throw new IOException("向量维度不匹配，文件为 " + fileDimension + "，配置为 " + dimension);
+			}
+			generation = in.readInt();
+			int size = in.readInt();
+			loadedIds = new ArrayList<>(size);
+			loadedDeleted = new ArrayList<>(size);
+			loadedSegments = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				loadedIds.add(SegmentCodec.readString(in));
+				loadedDeleted.add(in.readBoolean());
+				loadedSegments.add(in.readBoolean()
+						? TextSegment.from(SegmentCodec.readString(in), SegmentCodec.readMetadata(in)) : null);
+			}
+		}
+
+		vectors = openVectors(vectorFile(generation));
+		ByteBuffer buffer = vectorBuffer();
+		for (int i = 0; i < loadedIds.size(); i++) {
+			float[] vector = readVector(i, buffer);
+			int node = append(loadedIds.get(i), vector, loadedSegments.get(i));
+			if (loadedDeleted.get(i)) {
+				nodes.remove(loadedIds.get(i));
+				markDeleted(node);
+			}
+		}
+		log.info("加载量化向量库：{}，向量数量：{}，量化方式：{}", file, count - deletedCount, quantization);
+	}
+
+	private void deleteStaleVectorFiles() throws IOException {
+		Path current = vectorFile(generation);
+		String prefix = name + "-";
+		try (Stream<Path> files = Files.list(file.toAbsolutePath().getParent())) {
+			for (Path path : files.toList()) {
+				String fileName = path.getFileName().toString();
+				if (fileName.startsWith(prefix) && fileName.endsWith(".vec")
+						&& NumberUtil.isInteger(fileName.substring(prefix.length(), fileName.length() - 4))
+						&& !path.toAbsolutePath().equals(current.toAbsolutePath())) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 追加一条记录的编码和文本，调用方需持有写锁
+	 */
+	private int append(String id, float[] vector, TextSegment segment) {
+		Integer previous = nodes.get(id);
+		if (previous != null) {
+			markDeleted(previous);
+		}
+		int node = count;
+		ensureCapacity(node + 1);
+		encode(node, vector);
+		ids[node] = id;
+		segments[node] = segment;
+		tags[node] = tag(segment);
+		deleted[node] = false;
+		nodes.put(id, node);
+		count++;
+		return node;
+	}
+
+	private int tag(TextSegment segment) {
+		if (segment == null || !segment.metadata().containsKey(KNOWLEDGE)) {
+			return -1;
+		}
+		String knowledgeId = String.valueOf(segment.metadata().toMap().get(KNOWLEDGE));
+		return tagIds.computeIfAbsent(knowledgeId, k -> tagIds.size());
+	}
+
+	private void markDeleted(int node) {
+		if (!deleted[node]) {
+			deleted[node] = true;
+			deletedCount++;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		int blockCount = (capacity + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+		if (quantization == QuantizationEnum.BINARY && blockCount > bitBlocks.length) {
+			int from = bitBlocks.length;
+			bitBlocks = Arrays.copyOf(bitBlocks, blockCount);
+			for (int i = from; i < blockCount; i++) {
+				bitBlocks[i] = new long[BLOCK_SIZE * words];
+			}
+		}
+		if (quantization == QuantizationEnum.INT8 && blockCount > int8Blocks.length) {
+			int from = int8Blocks.length;
+			int8Blocks = Arrays.copyOf(int8Blocks, blockCount);
+			for (int i = from; i < blockCount; i++) {
+				int8Blocks[i] = new byte[BLOCK_SIZE * dimension];
+			}
+		}
+		if (capacity <= ids.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+		ids = Arrays.copyOf(ids, newCapacity);
+		segments = Arrays.copyOf(segments, newCapacity);
+		tags = Arrays.copyOf(tags, newCapacity);
+		deleted = Arrays.copyOf(deleted, newCapacity);
+		if (quantization == QuantizationEnum.INT8) {
+			scales = Arrays.copyOf(scales, newCapacity);
+		}
+	}
+
+	private Path vectorFile(int generation) {
+		return file.resolveSibling(name + "-" + generation + ".vec");
+	}
+
+	private ByteBuffer vectorBuffer() {
+		return ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private float[] readVector(int node, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		readFully(vectors, buffer, (long) node * dimension * Float.BYTES);
+		buffer.flip();
+		float[] vector = new float[dimension];
+		buffer.asFloatBuffer().get(vector);
+		return vector;
+	}
+
+	private static FileChannel openVectors(Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("向量文件长度不足");
+			}
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.rewind();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+}
@@ -0,0 +1,458 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.consts.EmbedConst;
+import org.libre.ai.modules.rag.core.consts.IngestStatusEnum;
+import org.libre.ai.modules.rag.core.consts.UploadStatusEnum;
+import org.libre.ai.modules.rag.dto.EmbeddingResult;
+import org.libre.ai.modules.rag.entity.AigcDocs;
+import org.libre.ai.modules.rag.entity.AigcIngestJob;
+import org.libre.ai.modules.rag.entity.AigcOss;
+import org.libre.ai.modules.rag.exception.ServiceException;
+import org.libre.ai.modules.rag.mapper.AigcDocsMapper;
+import org.libre.ai.modules.rag.mapper.AigcIngestJobMapper;
+import org.libre.ai.modules.rag.properties.IngestProperties;
+import org.libre.ai.modules.rag.service.EmbeddingService;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 文档入库任务的调度和执行
+ *
+ * 任务保存在 aigc_ingest_job 表中，提交后立即返回。扫描线程按下次执行时间取出待执行的任务，以条件更新（status = PENDING）抢占后交给工作线程执行，
+ * 多个服务实例可以共用同一张表。执行中的任务定期刷新更新时间，超过 staleTimeout 未刷新的任务视为所在服务已中断，重新排队；失败的任务按指数退避重试，
+ * 次数用尽后标记为失败。文档的 slice_status 随任务状态更新。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class IngestJobRunner {
+
+	private static final int MAX_ERROR_LENGTH = 2000;
+
+	private final IngestProperties properties;
+
+	private final AigcIngestJobMapper jobMapper;
+
+	private final AigcDocsMapper docsMapper;
+
+	private final EmbeddingService embeddingService;
+
+	private final IngestSpills ingestSpills;
+
+	private final ThreadPoolExecutor workers;
+
+	private final Semaphore permits;
+
+	private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "ingest-heartbeat");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition wakeup = lock.newCondition();
+
+	private boolean signalled;
+
+	private volatile boolean running;
+
+	private Thread poller;
+
+	private final Counter succeeded;
+
+	private final Counter retried;
+
+	private final Counter failed;
+
+	public IngestJobRunner(IngestProperties properties, AigcIngestJobMapper jobMapper, AigcDocsMapper docsMapper,
+			EmbeddingService embeddingService, IngestSpills ingestSpills, MeterRegistry meterRegistry) {
+		this.properties = properties;
+		this.jobMapper = jobMapper;
+		this.docsMapper = docsMapper;
+		this.embeddingService = embeddingService;
+		this.ingestSpills = ingestSpills;
+		this.permits = new Semaphore(properties.getWorkers());
+
+		AtomicInteger index = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+					Thread thread = new Thread(r, "ingest-worker-" + index.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		Gauge.builder("langchat.ingest.running", runningJobs, Set::size)
+			.description("本实例执行中的入库任务数量")
+			.register(meterRegistry);
+		this.succeeded = Counter.builder("langchat.ingest.jobs").tag("result", "succeeded").register(meterRegistry);
+		this.retried = Counter.builder("langchat.ingest.jobs").tag("result", "retried").register(meterRegistry);
+		this.failed = Counter.builder("langchat.ingest.jobs").tag("result", "failed").register(meterRegistry);
+	}
+
+	/**
+	 * 模型和向量库在启动时加载，服务就绪后再开始执行任务
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		running = true;
+		poller = new Thread(this::loop, "ingest-poller");
+		poller.setDaemon(true);
+		poller.start();
+		heartbeat.scheduleWithFixedDelay(this::heartbeat, properties.getHeartbeatInterval(),
+				properties.getHeartbeatInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 为文档提交入库任务。文档已有等待中的任务时直接返回该任务，正在执行时拒绝
+	 */
+	public AigcIngestJob submit(AigcDocs docs, String url) {
+		return submit(docs, url, null, null);
+	}
+
+	/**
+	 * 为刚上传的文档提交入库任务，同时记录本地副本路径和等待上传的对象存储信息，服务重启后据此继续上传
+	 */
+	public AigcIngestJob submit(AigcDocs docs, String url, Path spillPath, AigcOss oss) {
+		AigcIngestJob active = jobMapper.selectOne(Wrappers.<AigcIngestJob>lambdaQuery()
+			.eq(AigcIngestJob::getDocsId, docs.getId())
+			.in(AigcIngestJob::getStatus, IngestStatusEnum.PENDING.name(), IngestStatusEnum.RUNNING.name())
+			.last("LIMIT 1"));
+		if (active != null) {
+			if (IngestStatusEnum.RUNNING.name().equals(active.getStatus())) {
+				throw new ServiceException("文档正在入库中，请稍后再试");
+			}
+			return active;
+		}
+
+		Date now = new Date();
+		AigcIngestJob job = new AigcIngestJob().setDocsId(docs.getId())
+			.setKnowledgeId(docs.getKnowledgeId())
+			.setUrl(url)
+			.setStatus(IngestStatusEnum.PENDING.name())
+			.setAttempts(0)
+			.setChunksTotal(0)
+			.setChunksDone(0)
+			.setNextRunTime(now)
+			.setCreateTime(now)
+			.setUpdateTime(now);
+		if (spillPath != null) {
+			job.setSpillPath(spillPath.toString())
+				.setUploadStatus(UploadStatusEnum.PENDING.name())
+				.setUploadOss(JSONUtil.toJsonStr(oss));
+		}
+		jobMapper.insert(job);
+		docsMapper.updateById(new AigcDocs().setId(docs.getId()).setSliceStatus(EmbedConst.SLICE_STATUS_PENDING));
+		signal();
+		return job;
+	}
+
+	public AigcIngestJob getJob(String id) {
+		return jobMapper.selectById(id);
+	}
+
+	/**
+	 * 文档最近一次提交的任务
+	 */
+	public AigcIngestJob getLatestJob(String docsId) {
+		return jobMapper.selectOne(Wrappers.<AigcIngestJob>lambdaQuery()
+			.eq(AigcIngestJob::getDocsId, docsId)
+			.orderByDesc(AigcIngestJob::getCreateTime)
+			.last("LIMIT 1"));
+	}
+
+	@PreDestroy
+	public void destroy() {
+		running = false;
+		signal();
+		heartbeat.shutdownNow();
+		workers.shutdownNow();
+		try {
+			workers.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// 关闭时被中断的任务立即重新排队且不计入重试次数，重启后不必等待 staleTimeout
+		if (!runningJobs.isEmpty()) {
+			jobMapper.update(null, Wrappers.<AigcIngestJob>lambdaUpdate()
+				.set(AigcIngestJob::getStatus, IngestStatusEnum.PENDING.name())
+				.set(AigcIngestJob::getNextRunTime, new Date())
+				.setSql("attempts = attempts - 1")
+				.in(AigcIngestJob::getId, runningJobs)
+				.eq(AigcIngestJob::getStatus, IngestStatusEnum.RUNNING.name()));
+			for (AigcIngestJob job : jobMapper.selectByIds(runningJobs)) {
+				if (IngestStatusEnum.PENDING.name().equals(job.getStatus())) {
+					docsMapper.updateById(
+							new AigcDocs().setId(job.getDocsId()).setSliceStatus(EmbedConst.SLICE_STATUS_PENDING));
+				}
+			}
+		}
+	}
+
+	private void signal() {
+		lock.lock();
+		try {
+			signalled = true;
+			wakeup.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void loop() {
+		while (running) {
+			try {
+				await();
+				if (!running) {
+					break;
+				}
+				requeueStale();
+				dispatch();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			catch (Exception e) {
+				log.error("入库任务调度失败", e);
+			}
+		}
+	}
+
+	private void await() throws InterruptedException {
+		lock.lock();
+		try {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(properties.getPollInterval());
+			while (!signalled && nanos > 0) {
+				nanos = wakeup.awaitNanos(nanos);
+			}
+			signalled = false;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void dispatch() {
+		int free = permits.availablePermits();
+		if (free == 0) {
+			return;
+		}
+		List<AigcIngestJob> due = jobMapper.selectList(Wrappers.<AigcIngestJob>lambdaQuery()
+			.eq(AigcIngestJob::getStatus, IngestStatusEnum.PENDING.name())
+			.le(AigcIngestJob::getNextRunTime, new Date())
+			.orderByAsc(AigcIngestJob::getNextRunTime)
+			.last("LIMIT " + free));
+		for (AigcIngestJob job : due) {
+			if (!claim(job) || !permits.tryAcquire()) {
+				continue;
+			}
+			runningJobs.add(job.getId());
+			workers.execute(() -> {
+				try {
+					run(job);
+				}
+				finally {
+					// 关闭时保留任务ID，由 destroy 重新排队
+					if (running) {
+						runningJobs.remove(job.getId());
+					}
+					permits.release();
+					signal();
+				}
+			});
+		}
+	}
+
+	/**
+	 * 以条件更新抢占任务，其他实例已抢占时返回 false
+	 */
+	private boolean claim(AigcIngestJob job) {
+		Date now = new Date();
+		int updated = jobMapper.update(null, Wrappers.<AigcIngestJob>lambdaUpdate()
+			.set(AigcIngestJob::getStatus, IngestStatusEnum.RUNNING.name())
+			.set(AigcIngestJob::getUpdateTime, now)
+			.set(AigcIngestJob::getChunksDone, 0)
+			.setSql("attempts = attempts + 1")
+			.eq(AigcIngestJob::getId, job.getId())
+			.eq(AigcIngestJob::getStatus, IngestStatusEnum.PENDING.name()));
+		if (updated == 0) {
+			return false;
+		}
+		job.setStatus(IngestStatusEnum.RUNNING.name())
+			.setAttempts(job.getAttempts() + 1)
+			.setChunksDone(0)
+			.setUpdateTime(now);
+		return true;
+	}
+
+	void run(AigcIngestJob job) {
+		AigcDocs docs = docsMapper.selectById(job.getDocsId());
+		if (docs == null) {
+			finish(job, IngestStatusEnum.FAILED, "文档已被删除");
+			failed.increment();
+			return;
+		}
+		if (UploadStatusEnum.PENDING.name().equals(job.getUploadStatus()) && ingestSpills.local(docs.getId()) == null) {
+			// 接收上传的实例在上传完成前退出时副本随之丢失，超过 staleTimeout 仍未上传完成则不再等待
+			if (System.currentTimeMillis() - job.getCreateTime().getTime() > properties.getStaleTimeout()) {
+				log.error("文件上传丢失，入库任务失败：jobId={}, docsId={}", job.getId(), docs.getId());
+				finish(job, IngestStatusEnum.FAILED, "文件上传丢失：本地副本不存在且未上传到对象存储");
+				failed.increment();
+				return;
+			}
+			defer(job);
+			return;
+		}
+		docsMapper.updateById(new AigcDocs().setId(docs.getId()).setSliceStatus(EmbedConst.SLICE_STATUS_RUNNING));
+		log.info("入库任务开始：jobId={}, docsId={}, attempt={}", job.getId(), docs.getId(), job.getAttempts());
+
+		try {
+			// 已有切片（包括上次中途失败前写入的）按内容哈希复用，不再先清空
+			embeddingService.embedDocsSlice(docs, job.getUrl(), progress(job));
+			finish(job, IngestStatusEnum.SUCCEEDED, null);
+			succeeded.increment();
+			log.info("入库任务完成：jobId={}, docsId={}, chunks={}", job.getId(), docs.getId(), job.getChunksDone());
+		}
+		catch (Exception e) {
+			if (!running) {
+				// 服务关闭时 shutdownNow 中断了执行，不按失败处理，任务保持执行中状态由 destroy 重新排队
+				log.info("服务关闭，入库任务中断：jobId={}, docsId={}", job.getId(), docs.getId());
+				return;
+			}
+			String error = StrUtil.sub(StrUtil.blankToDefault(e.getMessage(), e.getClass().getName()), 0,
+					MAX_ERROR_LENGTH);
+			if (job.getAttempts() >= properties.getMaxAttempts()) {
+				log.error("入库任务失败：jobId={}, docsId={}, attempts={}", job.getId(), docs.getId(), job.getAttempts(),
+						e);
+				finish(job, IngestStatusEnum.FAILED, error);
+				failed.increment();
+				return;
+			}
+			long backoff = Math.min(properties.getMaxRetryBackoff(),
+					properties.getRetryBackoff() << Math.min(job.getAttempts() - 1, 20));
+			log.warn("入库任务失败，{}ms 后重试：jobId={}, docsId={}, attempts={}", backoff, job.getId(), docs.getId(),
+					job.getAttempts(), e);
+			jobMapper.updateById(new AigcIngestJob().setId(job.getId())
+				.setStatus(IngestStatusEnum.PENDING.name())
+				.setError(error)
+				.setNextRunTime(new Date(System.currentTimeMillis() + backoff))
+				.setUpdateTime(new Date()));
+			docsMapper.updateById(new AigcDocs().setId(docs.getId()).setSliceStatus(EmbedConst.SLICE_STATUS_PENDING));
+			retried.increment();
+		}
+	}
+
+	/**
+	 * 文件还在接收上传的实例上上传，文件地址暂不可用，稍后再执行且不计入重试次数
+	 */
+	private void defer(AigcIngestJob job) {
+		log.info("文件尚未上传到对象存储，推迟入库任务：jobId={}, docsId={}", job.getId(), job.getDocsId());
+		jobMapper.update(null, Wrappers.<AigcIngestJob>lambdaUpdate()
+			.set(AigcIngestJob::getStatus, IngestStatusEnum.PENDING.name())
+			.set(AigcIngestJob::getNextRunTime, new Date(System.currentTimeMillis() + properties.getRetryBackoff()))
+			.set(AigcIngestJob::getUpdateTime, new Date())
+			.setSql("attempts = attempts - 1")
+			.eq(AigcIngestJob::getId, job.getId())
+			.eq(AigcIngestJob::getStatus, IngestStatusEnum.RUNNING.name()));
+	}
+
+	private void finish(AigcIngestJob job, IngestStatusEnum status, String error) {
+		jobMapper.updateById(new AigcIngestJob().setId(job.getId())
+			.setStatus(status.name())
+			.setError(error)
+			.setUpdateTime(new Date()));
+		ingestSpills.release(job.getDocsId());
+		if (status == IngestStatusEnum.FAILED) {
+			docsMapper
+				.updateById(new AigcDocs().setId(job.getDocsId()).setSliceStatus(EmbedConst.SLICE_STATUS_FAILED));
+		}
+	}
+
+	private IngestProgress progress(AigcIngestJob job) {
+		// 切分和写入在不同线程中回调，已完成数量由两者共同累加
+		AtomicInteger done = new AtomicInteger(job.getChunksDone());
+		return new IngestProgress() {
+			@Override
+			public void onSplit(int total, int skipped) {
+				// 切分完成时可能已有切片写入，复用的切片直接计入已完成
+				job.setChunksTotal(total);
+				job.setChunksDone(done.addAndGet(skipped));
+				jobMapper.updateById(new AigcIngestJob().setId(job.getId())
+					.setChunksTotal(total)
+					.setChunksDone(job.getChunksDone())
+					.setUpdateTime(new Date()));
+			}
+
+			@Override
+			public void onStored(List<EmbeddingResult> batch) {
+				job.setChunksDone(done.addAndGet(batch.size()));
+				jobMapper.updateById(new AigcIngestJob().setId(job.getId())
+					.setChunksDone(job.getChunksDone())
+					.setUpdateTime(new Date()));
+			}
+		};
+	}
+
+	private void heartbeat() {
+		if (runningJobs.isEmpty()) {
+			return;
+		}
+		try {
+			jobMapper.update(null, Wrappers.<AigcIngestJob>lambdaUpdate()
+				.set(AigcIngestJob::getUpdateTime, new Date())
+				.in(AigcIngestJob::getId, runningJobs)
+				.eq(AigcIngestJob::getStatus, IngestStatusEnum.RUNNING.name()));
+		}
+		catch (Exception e) {
+			log.warn("入库任务心跳更新失败", e);
+		}
+	}
+
+	/**
+	 * 超过 staleTimeout 未刷新的执行中任务重新排队（服务重启或其他实例宕机）
+	 */
+	private void requeueStale() {
+		Date deadline = new Date(System.currentTimeMillis() - properties.getStaleTimeout());
+		int requeued = jobMapper.update(null, Wrappers.<AigcIngestJob>lambdaUpdate()
+			.set(AigcIngestJob::getStatus, IngestStatusEnum.PENDING.name())
+			.set(AigcIngestJob::getNextRunTime, new Date())
+			.eq(AigcIngestJob::getStatus, IngestStatusEnum.RUNNING.name())
+			.lt(AigcIngestJob::getUpdateTime, deadline)
+			.notIn(!runningJobs.isEmpty(), AigcIngestJob::getId, runningJobs));
+		if (requeued > 0) {
+			log.warn("{} 个中断的入库任务已重新排队", requeued);
+		}
+	}
+
+}
@@ -0,0 +1,366 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.dto.EmbeddingResult;
+import org.libre.ai.modules.rag.properties.IngestProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 文档入库流水线
+ *
+ * 解析切分、向量化、写入向量库三个阶段并行执行，阶段之间以有界队列衔接：切分结果按 embedBatchSize 分批，最多 embedConcurrency
+ * 个批次同时向量化，向量化结果在写入阶段合并为不超过 storeBatchSize 的批次写入向量库。下游较慢时队列写满，上游阻塞等待，内存占用不随文档大小增长。
+ * 任一阶段失败后其余阶段尽快停止，已写入的切片保留，重试时可以复用。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class IngestPipeline {
+
+	private static final ExecutorService EXECUTOR = Executors
+		.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingest-pipeline-", 0).factory());
+
+	private static final long POLL_MILLIS = 100;
+
+	private static final List<TextSegment> END_OF_SEGMENTS = new ArrayList<>();
+
+	private static final Embedded END_OF_EMBEDDED = new Embedded(List.of(), List.of());
+
+	private final IngestProperties properties;
+
+	private final Set<BlockingQueue<?>> embedQueues = ConcurrentHashMap.newKeySet();
+
+	private final Set<BlockingQueue<?>> storeQueues = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final Timer parseTimer;
+
+	private final Timer embedTimer;
+
+	private final Timer storeTimer;
+
+	private final Counter splitCounter;
+
+	private final Counter embedCounter;
+
+	private final Counter storeCounter;
+
+	public IngestPipeline(IngestProperties properties, MeterRegistry meterRegistry) {
+		this.properties = properties;
+
+		Gauge.builder("langchat.ingest.pipeline.queue", embedQueues, IngestPipeline::depth)
+			.tag("queue", "embed")
+			.description("等待向量化的切片批次数量")
+			.register(meterRegistry);
+		Gauge.builder("langchat.ingest.pipeline.queue", storeQueues, IngestPipeline::depth)
+			.tag("queue", "store")
+			.description("等待写入向量库的批次数量")
+			.register(meterRegistry);
+		Gauge.builder("langchat.ingest.pipeline.embedding", inFlight, AtomicInteger::get)
+			.description("正在向量化的批次数量")
+			.register(meterRegistry);
+
+		this.parseTimer = stageTimer(meterRegistry, "parse");
+		this.embedTimer = stageTimer(meterRegistry, "embed");
+		this.storeTimer = stageTimer(meterRegistry, "store");
+		this.splitCounter = stageCounter(meterRegistry, "split");
+		this.embedCounter = stageCounter(meterRegistry, "embed");
+		this.storeCounter = stageCounter(meterRegistry, "store");
+	}
+
+	/**
+	 * 执行入库，返回写入的全部切片。progress 的 onSegment、onSplit 在切分阶段的线程中执行，onStored 在写入阶段的线程中依次执行
+	 */
+	public List<EmbeddingResult> run(SegmentSource source, EmbeddingModel model, EmbeddingStore<TextSegment> store,
+			IngestProgress progress) throws Exception {
+		return new Run(source, model, store, progress).execute();
+	}
+
+	private static double depth(Set<BlockingQueue<?>> queues) {
+		return queues.stream().mapToInt(Collection::size).sum();
+	}
+
+	private static Timer stageTimer(MeterRegistry meterRegistry, String stage) {
+		return Timer.builder("langchat.ingest.pipeline.stage")
+			.tag("stage", stage)
+			.description("入库流水线各阶段的耗时")
+			.register(meterRegistry);
+	}
+
+	private static Counter stageCounter(MeterRegistry meterRegistry, String stage) {
+		return Counter.builder("langchat.ingest.pipeline.segments")
+			.tag("stage", stage)
+			.description("入库流水线各阶段处理的切片数量")
+			.register(meterRegistry);
+	}
+
+	private record Embedded(List<TextSegment> segments, List<Embedding> embeddings) {
+	}
+
+	private class Run {
+
+		private final SegmentSource source;
+
+		private final EmbeddingModel model;
+
+		private final EmbeddingStore<TextSegment> store;
+
+		private final IngestProgress progress;
+
+		private final BlockingQueue<List<TextSegment>> embedQueue;
+
+		private final BlockingQueue<Embedded> storeQueue;
+
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		private final List<EmbeddingResult> results = new ArrayList<>();
+
+		Run(SegmentSource source, EmbeddingModel model, EmbeddingStore<TextSegment> store, IngestProgress progress) {
+			this.source = source;
+			this.model = model;
+			this.store = store;
+			this.progress = progress;
+			this.embedQueue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+			this.storeQueue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+		}
+
+		List<EmbeddingResult> execute() throws Exception {
+			embedQueues.add(embedQueue);
+			storeQueues.add(storeQueue);
+			Thread splitter = Thread.ofVirtual().name("ingest-split").start(this::split);
+			Thread writer = Thread.ofVirtual().name("ingest-store").start(this::write);
+			try {
+				dispatch();
+				splitter.join();
+				writer.join();
+			}
+			catch (InterruptedException e) {
+				fail(e);
+				splitter.interrupt();
+				writer.interrupt();
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				embedQueues.remove(embedQueue);
+				storeQueues.remove(storeQueue);
+			}
+
+			Throwable error = failure.get();
+			if (error instanceof Exception e) {
+				throw e;
+			}
+			if (error != null) {
+				throw new IllegalStateException(error);
+			}
+			return results;
+		}
+
+		/**
+		 * 解析切分阶段：按 embedBatchSize 分批放入向量化队列
+		 */
+		private void split() {
+			long start = System.nanoTime();
+			int batchSize = properties.getEmbedBatchSize();
+			AtomicInteger total = new AtomicInteger();
+			AtomicInteger skipped = new AtomicInteger();
+			List<List<TextSegment>> pending = new ArrayList<>(1);
+			pending.add(new ArrayList<>(batchSize));
+			try {
+				source.emit(segment -> {
+					if (!progress.onSegment(segment)) {
+						skipped.incrementAndGet();
+						return;
+					}
+					List<TextSegment> batch = pending.get(0);
+					batch.add(segment);
+					total.incrementAndGet();
+					if (batch.size() >= batchSize) {
+						put(embedQueue, batch);
+						splitCounter.increment(batch.size());
+						pending.set(0, new ArrayList<>(batchSize));
+					}
+				});
+				List<TextSegment> batch = pending.get(0);
+				if (!batch.isEmpty()) {
+					put(embedQueue, batch);
+					splitCounter.increment(batch.size());
+				}
+				parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				log.info("文档分片完成，共生成 {} 个片段，跳过 {} 个未变化的片段", total.get() + skipped.get(), skipped.get());
+				progress.onSplit(total.get() + skipped.get(), skipped.get());
+			}
+			catch (Throwable e) {
+				fail(e);
+			}
+			finally {
+				offerEnd(embedQueue, END_OF_SEGMENTS);
+			}
+		}
+
+		/**
+		 * 向量化阶段：在调用线程中取出批次，最多 embedConcurrency 个批次同时请求向量模型
+		 */
+		private void dispatch() throws InterruptedException {
+			int concurrency = properties.getEmbedConcurrency();
+			Semaphore permits = new Semaphore(concurrency);
+			try {
+				List<TextSegment> batch;
+				while ((batch = take(embedQueue)) != END_OF_SEGMENTS) {
+					permits.acquire();
+					List<TextSegment> segments = batch;
+					EXECUTOR.execute(() -> {
+						inFlight.incrementAndGet();
+						try {
+							embed(segments);
+						}
+						catch (Throwable e) {
+							fail(e);
+						}
+						finally {
+							inFlight.decrementAndGet();
+							permits.release();
+						}
+					});
+				}
+			}
+			catch (CancellationException ignored) {
+				// 其他阶段已失败
+			}
+			finally {
+				permits.acquire(concurrency);
+				offerEnd(storeQueue, END_OF_EMBEDDED);
+			}
+		}
+
+		private void embed(List<TextSegment> segments) {
+			long start = System.nanoTime();
+			List<Embedding> embeddings = model.embedAll(segments).content();
+			embedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			embedCounter.increment(segments.size());
+			put(storeQueue, new Embedded(segments, embeddings));
+		}
+
+		/**
+		 * 写入阶段：合并向量化结果，按 storeBatchSize 批量写入向量库
+		 */
+		private void write() {
+			int batchSize = properties.getStoreBatchSize();
+			List<TextSegment> segments = new ArrayList<>(batchSize);
+			List<Embedding> embeddings = new ArrayList<>(batchSize);
+			try {
+				Embedded item;
+				while ((item = take(storeQueue)) != END_OF_EMBEDDED) {
+					segments.addAll(item.segments());
+					embeddings.addAll(item.embeddings());
+					if (segments.size() >= batchSize) {
+						flush(segments, embeddings);
+					}
+				}
+				if (!segments.isEmpty() && failure.get() == null) {
+					flush(segments, embeddings);
+				}
+			}
+			catch (CancellationException ignored) {
+				// 其他阶段已失败
+			}
+			catch (Throwable e) {
+				fail(e);
+			}
+		}
+
+		private void flush(List<TextSegment> segments, List<Embedding> embeddings) {
+			long start = System.nanoTime();
+			List<String> ids = store.addAll(embeddings, segments);
+			storeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			storeCounter.increment(segments.size());
+
+			List<EmbeddingResult> batch = new ArrayList<>(ids.size());
+			for (int i = 0; i < ids.size(); i++) {
+				batch.add(new EmbeddingResult().setVectorId(ids.get(i)).setText(segments.get(i).text()));
+			}
+			results.addAll(batch);
+			progress.onStored(batch);
+			segments.clear();
+			embeddings.clear();
+		}
+
+		private void fail(Throwable e) {
+			if (e instanceof CancellationException && failure.get() != null) {
+				return;
+			}
+			if (!failure.compareAndSet(null, e) && failure.get() != e) {
+				failure.get().addSuppressed(e);
+			}
+		}
+
+		/**
+		 * 队列已满时阻塞等待，期间其他阶段失败则放弃
+		 */
+		private <T> void put(BlockingQueue<T> queue, T item) {
+			try {
+				while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (failure.get() != null) {
+						throw new CancellationException();
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+
+		private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+			T item;
+			while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+				if (failure.get() != null) {
+					throw new CancellationException();
+				}
+			}
+			return item;
+		}
+
+		/**
+		 * 放入结束标记。失败时下游可能已停止消费，此时丢弃队列中的数据为标记腾出空间
+		 */
+		private <T> void offerEnd(BlockingQueue<T> queue, T end) {
+			while (!queue.offer(end)) {
+				if (failure.get() != null) {
+					queue.clear();
+				}
+				else {
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS));
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import dev.langchain4j.data.segment.TextSegment;
+import org.libre.ai.modules.rag.dto.EmbeddingResult;
+
+import java.util.List;
+
+/**
+ * 文档入库进度的回调
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public interface IngestProgress {
+
+	IngestProgress NONE = new IngestProgress() {
+	};
+
+	/**
+	 * 切分出一个切片，返回 false 时跳过该切片（已有可复用的向量）
+	 */
+	default boolean onSegment(TextSegment segment) {
+		return true;
+	}
+
+	/**
+	 * 文档切分完成，total 为切片总数，skipped 为其中跳过（复用已有向量）的切片数量，跳过的切片视为已完成
+	 */
+	default void onSplit(int total, int skipped) {
+	}
+
+	/**
+	 * 一批切片已向量化并写入向量库
+	 */
+	default void onStored(List<EmbeddingResult> batch) {
+	}
+
+}
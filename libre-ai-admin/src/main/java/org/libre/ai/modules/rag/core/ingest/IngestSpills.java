@@ -0,0 +1,280 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.consts.IngestStatusEnum;
+import org.libre.ai.modules.rag.core.consts.UploadStatusEnum;
+import org.libre.ai.modules.rag.entity.AigcIngestJob;
+import org.libre.ai.modules.rag.entity.AigcOss;
+import org.libre.ai.modules.rag.exception.ServiceException;
+import org.libre.ai.modules.rag.mapper.AigcIngestJobMapper;
+import org.libre.ai.modules.rag.properties.IngestProperties;
+import org.libre.ai.modules.rag.service.AigcOssService;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 上传文件的本地副本
+ *
+ * 上传的文件先写入本地并刷盘，入库任务记录副本路径和上传状态（PENDING）后才返回给客户端；上传到对象存储在后台执行，失败后按指数退避一直重试，
+ * 完成后把任务的上传状态改为 DONE。入库任务在本实例执行时解析本地副本，并在完成前等待上传结束；在其他实例执行时本地副本不可见，
+ * 上传完成前推迟执行，完成后从文件地址下载。
+ *
+ * 本地副本在任务结束且上传完成后删除。服务重启时保留仍被等待上传或未结束的任务引用的副本，并继续未完成的上传。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class IngestSpills {
+
+	private static final ExecutorService UPLOADER = Executors
+		.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingest-upload-", 0).factory());
+
+	private final IngestProperties properties;
+
+	private final AigcIngestJobMapper jobMapper;
+
+	private final AigcOssService aigcOssService;
+
+	private final Map<String, Spill> spills = new ConcurrentHashMap<>();
+
+	private volatile boolean closed;
+
+	public IngestSpills(IngestProperties properties, AigcIngestJobMapper jobMapper, AigcOssService aigcOssService) {
+		this.properties = properties;
+		this.jobMapper = jobMapper;
+		this.aigcOssService = aigcOssService;
+	}
+
+	/**
+	 * 恢复上次运行留下的副本：等待上传的继续上传，任务未结束的继续作为本地副本使用，其余的删除
+	 */
+	@PostConstruct
+	public void init() {
+		Path dir = dir();
+		List<Path> files;
+		try {
+			Files.createDirectories(dir);
+			try (Stream<Path> list = Files.list(dir)) {
+				files = list.filter(Files::isRegularFile).toList();
+			}
+		}
+		catch (IOException e) {
+			throw new ServiceException("本地副本目录初始化失败: " + e.getMessage());
+		}
+		if (files.isEmpty()) {
+			return;
+		}
+
+		Set<Path> kept = new HashSet<>();
+		int uploading = 0;
+		List<AigcIngestJob> jobs = jobMapper.selectList(Wrappers.<AigcIngestJob>lambdaQuery()
+			.in(AigcIngestJob::getSpillPath, files.stream().map(Path::toString).toList()));
+		for (AigcIngestJob job : jobs) {
+			boolean pendingUpload = UploadStatusEnum.PENDING.name().equals(job.getUploadStatus());
+			boolean active = IngestStatusEnum.PENDING.name().equals(job.getStatus())
+					|| IngestStatusEnum.RUNNING.name().equals(job.getStatus());
+			if (!pendingUpload && !active) {
+				continue;
+			}
+			Spill spill = new Spill(job.getDocsId(), Path.of(job.getSpillPath()));
+			spill.released = !active;
+			spills.put(job.getDocsId(), spill);
+			kept.add(spill.path);
+			if (pendingUpload) {
+				spill.oss = JSONUtil.toBean(job.getUploadOss(), AigcOss.class);
+				startUpload(spill, 0);
+				uploading++;
+			}
+			else {
+				spill.uploaded.complete(null);
+			}
+		}
+		for (Path file : files) {
+			if (!kept.contains(file)) {
+				FileUtil.del(file);
+			}
+		}
+		log.info("恢复上传文件的本地副本：{} 个，继续上传 {} 个，删除 {} 个", kept.size(), uploading, files.size() - kept.size());
+	}
+
+	@PreDestroy
+	public void destroy() {
+		closed = true;
+	}
+
+	/**
+	 * 保存文件的本地副本并刷盘，返回副本路径。之后由入库任务记录副本路径和上传状态，再调用 {@link #upload} 开始上传
+	 */
+	public Path spill(String docsId, MultipartFile file) {
+		String filename = IdUtil.simpleUUID() + "." + FileUtil.extName(file.getOriginalFilename());
+		Path path = dir().resolve(filename);
+		try {
+			file.transferTo(path);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+		}
+		catch (IOException e) {
+			FileUtil.del(path);
+			throw new ServiceException("文件保存失败: " + e.getMessage());
+		}
+		spills.put(docsId, new Spill(docsId, path));
+		return path;
+	}
+
+	/**
+	 * 在后台把本地副本上传到对象存储，失败后一直重试
+	 */
+	public void upload(String docsId, AigcOss oss) {
+		Spill spill = spills.get(docsId);
+		if (spill == null) {
+			throw new ServiceException("文件的本地副本不存在");
+		}
+		spill.oss = oss;
+		startUpload(spill, 0);
+	}
+
+	/**
+	 * 文档的本地副本，不存在时返回 null
+	 */
+	public Path local(String docsId) {
+		Spill spill = spills.get(docsId);
+		return spill == null ? null : spill.path;
+	}
+
+	/**
+	 * 等待文档上传完成；本次上传失败时抛出异常，入库任务稍后重试，上传在后台继续重试
+	 */
+	public void awaitUpload(String docsId) {
+		Spill spill = spills.get(docsId);
+		if (spill == null) {
+			return;
+		}
+		CompletableFuture<Void> attempt = spill.attempt;
+		try {
+			(attempt == null ? spill.uploaded : attempt).join();
+		}
+		catch (CompletionException e) {
+			Throwable cause = e.getCause() == null ? e : e.getCause();
+			throw new ServiceException("文件上传失败，稍后重试: " + cause.getMessage());
+		}
+	}
+
+	/**
+	 * 入库任务结束。上传已完成时删除本地副本，否则在上传完成后删除
+	 */
+	public void release(String docsId) {
+		Spill spill = spills.get(docsId);
+		if (spill == null) {
+			return;
+		}
+		spill.released = true;
+		if (spill.uploaded.isDone()) {
+			delete(spill);
+		}
+	}
+
+	/**
+	 * 删除还未开始上传的本地副本，入库任务提交失败时调用
+	 */
+	public void discard(String docsId) {
+		Spill spill = spills.get(docsId);
+		if (spill != null && spill.attempt == null) {
+			delete(spill);
+		}
+	}
+
+	private void startUpload(Spill spill, int failures) {
+		Executor executor = failures == 0 ? UPLOADER
+				: CompletableFuture.delayedExecutor(backoff(failures), TimeUnit.MILLISECONDS, UPLOADER);
+		CompletableFuture<Void> attempt = CompletableFuture.runAsync(() -> {
+			aigcOssService.upload(spill.oss, spill.path);
+			// 上传状态记录失败时同样重试，上传可以重复执行
+			jobMapper.update(null, Wrappers.<AigcIngestJob>lambdaUpdate()
+				.set(AigcIngestJob::getUploadStatus, UploadStatusEnum.DONE.name())
+				.set(AigcIngestJob::getUploadOss, null)
+				.eq(AigcIngestJob::getSpillPath, spill.path.toString()));
+		}, executor);
+		spill.attempt = attempt;
+		attempt.whenComplete((result, error) -> {
+			if (error == null) {
+				spill.uploaded.complete(null);
+				if (spill.released) {
+					delete(spill);
+				}
+			}
+			else if (!closed) {
+				log.warn("文件上传失败，{}ms 后重试：{}", backoff(failures + 1), spill.path, error);
+				startUpload(spill, failures + 1);
+			}
+		});
+	}
+
+	private void delete(Spill spill) {
+		if (!spills.remove(spill.docsId, spill)) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(spill.path);
+		}
+		catch (IOException e) {
+			log.warn("删除本地副本失败：{}", spill.path, e);
+		}
+	}
+
+	private long backoff(int failures) {
+		return Math.min(properties.getMaxRetryBackoff(), properties.getRetryBackoff() << Math.min(failures - 1, 20));
+	}
+
+	private Path dir() {
+		return Path.of(properties.getSpillDir()).toAbsolutePath().normalize();
+	}
+
+	private static class Spill {
+
+		private final String docsId;
+
+		private final Path path;
+
+		private final CompletableFuture<Void> uploaded = new CompletableFuture<>();
+
+		private volatile AigcOss oss;
+
+		private volatile CompletableFuture<Void> attempt;
+
+		private volatile boolean released;
+
+		Spill(String docsId, Path path) {
+			this.docsId = docsId;
+			this.path = path;
+		}
+
+	}
+
+}
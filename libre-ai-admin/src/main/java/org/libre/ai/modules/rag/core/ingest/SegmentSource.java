@@ -0,0 +1,18 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.function.Consumer;
+
+/**
+ * 入库流水线的切片来源，负责解析和切分文档，每得到一个切片就交给 sink
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@FunctionalInterface
+public interface SegmentSource {
+
+	void emit(Consumer<TextSegment> sink) throws Exception;
+
+}
@@ -0,0 +1,75 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import org.libre.ai.modules.rag.entity.AigcDocsSlice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 重新入库时按内容哈希复用文档已有的切片
+ *
+ * 向量模型和向量库都未变化、且记录了内容哈希的切片可以复用，内容相同的多个切片逐个匹配；入库完成后未被匹配的切片和不能复用的切片一起删除。
+ * {@link #take} 在切分阶段的单个线程中调用。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class SliceReuse {
+
+	private final Map<String, Deque<AigcDocsSlice>> reusable = new HashMap<>();
+
+	private final List<AigcDocsSlice> stale = new ArrayList<>();
+
+	private int kept;
+
+	public SliceReuse(List<AigcDocsSlice> slices, String embedModelId, String embedStoreId) {
+		for (AigcDocsSlice slice : slices) {
+			if (slice.getContentHash() != null && Objects.equals(slice.getEmbedModelId(), embedModelId)
+					&& Objects.equals(slice.getEmbedStoreId(), embedStoreId)) {
+				reusable.computeIfAbsent(slice.getContentHash(), k -> new ArrayDeque<>()).add(slice);
+			}
+			else {
+				stale.add(slice);
+			}
+		}
+	}
+
+	public static String hash(String text) {
+		return DigestUtil.sha256Hex(text);
+	}
+
+	/**
+	 * 有内容相同的切片可以复用时返回 true，该切片不再参与后续匹配
+	 */
+	public boolean take(String text) {
+		Deque<AigcDocsSlice> same = reusable.get(hash(text));
+		if (same != null && same.poll() != null) {
+			kept++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 已复用的切片数量
+	 */
+	public int kept() {
+		return kept;
+	}
+
+	/**
+	 * 需要删除的切片：不能复用的和未被匹配的
+	 */
+	public List<AigcDocsSlice> stale() {
+		List<AigcDocsSlice> result = new ArrayList<>(stale);
+		reusable.values().forEach(result::addAll);
+		return result;
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 增量切分文本
+ *
+ * 文本逐段追加到窗口中，窗口达到 window 个字符后交给切分器切分，除最后一个切片外全部输出，最后一个切片可能被窗口截断，留在窗口中与后续文本一起切分。
+ * 内存占用只与窗口大小有关。输出的切片按顺序编号，与一次性切分整个文档的元数据一致。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class StreamingSegmenter {
+
+	private static final String INDEX = "index";
+
+	private final DocumentSplitter splitter;
+
+	private final Metadata metadata;
+
+	private final int window;
+
+	private final Consumer<TextSegment> sink;
+
+	private StringBuilder buffer;
+
+	private int index;
+
+	public StreamingSegmenter(DocumentSplitter splitter, Metadata metadata, int window, Consumer<TextSegment> sink) {
+		this.splitter = splitter;
+		this.metadata = metadata;
+		this.window = window;
+		this.sink = sink;
+		this.buffer = new StringBuilder(window);
+	}
+
+	public void append(char[] chars, int start, int length) {
+		buffer.append(chars, start, length);
+		if (buffer.length() >= window) {
+			drain(false);
+		}
+	}
+
+	/**
+	 * 切分并输出窗口中剩余的文本
+	 */
+	public void finish() {
+		drain(true);
+	}
+
+	/**
+	 * 已输出的切片数量
+	 */
+	public int count() {
+		return index;
+	}
+
+	private void drain(boolean last) {
+		if (buffer.toString().isBlank()) {
+			buffer.setLength(0);
+			return;
+		}
+		String text = buffer.toString();
+		List<TextSegment> segments = splitter.split(Document.from(text));
+		int emit = last || segments.size() == 1 ? segments.size() : segments.size() - 1;
+		for (int i = 0; i < emit; i++) {
+			sink.accept(TextSegment.from(segments.get(i).text(), metadata.copy().put(INDEX, String.valueOf(index++))));
+		}
+
+		buffer = new StringBuilder(window);
+		if (emit < segments.size()) {
+			// 切片文本去掉了末尾的空白，补回窗口末尾的换行等分隔符，避免与后续文本直接拼接丢失段落边界
+			buffer.append(segments.get(emit).text()).append(text, trailingWhitespace(text), text.length());
+		}
+	}
+
+	private static int trailingWhitespace(String text) {
+		int end = text.length();
+		while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+}
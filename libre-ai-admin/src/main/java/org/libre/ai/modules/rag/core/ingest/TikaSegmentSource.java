@@ -0,0 +1,110 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.libre.ai.modules.rag.exception.ServiceException;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * 以 SAX 方式流式解析文档
+ *
+ * Tika 解析出的正文直接写入 {@link StreamingSegmenter}，边解析边输出切片，不再生成包含全文的 Document。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class TikaSegmentSource implements SegmentSource {
+
+	private final Callable<InputStream> opener;
+
+	private final DocumentSplitter splitter;
+
+	private final Metadata metadata;
+
+	private final int window;
+
+	private TikaSegmentSource(Callable<InputStream> opener, DocumentSplitter splitter, Metadata metadata,
+			int window) {
+		this.opener = opener;
+		this.splitter = splitter;
+		this.metadata = metadata;
+		this.window = window;
+	}
+
+	/**
+	 * 从地址读取，解析器需要随机读取时（如 PDF）TikaInputStream 会转存到临时文件
+	 */
+	public static TikaSegmentSource fromUrl(String url, DocumentSplitter splitter, Metadata metadata, int window) {
+		return new TikaSegmentSource(() -> TikaInputStream.get(new URL(url)), splitter, metadata, window);
+	}
+
+	public static TikaSegmentSource fromFile(Path file, DocumentSplitter splitter, Metadata metadata, int window) {
+		return new TikaSegmentSource(() -> TikaInputStream.get(file), splitter, metadata, window);
+	}
+
+	@Override
+	public void emit(Consumer<TextSegment> sink) throws Exception {
+		StreamingSegmenter segmenter = new StreamingSegmenter(splitter, metadata, window, sink);
+		try (InputStream stream = opener.call()) {
+			new AutoDetectParser().parse(stream, new BodyHandler(segmenter), new org.apache.tika.metadata.Metadata(),
+					new ParseContext());
+		}
+		segmenter.finish();
+		if (segmenter.count() == 0) {
+			throw new ServiceException("文档内容为空");
+		}
+	}
+
+	/**
+	 * 只保留 body 中的文本，块级元素结束时 Tika 会输出换行
+	 */
+	private static class BodyHandler extends DefaultHandler {
+
+		private final StreamingSegmenter segmenter;
+
+		private boolean inBody;
+
+		BodyHandler(StreamingSegmenter segmenter) {
+			this.segmenter = segmenter;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if ("body".equals(localName)) {
+				inBody = true;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if ("body".equals(localName)) {
+				inBody = false;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inBody) {
+				segmenter.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) {
+			characters(ch, start, length);
+		}
+
+	}
+
+}
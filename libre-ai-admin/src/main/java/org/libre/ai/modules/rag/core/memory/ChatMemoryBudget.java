@@ -0,0 +1,17 @@
+package org.libre.ai.modules.rag.core.memory;
+
+/**
+ * 对话上下文窗口的容量
+ *
+ * @param maxMessages 保留的消息条数上限
+ * @param maxTokens 保留消息的 Token 总数上限，小于等于 0 表示不限制
+ * @author libre
+ * @since 2026/10/17
+ */
+public record ChatMemoryBudget(int maxMessages, int maxTokens) {
+
+	public boolean tokenLimited() {
+		return maxTokens > 0;
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.libre.ai.modules.rag.core.memory;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.cache.impl.TimedCache;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.ChatMemory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.service.impl.TieredChatMemoryStore;
+import org.libre.ai.modules.rag.entity.AigcApp;
+import org.libre.ai.modules.rag.entity.AigcConversation;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.service.AigcMessageService;
+import org.libre.ai.modules.rag.store.AppStore;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 创建对话上下文窗口
+ *
+ * 窗口容量优先取会话设置（maxContextCount、maxTokens），其次取会话所在应用的设置，都未设置时使用全局配置。
+ * 容量短时间缓存，修改会话或应用设置时主动失效。
+ *
+ * AiServices 按 memoryId 持有 provider 返回的 ChatMemory 且不会淘汰，因此返回的只是按会话ID转发的轻量句柄，窗口本身保存在与消息存储相同容量、
+ * 相同空闲时间的 LRU 缓存中，被淘汰的窗口在下次使用时从存储重建。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class ChatMemoryFactory {
+
+	private static final long BUDGET_CACHE_TIMEOUT = 60 * 1000L;
+
+	private final TieredChatMemoryStore chatMemoryStore;
+
+	private final AigcMessageService aigcMessageService;
+
+	private final AppStore appStore;
+
+	private final ChatProperties chatProperties;
+
+	private final TimedCache<String, ChatMemoryBudget> budgets = CacheUtil.newTimedCache(BUDGET_CACHE_TIMEOUT);
+
+	private final LRUCache<String, TokenWindowChatMemory> windows;
+
+	/**
+	 * 会话ID -> 应用ID，由应用对话的请求登记
+	 */
+	private final LRUCache<String, String> conversationApps;
+
+	public ChatMemoryFactory(TieredChatMemoryStore chatMemoryStore, AigcMessageService aigcMessageService,
+			AppStore appStore, ChatProperties chatProperties) {
+		this.chatMemoryStore = chatMemoryStore;
+		this.aigcMessageService = aigcMessageService;
+		this.appStore = appStore;
+		this.chatProperties = chatProperties;
+		ChatProperties.Memory memory = chatProperties.getMemory();
+		this.windows = CacheUtil.newLRUCache(memory.getMaxConversations(), memory.getIdleTimeout());
+		this.conversationApps = CacheUtil.newLRUCache(memory.getMaxConversations(), memory.getIdleTimeout());
+		budgets.schedulePrune(BUDGET_CACHE_TIMEOUT);
+	}
+
+	public ChatMemory create(Object memoryId) {
+		return new Handle(memoryId);
+	}
+
+	private TokenWindowChatMemory window(Object memoryId) {
+		return windows.get(String.valueOf(memoryId),
+				() -> new TokenWindowChatMemory(memoryId, chatMemoryStore, () -> budget(memoryId)));
+	}
+
+	public ChatMemoryBudget budget(Object memoryId) {
+		return budgets.get(String.valueOf(memoryId), () -> load(String.valueOf(memoryId)));
+	}
+
+	public void invalidate(String conversationId) {
+		budgets.remove(conversationId);
+		windows.remove(conversationId);
+	}
+
+	/**
+	 * 登记会话所属的应用，会话未设置容量时使用应用的设置
+	 */
+	public void useApp(String conversationId, String appId) {
+		if (!appId.equals(conversationApps.get(conversationId))) {
+			conversationApps.put(conversationId, appId);
+			budgets.remove(conversationId);
+		}
+	}
+
+	/**
+	 * 应用设置变更后重新计算所有会话的容量
+	 */
+	public void invalidateApps() {
+		budgets.clear();
+	}
+
+	private ChatMemoryBudget load(String conversationId) {
+		int maxMessages = chatProperties.getMemoryMaxMessage();
+		int maxTokens = chatProperties.getMemoryMaxTokens();
+		try {
+			String appId = conversationApps.get(conversationId);
+			AigcApp app = appId == null ? null : appStore.get(appId);
+			if (app != null) {
+				maxMessages = positive(app.getMaxContextCount(), maxMessages);
+				maxTokens = positive(app.getMaxTokens(), maxTokens);
+			}
+			AigcConversation conversation = aigcMessageService.getConversation(conversationId);
+			if (conversation != null) {
+				maxMessages = positive(conversation.getMaxContextCount(), maxMessages);
+				maxTokens = positive(conversation.getMaxTokens(), maxTokens);
+			}
+		}
+		catch (Exception e) {
+			log.warn("加载会话上下文配置失败，使用默认配置，conversationId={}: {}", conversationId, e.getMessage());
+		}
+		return new ChatMemoryBudget(maxMessages, maxTokens);
+	}
+
+	private static int positive(Integer value, int fallback) {
+		return value != null && value > 0 ? value : fallback;
+	}
+
+	@PreDestroy
+	public void destroy() {
+		budgets.cancelPruneSchedule();
+	}
+
+	/**
+	 * 每次调用时取当前的窗口
+	 */
+	private final class Handle implements ChatMemory {
+
+		private final Object id;
+
+		Handle(Object id) {
+			this.id = id;
+		}
+
+		@Override
+		public Object id() {
+			return id;
+		}
+
+		@Override
+		public void add(ChatMessage message) {
+			window(id).add(message);
+		}
+
+		@Override
+		public List<ChatMessage> messages() {
+			return window(id).messages();
+		}
+
+		@Override
+		public void clear() {
+			window(id).clear();
+		}
+
+	}
+
+}
@@ -0,0 +1,37 @@
+package org.libre.ai.modules.rag.core.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenCountEstimator;
+
+/**
+ * 全局共享的 HuggingFace Token 计数器
+ *
+ * 分词器加载代价较高，整个应用只持有一个实例，供对话上下文和文档切分共同使用。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public final class TokenCounter {
+
+	private TokenCounter() {
+	}
+
+	private static class Holder {
+
+		private static final HuggingFaceTokenCountEstimator ESTIMATOR = new HuggingFaceTokenCountEstimator();
+
+	}
+
+	public static HuggingFaceTokenCountEstimator estimator() {
+		return Holder.ESTIMATOR;
+	}
+
+	public static int count(String text) {
+		return text == null || text.isEmpty() ? 0 : Holder.ESTIMATOR.estimateTokenCountInText(text);
+	}
+
+	public static int count(ChatMessage message) {
+		return Holder.ESTIMATOR.estimateTokenCountInMessage(message);
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.libre.ai.modules.rag.core.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 按消息条数和 Token 总数限制的对话上下文窗口
+ *
+ * 每条消息只在加入窗口时计算一次 Token 数并随消息保存，窗口维护累计值，淘汰时从队首弹出并扣减，不会重新分词历史消息。
+ * 系统消息单独保存且不会被淘汰；最新的一条消息始终保留，即使它本身已经超出 Token 上限。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class TokenWindowChatMemory implements ChatMemory {
+
+	private final Object id;
+
+	private final ChatMemoryStore store;
+
+	private final Supplier<ChatMemoryBudget> budget;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final ArrayDeque<Entry> window = new ArrayDeque<>();
+
+	private Entry system;
+
+	private long totalTokens;
+
+	public TokenWindowChatMemory(Object id, ChatMemoryStore store, Supplier<ChatMemoryBudget> budget) {
+		this.id = id;
+		this.store = store;
+		this.budget = budget;
+	}
+
+	@Override
+	public Object id() {
+		return id;
+	}
+
+	@Override
+	public void add(ChatMessage message) {
+		lock.lock();
+		try {
+			sync();
+			if (message instanceof SystemMessage) {
+				if (system != null && system.message.equals(message)) {
+					return;
+				}
+				if (system != null) {
+					totalTokens -= system.tokens;
+				}
+				system = new Entry(message, TokenCounter.count(message));
+				totalTokens += system.tokens;
+			}
+			else {
+				Entry entry = new Entry(message, TokenCounter.count(message));
+				window.addLast(entry);
+				totalTokens += entry.tokens;
+			}
+			trim();
+			store.updateMessages(id, snapshot());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<ChatMessage> messages() {
+		lock.lock();
+		try {
+			sync();
+			trim();
+			return snapshot();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			store.deleteMessages(id);
+			window.clear();
+			system = null;
+			totalTokens = 0;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 存储中的消息可能被外部修改（加载历史、清空会话、淘汰），不一致时以存储为准重建窗口，已知消息沿用之前计算的 Token 数
+	 */
+	private void sync() {
+		List<ChatMessage> stored = store.getMessages(id);
+		if (matches(stored)) {
+			return;
+		}
+
+		Map<ChatMessage, Integer> known = new IdentityHashMap<>();
+		if (system != null) {
+			known.put(system.message, system.tokens);
+		}
+		window.forEach(entry -> known.put(entry.message, entry.tokens));
+
+		window.clear();
+		system = null;
+		totalTokens = 0;
+		for (ChatMessage message : stored) {
+			Integer tokens = known.get(message);
+			Entry entry = new Entry(message, tokens == null ? TokenCounter.count(message) : tokens);
+			if (message instanceof SystemMessage && system == null) {
+				system = entry;
+			}
+			else {
+				window.addLast(entry);
+			}
+			totalTokens += entry.tokens;
+		}
+	}
+
+	private boolean matches(List<ChatMessage> stored) {
+		int size = window.size() + (system == null ? 0 : 1);
+		if (stored.size() != size) {
+			return false;
+		}
+		Iterator<ChatMessage> it = stored.iterator();
+		if (system != null && it.next() != system.message) {
+			return false;
+		}
+		for (Entry entry : window) {
+			if (it.next() != entry.message) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void trim() {
+		ChatMemoryBudget limit = budget.get();
+		int reserved = system == null ? 0 : 1;
+		while (window.size() > 1 && (window.size() + reserved > limit.maxMessages()
+				|| (limit.tokenLimited() && totalTokens > limit.maxTokens()))) {
+			evictFirst();
+			// 工具调用结果必须和对应的调用请求一起淘汰
+			while (window.size() > 1 && window.peekFirst().message instanceof ToolExecutionResultMessage) {
+				evictFirst();
+			}
+		}
+	}
+
+	private void evictFirst() {
+		totalTokens -= window.pollFirst().tokens;
+	}
+
+	private List<ChatMessage> snapshot() {
+		List<ChatMessage> list = new ArrayList<>(window.size() + 1);
+		if (system != null) {
+			list.add(system.message);
+		}
+		window.forEach(entry -> list.add(entry.message));
+		return list;
+	}
+
+	private record Entry(ChatMessage message, int tokens) {
+	}
+
+}
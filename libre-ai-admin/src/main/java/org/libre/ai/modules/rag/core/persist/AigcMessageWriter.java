@@ -0,0 +1,405 @@
+package org.libre.ai.modules.rag.core.persist;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.entity.AigcMessage;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.service.AigcMessageService;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 对话消息异步批量写入（write-behind）
+ *
+ * 对话线程只把消息放入有界队列，由单独的写入线程按批量大小或时间窗口合并为 JDBC 批量插入，避免每条消息占用一次连接和事务。 队列已满时退化为调用线程同步写入，
+ * 服务关闭时会把队列中剩余的消息全部写入。
+ *
+ * 写入失败的消息不会丢弃，保留在重试缓冲中按退避间隔逐条重试，直到写入成功。所有数据库写入都在 writeLock 下进行，按会话读取历史消息前调用
+ * {@link #flush(String)} 先写入该会话未落库的消息；清空或删除会话前调用 {@link #discard(String)} 丢弃该会话在此之前提交的消息，避免删除后又被写入。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class AigcMessageWriter {
+
+	private static final long MAX_RETRY_DELAY = 30 * 1000L;
+
+	private static final long DISCARD_TTL = 10 * 60 * 1000L;
+
+	private static final long FLUSH_TIMEOUT = 5 * 1000L;
+
+	/**
+	 * 放入队列后写入线程立即结束当前时间窗口
+	 */
+	private static final AigcMessage WAKEUP = new AigcMessage();
+
+	private final AigcMessageService aigcMessageService;
+
+	private final ChatProperties.Persist properties;
+
+	private final BlockingQueue<AigcMessage> queue;
+
+	private final Thread worker;
+
+	private volatile boolean running = true;
+
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	private final Condition written = writeLock.newCondition();
+
+	/**
+	 * 以下字段由 writeLock 保护：写入失败等待重试的消息、各会话已提交未落库的消息数量、被丢弃会话的丢弃时间
+	 */
+	private final List<AigcMessage> retries = new ArrayList<>();
+
+	private final Map<String, Integer> unwritten = new HashMap<>();
+
+	private final Map<String, Long> discarded = new HashMap<>();
+
+	private int retryAttempts;
+
+	private long nextRetry;
+
+	private final Timer flushTimer;
+
+	private final Counter flushed;
+
+	private final Counter failed;
+
+	private final Counter overflow;
+
+	public AigcMessageWriter(AigcMessageService aigcMessageService, ChatProperties chatProperties,
+			MeterRegistry meterRegistry) {
+		this.aigcMessageService = aigcMessageService;
+		this.properties = chatProperties.getPersist();
+		this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+
+		Gauge.builder("langchat.chat.message.backlog", queue, BlockingQueue::size)
+			.description("等待写入数据库的对话消息数量")
+			.register(meterRegistry);
+		Gauge.builder("langchat.chat.message.retrying", this, AigcMessageWriter::getRetrying)
+			.description("写入失败等待重试的对话消息数量")
+			.register(meterRegistry);
+		this.flushTimer = Timer.builder("langchat.chat.message.flush")
+			.description("对话消息批量写入耗时")
+			.publishPercentiles(0.5, 0.95, 0.99)
+			.register(meterRegistry);
+		this.flushed = Counter.builder("langchat.chat.message.flushed").register(meterRegistry);
+		this.failed = Counter.builder("langchat.chat.message.failed")
+			.description("写入失败的次数（按消息计），失败的消息会重试")
+			.register(meterRegistry);
+		this.overflow = Counter.builder("langchat.chat.message.overflow")
+			.description("队列已满时同步写入的消息数量")
+			.register(meterRegistry);
+
+		this.worker = new Thread(this::loop, "aigc-message-writer");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * 提交一条消息，写入时间在提交时确定，保证按时间排序的历史消息顺序不受批量写入影响
+	 */
+	public void write(AigcMessage message) {
+		if (message.getCreateTime() == null) {
+			message.setCreateTime(new Date());
+		}
+		writeLock.lock();
+		try {
+			unwritten.merge(message.getConversationId(), 1, Integer::sum);
+		}
+		finally {
+			writeLock.unlock();
+		}
+		if (running && queue.offer(message)) {
+			return;
+		}
+
+		overflow.increment();
+		writeLock.lock();
+		try {
+			store(new ArrayList<>(List.of(message)));
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * 写入该会话已提交但尚未落库的消息，读取会话历史前调用。写入失败或等待超时时只记录日志，消息仍在缓冲中等待重试
+	 */
+	public void flush(String conversationId) {
+		if (conversationId == null) {
+			return;
+		}
+		writeLock.lock();
+		try {
+			if (unwritten.getOrDefault(conversationId, 0) == 0) {
+				return;
+			}
+			List<AigcMessage> own = new ArrayList<>(take(queue, conversationId));
+			own.addAll(take(retries, conversationId));
+			own.sort(Comparator.comparing(AigcMessage::getCreateTime));
+			store(own);
+
+			// 其余的消息已被写入线程取出，让它结束时间窗口并等待写完
+			if (unwritten.getOrDefault(conversationId, 0) > count(retries, conversationId)) {
+				queue.offer(WAKEUP);
+			}
+			long nanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT);
+			while (unwritten.getOrDefault(conversationId, 0) > count(retries, conversationId) && nanos > 0) {
+				nanos = written.awaitNanos(nanos);
+			}
+			if (unwritten.getOrDefault(conversationId, 0) > 0) {
+				log.warn("会话仍有 {} 条消息未写入数据库，conversationId={}", unwritten.get(conversationId), conversationId);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * 丢弃该会话在此之前提交、尚未落库的消息，清空或删除会话前调用
+	 */
+	public void discard(String conversationId) {
+		if (conversationId == null) {
+			return;
+		}
+		writeLock.lock();
+		try {
+			discarded.put(conversationId, System.currentTimeMillis());
+			int dropped = take(queue, conversationId).size() + take(retries, conversationId).size();
+			untrack(conversationId, dropped);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	public int getBacklog() {
+		return queue.size();
+	}
+
+	public int getRetrying() {
+		writeLock.lock();
+		try {
+			return retries.size();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void loop() {
+		List<AigcMessage> batch = new ArrayList<>(properties.getBatchSize());
+		while (running || !queue.isEmpty()) {
+			try {
+				collect(batch);
+			}
+			catch (InterruptedException e) {
+				// 关闭时被中断，剩余消息由 destroy 写入
+				Thread.currentThread().interrupt();
+				break;
+			}
+			writeLock.lock();
+			try {
+				store(batch);
+				retry(false);
+				// 丢弃时间早于 DISCARD_TTL 的会话不会再有此前提交的消息
+				long now = System.currentTimeMillis();
+				discarded.values().removeIf(at -> now - at > DISCARD_TTL);
+			}
+			finally {
+				writeLock.unlock();
+			}
+		}
+		writeLock.lock();
+		try {
+			store(batch);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * 等待第一条消息，然后在时间窗口内继续收集，直到达到批量大小或窗口结束
+	 */
+	private void collect(List<AigcMessage> batch) throws InterruptedException {
+		AigcMessage first = queue.poll(properties.getFlushInterval(), TimeUnit.MILLISECONDS);
+		if (first == null || first == WAKEUP) {
+			return;
+		}
+		batch.add(first);
+
+		int batchSize = properties.getBatchSize();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getFlushInterval());
+		while (batch.size() < batchSize) {
+			queue.drainTo(batch, batchSize - batch.size());
+			if (batch.removeIf(message -> message == WAKEUP)) {
+				break;
+			}
+			long remaining = deadline - System.nanoTime();
+			if (batch.size() >= batchSize || remaining <= 0) {
+				break;
+			}
+			AigcMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null || next == WAKEUP) {
+				break;
+			}
+			batch.add(next);
+		}
+	}
+
+	/**
+	 * 批量写入，失败的消息转入重试缓冲。调用方需持有 writeLock，返回时 batch 已清空
+	 */
+	private void store(List<AigcMessage> batch) {
+		batch.removeIf(this::isDiscarded);
+		if (batch.isEmpty()) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			aigcMessageService.saveBatch(batch, properties.getBatchSize());
+			flushed.increment(batch.size());
+			batch.forEach(message -> untrack(message.getConversationId(), 1));
+		}
+		catch (Exception e) {
+			failed.increment(batch.size());
+			log.error("对话消息批量写入失败，{} 条消息转入重试", batch.size(), e);
+			retries.addAll(batch);
+			scheduleRetry();
+		}
+		finally {
+			flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * 逐条重试写入失败的消息，单条消息持续失败时不影响其他消息。调用方需持有 writeLock
+	 */
+	private void retry(boolean force) {
+		if (retries.isEmpty() || !force && System.currentTimeMillis() < nextRetry) {
+			return;
+		}
+		Iterator<AigcMessage> it = retries.iterator();
+		while (it.hasNext()) {
+			AigcMessage message = it.next();
+			if (isDiscarded(message)) {
+				it.remove();
+				continue;
+			}
+			try {
+				aigcMessageService.save(message);
+				flushed.increment();
+				it.remove();
+				untrack(message.getConversationId(), 1);
+			}
+			catch (Exception e) {
+				failed.increment();
+				log.warn("对话消息重试写入失败，conversationId={}: {}", message.getConversationId(), e.getMessage());
+			}
+		}
+		if (retries.isEmpty()) {
+			retryAttempts = 0;
+		}
+		else {
+			scheduleRetry();
+		}
+	}
+
+	private void scheduleRetry() {
+		long delay = Math.min(MAX_RETRY_DELAY, properties.getFlushInterval() << Math.min(retryAttempts++, 20));
+		nextRetry = System.currentTimeMillis() + delay;
+	}
+
+	/**
+	 * 消息提交时间不晚于所在会话的丢弃时间时丢弃，调用方需持有 writeLock
+	 */
+	private boolean isDiscarded(AigcMessage message) {
+		Long at = discarded.get(message.getConversationId());
+		if (at == null || message.getCreateTime().getTime() > at) {
+			return false;
+		}
+		untrack(message.getConversationId(), 1);
+		return true;
+	}
+
+	private void untrack(String conversationId, int count) {
+		if (count > 0) {
+			unwritten.computeIfPresent(conversationId, (id, n) -> n > count ? n - count : null);
+			written.signalAll();
+		}
+	}
+
+	private static List<AigcMessage> take(Collection<AigcMessage> source, String conversationId) {
+		List<AigcMessage> taken = new ArrayList<>();
+		source.removeIf(message -> Objects.equals(message.getConversationId(), conversationId) && taken.add(message));
+		return taken;
+	}
+
+	private static int count(Collection<AigcMessage> source, String conversationId) {
+		return (int) source.stream()
+			.filter(message -> Objects.equals(message.getConversationId(), conversationId))
+			.count();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		running = false;
+		try {
+			worker.join(properties.getShutdownTimeout());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (worker.isAlive()) {
+			worker.interrupt();
+		}
+
+		List<AigcMessage> rest = new ArrayList<>();
+		queue.drainTo(rest);
+		rest.removeIf(message -> message == WAKEUP);
+		writeLock.lock();
+		try {
+			for (int i = 0; i < rest.size(); i += properties.getBatchSize()) {
+				store(new ArrayList<>(rest.subList(i, Math.min(i + properties.getBatchSize(), rest.size()))));
+			}
+			retry(true);
+			if (!retries.isEmpty()) {
+				log.error("服务关闭时仍有 {} 条对话消息写入失败", retries.size());
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		log.info("aigc message writer stopped, flushed on shutdown: {}", rest.size());
+	}
+
+}
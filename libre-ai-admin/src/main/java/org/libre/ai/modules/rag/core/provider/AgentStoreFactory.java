@@ -0,0 +1,66 @@
+package org.libre.ai.modules.rag.core.provider;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.service.Agent;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * 已构建的 AiServices Agent 缓存
+ *
+ * 以 (类型, 模型ID, 知识库ID, 系统提示词hash, 用户提示词模板hash) 作为 key，避免每次对话都重新生成代理和检索器。 模型、向量库、知识库或应用配置变更时整体失效。
+ * Agent 内部会按 memoryId 持有 ChatMemory（ChatMemoryFactory 返回的轻量句柄，窗口本身在有界缓存中），这部分映射不会淘汰，
+ * 因此缓存按创建时间过期（读取时不刷新），常用的 Agent 同样会定期重新构建以释放这些句柄。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class AgentStoreFactory {
+
+	public static final String TYPE_STREAM = "stream";
+
+	public static final String TYPE_RAG_STREAM = "rag_stream";
+
+	public static final String TYPE_TEXT = "text";
+
+	private final LRUCache<String, Agent> agentCache;
+
+	public AgentStoreFactory(ChatProperties chatProperties) {
+		ChatProperties.AgentCache config = chatProperties.getAgentCache();
+		this.agentCache = CacheUtil.newLRUCache(config.getMaxSize(), config.getExpire());
+	}
+
+	public static String key(String type, String modelId, Collection<String> knowledgeIds, String systemPrompt,
+			String userPromptTemplate) {
+		String knowledge = knowledgeIds == null ? "" : String.join(",", new TreeSet<>(knowledgeIds));
+		return StrUtil.join(":", type, modelId, knowledge, hash(systemPrompt), hash(userPromptTemplate));
+	}
+
+	private static String hash(String text) {
+		return StrUtil.isEmpty(text) ? "" : DigestUtil.md5Hex(text);
+	}
+
+	public Agent get(String key, Supplier<Agent> builder) {
+		return agentCache.get(key, false, builder::get);
+	}
+
+	public void invalidateAll() {
+		log.info("clear agent cache, size: {}", agentCache.size());
+		agentCache.clear();
+	}
+
+	public int size() {
+		return agentCache.size();
+	}
+
+}
@@ -7,10 +7,10 @@ import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenCountEstimator;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.memory.TokenCounter;
 import org.libre.ai.modules.rag.entity.AigcKnowledge;
 import org.libre.ai.modules.rag.exception.ServiceException;
 import org.springframework.stereotype.Component;
@@ -35,9 +35,7 @@ public class EmbeddingProvider {
 	private final ModelStoreFactory modelStoreFactory;
 
 	public static DocumentSplitter splitter() {
-		HuggingFaceTokenCountEstimator tokenCountEstimator = new HuggingFaceTokenCountEstimator();
-		return new DocumentBySentenceSplitter(100, 0,
-				tokenCountEstimator);
+		return new DocumentBySentenceSplitter(100, 0, TokenCounter.estimator());
 	}
 
 	public EmbeddingModel getEmbeddingModel(List<String> knowledgeIds) {
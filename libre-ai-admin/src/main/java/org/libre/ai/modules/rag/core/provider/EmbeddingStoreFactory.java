@@ -8,20 +8,34 @@ import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.milvus.MilvusEmbeddingStore;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
 import dev.langchain4j.store.embedding.redis.RedisEmbeddingStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.libre.ai.modules.rag.core.consts.EmbedStoreEnum;
+import org.libre.ai.modules.rag.core.consts.QuantizationEnum;
+import org.libre.ai.modules.rag.core.embedding.LocalEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.flat.FlatEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.hnsw.HnswEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.mmap.MappedEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.quant.QuantizedEmbeddingStore;
 import org.libre.ai.modules.rag.entity.AigcEmbedStore;
+import org.libre.ai.modules.rag.properties.EmbeddingProperties;
 import org.libre.ai.modules.rag.service.AigcEmbedStoreService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * @author tycoding
@@ -38,10 +52,28 @@ public class EmbeddingStoreFactory {
 
 	private final Map<String, EmbeddingStore<TextSegment>> embedStoreMap = new ConcurrentHashMap<>();
 
+	private final EmbeddingProperties embeddingProperties;
+
+	private final MeterRegistry meterRegistry;
+
+	/**
+	 * 本地向量库按配置ID缓存，重新初始化时复用，避免重复加载索引文件
+	 */
+	private final Map<String, LocalEmbeddingStore> localStoreMap = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "local-embed-store-flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile boolean flusherStarted;
+
 	@Async
 	@PostConstruct
 	public void init() {
 		modelStore.clear();
+		startFlusher();
 
 		List<AigcEmbedStore> list = aigcEmbedStoreService.list();
 		list.forEach(embed -> {
@@ -86,6 +118,44 @@ public class EmbeddingStoreFactory {
 						.build();
 					embedStoreMap.put(embed.getId(), store);
 				}
+				if (EmbedStoreEnum.LOCAL.name().equalsIgnoreCase(embed.getProvider())) {
+					EmbeddingProperties.Local config = embeddingProperties.getLocal();
+					Path file = Path.of(config.getPath(), storeName(embed) + ".hnsw");
+					embedStoreMap.put(embed.getId(),
+							localStore(embed, file, () -> new HnswEmbeddingStore(file, embed.getDimension(),
+									config.getM(), config.getEfConstruction(), config.getEfSearch(),
+									config.getCompactRatio())));
+				}
+				if (EmbedStoreEnum.FLAT.name().equalsIgnoreCase(embed.getProvider())) {
+					EmbeddingProperties.Flat config = embeddingProperties.getFlat();
+					Path file = Path.of(config.getPath(), storeName(embed) + ".flat");
+					embedStoreMap.put(embed.getId(), localStore(embed, file,
+							() -> new FlatEmbeddingStore(file, embed.getDimension(), config.isSimd(),
+									config.getCompactRatio())));
+				}
+				if (EmbedStoreEnum.QUANTIZED.name().equalsIgnoreCase(embed.getProvider())) {
+					EmbeddingProperties.Quantized config = embeddingProperties.getQuantized();
+					QuantizationEnum quantization = StrUtil.isBlank(embed.getQuantization()) ? QuantizationEnum.INT8
+							: QuantizationEnum.valueOf(embed.getQuantization().toUpperCase());
+					// 量化方式变更时重新创建实例，编码由 .vec 文件重新计算
+					if (localStoreMap.get(embed.getId()) instanceof QuantizedEmbeddingStore existing
+							&& existing.quantization() != quantization) {
+						localStoreMap.remove(embed.getId()).close();
+					}
+					Path file = Path.of(config.getPath(), storeName(embed) + ".q");
+					embedStoreMap.put(embed.getId(),
+							localStore(embed, file,
+									() -> new QuantizedEmbeddingStore(file, embed.getDimension(), quantization,
+											config.getRescoreFactor(), config.getRecallSampleRate(),
+											config.getCompactRatio(), meterRegistry)));
+				}
+				if (EmbedStoreEnum.MMAP.name().equalsIgnoreCase(embed.getProvider())) {
+					EmbeddingProperties.Mmap config = embeddingProperties.getMmap();
+					Path dir = Path.of(config.getPath(), storeName(embed));
+					embedStoreMap.put(embed.getId(),
+							localStore(embed, dir, () -> new MappedEmbeddingStore(dir, embed.getDimension(),
+									config.getSegmentRecords(), config.getSegmentBytes(), config.getCompactRatio())));
+				}
 				modelStore.add(embed);
 			}
 			catch (Exception e) {
@@ -104,4 +174,52 @@ public class EmbeddingStoreFactory {
 		return embedStoreMap.containsKey(embeddingId);
 	}
 
+	private static String storeName(AigcEmbedStore embed) {
+		return StrUtil.blankToDefault(embed.getTableName(), embed.getId());
+	}
+
+	private LocalEmbeddingStore localStore(AigcEmbedStore embed, Path location,
+			Supplier<LocalEmbeddingStore> builder) {
+		LocalEmbeddingStore existing = localStoreMap.get(embed.getId());
+		if (existing != null && existing.matches(location, embed.getDimension())) {
+			return existing;
+		}
+		if (existing != null) {
+			existing.close();
+		}
+		LocalEmbeddingStore store = builder.get();
+		localStoreMap.put(embed.getId(), store);
+		return store;
+	}
+
+	private void startFlusher() {
+		if (flusherStarted) {
+			return;
+		}
+		flusherStarted = true;
+		long interval = embeddingProperties.getLocal().getFlushInterval();
+		flusher.scheduleWithFixedDelay(() -> forEachLocalStore(LocalEmbeddingStore::flush), interval, interval,
+				TimeUnit.MILLISECONDS);
+		long compactInterval = embeddingProperties.getMmap().getCompactInterval();
+		flusher.scheduleWithFixedDelay(() -> forEachLocalStore(LocalEmbeddingStore::compact), compactInterval,
+				compactInterval, TimeUnit.MILLISECONDS);
+	}
+
+	private void forEachLocalStore(Consumer<LocalEmbeddingStore> action) {
+		localStoreMap.forEach((id, store) -> {
+			try {
+				action.accept(store);
+			}
+			catch (Exception e) {
+				log.error("本地向量库维护失败：[{}]", id, e);
+			}
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		flusher.shutdownNow();
+		forEachLocalStore(LocalEmbeddingStore::close);
+	}
+
 }
@@ -5,6 +5,13 @@ import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.image.ImageModel;
 import lombok.AllArgsConstructor;
+import org.libre.ai.modules.rag.core.provider.limit.LimitedChatModel;
+import org.libre.ai.modules.rag.core.provider.limit.LimitedStreamingChatModel;
+import org.libre.ai.modules.rag.core.provider.limit.ModelConcurrencyLimiter;
+import org.libre.ai.modules.rag.core.provider.route.ModelRouteGroup;
+import org.libre.ai.modules.rag.core.provider.route.RoutingChatModel;
+import org.libre.ai.modules.rag.core.provider.route.RoutingStreamingChatModel;
+import org.libre.ai.modules.rag.properties.ChatProperties;
 import org.springframework.stereotype.Component;
 
 /**
@@ -17,17 +24,46 @@ public class ModelProvider {
 
 	private final ModelStoreFactory modelStoreFactory;
 
+	private final ModelConcurrencyLimiter modelConcurrencyLimiter;
+
+	private final ChatProperties chatProperties;
+
+	/**
+	 * 模型属于路由分组时，返回按延迟和错误率在分组成员间路由的模型
+	 */
 	public StreamingChatModel stream(String modelId) {
+		ModelRouteGroup group = modelStoreFactory.getStreamRouteGroup(modelId);
+		if (group != null) {
+			return new RoutingStreamingChatModel(group, this::streamMember, chatProperties.getRouting().isHedge());
+		}
+		return streamMember(modelId);
+	}
+
+	public ChatModel text(String modelId) {
+		ModelRouteGroup group = modelStoreFactory.getTextRouteGroup(modelId);
+		if (group != null) {
+			return new RoutingChatModel(group, this::textMember);
+		}
+		return textMember(modelId);
+	}
+
+	private StreamingChatModel streamMember(String modelId) {
 		StreamingChatModel streamingChatModel = modelStoreFactory.getStreamingChatModel(modelId);
 		if (ObjectUtil.isNotEmpty(streamingChatModel)) {
+			if (modelConcurrencyLimiter.enabled()) {
+				return new LimitedStreamingChatModel(modelId, streamingChatModel, modelConcurrencyLimiter);
+			}
 			return streamingChatModel;
 		}
 		throw new RuntimeException("没有匹配到模型，请检查模型配置！");
 	}
 
-	public ChatModel text(String modelId) {
+	private ChatModel textMember(String modelId) {
 		ChatModel chatLanguageModel = modelStoreFactory.getChatLanguageModel(modelId);
 		if (ObjectUtil.isNotEmpty(chatLanguageModel)) {
+			if (modelConcurrencyLimiter.enabled()) {
+				return new LimitedChatModel(modelId, chatLanguageModel, modelConcurrencyLimiter);
+			}
 			return chatLanguageModel;
 		}
 		throw new RuntimeException("没有匹配到模型，请检查模型配置！");
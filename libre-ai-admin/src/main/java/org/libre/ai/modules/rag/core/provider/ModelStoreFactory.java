@@ -1,26 +1,38 @@
 package org.libre.ai.modules.rag.core.provider;
 
 import cn.hutool.core.util.ObjectUtil;
+import cn.hutool.core.util.StrUtil;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.image.ImageModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.libre.ai.component.ModelTypeEnum;
 import org.libre.ai.modules.rag.core.consts.ModelConst;
+import org.libre.ai.modules.rag.core.embedding.CachingEmbeddingModel;
+import org.libre.ai.modules.rag.core.embedding.CoalescingEmbeddingModel;
+import org.libre.ai.modules.rag.core.embedding.EmbeddingCache;
+import org.libre.ai.modules.rag.core.embedding.onnx.LocalOnnxEmbeddingModel;
 import org.libre.ai.modules.rag.core.provider.build.ModelBuildHandler;
+import org.libre.ai.modules.rag.core.provider.route.ModelRouteGroup;
 import org.libre.ai.modules.rag.entity.AigcModel;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.properties.EmbeddingProperties;
 import org.libre.ai.modules.rag.service.AigcModelService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.Async;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * @author tycoding
@@ -36,6 +48,18 @@ public class ModelStoreFactory {
 	@Autowired
 	private List<ModelBuildHandler> modelBuildHandlers;
 
+	@Autowired
+	private ChatProperties chatProperties;
+
+	@Autowired
+	private EmbeddingCache embeddingCache;
+
+	@Autowired
+	private EmbeddingProperties embeddingProperties;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	private final List<AigcModel> modelStore = new ArrayList<>();
 
 	private final Map<String, StreamingChatModel> streamingChatMap = new ConcurrentHashMap<>();
@@ -46,6 +70,13 @@ public class ModelStoreFactory {
 
 	private final Map<String, ImageModel> imageModelMap = new ConcurrentHashMap<>();
 
+	/**
+	 * 模型ID -> 所在路由分组（流式、非流式分别统计延迟）
+	 */
+	private volatile Map<String, ModelRouteGroup> streamRouteGroups = Map.of();
+
+	private volatile Map<String, ModelRouteGroup> textRouteGroups = Map.of();
+
 	@Async
 	@PostConstruct
 	public void init() {
@@ -54,6 +85,8 @@ public class ModelStoreFactory {
 		chatLanguageMap.clear();
 		embeddingModelMap.clear();
 		imageModelMap.clear();
+		// 模型配置可能已变更（如向量维度），缓存的查询向量一并失效
+		embeddingCache.invalidateAll();
 
 		List<AigcModel> list = aigcModelService.list();
 		list.forEach(model -> {
@@ -65,6 +98,8 @@ public class ModelStoreFactory {
 			embeddingHandler(model);
 			imageHandler(model);
 		});
+		routeGroupHandler(list);
+		modelBuildHandlers.forEach(x -> x.retain(list));
 
 		modelStore.forEach(i -> log.info("已成功注册模型：{} -- {}， 模型配置：{}", i.getProvider(), i.getType(), i));
 	}
@@ -93,6 +128,34 @@ public class ModelStoreFactory {
 		}
 	}
 
+	/**
+	 * 同一 routeGroup 下成功注册的对话模型（至少两个）组成路由分组
+	 */
+	private void routeGroupHandler(List<AigcModel> list) {
+		Map<String, ModelRouteGroup> streamGroups = new HashMap<>();
+		Map<String, ModelRouteGroup> textGroups = new HashMap<>();
+		if (chatProperties.getRouting().isEnabled()) {
+			Map<String, List<String>> groups = list.stream()
+				.filter(m -> StrUtil.isNotBlank(m.getRouteGroup()) && streamingChatMap.containsKey(m.getId()))
+				.collect(Collectors.groupingBy(AigcModel::getRouteGroup,
+						Collectors.mapping(AigcModel::getId, Collectors.toList())));
+			groups.forEach((name, ids) -> {
+				if (ids.size() < 2) {
+					return;
+				}
+				ModelRouteGroup streamGroup = new ModelRouteGroup(name, ids, chatProperties.getRouting());
+				ModelRouteGroup textGroup = new ModelRouteGroup(name, ids, chatProperties.getRouting());
+				ids.forEach(id -> {
+					streamGroups.put(id, streamGroup);
+					textGroups.put(id, textGroup);
+				});
+				log.info("已注册模型路由分组：{} -> {}", name, ids);
+			});
+		}
+		streamRouteGroups = streamGroups;
+		textRouteGroups = textGroups;
+	}
+
 	private void embeddingHandler(AigcModel model) {
 		try {
 			String type = model.getType();
@@ -102,6 +165,10 @@ public class ModelStoreFactory {
 			modelBuildHandlers.forEach(x -> {
 				EmbeddingModel embeddingModel = x.buildEmbedding(model);
 				if (ObjectUtil.isNotEmpty(embeddingModel)) {
+					embeddingModel = coalesce(model, embeddingModel);
+					if (embeddingCache.enabled()) {
+						embeddingModel = new CachingEmbeddingModel(model.getId(), embeddingModel, embeddingCache);
+					}
 					embeddingModelMap.put(model.getId(), embeddingModel);
 					modelStore.add(model);
 				}
@@ -113,6 +180,23 @@ public class ModelStoreFactory {
 		}
 	}
 
+	/**
+	 * 合并并发的单条向量化请求；本地 ONNX 模型在推理队列中已经合并批次，不再包装
+	 */
+	private EmbeddingModel coalesce(AigcModel model, EmbeddingModel embeddingModel) {
+		EmbeddingProperties.Coalesce config = embeddingProperties.getCoalesce().model(model.getId());
+		if (!config.isEnabled() || embeddingModel instanceof LocalOnnxEmbeddingModel) {
+			return embeddingModel;
+		}
+		DistributionSummary batchSizes = DistributionSummary.builder("langchat.embedding.coalesce.batch")
+			.description("合并后单次发送的向量化请求数量")
+			.tag("model", model.getId())
+			.publishPercentileHistogram()
+			.maximumExpectedValue((double) config.getMaxSize())
+			.register(meterRegistry);
+		return new CoalescingEmbeddingModel(embeddingModel, config.getMaxWait(), config.getMaxSize(), batchSizes);
+	}
+
 	private void imageHandler(AigcModel model) {
 		try {
 			String type = model.getType();
@@ -136,6 +220,14 @@ public class ModelStoreFactory {
 		return streamingChatMap.get(modelId);
 	}
 
+	public ModelRouteGroup getStreamRouteGroup(String modelId) {
+		return streamRouteGroups.get(modelId);
+	}
+
+	public ModelRouteGroup getTextRouteGroup(String modelId) {
+		return textRouteGroups.get(modelId);
+	}
+
 	public boolean containsStreamingChatModel(String modelId) {
 		return streamingChatMap.containsKey(modelId);
 	}
@@ -20,10 +20,13 @@ public class ProviderListener {
 
 	private final EmbeddingStoreFactory embeddingStoreInitialize;
 
+	private final AgentStoreFactory agentStoreFactory;
+
 	@EventListener
 	public void providerEvent(ProviderRefreshEvent event) {
 		log.info("refresh provider beans begin......");
 		providerInitialize.init();
+		agentStoreFactory.invalidateAll();
 		log.info("refresh provider beans success......");
 	}
 
@@ -31,6 +34,7 @@ public class ProviderListener {
 	public void providerEvent(EmbeddingRefreshEvent event) {
 		log.info("refresh embedding beans begin......");
 		embeddingStoreInitialize.init();
+		agentStoreFactory.invalidateAll();
 		log.info("refresh embedding beans success......");
 	}
 
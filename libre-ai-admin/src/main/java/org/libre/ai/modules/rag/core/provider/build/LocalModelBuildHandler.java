@@ -0,0 +1,167 @@
+package org.libre.ai.modules.rag.core.provider.build;
+
+import cn.hutool.core.util.StrUtil;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.image.ImageModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.component.ModelTypeEnum;
+import org.libre.ai.modules.rag.core.consts.ProviderEnum;
+import org.libre.ai.modules.rag.core.embedding.onnx.LocalOnnxEmbeddingModel;
+import org.libre.ai.modules.rag.core.embedding.onnx.OnnxBiEncoder;
+import org.libre.ai.modules.rag.entity.AigcModel;
+import org.libre.ai.modules.rag.exception.ServiceException;
+import org.libre.ai.modules.rag.properties.EmbeddingProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 进程内 ONNX 向量模型的构建
+ *
+ * 模型名称为模型目录（相对于 langchat.embedding.onnx.path 或绝对路径），目录下优先使用量化模型 model_quantized.onnx，其次 model.onnx，分词器为同目录的
+ * tokenizer.json；也可以直接填写 .onnx 文件路径。模型配置每次变更都会重新构建所有模型，模型文件未变化时复用已加载的实例，已从配置中删除的模型被关闭。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class LocalModelBuildHandler implements ModelBuildHandler {
+
+	private static final List<String> MODEL_FILES = List.of("model_quantized.onnx", "model.onnx",
+			"onnx/model_quantized.onnx", "onnx/model.onnx");
+
+	private final EmbeddingProperties.Onnx properties;
+
+	private final MeterRegistry meterRegistry;
+
+	private final Map<String, Loaded> models = new ConcurrentHashMap<>();
+
+	public LocalModelBuildHandler(EmbeddingProperties embeddingProperties, MeterRegistry meterRegistry) {
+		this.properties = embeddingProperties.getOnnx();
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	public boolean whetherCurrentModel(AigcModel model) {
+		return ProviderEnum.LOCAL.name().equals(model.getProvider());
+	}
+
+	@Override
+	public boolean basicCheck(AigcModel model) {
+		if (StrUtil.isBlank(model.getModel())) {
+			throw new ServiceException("本地向量模型缺少模型路径配置");
+		}
+		return true;
+	}
+
+	@Override
+	public StreamingChatModel buildStreamingChat(AigcModel model) {
+		return null;
+	}
+
+	@Override
+	public ChatModel buildChatLanguageModel(AigcModel model) {
+		return null;
+	}
+
+	@Override
+	public EmbeddingModel buildEmbedding(AigcModel model) {
+		if (!whetherCurrentModel(model)) {
+			return null;
+		}
+		if (!basicCheck(model)) {
+			return null;
+		}
+
+		Path modelFile = modelFile(model.getModel());
+		Path tokenizerFile = modelFile.resolveSibling("tokenizer.json");
+		if (modelFile.getParent() != null && "onnx".equals(modelFile.getParent().getFileName().toString())
+				&& !Files.exists(tokenizerFile)) {
+			tokenizerFile = modelFile.getParent().resolveSibling("tokenizer.json");
+		}
+		if (!Files.exists(tokenizerFile)) {
+			throw new ServiceException("没有找到本地向量模型的分词器：" + tokenizerFile);
+		}
+
+		String signature = modelFile.toAbsolutePath() + "@" + modelFile.toFile().lastModified();
+		Path tokenizer = tokenizerFile;
+		return models.compute(model.getId(), (id, loaded) -> {
+			if (loaded != null && loaded.signature().equals(signature)) {
+				return loaded;
+			}
+			if (loaded != null) {
+				loaded.model().close();
+			}
+			OnnxBiEncoder encoder = new OnnxBiEncoder(modelFile, tokenizer, properties.getMaxLength(),
+					properties.getPooling());
+			LocalOnnxEmbeddingModel embeddingModel = new LocalOnnxEmbeddingModel(model.getName(), encoder,
+					properties.getThreads(), properties.getMaxBatch(), properties.getQueueCapacity(), meterRegistry);
+			log.info("已加载本地向量模型：{} -> {}", model.getName(), modelFile);
+			return new Loaded(signature, embeddingModel);
+		}).model();
+	}
+
+	@Override
+	public ImageModel buildImage(AigcModel model) {
+		return null;
+	}
+
+	@Override
+	public void retain(List<AigcModel> current) {
+		Set<String> ids = current.stream()
+			.filter(model -> ModelTypeEnum.EMBEDDING.name().equals(model.getType()) && whetherCurrentModel(model))
+			.map(AigcModel::getId)
+			.collect(Collectors.toSet());
+		for (String id : List.copyOf(models.keySet())) {
+			if (!ids.contains(id)) {
+				models.computeIfPresent(id, (key, loaded) -> {
+					loaded.model().close();
+					log.info("已关闭本地向量模型：{}", key);
+					return null;
+				});
+			}
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		models.values().forEach(loaded -> loaded.model().close());
+		models.clear();
+	}
+
+	private Path modelFile(String name) {
+		Path location = Path.of(name);
+		if (!location.isAbsolute()) {
+			location = Path.of(properties.getPath()).resolve(name);
+		}
+		if (!Files.isDirectory(location)) {
+			if (Files.exists(location)) {
+				return location;
+			}
+			throw new ServiceException("没有找到本地向量模型：" + location);
+		}
+		for (String file : MODEL_FILES) {
+			Path candidate = location.resolve(file.replace('/', File.separatorChar));
+			if (Files.exists(candidate)) {
+				return candidate;
+			}
+		}
+		throw new ServiceException("本地向量模型目录下没有 .onnx 模型文件：" + location);
+	}
+
+	private record Loaded(String signature, LocalOnnxEmbeddingModel model) {
+	}
+
+}
@@ -6,6 +6,8 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.image.ImageModel;
 import org.libre.ai.modules.rag.entity.AigcModel;
 
+import java.util.List;
+
 /**
  * @author GB
  * @since 2024-08-18 09:57
@@ -42,4 +44,10 @@ public interface ModelBuildHandler {
 	 */
 	ImageModel buildImage(AigcModel model);
 
+	/**
+	 * 模型配置全部重新构建后调用，释放已不在配置中的模型持有的资源
+	 */
+	default void retain(List<AigcModel> models) {
+	}
+
 }
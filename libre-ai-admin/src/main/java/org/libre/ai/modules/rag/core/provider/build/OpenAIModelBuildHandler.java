@@ -12,6 +12,7 @@ import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.libre.ai.modules.rag.core.consts.ProviderEnum;
+import org.libre.ai.modules.rag.core.stream.CancellableHttpClientBuilder;
 import org.libre.ai.modules.rag.entity.AigcModel;
 import org.libre.ai.modules.rag.enums.ChatErrorEnum;
 import org.libre.ai.modules.rag.exception.ServiceException;
@@ -68,6 +69,7 @@ public class OpenAIModelBuildHandler implements ModelBuildHandler {
 			.logResponses(true)
 			.topP(model.getTopP())
 			.timeout(Duration.ofMinutes(10))
+			.httpClientBuilder(new CancellableHttpClientBuilder())
 			.build();
 	}
 
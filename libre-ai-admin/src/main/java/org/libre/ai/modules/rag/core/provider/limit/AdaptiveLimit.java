@@ -0,0 +1,155 @@
+package org.libre.ai.modules.rag.core.provider.limit;
+
+import org.libre.ai.modules.rag.properties.ChatProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个模型的自适应并发上限（AIMD）
+ *
+ * 成功时上限按 1/limit 递增（每轮约 +1），模型返回 429 或超时时按比例缩小。一次过载通常使同时在执行的多个请求一起失败，
+ * 因此缩小后、缩小时仍在执行的请求全部结束前不再缩小，每轮最多缩小一次。达到上限后的请求排队等待，超过排队数量或等待超时则拒绝。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class AdaptiveLimit {
+
+	public enum Outcome {
+
+		SUCCESS,
+
+		/**
+		 * 429、超时等过载信号
+		 */
+		DROPPED,
+
+		/**
+		 * 其他错误，不调整上限
+		 */
+		IGNORED
+
+	}
+
+	private final ChatProperties.ModelLimit properties;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition available = lock.newCondition();
+
+	private double limit;
+
+	private int inFlight;
+
+	private int queued;
+
+	/**
+	 * 上次缩小上限时仍在执行的请求中尚未结束的数量，归零前的过载信号不再缩小上限
+	 */
+	private int dropWindow;
+
+	public AdaptiveLimit(ChatProperties.ModelLimit properties) {
+		this.properties = properties;
+		this.limit = properties.getInitialLimit();
+	}
+
+	/**
+	 * 获取执行许可
+	 * @return 排队已满或等待超时返回 false
+	 */
+	public boolean acquire() throws InterruptedException {
+		lock.lock();
+		try {
+			if (inFlight < (int) limit) {
+				inFlight++;
+				return true;
+			}
+			if (queued >= properties.getMaxQueued()) {
+				return false;
+			}
+
+			queued++;
+			try {
+				long nanos = TimeUnit.MILLISECONDS.toNanos(properties.getQueueTimeout());
+				while (inFlight >= (int) limit) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = available.awaitNanos(nanos);
+				}
+				inFlight++;
+				return true;
+			}
+			finally {
+				queued--;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void release(Outcome outcome) {
+		lock.lock();
+		try {
+			inFlight--;
+			boolean inDropWindow = dropWindow > 0;
+			if (inDropWindow) {
+				dropWindow--;
+			}
+			switch (outcome) {
+				case SUCCESS -> {
+					// 只有并发接近上限时才说明上限在起作用，此时才上调
+					if (inFlight + 1 >= limit / 2) {
+						limit = Math.min(properties.getMaxLimit(), limit + 1.0 / limit);
+					}
+				}
+				case DROPPED -> {
+					if (!inDropWindow) {
+						limit = Math.max(properties.getMinLimit(), limit * properties.getBackoffRatio());
+						dropWindow = inFlight;
+					}
+				}
+				case IGNORED -> {
+				}
+			}
+			available.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int getQueued() {
+		lock.lock();
+		try {
+			return queued;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package org.libre.ai.modules.rag.core.provider.limit;
+
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.util.Set;
+
+/**
+ * 受 {@link ModelConcurrencyLimiter} 限制的 ChatModel
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class LimitedChatModel implements ChatModel {
+
+	private final String modelId;
+
+	private final ChatModel delegate;
+
+	private final ModelConcurrencyLimiter limiter;
+
+	public LimitedChatModel(String modelId, ChatModel delegate, ModelConcurrencyLimiter limiter) {
+		this.modelId = modelId;
+		this.delegate = delegate;
+		this.limiter = limiter;
+	}
+
+	@Override
+	public ChatResponse chat(ChatRequest chatRequest) {
+		AdaptiveLimit limit = limiter.acquire(modelId);
+		Throwable error = null;
+		try {
+			return delegate.chat(chatRequest);
+		}
+		catch (RuntimeException e) {
+			error = e;
+			throw e;
+		}
+		finally {
+			limiter.release(modelId, limit, error);
+		}
+	}
+
+	@Override
+	public ChatRequestParameters defaultRequestParameters() {
+		return delegate.defaultRequestParameters();
+	}
+
+	@Override
+	public Set<Capability> supportedCapabilities() {
+		return delegate.supportedCapabilities();
+	}
+
+	@Override
+	public ModelProvider provider() {
+		return delegate.provider();
+	}
+
+}
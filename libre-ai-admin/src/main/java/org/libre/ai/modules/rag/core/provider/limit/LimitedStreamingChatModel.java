@@ -0,0 +1,102 @@
+package org.libre.ai.modules.rag.core.provider.limit;
+
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import org.libre.ai.modules.rag.core.stream.StreamCancellation;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 受 {@link ModelConcurrencyLimiter} 限制的 StreamingChatModel
+ *
+ * 许可在流式响应完成、出错或被取消时归还，而不是在 chat 方法返回时归还。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class LimitedStreamingChatModel implements StreamingChatModel {
+
+	private final String modelId;
+
+	private final StreamingChatModel delegate;
+
+	private final ModelConcurrencyLimiter limiter;
+
+	public LimitedStreamingChatModel(String modelId, StreamingChatModel delegate, ModelConcurrencyLimiter limiter) {
+		this.modelId = modelId;
+		this.delegate = delegate;
+		this.limiter = limiter;
+	}
+
+	@Override
+	public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+		AdaptiveLimit limit = limiter.acquire(modelId);
+		AtomicBoolean released = new AtomicBoolean(false);
+		Runnable cancelled = () -> {
+			if (released.compareAndSet(false, true)) {
+				limit.release(AdaptiveLimit.Outcome.IGNORED);
+			}
+		};
+		StreamCancellation cancellation = StreamCancellation.current();
+		if (cancellation != null) {
+			cancellation.onCancel(cancelled);
+		}
+
+		try {
+			delegate.chat(chatRequest, new StreamingChatResponseHandler() {
+
+				@Override
+				public void onPartialResponse(String partialResponse) {
+					handler.onPartialResponse(partialResponse);
+				}
+
+				@Override
+				public void onCompleteResponse(ChatResponse completeResponse) {
+					release(null);
+					handler.onCompleteResponse(completeResponse);
+				}
+
+				@Override
+				public void onError(Throwable error) {
+					release(error);
+					handler.onError(error);
+				}
+
+				private void release(Throwable error) {
+					if (released.compareAndSet(false, true)) {
+						limiter.release(modelId, limit, error);
+					}
+				}
+
+			});
+		}
+		catch (RuntimeException e) {
+			if (released.compareAndSet(false, true)) {
+				limiter.release(modelId, limit, e);
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public ChatRequestParameters defaultRequestParameters() {
+		return delegate.defaultRequestParameters();
+	}
+
+	@Override
+	public Set<Capability> supportedCapabilities() {
+		return delegate.supportedCapabilities();
+	}
+
+	@Override
+	public ModelProvider provider() {
+		return delegate.provider();
+	}
+
+}
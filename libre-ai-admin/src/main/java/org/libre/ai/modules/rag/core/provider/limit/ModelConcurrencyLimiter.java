@@ -0,0 +1,117 @@
+package org.libre.ai.modules.rag.core.provider.limit;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RateLimitException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.exception.ServiceException;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按模型隔离的并发限制
+ *
+ * 每个模型一个 {@link AdaptiveLimit}，某个应用的突发请求只会占满自己所用模型的并发，不会因为触发服务商限流而影响其他模型。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class ModelConcurrencyLimiter {
+
+	private final ChatProperties.ModelLimit properties;
+
+	private final MeterRegistry meterRegistry;
+
+	private final Map<String, Entry> limits = new ConcurrentHashMap<>();
+
+	public ModelConcurrencyLimiter(ChatProperties chatProperties, MeterRegistry meterRegistry) {
+		this.properties = chatProperties.getModelLimit();
+		this.meterRegistry = meterRegistry;
+	}
+
+	public boolean enabled() {
+		return properties.isEnabled();
+	}
+
+	/**
+	 * 获取模型的执行许可，无法获取时抛出 429 异常
+	 */
+	public AdaptiveLimit acquire(String modelId) {
+		Entry entry = limits.computeIfAbsent(modelId, this::create);
+		boolean acquired;
+		try {
+			acquired = entry.limit.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		}
+		if (!acquired) {
+			entry.rejected.increment();
+			log.warn("模型并发已满，拒绝请求：modelId={}, limit={}, inFlight={}", modelId, entry.limit.getLimit(),
+					entry.limit.getInFlight());
+			throw new ServiceException(HttpStatus.TOO_MANY_REQUESTS.value(), "模型请求繁忙，请稍后再试");
+		}
+		return entry.limit;
+	}
+
+	public void release(String modelId, AdaptiveLimit limit, Throwable error) {
+		AdaptiveLimit.Outcome outcome = classify(error);
+		if (outcome == AdaptiveLimit.Outcome.DROPPED) {
+			limits.get(modelId).dropped.increment();
+		}
+		limit.release(outcome);
+	}
+
+	static AdaptiveLimit.Outcome classify(Throwable error) {
+		for (Throwable e = error; e != null; e = e.getCause()) {
+			if (e instanceof RateLimitException || e instanceof dev.langchain4j.exception.TimeoutException
+					|| e instanceof TimeoutException || e instanceof HttpTimeoutException
+					|| e instanceof SocketTimeoutException) {
+				return AdaptiveLimit.Outcome.DROPPED;
+			}
+			if (e instanceof HttpException http && http.statusCode() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+				return AdaptiveLimit.Outcome.DROPPED;
+			}
+		}
+		return error == null ? AdaptiveLimit.Outcome.SUCCESS : AdaptiveLimit.Outcome.IGNORED;
+	}
+
+	private Entry create(String modelId) {
+		AdaptiveLimit limit = new AdaptiveLimit(properties);
+		Gauge.builder("langchat.model.limit", limit, AdaptiveLimit::getLimit)
+			.description("模型当前的自适应并发上限")
+			.tag("model", modelId)
+			.register(meterRegistry);
+		Gauge.builder("langchat.model.inflight", limit, AdaptiveLimit::getInFlight)
+			.tag("model", modelId)
+			.register(meterRegistry);
+		Gauge.builder("langchat.model.queued", limit, AdaptiveLimit::getQueued)
+			.tag("model", modelId)
+			.register(meterRegistry);
+		Counter rejected = Counter.builder("langchat.model.rejected")
+			.description("因模型并发已满被拒绝的请求数量")
+			.tag("model", modelId)
+			.register(meterRegistry);
+		Counter dropped = Counter.builder("langchat.model.dropped")
+			.description("模型返回限流或超时的请求数量")
+			.tag("model", modelId)
+			.register(meterRegistry);
+		return new Entry(limit, rejected, dropped);
+	}
+
+	private record Entry(AdaptiveLimit limit, Counter rejected, Counter dropped) {
+	}
+
+}
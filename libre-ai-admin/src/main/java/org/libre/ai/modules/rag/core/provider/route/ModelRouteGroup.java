@@ -0,0 +1,184 @@
+package org.libre.ai.modules.rag.core.provider.route;
+
+import org.libre.ai.modules.rag.properties.ChatProperties;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 模型路由分组
+ *
+ * 分组内的模型视为同一个逻辑模型。每个成员记录首字延迟和错误率的指数移动平均，请求路由到健康成员中首字延迟最低的一个；
+ * 少量请求随机分配给其他成员，以便持续更新它们的统计。分组同时保留最近的首字延迟样本，用于计算对冲请求的触发时间（p95）。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class ModelRouteGroup {
+
+	private static final int SAMPLE_SIZE = 256;
+
+	private static final int MIN_SAMPLES = 20;
+
+	private static final int P95_REFRESH = 16;
+
+	private final String name;
+
+	private final List<Member> members;
+
+	private final ChatProperties.Routing properties;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final long[] samples = new long[SAMPLE_SIZE];
+
+	private int sampleCount;
+
+	private int sampleIndex;
+
+	private long p95 = -1;
+
+	public ModelRouteGroup(String name, List<String> memberIds, ChatProperties.Routing properties) {
+		this.name = name;
+		this.members = memberIds.stream().map(Member::new).toList();
+		this.properties = properties;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<Member> getMembers() {
+		return members;
+	}
+
+	/**
+	 * 选择一个成员
+	 * @param exclude 已经尝试过的成员
+	 * @return 没有可选成员时返回 null
+	 */
+	public Member select(Collection<Member> exclude) {
+		List<Member> candidates = members.stream().filter(m -> !exclude.contains(m)).toList();
+		if (candidates.isEmpty()) {
+			return null;
+		}
+
+		List<Member> healthy = candidates.stream()
+			.filter(m -> m.errorRate() < properties.getMaxErrorRate())
+			.toList();
+		if (healthy.isEmpty()) {
+			// 全部不健康时选错误率最低的，避免整个分组不可用
+			return candidates.stream()
+				.min((a, b) -> Double.compare(a.errorRate(), b.errorRate()))
+				.orElse(null);
+		}
+		// 少量请求随机分配（包括不健康的成员），让统计能够恢复
+		if (candidates.size() > 1 && ThreadLocalRandom.current().nextDouble() < properties.getExploreRatio()) {
+			return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+		}
+		// 还没有样本的成员优先，尽快获得统计
+		return healthy.stream().min((a, b) -> Double.compare(a.ttft(), b.ttft())).orElse(null);
+	}
+
+	/**
+	 * 对冲请求的触发时间（毫秒），样本不足时返回 -1
+	 */
+	public long hedgeDelay() {
+		lock.lock();
+		try {
+			if (sampleCount < MIN_SAMPLES) {
+				return -1;
+			}
+			if (p95 < 0) {
+				long[] sorted = Arrays.copyOf(samples, sampleCount);
+				Arrays.sort(sorted);
+				p95 = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+			}
+			return Math.max(p95, properties.getMinHedgeDelay());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void recordSuccess(Member member, long ttftMillis) {
+		member.update(ttftMillis, 0);
+		lock.lock();
+		try {
+			samples[sampleIndex] = ttftMillis;
+			sampleIndex = (sampleIndex + 1) % SAMPLE_SIZE;
+			sampleCount = Math.min(sampleCount + 1, SAMPLE_SIZE);
+			if (sampleIndex % P95_REFRESH == 0) {
+				p95 = -1;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void recordError(Member member) {
+		member.update(-1, 1);
+	}
+
+	public class Member {
+
+		private final String modelId;
+
+		private final ReentrantLock memberLock = new ReentrantLock();
+
+		private double ttft;
+
+		private double errorRate;
+
+		private boolean sampled;
+
+		Member(String modelId) {
+			this.modelId = modelId;
+		}
+
+		public String getModelId() {
+			return modelId;
+		}
+
+		double ttft() {
+			memberLock.lock();
+			try {
+				return sampled ? ttft : 0;
+			}
+			finally {
+				memberLock.unlock();
+			}
+		}
+
+		double errorRate() {
+			memberLock.lock();
+			try {
+				return errorRate;
+			}
+			finally {
+				memberLock.unlock();
+			}
+		}
+
+		private void update(long ttftMillis, int error) {
+			double alpha = properties.getAlpha();
+			memberLock.lock();
+			try {
+				errorRate += alpha * (error - errorRate);
+				if (ttftMillis >= 0) {
+					ttft = sampled ? ttft + alpha * (ttftMillis - ttft) : ttftMillis;
+					sampled = true;
+				}
+			}
+			finally {
+				memberLock.unlock();
+			}
+		}
+
+	}
+
+}
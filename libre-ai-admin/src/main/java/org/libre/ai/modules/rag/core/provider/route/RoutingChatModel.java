@@ -0,0 +1,68 @@
+package org.libre.ai.modules.rag.core.provider.route;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 按路由分组选择模型的 ChatModel
+ *
+ * 非流式请求没有首字延迟，以完整响应时间作为延迟统计；出错时依次切换到分组中的其他成员。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class RoutingChatModel implements ChatModel {
+
+	private final ModelRouteGroup group;
+
+	private final Function<String, ChatModel> resolver;
+
+	public RoutingChatModel(ModelRouteGroup group, Function<String, ChatModel> resolver) {
+		this.group = group;
+		this.resolver = resolver;
+	}
+
+	@Override
+	public ChatResponse chat(ChatRequest chatRequest) {
+		List<ModelRouteGroup.Member> tried = new ArrayList<>();
+		RuntimeException last = null;
+		ModelRouteGroup.Member member;
+		while ((member = group.select(tried)) != null) {
+			tried.add(member);
+			long start = System.nanoTime();
+			try {
+				ChatResponse response = resolver.apply(member.getModelId()).chat(chatRequest);
+				group.recordSuccess(member, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				return response;
+			}
+			catch (RuntimeException e) {
+				group.recordError(member);
+				log.warn("route group {} model {} failed: {}", group.getName(), member.getModelId(), e.getMessage());
+				last = e;
+			}
+		}
+		throw last != null ? last : new IllegalStateException("路由分组 " + group.getName() + " 没有可用的模型");
+	}
+
+	@Override
+	public ChatRequestParameters defaultRequestParameters() {
+		return resolver.apply(group.getMembers().getFirst().getModelId()).defaultRequestParameters();
+	}
+
+	@Override
+	public Set<Capability> supportedCapabilities() {
+		return resolver.apply(group.getMembers().getFirst().getModelId()).supportedCapabilities();
+	}
+
+}
@@ -0,0 +1,295 @@
+package org.libre.ai.modules.rag.core.provider.route;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.stream.StreamCancellation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 按路由分组选择模型的 StreamingChatModel
+ *
+ * 请求发往分组中最快的健康成员。开启对冲时，如果首字延迟超过分组的 p95，向另一个成员再发一次请求，先返回首字的请求胜出，另一个被取消。
+ * 首字之前出错时自动切换到下一个成员。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class RoutingStreamingChatModel implements StreamingChatModel {
+
+	private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "model-hedge-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ModelRouteGroup group;
+
+	private final Function<String, StreamingChatModel> resolver;
+
+	private final boolean hedge;
+
+	public RoutingStreamingChatModel(ModelRouteGroup group, Function<String, StreamingChatModel> resolver,
+			boolean hedge) {
+		this.group = group;
+		this.resolver = resolver;
+		this.hedge = hedge;
+	}
+
+	@Override
+	public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+		ModelRouteGroup.Member first = group.select(List.of());
+		Call call = new Call(chatRequest, handler);
+		StreamCancellation parent = StreamCancellation.current();
+		if (parent != null) {
+			parent.onCancel(call::cancel);
+		}
+		call.start(first);
+
+		long delay = hedge ? group.hedgeDelay() : -1;
+		if (delay > 0 && group.getMembers().size() > 1) {
+			call.hedgeTask = HEDGE_TIMER.schedule(() -> Thread.ofVirtual().name("model-hedge").start(call::hedge),
+					delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public ChatRequestParameters defaultRequestParameters() {
+		return model(group.getMembers().getFirst()).defaultRequestParameters();
+	}
+
+	@Override
+	public Set<Capability> supportedCapabilities() {
+		return model(group.getMembers().getFirst()).supportedCapabilities();
+	}
+
+	private StreamingChatModel model(ModelRouteGroup.Member member) {
+		return resolver.apply(member.getModelId());
+	}
+
+	/**
+	 * 一次请求，可能包含主请求、对冲请求和失败切换请求
+	 */
+	private class Call {
+
+		private final ChatRequest request;
+
+		private final StreamingChatResponseHandler handler;
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final List<Attempt> attempts = new ArrayList<>();
+
+		private Attempt winner;
+
+		private boolean finished;
+
+		private volatile ScheduledFuture<?> hedgeTask;
+
+		Call(ChatRequest request, StreamingChatResponseHandler handler) {
+			this.request = request;
+			this.handler = handler;
+		}
+
+		void start(ModelRouteGroup.Member member) {
+			if (member == null) {
+				finish(new IllegalStateException("路由分组 " + group.getName() + " 没有可用的模型"));
+				return;
+			}
+			Attempt attempt = new Attempt(member);
+			lock.lock();
+			try {
+				if (finished) {
+					return;
+				}
+				attempts.add(attempt);
+			}
+			finally {
+				lock.unlock();
+			}
+			log.debug("route group {} -> model {}", group.getName(), member.getModelId());
+			try {
+				attempt.cancellation.bind(() -> model(member).chat(request, attempt));
+			}
+			catch (RuntimeException e) {
+				attempt.onError(e);
+			}
+		}
+
+		void hedge() {
+			ModelRouteGroup.Member member;
+			lock.lock();
+			try {
+				if (finished || winner != null || attempts.size() != 1) {
+					return;
+				}
+				member = group.select(attempts.stream().map(a -> a.member).toList());
+			}
+			finally {
+				lock.unlock();
+			}
+			if (member != null) {
+				log.debug("route group {} hedge -> model {}", group.getName(), member.getModelId());
+				start(member);
+			}
+		}
+
+		void cancel() {
+			lock.lock();
+			try {
+				finished = true;
+			}
+			finally {
+				lock.unlock();
+			}
+			cancelOthers(null);
+		}
+
+		/**
+		 * 第一个返回内容的请求胜出
+		 */
+		boolean claim(Attempt attempt) {
+			lock.lock();
+			try {
+				if (winner == null && !finished) {
+					winner = attempt;
+				}
+				if (winner != attempt) {
+					return false;
+				}
+			}
+			finally {
+				lock.unlock();
+			}
+			cancelOthers(attempt);
+			return true;
+		}
+
+		void failed(Attempt attempt, Throwable error) {
+			ModelRouteGroup.Member next = null;
+			lock.lock();
+			try {
+				if (finished) {
+					return;
+				}
+				if (winner == attempt) {
+					finished = true;
+				}
+				else if (winner == null) {
+					attempt.failed = true;
+					if (attempts.stream().anyMatch(a -> !a.failed)) {
+						// 还有其他请求在进行中，等待它的结果
+						return;
+					}
+					next = group.select(attempts.stream().map(a -> a.member).toList());
+					if (next == null) {
+						finished = true;
+					}
+				}
+				else {
+					return;
+				}
+			}
+			finally {
+				lock.unlock();
+			}
+
+			if (next != null) {
+				log.warn("route group {} model {} failed, switch to {}: {}", group.getName(),
+						attempt.member.getModelId(), next.getModelId(), error.getMessage());
+				start(next);
+				return;
+			}
+			finish(error);
+		}
+
+		private void finish(Throwable error) {
+			if (hedgeTask != null) {
+				hedgeTask.cancel(false);
+			}
+			handler.onError(error);
+		}
+
+		private void cancelOthers(Attempt keep) {
+			if (hedgeTask != null) {
+				hedgeTask.cancel(false);
+			}
+			List<Attempt> others;
+			lock.lock();
+			try {
+				others = attempts.stream().filter(a -> a != keep).toList();
+			}
+			finally {
+				lock.unlock();
+			}
+			others.forEach(a -> a.cancellation.cancel());
+		}
+
+		private class Attempt implements StreamingChatResponseHandler {
+
+			private final ModelRouteGroup.Member member;
+
+			private final StreamCancellation cancellation = StreamCancellation.untracked();
+
+			private final long start = System.nanoTime();
+
+			private boolean claimed;
+
+			private boolean failed;
+
+			Attempt(ModelRouteGroup.Member member) {
+				this.member = member;
+			}
+
+			@Override
+			public void onPartialResponse(String partialResponse) {
+				if (!claimed) {
+					if (!claim(this)) {
+						return;
+					}
+					claimed = true;
+					group.recordSuccess(member, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				}
+				handler.onPartialResponse(partialResponse);
+			}
+
+			@Override
+			public void onCompleteResponse(ChatResponse completeResponse) {
+				if (!claimed) {
+					if (!claim(this)) {
+						return;
+					}
+					claimed = true;
+					group.recordSuccess(member, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				}
+				handler.onCompleteResponse(completeResponse);
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				if (cancellation.isCancelled()) {
+					return;
+				}
+				group.recordError(member);
+				failed(this, error);
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.ReRankingContentAggregator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.properties.RetrievalProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 检索结果的交叉编码器重排
+ *
+ * 启用后检索阶段多召回一些候选，由本地 CPU 上运行的交叉编码器逐个对查询和切片打分，只把得分最高的几条发送给模型，减少提示词 Token 和模型响应时间。
+ * 推理在有界线程池中执行，队列满时由调用线程执行。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class CrossEncoderReranker {
+
+	private final RetrievalProperties.Rerank properties;
+
+	private final ThreadPoolExecutor executor;
+
+	private final OnnxCrossEncoder encoder;
+
+	private final ScoringModel scoringModel;
+
+	public CrossEncoderReranker(RetrievalProperties retrievalProperties, MeterRegistry meterRegistry) {
+		this.properties = retrievalProperties.getRerank();
+		if (!properties.isEnabled()) {
+			this.executor = null;
+			this.encoder = null;
+			this.scoringModel = null;
+			return;
+		}
+
+		AtomicInteger index = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()), r -> {
+					Thread thread = new Thread(r, "rerank-" + index.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		this.encoder = new OnnxCrossEncoder(Path.of(properties.getModelPath()), Path.of(properties.getTokenizerPath()),
+				properties.getMaxLength(), properties.getBatchSize(), executor);
+		log.info("Loaded rerank model: {}", properties.getModelPath());
+
+		Timer timer = Timer.builder("langchat.rag.rerank")
+			.description("检索结果重排耗时")
+			.publishPercentiles(0.5, 0.95, 0.99)
+			.register(meterRegistry);
+		this.scoringModel = (segments, query) -> timer.record(() -> encoder.scoreAll(segments, query));
+	}
+
+	public boolean enabled() {
+		return scoringModel != null;
+	}
+
+	/**
+	 * 重排前需要召回的候选数量
+	 */
+	public int candidates() {
+		return properties.getCandidates();
+	}
+
+	/**
+	 * 未启用重排时返回 null，使用默认的聚合方式
+	 */
+	public ContentAggregator aggregator() {
+		if (!enabled()) {
+			return null;
+		}
+		return ReRankingContentAggregator.builder()
+			.scoringModel(scoringModel)
+			.minScore(properties.getMinScore())
+			.maxResults(properties.getMaxResults())
+			.build();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdown();
+			encoder.close();
+		}
+	}
+
+}
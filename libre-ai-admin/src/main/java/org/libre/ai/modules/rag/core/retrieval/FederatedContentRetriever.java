@@ -0,0 +1,182 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 跨向量库、跨向量模型的联合检索
+ *
+ * 知识库按（向量库, 向量模型）分组，每组是一路检索：查询文本对每个不同的向量模型只向量化一次，各路检索并行执行，单路超时或失败时只记录日志，返回其余各路的结果。
+ * 不同模型、不同检索方式（向量相似度、混合检索的 RRF 得分）的得分不可比较，也不能在各路内部归一化后比较，各路结果按排名倒数融合（RRF）：
+ * 每个切片的融合得分为 1 / (k + 在该路中的排名)，按融合得分排序，相同时按原始得分排序；内容中的得分保持各路的原始值。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class FederatedContentRetriever implements ContentRetriever {
+
+	private final List<Leg> legs;
+
+	private final int maxResults;
+
+	private final int rrfK;
+
+	private final long timeout;
+
+	private final Executor executor;
+
+	private final Counter timeouts;
+
+	private final Counter failures;
+
+	FederatedContentRetriever(List<Leg> legs, int maxResults, int rrfK, long timeout, Executor executor,
+			Counter timeouts, Counter failures) {
+		this.legs = legs;
+		this.maxResults = maxResults;
+		this.rrfK = rrfK;
+		this.timeout = timeout;
+		this.executor = executor;
+		this.timeouts = timeouts;
+		this.failures = failures;
+	}
+
+	@Override
+	public List<Content> retrieve(Query query) {
+		Map<String, CompletableFuture<Embedding>> embeddings = new HashMap<>();
+		List<CompletableFuture<List<Content>>> futures = new ArrayList<>(legs.size());
+		for (Leg leg : legs) {
+			CompletableFuture<List<Content>> future;
+			if (leg.retriever() != null) {
+				future = CompletableFuture.supplyAsync(() -> leg.retriever().retrieve(query), executor);
+			}
+			else {
+				CompletableFuture<Embedding> embedding = embeddings.computeIfAbsent(leg.modelId(),
+						id -> CompletableFuture.supplyAsync(() -> leg.model().embed(query.text()).content(), executor));
+				future = embedding.thenApplyAsync(e -> search(leg, e), executor);
+			}
+			futures.add(future.orTimeout(timeout, TimeUnit.MILLISECONDS));
+		}
+
+		Map<Object, Fused> fused = new LinkedHashMap<>();
+		RuntimeException error = null;
+		int failed = 0;
+		for (int i = 0; i < legs.size(); i++) {
+			try {
+				List<Content> contents = futures.get(i).join();
+				for (int rank = 0; rank < contents.size(); rank++) {
+					Content content = contents.get(rank);
+					Object id = content.metadata().get(ContentMetadata.EMBEDDING_ID);
+					fused.computeIfAbsent(id != null ? id : i + "-" + rank, k -> new Fused(content))
+						.add(1.0 / (rrfK + rank + 1));
+				}
+			}
+			catch (CompletionException e) {
+				failed++;
+				if (e.getCause() instanceof TimeoutException) {
+					timeouts.increment();
+					log.warn("知识库检索超时（{}ms），忽略该路结果：{}", timeout, legs.get(i).knowledgeIds());
+				}
+				else {
+					failures.increment();
+					log.warn("知识库检索失败，忽略该路结果：{}", legs.get(i).knowledgeIds(), e.getCause());
+					error = e.getCause() instanceof RuntimeException cause ? cause : e;
+				}
+			}
+		}
+		if (failed == legs.size() && error != null) {
+			throw error;
+		}
+		return fused.values()
+			.stream()
+			.sorted(Comparator.comparingDouble(Fused::score).thenComparingDouble(Fused::original).reversed())
+			.limit(maxResults)
+			.map(Fused::content)
+			.toList();
+	}
+
+	private List<Content> search(Leg leg, Embedding embedding) {
+		EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+			.queryEmbedding(embedding)
+			.maxResults(maxResults)
+			.filter(metadataKey(KNOWLEDGE).isIn(leg.knowledgeIds()))
+			.build();
+		return leg.store()
+			.search(request)
+			.matches()
+			.stream()
+			.map(match -> Content.from(match.embedded(),
+					Map.of(ContentMetadata.SCORE, match.score(), ContentMetadata.EMBEDDING_ID, match.embeddingId())))
+			.toList();
+	}
+
+	private static final class Fused {
+
+		private final Content content;
+
+		private double score;
+
+		Fused(Content content) {
+			this.content = content;
+		}
+
+		void add(double score) {
+			this.score += score;
+		}
+
+		Content content() {
+			return content;
+		}
+
+		double score() {
+			return score;
+		}
+
+		double original() {
+			return content.metadata().get(ContentMetadata.SCORE) instanceof Number number ? number.doubleValue() : 0;
+		}
+
+	}
+
+	/**
+	 * 一路检索：使用给定的检索器，或者在向量库中按知识库ID过滤检索（向量化结果在使用同一模型的各路之间共享）
+	 */
+	record Leg(List<String> knowledgeIds, String modelId, EmbeddingModel model, EmbeddingStore<TextSegment> store,
+			ContentRetriever retriever) {
+
+		static Leg vector(List<String> knowledgeIds, String modelId, EmbeddingModel model,
+				EmbeddingStore<TextSegment> store) {
+			return new Leg(knowledgeIds, modelId, model, store, null);
+		}
+
+		static Leg of(List<String> knowledgeIds, ContentRetriever retriever) {
+			return new Leg(knowledgeIds, null, null, null, retriever);
+		}
+
+	}
+
+}
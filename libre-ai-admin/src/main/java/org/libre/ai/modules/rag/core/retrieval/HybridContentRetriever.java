@@ -0,0 +1,195 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.Timer;
+import org.libre.ai.modules.rag.properties.RetrievalProperties;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.FILENAME;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.RRF_SCORE;
+
+/**
+ * 关键词 + 向量的混合检索
+ *
+ * 向量检索在虚拟线程上执行，同时在当前线程执行 BM25 关键词检索，两路结果按排名倒数融合（RRF）：每个切片的得分为它在各路结果中 1 / (k +
+ * 排名) 之和，切片以向量ID（即切片表的 vector_id）对齐。只在关键词检索中命中的切片同样会被返回，弥补向量检索对专有名词、编号等精确匹配的不足。
+ * 融合得分保存在切片元数据的 rrfScore 中，ContentMetadata.SCORE 保留向量检索的相似度（只在关键词检索中命中的切片没有）。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class HybridContentRetriever implements ContentRetriever {
+
+	private final ContentRetriever vectorRetriever;
+
+	private final LexicalIndexes lexicalIndexes;
+
+	private final List<String> lexicalKnowledgeIds;
+
+	private final RetrievalProperties.Hybrid config;
+
+	private final int maxResults;
+
+	private final Executor executor;
+
+	private final Timer vectorTimer;
+
+	private final Timer lexicalTimer;
+
+	HybridContentRetriever(ContentRetriever vectorRetriever, LexicalIndexes lexicalIndexes,
+			List<String> lexicalKnowledgeIds, RetrievalProperties.Hybrid config, int maxResults, Executor executor,
+			Timer vectorTimer, Timer lexicalTimer) {
+		this.vectorRetriever = vectorRetriever;
+		this.lexicalIndexes = lexicalIndexes;
+		this.lexicalKnowledgeIds = lexicalKnowledgeIds;
+		this.config = config;
+		this.maxResults = maxResults;
+		this.executor = executor;
+		this.vectorTimer = vectorTimer;
+		this.lexicalTimer = lexicalTimer;
+	}
+
+	@Override
+	public List<Content> retrieve(Query query) {
+		return search(query).contents();
+	}
+
+	public Result search(String text) {
+		return search(Query.from(text));
+	}
+
+	public Result search(Query query) {
+		CompletableFuture<Timed<List<Content>>> vectorFuture = CompletableFuture.supplyAsync(() -> {
+			long start = System.nanoTime();
+			List<Content> contents = vectorRetriever.retrieve(query);
+			return new Timed<>(contents, record(vectorTimer, start));
+		}, executor);
+
+		long start = System.nanoTime();
+		List<LexicalIndex.Hit> lexical = lexical(query.text());
+		long lexicalNanos = record(lexicalTimer, start);
+
+		Timed<List<Content>> vector;
+		try {
+			vector = vectorFuture.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+		return new Result(fuse(vector.value(), lexical), TimeUnit.NANOSECONDS.toMillis(vector.nanos()),
+				TimeUnit.NANOSECONDS.toMillis(lexicalNanos));
+	}
+
+	private List<LexicalIndex.Hit> lexical(String text) {
+		List<String> terms = LexicalTokenizer.tokenize(text);
+		if (terms.isEmpty()) {
+			return List.of();
+		}
+		List<LexicalIndex.Hit> hits = new ArrayList<>();
+		for (String knowledgeId : lexicalKnowledgeIds) {
+			hits.addAll(lexicalIndexes.search(knowledgeId, terms, config.getCandidates()));
+		}
+		if (lexicalKnowledgeIds.size() > 1) {
+			hits.sort(Comparator.comparingDouble(LexicalIndex.Hit::score).reversed());
+		}
+		return hits.size() > config.getCandidates() ? hits.subList(0, config.getCandidates()) : hits;
+	}
+
+	private List<Content> fuse(List<Content> vector, List<LexicalIndex.Hit> lexical) {
+		Map<String, Fused> fused = new LinkedHashMap<>();
+		for (int i = 0; i < vector.size(); i++) {
+			Content content = vector.get(i);
+			Object id = content.metadata().get(ContentMetadata.EMBEDDING_ID);
+			String key = id != null ? id.toString() : "vector-" + i;
+			fused.computeIfAbsent(key, k -> new Fused()).add(rrf(i), content);
+		}
+		for (int i = 0; i < lexical.size(); i++) {
+			LexicalIndex.Hit hit = lexical.get(i);
+			fused.computeIfAbsent(hit.vectorId(), k -> new Fused()).add(rrf(i), hit);
+		}
+		return fused.entrySet()
+			.stream()
+			.sorted(Comparator.comparingDouble((Map.Entry<String, Fused> e) -> e.getValue().score).reversed())
+			.limit(maxResults)
+			.map(e -> e.getValue().toContent(e.getKey()))
+			.toList();
+	}
+
+	private double rrf(int index) {
+		return 1.0 / (config.getRrfK() + index + 1);
+	}
+
+	private static long record(Timer timer, long start) {
+		long nanos = System.nanoTime() - start;
+		timer.record(nanos, TimeUnit.NANOSECONDS);
+		return nanos;
+	}
+
+	/**
+	 * 融合后的检索结果和两路检索各自的耗时（毫秒）
+	 */
+	public record Result(List<Content> contents, long vectorMillis, long lexicalMillis) {
+	}
+
+	private record Timed<T>(T value, long nanos) {
+	}
+
+	private static final class Fused {
+
+		private double score;
+
+		private Content content;
+
+		private LexicalIndex.Hit hit;
+
+		void add(double score, Content content) {
+			this.score += score;
+			this.content = content;
+		}
+
+		void add(double score, LexicalIndex.Hit hit) {
+			this.score += score;
+			this.hit = hit;
+		}
+
+		Content toContent(String key) {
+			Map<ContentMetadata, Object> metadata = new EnumMap<>(ContentMetadata.class);
+			metadata.put(ContentMetadata.EMBEDDING_ID, key);
+			if (content != null) {
+				Object vectorScore = content.metadata().get(ContentMetadata.SCORE);
+				if (vectorScore != null) {
+					metadata.put(ContentMetadata.SCORE, vectorScore);
+				}
+				TextSegment segment = content.textSegment();
+				Metadata segmentMetadata = segment.metadata().copy().put(RRF_SCORE, score);
+				return Content.from(TextSegment.from(segment.text(), segmentMetadata), metadata);
+			}
+			Metadata segmentMetadata = new Metadata().put(KNOWLEDGE, hit.knowledgeId()).put(RRF_SCORE, score);
+			if (hit.docsName() != null) {
+				segmentMetadata.put(FILENAME, hit.docsName());
+			}
+			return Content.from(TextSegment.from(hit.text(), segmentMetadata), metadata);
+		}
+
+	}
+
+}
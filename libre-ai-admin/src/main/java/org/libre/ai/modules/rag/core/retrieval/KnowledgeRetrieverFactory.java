@@ -0,0 +1,192 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.libre.ai.modules.rag.core.provider.EmbeddingProvider;
+import org.libre.ai.modules.rag.core.provider.KnowledgeStoreFactory;
+import org.libre.ai.modules.rag.entity.AigcKnowledge;
+import org.libre.ai.modules.rag.properties.RetrievalProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 知识库检索器的创建
+ *
+ * 关联的知识库中有开启混合检索的，返回 {@link HybridContentRetriever}，关键词检索只在开启了混合检索的知识库中进行；否则返回单纯的向量检索。启用重排时检索
+ * 结果的数量放大到重排的候选数量，由 {@link CrossEncoderReranker} 选出最终结果。关联的知识库分布在不同的向量库或使用不同的向量模型时，返回
+ * {@link FederatedContentRetriever}。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Component
+public class KnowledgeRetrieverFactory {
+
+	/**
+	 * 与 {@link EmbeddingStoreContentRetriever} 默认的结果数量一致
+	 */
+	private static final int DEFAULT_MAX_RESULTS = 3;
+
+	private final EmbeddingProvider embeddingProvider;
+
+	private final KnowledgeStoreFactory knowledgeStoreFactory;
+
+	private final LexicalIndexes lexicalIndexes;
+
+	private final CrossEncoderReranker reranker;
+
+	private final RetrievalProperties.Hybrid hybrid;
+
+	private final RetrievalProperties.Federated federated;
+
+	private final Timer vectorTimer;
+
+	private final Timer lexicalTimer;
+
+	private final Counter federatedTimeouts;
+
+	private final Counter federatedFailures;
+
+	private final ExecutorService executor = Executors
+		.newThreadPerTaskExecutor(Thread.ofVirtual().name("retrieval-", 0).factory());
+
+	public KnowledgeRetrieverFactory(EmbeddingProvider embeddingProvider, KnowledgeStoreFactory knowledgeStoreFactory,
+			LexicalIndexes lexicalIndexes, CrossEncoderReranker reranker, RetrievalProperties retrievalProperties,
+			MeterRegistry meterRegistry) {
+		this.embeddingProvider = embeddingProvider;
+		this.knowledgeStoreFactory = knowledgeStoreFactory;
+		this.lexicalIndexes = lexicalIndexes;
+		this.reranker = reranker;
+		this.hybrid = retrievalProperties.getHybrid();
+		this.federated = retrievalProperties.getFederated();
+		this.vectorTimer = Timer.builder("langchat.rag.retrieval")
+			.description("知识库检索耗时")
+			.tag("leg", "vector")
+			.publishPercentiles(0.5, 0.95, 0.99)
+			.register(meterRegistry);
+		this.lexicalTimer = Timer.builder("langchat.rag.retrieval")
+			.description("知识库检索耗时")
+			.tag("leg", "lexical")
+			.publishPercentiles(0.5, 0.95, 0.99)
+			.register(meterRegistry);
+		this.federatedTimeouts = Counter.builder("langchat.rag.federated.skipped")
+			.description("联合检索中被忽略的检索路数")
+			.tag("reason", "timeout")
+			.register(meterRegistry);
+		this.federatedFailures = Counter.builder("langchat.rag.federated.skipped")
+			.description("联合检索中被忽略的检索路数")
+			.tag("reason", "error")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * 对话使用的检索增强：检索，启用时再重排
+	 */
+	public RetrievalAugmentor augmentor(List<String> knowledgeIds) {
+		return DefaultRetrievalAugmentor.builder()
+			.contentRetriever(create(knowledgeIds))
+			.contentAggregator(reranker.aggregator())
+			.build();
+	}
+
+	public ContentRetriever create(List<String> knowledgeIds) {
+		Integer maxResults = reranker.enabled() ? Integer.valueOf(reranker.candidates()) : null;
+		Map<String, List<String>> groups = groupByStoreAndModel(knowledgeIds);
+		if (groups.size() <= 1) {
+			return single(knowledgeIds, maxResults);
+		}
+
+		int federatedMaxResults = maxResults != null ? maxResults : DEFAULT_MAX_RESULTS;
+		List<FederatedContentRetriever.Leg> legs = groups.values().stream().map(ids -> {
+			if (!hybridKnowledgeIds(ids).isEmpty()) {
+				return FederatedContentRetriever.Leg.of(ids, single(ids, federatedMaxResults));
+			}
+			AigcKnowledge knowledge = knowledgeStoreFactory.getKnowledge(ids.getFirst());
+			return FederatedContentRetriever.Leg.vector(ids, knowledge.getEmbedModelId(),
+					embeddingProvider.getEmbeddingModel(ids), embeddingProvider.getEmbeddingStore(ids));
+		}).toList();
+		return new FederatedContentRetriever(legs, federatedMaxResults, hybrid.getRrfK(), federated.getTimeout(),
+				executor, federatedTimeouts, federatedFailures);
+	}
+
+	/**
+	 * 关联的知识库都未开启混合检索时返回 null
+	 */
+	public HybridContentRetriever createHybrid(List<String> knowledgeIds) {
+		List<String> lexicalKnowledgeIds = hybridKnowledgeIds(knowledgeIds);
+		return lexicalKnowledgeIds.isEmpty() ? null : hybrid(knowledgeIds, lexicalKnowledgeIds, hybrid.getMaxResults());
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdown();
+	}
+
+	private ContentRetriever single(List<String> knowledgeIds, Integer maxResults) {
+		List<String> lexicalKnowledgeIds = hybridKnowledgeIds(knowledgeIds);
+		if (lexicalKnowledgeIds.isEmpty()) {
+			return vector(knowledgeIds, maxResults);
+		}
+		return hybrid(knowledgeIds, lexicalKnowledgeIds, maxResults != null ? maxResults : hybrid.getMaxResults());
+	}
+
+	private HybridContentRetriever hybrid(List<String> knowledgeIds, List<String> lexicalKnowledgeIds,
+			int maxResults) {
+		return new HybridContentRetriever(vector(knowledgeIds, hybrid.getCandidates()), lexicalIndexes,
+				lexicalKnowledgeIds, hybrid, maxResults, executor, vectorTimer, lexicalTimer);
+	}
+
+	private ContentRetriever vector(List<String> knowledgeIds, Integer maxResults) {
+		return EmbeddingStoreContentRetriever.builder()
+			.embeddingStore(embeddingProvider.getEmbeddingStore(knowledgeIds))
+			.embeddingModel(embeddingProvider.getEmbeddingModel(knowledgeIds))
+			.maxResults(maxResults)
+			.dynamicFilter(query -> metadataKey(KNOWLEDGE).isIn(knowledgeIds))
+			.build();
+	}
+
+	/**
+	 * 按（向量库, 向量模型）分组，缺少配置的知识库不参与检索
+	 */
+	private Map<String, List<String>> groupByStoreAndModel(List<String> knowledgeIds) {
+		Map<String, List<String>> groups = new LinkedHashMap<>();
+		for (String id : knowledgeIds) {
+			if (!knowledgeStoreFactory.containsKnowledge(id)) {
+				continue;
+			}
+			AigcKnowledge knowledge = knowledgeStoreFactory.getKnowledge(id);
+			if (knowledge.getEmbedStoreId() != null && knowledge.getEmbedModelId() != null) {
+				groups.computeIfAbsent(knowledge.getEmbedStoreId() + ":" + knowledge.getEmbedModelId(),
+						key -> new ArrayList<>())
+					.add(id);
+			}
+		}
+		return groups;
+	}
+
+	private List<String> hybridKnowledgeIds(List<String> knowledgeIds) {
+		return knowledgeIds.stream().filter(id -> {
+			if (!knowledgeStoreFactory.containsKnowledge(id)) {
+				return false;
+			}
+			AigcKnowledge knowledge = knowledgeStoreFactory.getKnowledge(id);
+			return Boolean.TRUE.equals(knowledge.getHybridSearch());
+		}).toList();
+	}
+
+}
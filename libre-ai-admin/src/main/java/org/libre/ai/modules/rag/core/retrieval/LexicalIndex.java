@@ -0,0 +1,351 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import org.libre.ai.modules.rag.core.embedding.NodeHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 单个知识库的 BM25 倒排索引
+ *
+ * 切片按写入顺序编号，删除只做标记，删除比例超过 30% 时重建。同一向量ID重复写入时替换旧的切片。
+ *
+ * 从切片表加载期间（loading）索引已经对外可见，期间增量写入的切片直接进入索引，被删除的切片和文档记录下来，加载的数据跳过它们，
+ * 避免加载的快照覆盖加载期间的变更。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+class LexicalIndex {
+
+	private static final float K1 = 1.2f;
+
+	private static final float B = 0.75f;
+
+	private static final double REBUILD_RATIO = 0.3;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final String knowledgeId;
+
+	private String[] vectorIds = new String[64];
+
+	private String[] docsIds = new String[64];
+
+	private String[] texts = new String[64];
+
+	private int[] lengths = new int[64];
+
+	private boolean[] deleted = new boolean[64];
+
+	private int size;
+
+	private int deletedCount;
+
+	private long totalLength;
+
+	private Map<String, Postings> postings = new HashMap<>();
+
+	private Map<String, List<Integer>> docSlots = new HashMap<>();
+
+	private Map<String, String> docNames = new HashMap<>();
+
+	private Map<String, Integer> vectorSlots = new HashMap<>();
+
+	private boolean loading;
+
+	private final Set<String> removedVectorIds = new HashSet<>();
+
+	private final Set<String> removedDocsIds = new HashSet<>();
+
+	LexicalIndex(String knowledgeId) {
+		this(knowledgeId, false);
+	}
+
+	LexicalIndex(String knowledgeId, boolean loading) {
+		this.knowledgeId = knowledgeId;
+		this.loading = loading;
+	}
+
+	void add(String vectorId, String docsId, String docsName, String text) {
+		List<String> tokens = LexicalTokenizer.tokenize(text);
+		lock.writeLock().lock();
+		try {
+			if (docsName != null) {
+				docNames.put(docsId, docsName);
+			}
+			Integer previous = vectorSlots.get(vectorId);
+			if (previous != null) {
+				delete(previous);
+			}
+			addInternal(vectorId, docsId, text, tokens);
+			if (previous != null) {
+				rebuildIfNeeded();
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 写入从切片表加载的切片，已在索引中或加载期间被删除的切片跳过
+	 */
+	void addLoaded(String vectorId, String docsId, String docsName, String text) {
+		List<String> tokens = LexicalTokenizer.tokenize(text);
+		lock.writeLock().lock();
+		try {
+			if (vectorSlots.containsKey(vectorId) || removedVectorIds.contains(vectorId)
+					|| removedDocsIds.contains(docsId)) {
+				return;
+			}
+			if (docsName != null) {
+				docNames.putIfAbsent(docsId, docsName);
+			}
+			addInternal(vectorId, docsId, text, tokens);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 加载完成，之后的删除不再需要记录
+	 */
+	void loaded() {
+		lock.writeLock().lock();
+		try {
+			loading = false;
+			removedVectorIds.clear();
+			removedDocsIds.clear();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void removeDoc(String docsId) {
+		lock.writeLock().lock();
+		try {
+			if (loading) {
+				removedDocsIds.add(docsId);
+			}
+			docNames.remove(docsId);
+			List<Integer> slots = docSlots.remove(docsId);
+			if (slots == null) {
+				return;
+			}
+			for (int slot : slots) {
+				delete(slot);
+			}
+			rebuildIfNeeded();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void remove(Collection<String> vectorIds) {
+		lock.writeLock().lock();
+		try {
+			for (String vectorId : vectorIds) {
+				if (loading) {
+					removedVectorIds.add(vectorId);
+				}
+				Integer slot = vectorSlots.get(vectorId);
+				if (slot != null) {
+					delete(slot);
+					List<Integer> slots = docSlots.get(docsIds[slot]);
+					if (slots != null) {
+						slots.remove(slot);
+					}
+				}
+			}
+			rebuildIfNeeded();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	List<Hit> search(List<String> terms, int k) {
+		lock.readLock().lock();
+		try {
+			int live = size - deletedCount;
+			if (live == 0 || terms.isEmpty()) {
+				return List.of();
+			}
+			double avgLength = Math.max(1.0, (double) totalLength / live);
+			float[] scores = new float[size];
+			int[] touched = new int[16];
+			int touchedCount = 0;
+			for (String term : new LinkedHashSet<>(terms)) {
+				Postings p = postings.get(term);
+				if (p == null) {
+					continue;
+				}
+				int df = 0;
+				for (int i = 0; i < p.size; i++) {
+					if (!deleted[p.slots[i]]) {
+						df++;
+					}
+				}
+				if (df == 0) {
+					continue;
+				}
+				float idf = (float) Math.log(1 + (live - df + 0.5) / (df + 0.5));
+				for (int i = 0; i < p.size; i++) {
+					int slot = p.slots[i];
+					if (deleted[slot]) {
+						continue;
+					}
+					int tf = p.freqs[i];
+					float norm = (float) (tf * (K1 + 1) / (tf + K1 * (1 - B + B * lengths[slot] / avgLength)));
+					if (scores[slot] == 0) {
+						if (touchedCount == touched.length) {
+							touched = Arrays.copyOf(touched, touchedCount * 2);
+						}
+						touched[touchedCount++] = slot;
+					}
+					scores[slot] += idf * norm;
+				}
+			}
+
+			NodeHeap heap = NodeHeap.min(k + 1);
+			for (int i = 0; i < touchedCount; i++) {
+				int slot = touched[i];
+				if (heap.size() < k || scores[slot] > heap.topScore()) {
+					heap.push(slot, scores[slot]);
+					if (heap.size() > k) {
+						heap.pop();
+					}
+				}
+			}
+			Hit[] hits = new Hit[heap.size()];
+			for (int i = hits.length - 1; i >= 0; i--) {
+				float score = heap.topScore();
+				int slot = heap.pop();
+				hits[i] = new Hit(knowledgeId, vectorIds[slot], docNames.get(docsIds[slot]), texts[slot], score);
+			}
+			return Arrays.asList(hits);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	int size() {
+		lock.readLock().lock();
+		try {
+			return size - deletedCount;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 标记切片删除，调用方需持有写锁
+	 */
+	private void delete(int slot) {
+		if (!deleted[slot]) {
+			deleted[slot] = true;
+			deletedCount++;
+			totalLength -= lengths[slot];
+			texts[slot] = null;
+			vectorSlots.remove(vectorIds[slot], slot);
+		}
+	}
+
+	private void rebuildIfNeeded() {
+		if (deletedCount > size * REBUILD_RATIO) {
+			rebuild();
+		}
+	}
+
+	private void addInternal(String vectorId, String docsId, String text, List<String> tokens) {
+		int slot = size;
+		if (slot == vectorIds.length) {
+			int capacity = slot + (slot >> 1);
+			vectorIds = Arrays.copyOf(vectorIds, capacity);
+			docsIds = Arrays.copyOf(docsIds, capacity);
+			texts = Arrays.copyOf(texts, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			deleted = Arrays.copyOf(deleted, capacity);
+		}
+		vectorIds[slot] = vectorId;
+		docsIds[slot] = docsId;
+		texts[slot] = text;
+		lengths[slot] = tokens.size();
+		deleted[slot] = false;
+		size++;
+		totalLength += tokens.size();
+		docSlots.computeIfAbsent(docsId, key -> new ArrayList<>()).add(slot);
+		vectorSlots.put(vectorId, slot);
+
+		Map<String, Integer> frequencies = new HashMap<>();
+		tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+		frequencies.forEach((term, tf) -> postings.computeIfAbsent(term, key -> new Postings()).add(slot, tf));
+	}
+
+	/**
+	 * 只保留未删除的切片重新建立索引，调用方需持有写锁
+	 */
+	private void rebuild() {
+		String[] oldVectorIds = vectorIds;
+		String[] oldDocsIds = docsIds;
+		String[] oldTexts = texts;
+		boolean[] oldDeleted = deleted;
+		int oldSize = size;
+		int capacity = Math.max(64, oldSize - deletedCount);
+		vectorIds = new String[capacity];
+		docsIds = new String[capacity];
+		texts = new String[capacity];
+		lengths = new int[capacity];
+		deleted = new boolean[capacity];
+		size = 0;
+		deletedCount = 0;
+		totalLength = 0;
+		postings = new HashMap<>();
+		docSlots = new HashMap<>();
+		vectorSlots = new HashMap<>();
+		for (int slot = 0; slot < oldSize; slot++) {
+			if (!oldDeleted[slot]) {
+				addInternal(oldVectorIds[slot], oldDocsIds[slot], oldTexts[slot],
+						LexicalTokenizer.tokenize(oldTexts[slot]));
+			}
+		}
+	}
+
+	record Hit(String knowledgeId, String vectorId, String docsName, String text, float score) {
+	}
+
+	private static final class Postings {
+
+		private int[] slots = new int[4];
+
+		private int[] freqs = new int[4];
+
+		private int size;
+
+		void add(int slot, int tf) {
+			if (size == slots.length) {
+				slots = Arrays.copyOf(slots, size * 2);
+				freqs = Arrays.copyOf(freqs, size * 2);
+			}
+			slots[size] = slot;
+			freqs[size] = tf;
+			size++;
+		}
+
+	}
+
+}
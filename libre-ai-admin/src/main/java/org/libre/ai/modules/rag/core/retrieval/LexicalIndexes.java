@@ -0,0 +1,193 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.entity.AigcDocsSlice;
+import org.libre.ai.modules.rag.mapper.AigcDocsSliceMapper;
+import org.libre.ai.modules.rag.properties.RetrievalProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按知识库维护的关键词索引
+ *
+ * 索引在第一次检索时从切片表加载，之后随切片的写入和删除增量更新；切片被直接编辑时整个知识库的索引失效，下次检索重新加载。
+ *
+ * 加载在 map 之外执行：索引先以加载中的状态放入 map，加载期间的增量更新直接作用于它，同一知识库的其他检索等待加载完成。
+ * 增量更新在事务提交后执行，回滚的写入不会进入索引。索引的切片总数超过 index-max-slices 时淘汰最久未检索的知识库索引。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LexicalIndexes {
+
+	private final AigcDocsSliceMapper aigcDocsSliceMapper;
+
+	private final RetrievalProperties retrievalProperties;
+
+	private final Map<String, Entry> indexes = new ConcurrentHashMap<>();
+
+	private final ReentrantLock evictLock = new ReentrantLock();
+
+	/**
+	 * 在知识库中检索，返回按 BM25 得分从高到低排列的切片
+	 */
+	List<LexicalIndex.Hit> search(String knowledgeId, List<String> terms, int k) {
+		Entry entry = indexes.computeIfAbsent(knowledgeId, Entry::new);
+		entry.lastAccess = System.nanoTime();
+		if (entry.claimed.compareAndSet(false, true)) {
+			load(entry);
+		}
+		try {
+			entry.loaded.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+		return entry.index.search(terms, k);
+	}
+
+	public void onSliceAdded(AigcDocsSlice slice) {
+		if (slice.getKnowledgeId() == null || slice.getVectorId() == null) {
+			return;
+		}
+		afterCommit(() -> {
+			Entry entry = indexes.get(slice.getKnowledgeId());
+			if (entry != null) {
+				entry.index.add(slice.getVectorId(), slice.getDocsId(), slice.getName(), slice.getContent());
+				evict(entry);
+			}
+		});
+	}
+
+	public void onDocRemoved(String docsId) {
+		afterCommit(() -> indexes.values().forEach(entry -> entry.index.removeDoc(docsId)));
+	}
+
+	public void onSlicesRemoved(String knowledgeId, List<String> vectorIds) {
+		if (knowledgeId == null || vectorIds.isEmpty()) {
+			return;
+		}
+		afterCommit(() -> {
+			Entry entry = indexes.get(knowledgeId);
+			if (entry != null) {
+				entry.index.remove(vectorIds);
+			}
+		});
+	}
+
+	public void invalidate(String knowledgeId) {
+		if (knowledgeId != null) {
+			afterCommit(() -> indexes.remove(knowledgeId));
+		}
+	}
+
+	/**
+	 * 当前事务提交后执行，没有事务时立即执行
+	 */
+	private static void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
+	private void load(Entry entry) {
+		long start = System.currentTimeMillis();
+		try {
+			List<AigcDocsSlice> slices = aigcDocsSliceMapper.selectList(Wrappers.<AigcDocsSlice>lambdaQuery()
+				.select(AigcDocsSlice::getVectorId, AigcDocsSlice::getDocsId, AigcDocsSlice::getName,
+						AigcDocsSlice::getContent)
+				.eq(AigcDocsSlice::getKnowledgeId, entry.knowledgeId));
+			for (AigcDocsSlice slice : slices) {
+				if (slice.getVectorId() != null && slice.getContent() != null) {
+					entry.index.addLoaded(slice.getVectorId(), slice.getDocsId(), slice.getName(),
+							slice.getContent());
+				}
+			}
+			entry.index.loaded();
+		}
+		catch (RuntimeException e) {
+			indexes.remove(entry.knowledgeId, entry);
+			entry.loaded.completeExceptionally(e);
+			return;
+		}
+		entry.loaded.complete(null);
+		log.info("加载知识库关键词索引：{}，切片数量：{}，耗时：{}ms", entry.knowledgeId, entry.index.size(),
+				System.currentTimeMillis() - start);
+		evict(entry);
+	}
+
+	/**
+	 * 切片总数超过上限时，按最近检索时间从旧到新淘汰已加载的索引，刚访问的索引保留
+	 */
+	private void evict(Entry keep) {
+		int maxSlices = retrievalProperties.getHybrid().getIndexMaxSlices();
+		if (maxSlices <= 0 || !evictLock.tryLock()) {
+			return;
+		}
+		try {
+			long total = indexes.values().stream().mapToLong(entry -> entry.index.size()).sum();
+			while (total > maxSlices) {
+				Entry eldest = null;
+				for (Entry entry : indexes.values()) {
+					if (entry != keep && entry.loaded.isDone()
+							&& (eldest == null || entry.lastAccess < eldest.lastAccess)) {
+						eldest = entry;
+					}
+				}
+				if (eldest == null) {
+					return;
+				}
+				indexes.remove(eldest.knowledgeId, eldest);
+				total -= eldest.index.size();
+				log.info("淘汰知识库关键词索引：{}，切片数量：{}", eldest.knowledgeId, eldest.index.size());
+			}
+		}
+		finally {
+			evictLock.unlock();
+		}
+	}
+
+	private static final class Entry {
+
+		private final String knowledgeId;
+
+		private final LexicalIndex index;
+
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+		private volatile long lastAccess = System.nanoTime();
+
+		Entry(String knowledgeId) {
+			this.knowledgeId = knowledgeId;
+			this.index = new LexicalIndex(knowledgeId, true);
+		}
+
+	}
+
+}
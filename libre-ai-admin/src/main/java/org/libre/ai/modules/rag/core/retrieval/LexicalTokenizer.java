@@ -0,0 +1,105 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 关键词检索的分词
+ *
+ * 中日韩文字按相邻两字切分（单字时保留单字），不依赖词典；字母数字序列整体作为一个词并转小写，包含 - _ . : / 连接的标识符（如错误码、版本号、型号）
+ * 同时保留整体和各部分，既能精确匹配也能匹配其中一段。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public final class LexicalTokenizer {
+
+	private LexicalTokenizer() {
+	}
+
+	public static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null) {
+			return tokens;
+		}
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			int cp = text.codePointAt(i);
+			if (isCjk(cp)) {
+				i = cjk(text, i, tokens);
+			}
+			else if (Character.isLetterOrDigit(cp)) {
+				i = word(text, i, tokens);
+			}
+			else {
+				i += Character.charCount(cp);
+			}
+		}
+		return tokens;
+	}
+
+	private static int cjk(String text, int start, List<String> tokens) {
+		int i = start;
+		int previous = -1;
+		int count = 0;
+		while (i < text.length()) {
+			int cp = text.codePointAt(i);
+			if (!isCjk(cp)) {
+				break;
+			}
+			if (previous >= 0) {
+				tokens.add(new StringBuilder(4).appendCodePoint(previous).appendCodePoint(cp).toString());
+			}
+			previous = cp;
+			count++;
+			i += Character.charCount(cp);
+		}
+		if (count == 1) {
+			tokens.add(new String(Character.toChars(previous)));
+		}
+		return i;
+	}
+
+	private static int word(String text, int start, List<String> tokens) {
+		int i = start;
+		boolean connected = false;
+		while (i < text.length()) {
+			int cp = text.codePointAt(i);
+			int next = i + Character.charCount(cp);
+			if (Character.isLetterOrDigit(cp) && !isCjk(cp)) {
+				i = next;
+			}
+			else if (isConnector(cp) && next < text.length() && Character.isLetterOrDigit(text.codePointAt(next))
+					&& !isCjk(text.codePointAt(next))) {
+				connected = true;
+				i = next;
+			}
+			else {
+				break;
+			}
+		}
+		String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+		tokens.add(word);
+		if (connected) {
+			for (String part : word.split("[-_.:/]")) {
+				if (!part.isEmpty()) {
+					tokens.add(part);
+				}
+			}
+		}
+		return i;
+	}
+
+	private static boolean isConnector(int cp) {
+		return cp == '-' || cp == '_' || cp == '.' || cp == ':' || cp == '/';
+	}
+
+	private static boolean isCjk(int cp) {
+		Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+		return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+				|| script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+	}
+
+}
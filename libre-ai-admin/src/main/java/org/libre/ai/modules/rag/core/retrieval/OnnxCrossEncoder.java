@@ -0,0 +1,197 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.util.PairList;
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.scoring.ScoringModel;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * 基于 ONNX Runtime 的交叉编码器
+ *
+ * 查询和切片文本成对输入模型，输出为单个 logit 时经 sigmoid、输出为两个 logit（不相关/相关）时取 softmax 的相关类概率，转为 0~1 的相关度。文本对按 batchSize 分批，各批次在线程池中并行推理；每个会话只使用一个推理线程，
+ * 并行度由线程池控制。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class OnnxCrossEncoder implements ScoringModel, AutoCloseable {
+
+	private final OrtEnvironment environment;
+
+	private final OrtSession session;
+
+	private final HuggingFaceTokenizer tokenizer;
+
+	private final boolean tokenTypeIds;
+
+	private final String output;
+
+	private final int batchSize;
+
+	private final Executor executor;
+
+	public OnnxCrossEncoder(Path modelPath, Path tokenizerPath, int maxLength, int batchSize, Executor executor) {
+		this.batchSize = batchSize;
+		this.executor = executor;
+		try {
+			this.environment = OrtEnvironment.getEnvironment();
+			OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+			options.setIntraOpNumThreads(1);
+			this.session = environment.createSession(modelPath.toString(), options);
+			this.tokenTypeIds = session.getInputNames().contains("token_type_ids");
+			this.output = session.getOutputNames().iterator().next();
+			checkOutputWidth(session.getOutputInfo().get(output));
+			this.tokenizer = HuggingFaceTokenizer.builder()
+				.optTokenizerPath(tokenizerPath)
+				.optMaxLength(maxLength)
+				.optTruncateSecondOnly()
+				.optPadding(true)
+				.build();
+		}
+		catch (OrtException | IOException e) {
+			throw new ServiceException("加载重排模型失败：" + e.getMessage());
+		}
+	}
+
+	@Override
+	public Response<List<Double>> scoreAll(List<TextSegment> segments, String query) {
+		List<CompletableFuture<double[]>> batches = new ArrayList<>();
+		for (int from = 0; from < segments.size(); from += batchSize) {
+			List<TextSegment> batch = segments.subList(from, Math.min(from + batchSize, segments.size()));
+			batches.add(CompletableFuture.supplyAsync(() -> score(query, batch), executor));
+		}
+		List<Double> scores = new ArrayList<>(segments.size());
+		try {
+			for (CompletableFuture<double[]> batch : batches) {
+				for (double score : batch.join()) {
+					scores.add(score);
+				}
+			}
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+		return Response.from(scores);
+	}
+
+	private double[] score(String query, List<TextSegment> segments) {
+		PairList<String, String> pairs = new PairList<>(segments.size());
+		segments.forEach(segment -> pairs.add(query, segment.text()));
+		Encoding[] encodings = tokenizer.batchEncode(pairs);
+
+		long[][] ids = new long[encodings.length][];
+		long[][] mask = new long[encodings.length][];
+		long[][] types = new long[encodings.length][];
+		for (int i = 0; i < encodings.length; i++) {
+			ids[i] = encodings[i].getIds();
+			mask[i] = encodings[i].getAttentionMask();
+			types[i] = encodings[i].getTypeIds();
+		}
+
+		Map<String, OnnxTensor> inputs = new HashMap<>();
+		try {
+			inputs.put("input_ids", OnnxTensor.createTensor(environment, ids));
+			inputs.put("attention_mask", OnnxTensor.createTensor(environment, mask));
+			if (tokenTypeIds) {
+				inputs.put("token_type_ids", OnnxTensor.createTensor(environment, types));
+			}
+			try (OrtSession.Result result = session.run(inputs, Set.of(output))) {
+				return scores(result.get(0).getValue());
+			}
+		}
+		catch (OrtException e) {
+			throw new ServiceException("重排模型推理失败：" + e.getMessage());
+		}
+		finally {
+			inputs.values().forEach(OnnxTensor::close);
+		}
+	}
+
+	/**
+	 * 输出为 [batch, 1|2] 时按行计算相关度；部分模型去掉了最后一维，输出为 [batch]，每个元素即单个 logit
+	 */
+	static double[] scores(Object output) {
+		if (output instanceof float[] logits) {
+			double[] scores = new double[logits.length];
+			for (int i = 0; i < logits.length; i++) {
+				scores[i] = sigmoid(logits[i]);
+			}
+			return scores;
+		}
+		if (output instanceof float[][] logits) {
+			double[] scores = new double[logits.length];
+			for (int i = 0; i < logits.length; i++) {
+				scores[i] = relevance(logits[i]);
+			}
+			return scores;
+		}
+		throw new ServiceException("重排模型输出类型不支持：" + output.getClass().getSimpleName());
+	}
+
+	/**
+	 * 单个 logit 取 sigmoid；两个 logit 取 softmax 后相关类（下标 1）的概率，等价于两者之差的 sigmoid
+	 */
+	static double relevance(float[] logits) {
+		return switch (logits.length) {
+			case 1 -> sigmoid(logits[0]);
+			case 2 -> sigmoid(logits[1] - logits[0]);
+			default -> throw new ServiceException("重排模型输出维度不支持：" + logits.length);
+		};
+	}
+
+	private static double sigmoid(double x) {
+		return 1 / (1 + Math.exp(-x));
+	}
+
+	/**
+	 * 输出维度固定时在加载阶段校验，只支持 [batch]、[batch, 1] 和 [batch, 2]
+	 */
+	private static void checkOutputWidth(NodeInfo info) {
+		if (info.getInfo() instanceof TensorInfo tensor) {
+			long[] shape = tensor.getShape();
+			if (shape.length > 2) {
+				throw new ServiceException("重排模型输出维度不支持：" + Arrays.toString(shape));
+			}
+			long width = shape.length < 2 ? 1 : shape[shape.length - 1];
+			if (width > 2) {
+				throw new ServiceException("重排模型输出维度不支持：" + width);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		tokenizer.close();
+		try {
+			session.close();
+		}
+		catch (OrtException e) {
+			throw new ServiceException("关闭重排模型失败：" + e.getMessage());
+		}
+	}
+
+}
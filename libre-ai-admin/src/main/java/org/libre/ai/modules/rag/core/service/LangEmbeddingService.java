@@ -1,5 +1,6 @@
 package org.libre.ai.modules.rag.core.service;
 
+import org.libre.ai.modules.rag.core.ingest.IngestProgress;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.dto.EmbeddingResult;
 
@@ -13,6 +14,13 @@ public interface LangEmbeddingService {
 
 	EmbeddingResult embeddingText(ChatRequest req);
 
-	List<EmbeddingResult> embeddingDocs(ChatRequest req);
+	default List<EmbeddingResult> embeddingDocs(ChatRequest req) {
+		return embeddingDocs(req, IngestProgress.NONE);
+	}
+
+	/**
+	 * 解析、切分文档，按批向量化并写入向量库，每批完成后回调进度
+	 */
+	List<EmbeddingResult> embeddingDocs(ChatRequest req, IngestProgress progress);
 
 }
@@ -20,36 +20,30 @@ import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
 import dev.langchain4j.data.image.Image;
 import dev.langchain4j.http.client.sse.ServerSentEvent;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.image.ImageModel;
 import dev.langchain4j.model.output.Response;
-import dev.langchain4j.rag.DefaultRetrievalAugmentor;
-import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.TokenStream;
-import dev.langchain4j.store.embedding.filter.Filter;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.libre.ai.modules.rag.core.provider.EmbeddingProvider;
+import org.libre.ai.modules.rag.core.memory.ChatMemoryFactory;
+import org.libre.ai.modules.rag.core.provider.AgentStoreFactory;
 import org.libre.ai.modules.rag.core.provider.ModelProvider;
+import org.libre.ai.modules.rag.core.retrieval.KnowledgeRetrieverFactory;
 import org.libre.ai.modules.rag.core.service.Agent;
 import org.libre.ai.modules.rag.core.service.LangChatService;
+import org.libre.ai.modules.rag.core.stream.StreamCancellations;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.dto.ImageRequest;
 import org.libre.ai.modules.rag.exception.ServiceException;
-import org.libre.ai.modules.rag.properties.ChatProperties;
 import org.libre.ai.modules.rag.utils.PromptUtil;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
-import java.util.function.Function;
-
-import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
-import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author tycoding
@@ -62,20 +56,20 @@ public class LangChatServiceImpl implements LangChatService {
 
 	private final ModelProvider provider;
 
-	private final EmbeddingProvider embeddingProvider;
+	private final KnowledgeRetrieverFactory knowledgeRetrieverFactory;
+
+	private final AgentStoreFactory agentStoreFactory;
+
+	private final ChatMemoryFactory chatMemoryFactory;
 
-	private final ChatProperties chatProperties;
+	private final StreamCancellations streamCancellations;
 
-	private AiServices<Agent> build(StreamingChatModel streamModel, ChatModel model, ChatRequest req) {
+	private AiServices<Agent> build(StreamingChatModel streamModel, ChatModel model, String systemPrompt) {
 		AiServices<Agent> aiServices = AiServices.builder(Agent.class)
-			.chatMemoryProvider(memoryId -> MessageWindowChatMemory.builder()
-				.id(req.getConversationId())
-				.chatMemoryStore(new PersistentChatMemoryStore())
-				.maxMessages(chatProperties.getMemoryMaxMessage())
-				.build());
-
-		if (StrUtil.isNotBlank(req.getSystemPrompt())) {
-			aiServices.systemMessageProvider(memoryId -> req.getSystemPrompt());
+			.chatMemoryProvider(chatMemoryFactory::create);
+
+		if (StrUtil.isNotBlank(systemPrompt)) {
+			aiServices.systemMessageProvider(memoryId -> systemPrompt);
 		}
 		if (streamModel != null) {
 			aiServices.streamingChatModel(streamModel);
@@ -86,41 +80,46 @@ public class LangChatServiceImpl implements LangChatService {
 		return aiServices;
 	}
 
+	private Agent streamAgent(ChatRequest req) {
+		String key = AgentStoreFactory.key(AgentStoreFactory.TYPE_STREAM, req.getModelId(), null,
+				req.getSystemPrompt(), req.getUserPromptTemplate());
+		return agentStoreFactory.get(key,
+				() -> build(provider.stream(req.getModelId()), null, req.getSystemPrompt()).build());
+	}
+
 	@Override
 	public TokenStream chat(ChatRequest req) {
-		StreamingChatModel model = provider.stream(req.getModelId());
 		if (StrUtil.isBlank(req.getConversationId())) {
 			req.setConversationId(IdUtil.simpleUUID());
 		}
 
-		AiServices<Agent> aiServices = build(model, null, req);
-
-		if (StrUtil.isNotBlank(req.getKnowledgeId())) {
-			req.getKnowledgeIds().add(req.getKnowledgeId());
+		List<String> knowledgeIds = new ArrayList<>();
+		if (req.getKnowledgeIds() != null) {
+			knowledgeIds.addAll(req.getKnowledgeIds());
 		}
-
-		if (req.getKnowledgeIds() != null && !req.getKnowledgeIds().isEmpty()) {
-			Function<Query, Filter> filter = (query) -> metadataKey(KNOWLEDGE).isIn(req.getKnowledgeIds());
-			ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
-				.embeddingStore(embeddingProvider.getEmbeddingStore(req.getKnowledgeIds()))
-				.embeddingModel(embeddingProvider.getEmbeddingModel(req.getKnowledgeIds()))
-				.dynamicFilter(filter)
-				.build();
-			aiServices
-				.retrievalAugmentor(DefaultRetrievalAugmentor.builder().contentRetriever(contentRetriever).build());
+		if (StrUtil.isNotBlank(req.getKnowledgeId()) && !knowledgeIds.contains(req.getKnowledgeId())) {
+			knowledgeIds.add(req.getKnowledgeId());
 		}
-		Agent agent = aiServices.build();
+
+		String key = AgentStoreFactory.key(AgentStoreFactory.TYPE_RAG_STREAM, req.getModelId(), knowledgeIds,
+				req.getSystemPrompt(), req.getUserPromptTemplate());
+		Agent agent = agentStoreFactory.get(key, () -> {
+			AiServices<Agent> aiServices = build(provider.stream(req.getModelId()), null, req.getSystemPrompt());
+			if (!knowledgeIds.isEmpty()) {
+				aiServices.retrievalAugmentor(knowledgeRetrieverFactory.augmentor(knowledgeIds));
+			}
+			return aiServices.build();
+		});
 		return agent.stream(req.getConversationId(), req.getMessage());
 	}
 
 	@Override
 	public TokenStream singleChat(ChatRequest req) {
-		StreamingChatModel model = provider.stream(req.getModelId());
 		if (StrUtil.isBlank(req.getConversationId())) {
 			req.setConversationId(IdUtil.simpleUUID());
 		}
 
-		Agent agent = build(model, null, req).build();
+		Agent agent = streamAgent(req);
 		if (req.getPrompt() == null) {
 			// 处理用户提示词模板
 			String message = req.getMessage();
@@ -135,12 +134,11 @@ public class LangChatServiceImpl implements LangChatService {
 
 	@Override
 	public Flux<String> chatFlux(ChatRequest req) {
-		StreamingChatModel model = provider.stream(req.getModelId());
 		if (StrUtil.isBlank(req.getConversationId())) {
 			req.setConversationId(IdUtil.simpleUUID());
 		}
 
-		Agent agent = build(model, null, req).build();
+		Agent agent = streamAgent(req);
 		if (req.getPrompt() == null) {
 			// 处理用户提示词模板
 			String message = req.getMessage();
@@ -150,7 +148,7 @@ public class LangChatServiceImpl implements LangChatService {
 			}
 			req.setPrompt(PromptUtil.build(message, ""));
 		}
-		return agent.streamFlux(req.getConversationId(), req.getPrompt().text());
+		return streamCancellations.track(agent.streamFlux(req.getConversationId(), req.getPrompt().text()));
 	}
 
 	@Override
@@ -160,8 +158,10 @@ public class LangChatServiceImpl implements LangChatService {
 		}
 
 		try {
-			ChatModel model = provider.text(req.getModelId());
-			Agent agent = build(null, model, req).build();
+			String key = AgentStoreFactory.key(AgentStoreFactory.TYPE_TEXT, req.getModelId(), null,
+					req.getSystemPrompt(), req.getUserPromptTemplate());
+			Agent agent = agentStoreFactory.get(key,
+					() -> build(null, provider.text(req.getModelId()), req.getSystemPrompt()).build());
 			String text = agent.text(req.getConversationId(), req.getMessage());
 			return text;
 		}
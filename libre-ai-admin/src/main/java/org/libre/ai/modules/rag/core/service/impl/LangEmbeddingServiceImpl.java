@@ -1,10 +1,6 @@
 package org.libre.ai.modules.rag.core.service.impl;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.Metadata;
-import dev.langchain4j.data.document.loader.UrlDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -13,14 +9,20 @@ import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.libre.ai.modules.rag.core.consts.EmbedConst;
+import org.libre.ai.modules.rag.core.ingest.IngestPipeline;
+import org.libre.ai.modules.rag.core.ingest.IngestProgress;
+import org.libre.ai.modules.rag.core.ingest.IngestSpills;
+import org.libre.ai.modules.rag.core.ingest.SegmentSource;
+import org.libre.ai.modules.rag.core.ingest.TikaSegmentSource;
 import org.libre.ai.modules.rag.core.provider.EmbeddingProvider;
 import org.libre.ai.modules.rag.core.service.LangEmbeddingService;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.dto.EmbeddingResult;
+import org.libre.ai.modules.rag.properties.IngestProperties;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -34,6 +36,12 @@ public class LangEmbeddingServiceImpl implements LangEmbeddingService {
 
 	private final EmbeddingProvider embeddingProvider;
 
+	private final IngestPipeline ingestPipeline;
+
+	private final IngestProperties ingestProperties;
+
+	private final IngestSpills ingestSpills;
+
 	@Override
 	public EmbeddingResult embeddingText(ChatRequest req) {
 		log.info(">>>>>>>>>>>>>> Text文本向量解析开始，KnowledgeId={}, DocsName={}", req.getKnowledgeId(), req.getDocsName());
@@ -51,24 +59,25 @@ public class LangEmbeddingServiceImpl implements LangEmbeddingService {
 	}
 
 	@Override
-	public List<EmbeddingResult> embeddingDocs(ChatRequest req) {
+	public List<EmbeddingResult> embeddingDocs(ChatRequest req, IngestProgress progress) {
 		log.info(">>>>>>>>>>>>>> Docs文档向量解析开始，KnowledgeId={}, DocsName={}", req.getKnowledgeId(), req.getDocsName());
-		Document document = UrlDocumentLoader.load(req.getUrl(), new ApacheTikaDocumentParser());
-		document.metadata().put(EmbedConst.KNOWLEDGE, req.getKnowledgeId()).put(EmbedConst.FILENAME, req.getDocsName());
-
-		List<EmbeddingResult> list = new ArrayList<>();
+		List<EmbeddingResult> list;
 		try {
-			DocumentSplitter splitter = EmbeddingProvider.splitter();
-			List<TextSegment> segments = splitter.split(document);
-			log.info("文档分片完成，共生成 {} 个片段", segments.size());
-
 			EmbeddingModel embeddingModel = embeddingProvider.getEmbeddingModel(req.getKnowledgeId());
 			EmbeddingStore<TextSegment> embeddingStore = embeddingProvider.getEmbeddingStore(req.getKnowledgeId());
-			List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
-			List<String> ids = embeddingStore.addAll(embeddings, segments);
-
-			for (int i = 0; i < ids.size(); i++) {
-				list.add(new EmbeddingResult().setVectorId(ids.get(i)).setText(segments.get(i).text()));
+			Metadata metadata = Metadata.metadata(EmbedConst.KNOWLEDGE, req.getKnowledgeId())
+				.put(EmbedConst.FILENAME, req.getDocsName());
+			// 本实例保存了上传文件的副本时直接解析，不再从文件地址下载
+			Path local = req.getDocsId() == null ? null : ingestSpills.local(req.getDocsId());
+			SegmentSource source = local != null
+					? TikaSegmentSource.fromFile(local, EmbeddingProvider.splitter(), metadata,
+							ingestProperties.getParseWindow())
+					: TikaSegmentSource.fromUrl(req.getUrl(), EmbeddingProvider.splitter(), metadata,
+							ingestProperties.getParseWindow());
+			list = ingestPipeline.run(source, embeddingModel, embeddingStore, progress);
+			if (local != null) {
+				// 解析和上传并行执行，上传完成后文件地址才可用
+				ingestSpills.awaitUpload(req.getDocsId());
 			}
 		}
 		catch (Exception e) {
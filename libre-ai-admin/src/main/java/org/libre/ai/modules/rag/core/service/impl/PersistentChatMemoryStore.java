@@ -1,84 +1,309 @@
 package org.libre.ai.modules.rag.core.service.impl;
 
+import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
 import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * 对话上下文内存存储
+ *
+ * 按会话分段加锁（ReentrantLock，避免虚拟线程在 synchronized 上 pin 住载体线程），并按会话数量、估算的消息字节数以及空闲时间淘汰最久未访问的会话。
+ *
  * @author tycoding
  * @since 2024/8/15
  */
 @Slf4j
+@Component
 public class PersistentChatMemoryStore implements ChatMemoryStore {
 
-	private static final Map<Object, List<ChatMessage>> store = new HashMap<>();
+	private static final int STRIPES = 64;
 
-	private static final Map<Object, Boolean> initSystemMessageStore = new HashMap<>();
+	/**
+	 * 单条消息的固定开销估算（对象头、引用、List 节点等）
+	 */
+	private static final long MESSAGE_OVERHEAD = 64;
 
-	private static final Map<Object, Boolean> initMessageStore = new HashMap<>();
+	/**
+	 * 超出上限时一次淘汰到上限的比例，避免每次写入都触发淘汰
+	 */
+	private static final double EVICT_TARGET_RATIO = 0.9;
 
-	public static void clean(Object memoryId) {
-		log.info("clean message memory store to: {}", memoryId);
-		store.remove(memoryId);
-	}
+	private final ChatProperties.Memory properties;
 
-	public static void init(Object memoryId, SystemMessage message) {
-		Boolean isInitSystemMessage = initSystemMessageStore.get(memoryId);
-		if (isInitSystemMessage != null && isInitSystemMessage) {
-			return;
-		}
+	private final Map<Object, MemoryEntry> store = new ConcurrentHashMap<>();
+
+	private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private final AtomicLong totalBytes = new AtomicLong();
+
+	private final Counter hits;
+
+	private final Counter misses;
 
-		List<ChatMessage> list = store.get(memoryId);
-		if (list == null) {
-			store.put(memoryId, new ArrayList<>(List.of(message)));
+	private final Counter sizeEvictions;
+
+	private final Counter idleEvictions;
+
+	private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "chat-memory-sweeper");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public PersistentChatMemoryStore(ChatProperties chatProperties, MeterRegistry meterRegistry) {
+		this.properties = chatProperties.getMemory();
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new ReentrantLock();
 		}
-		else {
+
+		Gauge.builder("langchat.chat.memory.size", store, Map::size)
+			.description("内存中的会话数量")
+			.register(meterRegistry);
+		Gauge.builder("langchat.chat.memory.bytes", totalBytes, AtomicLong::get)
+			.description("内存中消息的估算字节数")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+		this.hits = Counter.builder("langchat.chat.memory.requests").tag("result", "hit").register(meterRegistry);
+		this.misses = Counter.builder("langchat.chat.memory.requests").tag("result", "miss").register(meterRegistry);
+		Gauge.builder("langchat.chat.memory.hit.ratio", this, PersistentChatMemoryStore::hitRatio)
+			.register(meterRegistry);
+		this.sizeEvictions = Counter.builder("langchat.chat.memory.evictions")
+			.tag("cause", "size")
+			.register(meterRegistry);
+		this.idleEvictions = Counter.builder("langchat.chat.memory.evictions")
+			.tag("cause", "idle")
+			.register(meterRegistry);
+
+		long interval = properties.getSweepInterval();
+		sweeper.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public void clean(Object memoryId) {
+		log.info("clean message memory store to: {}", memoryId);
+		deleteMessages(memoryId);
+	}
+
+	public void init(Object memoryId, SystemMessage message) {
+		withLock(memoryId, () -> {
+			MemoryEntry entry = store.get(memoryId);
+			if (entry != null && entry.systemInitialized) {
+				return;
+			}
+			List<ChatMessage> list = new ArrayList<>(entry == null ? List.of() : entry.messages);
 			list.add(message);
-		}
-		initSystemMessageStore.put(memoryId, true);
+			put(memoryId, list, entry).systemInitialized = true;
+		});
+		evictIfNeeded();
 	}
 
-	public static void init(Object memoryId, List<ChatMessage> messages) {
+	public void init(Object memoryId, List<ChatMessage> messages) {
 		log.info("initialize message memory store to: {}", memoryId);
 
-		Boolean isInitMessage = initMessageStore.get(memoryId);
-		if (isInitMessage != null && isInitMessage) {
-			return;
-		}
-
-		List<ChatMessage> list = store.get(memoryId);
-		if (list == null) {
-			store.put(memoryId, messages);
-		}
-		else {
+		withLock(memoryId, () -> {
+			MemoryEntry entry = store.get(memoryId);
+			if (entry != null && entry.messagesInitialized) {
+				return;
+			}
+			List<ChatMessage> list = new ArrayList<>(entry == null ? List.of() : entry.messages);
 			list.addAll(messages);
-		}
-		initMessageStore.put(memoryId, true);
+			put(memoryId, list, entry).messagesInitialized = true;
+		});
+		evictIfNeeded();
+	}
+
+	/**
+	 * 会话是否已经加载过历史消息（通过 {@link #init(Object, List)}）
+	 */
+	public boolean isHydrated(Object memoryId) {
+		MemoryEntry entry = store.get(memoryId);
+		return entry != null && entry.messagesInitialized;
 	}
 
 	@Override
 	public List<ChatMessage> getMessages(Object memoryId) {
-		List<ChatMessage> list = store.get(memoryId);
-		if (list == null) {
+		MemoryEntry entry = store.get(memoryId);
+		if (entry == null) {
+			misses.increment();
 			return new ArrayList<>();
 		}
-		return list;
+		hits.increment();
+		entry.lastAccess = System.currentTimeMillis();
+		return entry.messages;
 	}
 
 	@Override
 	public void updateMessages(Object memoryId, List<ChatMessage> messages) {
-		store.put(memoryId, messages);
+		withLock(memoryId, () -> put(memoryId, messages, store.get(memoryId)));
+		evictIfNeeded();
 	}
 
 	@Override
 	public void deleteMessages(Object memoryId) {
-		store.remove(memoryId);
+		withLock(memoryId, () -> {
+			MemoryEntry removed = store.remove(memoryId);
+			if (removed != null) {
+				totalBytes.addAndGet(-removed.bytes);
+			}
+		});
+	}
+
+	/**
+	 * 写入会话消息，调用方需持有该会话的分段锁
+	 */
+	private MemoryEntry put(Object memoryId, List<ChatMessage> messages, MemoryEntry previous) {
+		MemoryEntry entry = new MemoryEntry(List.copyOf(messages));
+		if (previous != null) {
+			entry.systemInitialized = previous.systemInitialized;
+			entry.messagesInitialized = previous.messagesInitialized;
+			totalBytes.addAndGet(-previous.bytes);
+		}
+		store.put(memoryId, entry);
+		totalBytes.addAndGet(entry.bytes);
+		return entry;
+	}
+
+	private void withLock(Object memoryId, Runnable action) {
+		ReentrantLock lock = locks[(memoryId.hashCode() & 0x7fffffff) % STRIPES];
+		lock.lock();
+		try {
+			action.run();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 超出会话数量或字节上限时，按最久未访问淘汰到上限的 90%
+	 */
+	private void evictIfNeeded() {
+		if (!overLimit(1.0) || !evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			// lastAccess 会被并发更新，先取快照再排序
+			List<EvictCandidate> candidates = new ArrayList<>(store.size());
+			store.forEach((memoryId, entry) -> candidates.add(new EvictCandidate(memoryId, entry, entry.lastAccess)));
+			candidates.sort(Comparator.comparingLong(EvictCandidate::lastAccess));
+			for (EvictCandidate candidate : candidates) {
+				if (!overLimit(EVICT_TARGET_RATIO)) {
+					break;
+				}
+				if (evict(candidate.memoryId(), candidate.entry())) {
+					sizeEvictions.increment();
+				}
+			}
+		}
+		finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void evictIdle() {
+		try {
+			long deadline = System.currentTimeMillis() - properties.getIdleTimeout();
+			store.forEach((memoryId, entry) -> {
+				if (entry.lastAccess < deadline && evict(memoryId, entry)) {
+					idleEvictions.increment();
+				}
+			});
+		}
+		catch (Exception e) {
+			log.warn("chat memory idle sweep failed: {}", e.getMessage());
+		}
+	}
+
+	private boolean evict(Object memoryId, MemoryEntry expected) {
+		boolean[] removed = { false };
+		withLock(memoryId, () -> {
+			if (store.remove(memoryId, expected)) {
+				totalBytes.addAndGet(-expected.bytes);
+				removed[0] = true;
+			}
+		});
+		return removed[0];
+	}
+
+	private boolean overLimit(double ratio) {
+		return store.size() > properties.getMaxConversations() * ratio
+				|| totalBytes.get() > properties.getMaxBytes() * ratio;
+	}
+
+	private double hitRatio() {
+		double total = hits.count() + misses.count();
+		return total == 0 ? 0 : hits.count() / total;
+	}
+
+	static long estimateBytes(ChatMessage message) {
+		long chars = switch (message) {
+			case SystemMessage m -> m.text().length();
+			case UserMessage m -> m.contents().stream().mapToLong(PersistentChatMemoryStore::estimateChars).sum();
+			case AiMessage m -> (m.text() == null ? 0 : m.text().length()) + (m.toolExecutionRequests() == null ? 0
+					: m.toolExecutionRequests().stream().mapToLong(r -> String.valueOf(r.arguments()).length()).sum());
+			case ToolExecutionResultMessage m -> m.text() == null ? 0 : m.text().length();
+			default -> 256;
+		};
+		return MESSAGE_OVERHEAD + chars * 2;
+	}
+
+	private static long estimateChars(Content content) {
+		if (content instanceof TextContent text) {
+			return text.text().length();
+		}
+		// 图片、音频等多模态内容通常以 URL 或 base64 引用，按固定大小估算
+		return 1024;
+	}
+
+	@PreDestroy
+	public void destroy() {
+		sweeper.shutdownNow();
+	}
+
+	private record EvictCandidate(Object memoryId, MemoryEntry entry, long lastAccess) {
+	}
+
+	private static class MemoryEntry {
+
+		private final List<ChatMessage> messages;
+
+		private final long bytes;
+
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		private boolean systemInitialized;
+
+		private boolean messagesInitialized;
+
+		MemoryEntry(List<ChatMessage> messages) {
+			this.messages = messages;
+			this.bytes = messages.stream().mapToLong(PersistentChatMemoryStore::estimateBytes).sum();
+		}
+
 	}
 
 }
@@ -0,0 +1,118 @@
+package org.libre.ai.modules.rag.core.service.impl;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.persist.AigcMessageWriter;
+import org.libre.ai.modules.rag.entity.AigcMessage;
+import org.libre.ai.modules.rag.enums.RoleEnum;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.service.AigcMessageService;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 两级对话上下文存储
+ *
+ * 热数据在 {@link PersistentChatMemoryStore} 中，会话被淘汰或服务重启后，首次访问时从 aigc_message 加载最近的
+ * memoryMaxMessage 条消息。同一会话的并发加载共用一次查询。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TieredChatMemoryStore implements ChatMemoryStore {
+
+	private final PersistentChatMemoryStore hotStore;
+
+	private final AigcMessageService aigcMessageService;
+
+	private final AigcMessageWriter aigcMessageWriter;
+
+	private final ChatProperties chatProperties;
+
+	private final Map<Object, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+
+	@Override
+	public List<ChatMessage> getMessages(Object memoryId) {
+		hydrate(memoryId);
+		return hotStore.getMessages(memoryId);
+	}
+
+	@Override
+	public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+		hotStore.updateMessages(memoryId, messages);
+	}
+
+	@Override
+	public void deleteMessages(Object memoryId) {
+		hotStore.deleteMessages(memoryId);
+	}
+
+	/**
+	 * 热数据中没有该会话时从数据库加载。需要在本轮用户消息写库之前调用，否则加载结果会包含本轮消息。
+	 */
+	public void hydrate(Object memoryId) {
+		if (memoryId == null || hotStore.isHydrated(memoryId)) {
+			return;
+		}
+
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		CompletableFuture<Void> existing = loading.putIfAbsent(memoryId, future);
+		if (existing != null) {
+			existing.join();
+			return;
+		}
+
+		try {
+			if (!hotStore.isHydrated(memoryId)) {
+				hotStore.init(memoryId, load(memoryId));
+			}
+			future.complete(null);
+		}
+		catch (Exception e) {
+			log.error("加载会话历史消息失败，conversationId={}", memoryId, e);
+			// 加载失败时以空上下文继续对话，不阻断请求
+			future.complete(null);
+		}
+		finally {
+			loading.remove(memoryId, future);
+		}
+	}
+
+	private List<ChatMessage> load(Object memoryId) {
+		// 先写入该会话还在写入队列中的消息，否则刚发生的对话不会出现在加载结果中
+		aigcMessageWriter.flush(String.valueOf(memoryId));
+		List<AigcMessage> list = aigcMessageService.getLatestMessages(String.valueOf(memoryId),
+				chatProperties.getMemoryMaxMessage());
+		List<ChatMessage> messages = new ArrayList<>(list.size());
+		list.forEach(item -> {
+			if (item.getMessage() == null) {
+				return;
+			}
+			if (RoleEnum.ASSISTANT.getName().equals(item.getRole())) {
+				messages.add(AiMessage.from(item.getMessage()));
+			}
+			else if (RoleEnum.SYSTEM.getName().equals(item.getRole())) {
+				messages.add(SystemMessage.from(item.getMessage()));
+			}
+			else {
+				messages.add(UserMessage.from(item.getMessage()));
+			}
+		});
+		log.debug("hydrate message memory store to: {}, size: {}", memoryId, messages.size());
+		return messages;
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.libre.ai.modules.rag.core.stream;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.HttpClientBuilderLoader;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEvent;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+
+/**
+ * 支持取消的模型 HTTP 客户端
+ *
+ * 包装默认的 HTTP 客户端，在发起流式请求时关联当前线程上的 {@link StreamCancellation}。取消时关闭响应流，底层连接随之断开，模型服务停止生成。
+ * 取消之后产生的读取异常不再回调给上层。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+public class CancellableHttpClientBuilder implements HttpClientBuilder {
+
+	private final HttpClientBuilder delegate = HttpClientBuilderLoader.loadHttpClientBuilder();
+
+	@Override
+	public Duration connectTimeout() {
+		return delegate.connectTimeout();
+	}
+
+	@Override
+	public HttpClientBuilder connectTimeout(Duration timeout) {
+		delegate.connectTimeout(timeout);
+		return this;
+	}
+
+	@Override
+	public Duration readTimeout() {
+		return delegate.readTimeout();
+	}
+
+	@Override
+	public HttpClientBuilder readTimeout(Duration timeout) {
+		delegate.readTimeout(timeout);
+		return this;
+	}
+
+	@Override
+	public HttpClient build() {
+		return new CancellableHttpClient(delegate.build());
+	}
+
+	private record CancellableHttpClient(HttpClient delegate) implements HttpClient {
+
+		@Override
+		public SuccessfulHttpResponse execute(HttpRequest request) {
+			return delegate.execute(request);
+		}
+
+		@Override
+		public void execute(HttpRequest request, ServerSentEventParser parser, ServerSentEventListener listener) {
+			StreamCancellation cancellation = StreamCancellation.current();
+			if (cancellation == null) {
+				delegate.execute(request, parser, listener);
+				return;
+			}
+
+			ServerSentEventParser cancellableParser = (inputStream, eventListener) -> {
+				cancellation.onCancel(() -> closeQuietly(inputStream));
+				if (!cancellation.isCancelled()) {
+					parser.parse(inputStream, eventListener);
+				}
+			};
+			delegate.execute(request, cancellableParser, new ServerSentEventListener() {
+
+				@Override
+				public void onOpen(SuccessfulHttpResponse response) {
+					listener.onOpen(response);
+				}
+
+				@Override
+				public void onEvent(ServerSentEvent event) {
+					if (!cancellation.isCancelled()) {
+						listener.onEvent(event);
+					}
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					if (!cancellation.isCancelled()) {
+						listener.onError(throwable);
+					}
+				}
+
+				@Override
+				public void onClose() {
+					listener.onClose();
+				}
+
+			});
+		}
+
+		private static void closeQuietly(InputStream inputStream) {
+			try {
+				inputStream.close();
+			}
+			catch (IOException ignored) {
+			}
+		}
+
+	}
+
+}
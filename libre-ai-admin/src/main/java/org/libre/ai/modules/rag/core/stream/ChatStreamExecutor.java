@@ -0,0 +1,133 @@
+package org.libre.ai.modules.rag.core.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.utils.StreamEmitter;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式对话共享执行器
+ *
+ * 每个对话运行在独立的虚拟线程上，并通过全局许可数限制同时进行中的流式对话。许可在 SSE 连接关闭时归还，而不是在提交任务的线程返回时归还，
+ * 因为模型的 TokenStream 会在自己的回调线程中继续推送。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class ChatStreamExecutor {
+
+	public static final int REJECTED_CODE = HttpStatus.TOO_MANY_REQUESTS.value();
+
+	private final ChatProperties.Stream properties;
+
+	private final ExecutorService executor = Executors
+		.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-stream-", 0).factory());
+
+	private final Semaphore permits;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final Counter rejected;
+
+	public ChatStreamExecutor(ChatProperties chatProperties, MeterRegistry meterRegistry) {
+		this.properties = chatProperties.getStream();
+		this.permits = new Semaphore(properties.getMaxConcurrent());
+
+		Gauge.builder("langchat.chat.stream.inflight", inFlight, AtomicInteger::get)
+			.description("进行中的流式对话数量")
+			.register(meterRegistry);
+		Gauge.builder("langchat.chat.stream.queued", queued, AtomicInteger::get)
+			.description("等待执行许可的流式对话数量")
+			.register(meterRegistry);
+		this.rejected = Counter.builder("langchat.chat.stream.rejected")
+			.description("因并发已满被拒绝的流式对话数量")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * 提交一个流式对话任务
+	 * @return 并发和排队均已满时返回 false，调用方应立即向客户端返回错误
+	 */
+	public boolean execute(StreamEmitter emitter, Runnable task) {
+		if (permits.tryAcquire()) {
+			submit(emitter, () -> run(emitter, task));
+			return true;
+		}
+
+		if (queued.incrementAndGet() > properties.getMaxQueued()) {
+			queued.decrementAndGet();
+			rejected.increment();
+			log.warn("流式对话并发已满，拒绝请求：inFlight={}, queued={}", inFlight.get(), queued.get());
+			return false;
+		}
+
+		submit(emitter, () -> {
+			boolean acquired = false;
+			try {
+				acquired = permits.tryAcquire(properties.getQueueTimeout(), TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			finally {
+				queued.decrementAndGet();
+			}
+			if (!acquired) {
+				rejected.increment();
+				emitter.error(REJECTED_CODE, "当前对话请求过多，请稍后再试");
+				return;
+			}
+			run(emitter, task);
+		});
+		return true;
+	}
+
+	private void submit(StreamEmitter emitter, Runnable runnable) {
+		Future<?> future = executor.submit(runnable);
+		emitter.onClose(() -> future.cancel(true));
+	}
+
+	private void run(StreamEmitter emitter, Runnable task) {
+		inFlight.incrementAndGet();
+		AtomicBoolean released = new AtomicBoolean(false);
+		emitter.onClose(() -> {
+			if (released.compareAndSet(false, true)) {
+				inFlight.decrementAndGet();
+				permits.release();
+			}
+		});
+		task.run();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public int getQueued() {
+		return queued.get();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.libre.ai.modules.rag.core.stream;
+
+import dev.langchain4j.model.output.TokenUsage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 一次流式生成的取消令牌
+ *
+ * 在 {@link #bind(Runnable)} 中启动的模型请求会被 {@link CancellableHttpClientBuilder} 关联到该令牌，取消时关闭模型响应流，
+ * 从而中断上游生成。生成正常结束后再取消不会产生任何效果。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+public class StreamCancellation {
+
+	private static final ThreadLocal<StreamCancellation> CURRENT = new ThreadLocal<>();
+
+	private final List<Runnable> hooks = new CopyOnWriteArrayList<>();
+
+	private final AtomicBoolean done = new AtomicBoolean(false);
+
+	private final AtomicInteger generated = new AtomicInteger();
+
+	private volatile boolean cancelled;
+
+	private final Consumer<StreamCancellation> onCancelled;
+
+	private final Consumer<TokenUsage> onCompleted;
+
+	StreamCancellation(Consumer<StreamCancellation> onCancelled, Consumer<TokenUsage> onCompleted) {
+		this.onCancelled = onCancelled;
+		this.onCompleted = onCompleted;
+	}
+
+	/**
+	 * 创建不计入取消统计的令牌，用于内部发起的请求（如对冲请求）
+	 */
+	public static StreamCancellation untracked() {
+		return new StreamCancellation(cancellation -> {
+		}, tokenUsage -> {
+		});
+	}
+
+	/**
+	 * 当前线程上正在启动的流式生成，没有时返回 null
+	 */
+	public static StreamCancellation current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * 在当前线程上关联该令牌后执行，用于启动 TokenStream 或订阅 Flux
+	 */
+	public void bind(Runnable action) {
+		StreamCancellation previous = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			action.run();
+		}
+		finally {
+			if (previous == null) {
+				CURRENT.remove();
+			}
+			else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * 注册取消时的回调，已经取消时立即执行
+	 */
+	public void onCancel(Runnable hook) {
+		hooks.add(hook);
+		if (cancelled) {
+			hook.run();
+		}
+	}
+
+	/**
+	 * 收到一段增量输出
+	 */
+	public void partial() {
+		generated.incrementAndGet();
+	}
+
+	public void complete(TokenUsage tokenUsage) {
+		if (done.compareAndSet(false, true)) {
+			onCompleted.accept(tokenUsage);
+		}
+	}
+
+	public void cancel() {
+		if (!done.compareAndSet(false, true)) {
+			return;
+		}
+		cancelled = true;
+		hooks.forEach(hook -> {
+			try {
+				hook.run();
+			}
+			catch (Exception e) {
+				log.debug("取消流式生成失败: {}", e.getMessage());
+			}
+		});
+		onCancelled.accept(this);
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public int getGenerated() {
+		return generated.get();
+	}
+
+}
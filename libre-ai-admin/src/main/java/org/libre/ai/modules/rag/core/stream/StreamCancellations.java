@@ -0,0 +1,77 @@
+package org.libre.ai.modules.rag.core.stream;
+
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * 创建流式生成的取消令牌，并统计客户端断开后取消的生成
+ *
+ * 被取消的生成没有真实的用量数据，节省的 Token 数按已完成生成的平均输出长度（指数移动平均）减去取消前已生成的片段数估算。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Slf4j
+@Component
+public class StreamCancellations {
+
+	/**
+	 * 平均输出长度的平滑系数
+	 */
+	private static final double ALPHA = 0.05;
+
+	private final Counter cancelled;
+
+	private final Counter avoidedTokens;
+
+	private volatile double averageOutputTokens;
+
+	public StreamCancellations(MeterRegistry meterRegistry) {
+		this.cancelled = Counter.builder("langchat.chat.stream.cancelled")
+			.description("客户端断开后取消的流式生成数量")
+			.register(meterRegistry);
+		this.avoidedTokens = Counter.builder("langchat.chat.stream.avoided.tokens")
+			.description("取消生成后估算节省的输出 Token 数")
+			.register(meterRegistry);
+	}
+
+	public StreamCancellation create() {
+		return new StreamCancellation(this::cancelled, this::completed);
+	}
+
+	/**
+	 * 订阅时关联取消令牌，下游取消订阅（客户端断开）时中断上游生成
+	 */
+	public <T> Flux<T> track(Flux<T> source) {
+		return Flux.defer(() -> {
+			StreamCancellation cancellation = create();
+			Publisher<T> bound = subscriber -> cancellation.bind(() -> source.subscribe(subscriber));
+			return Flux.from(bound)
+				.doOnNext(item -> cancellation.partial())
+				.doOnComplete(() -> cancellation.complete(null))
+				.doOnCancel(cancellation::cancel);
+		});
+	}
+
+	private void completed(TokenUsage tokenUsage) {
+		if (tokenUsage == null || tokenUsage.outputTokenCount() == null) {
+			return;
+		}
+		int output = tokenUsage.outputTokenCount();
+		double average = averageOutputTokens;
+		averageOutputTokens = average == 0 ? output : average + ALPHA * (output - average);
+	}
+
+	private void cancelled(StreamCancellation cancellation) {
+		cancelled.increment();
+		double avoided = Math.max(0, averageOutputTokens - cancellation.getGenerated());
+		avoidedTokens.increment(avoided);
+		log.debug("客户端断开，取消流式生成：已生成 {} 段，估算节省 {} tokens", cancellation.getGenerated(), (long) avoided);
+	}
+
+}
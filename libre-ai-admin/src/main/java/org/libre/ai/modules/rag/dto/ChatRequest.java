@@ -10,7 +10,6 @@ import org.libre.ai.modules.rag.utils.StreamEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executor;
 
 /**
  * @author tycoding
@@ -61,6 +60,4 @@ public class ChatRequest {
 
 	private StreamEmitter emitter;
 
-	private Executor executor;
-
 }
@@ -0,0 +1,56 @@
+package org.libre.ai.modules.rag.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.libre.ai.modules.rag.entity.AigcIngestJob;
+
+/**
+ * 入库任务的执行状态，不包含本地副本路径、上传信息等内部字段
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Data
+@Accessors(chain = true)
+public class IngestJobStatus {
+
+	private String id;
+
+	/**
+	 * 任务状态，取值见 IngestStatusEnum
+	 */
+	private String status;
+
+	/**
+	 * 已执行次数
+	 */
+	private Integer attempts;
+
+	/**
+	 * 已写入向量库的切片数量
+	 */
+	private Integer chunksDone;
+
+	/**
+	 * 切片总数，切分完成前为空
+	 */
+	private Integer chunksTotal;
+
+	/**
+	 * 最近一次失败的原因
+	 */
+	private String error;
+
+	public static IngestJobStatus of(AigcIngestJob job) {
+		if (job == null) {
+			return null;
+		}
+		return new IngestJobStatus().setId(job.getId())
+			.setStatus(job.getStatus())
+			.setAttempts(job.getAttempts())
+			.setChunksDone(job.getChunksDone())
+			.setChunksTotal(job.getChunksTotal())
+			.setError(job.getError());
+	}
+
+}
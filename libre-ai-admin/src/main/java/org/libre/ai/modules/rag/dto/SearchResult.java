@@ -0,0 +1,34 @@
+package org.libre.ai.modules.rag.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 知识库检索结果
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Data
+@Accessors(chain = true)
+public class SearchResult {
+
+	/**
+	 * 命中的切片，包含文本、得分和切片元数据
+	 */
+	private List<Map<String, Object>> results;
+
+	/**
+	 * 向量检索耗时（毫秒），仅混合检索时返回
+	 */
+	private Long vectorLatency;
+
+	/**
+	 * 关键词检索耗时（毫秒），仅混合检索时返回
+	 */
+	private Long lexicalLatency;
+
+}
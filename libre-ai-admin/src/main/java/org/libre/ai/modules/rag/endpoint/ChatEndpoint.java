@@ -4,13 +4,16 @@ import cn.hutool.core.util.StrUtil;
 import dev.langchain4j.data.message.SystemMessage;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.persist.AigcMessageWriter;
 import org.libre.ai.modules.rag.core.service.impl.PersistentChatMemoryStore;
+import org.libre.ai.modules.rag.core.stream.ChatStreamExecutor;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.dto.ChatResponse;
 import org.libre.ai.modules.rag.dto.ImageRequest;
 import org.libre.ai.modules.rag.dto.PromptConstant;
 import org.libre.ai.modules.rag.entity.AigcApp;
 import org.libre.ai.modules.rag.entity.AigcModel;
+import org.libre.ai.modules.rag.properties.ChatProperties;
 import org.libre.ai.modules.rag.service.AigcAppService;
 import org.libre.ai.modules.rag.service.AigcMessageService;
 import org.libre.ai.modules.rag.service.AigcModelService;
@@ -22,8 +25,6 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author tycoding
@@ -43,17 +44,21 @@ public class ChatEndpoint {
 
 	private final AigcAppService appService;
 
-	// private final ChatProps chatProps;
+	private final ChatStreamExecutor chatStreamExecutor;
+
+	private final PersistentChatMemoryStore chatMemoryStore;
+
+	private final AigcMessageWriter aigcMessageWriter;
+
+	private final ChatProperties chatProperties;
 
 	@PostMapping("/chat/completions")
 	public SseEmitter chat(@RequestBody ChatRequest req) {
-		StreamEmitter emitter = new StreamEmitter();
+		StreamEmitter emitter = new StreamEmitter().coalesce(chatProperties.getStream().coalesce("chat"));
 		req.setEmitter(emitter);
 		// req.setUserId(AuthUtil.getUserId());
 		// req.setUsername(AuthUtil.getUsername());
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		req.setExecutor(executor);
-		return emitter.streaming(executor, () -> {
+		return emitter.streaming(chatStreamExecutor, () -> {
 			chatService.chat(req);
 		});
 	}
@@ -79,40 +84,19 @@ public class ChatEndpoint {
 		if (StrUtil.isNotBlank(app.getSystemPrompt())) {
 			// initialize chat memory
 			SystemMessage message = new SystemMessage(app.getSystemPrompt());
-			PersistentChatMemoryStore.init(conversationId, message);
+			chatMemoryStore.init(conversationId, message);
 		}
 
 		return R.ok(app);
 	}
 
-	// @GetMapping("/chat/messages/{conversationId}")
-	// public R messages(@PathVariable String conversationId) {
-	// List<AigcMessage> list = messageService.getMessages(conversationId,
-	// String.valueOf(AuthUtil.getUserId()));
-	//
-	// // initialize chat memory
-	// List<ChatMessage> chatMessages = new ArrayList<>();
-	// list.forEach(item -> {
-	// if (chatMessages.size() >= chatProps.getMemoryMaxMessage()) {
-	// return;
-	// }
-	// if (item.getRole().equals(RoleEnum.ASSISTANT.getName())) {
-	// chatMessages.add(new AiMessage(item.getMessage()));
-	// }
-	// else {
-	// chatMessages.add(new UserMessage(item.getMessage()));
-	// }
-	// });
-	// PersistentChatMemoryStore.init(conversationId, chatMessages);
-	// return R.ok(list);
-	// }
-
 	@DeleteMapping("/chat/messages/clean/{conversationId}")
 	public R cleanMessage(@PathVariable String conversationId) {
+		aigcMessageWriter.discard(conversationId);
 		messageService.clearMessage(conversationId);
 
 		// clean chat memory
-		PersistentChatMemoryStore.clean(conversationId);
+		chatMemoryStore.clean(conversationId);
 		return R.ok();
 	}
 
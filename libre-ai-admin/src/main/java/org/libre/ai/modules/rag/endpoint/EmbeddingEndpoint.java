@@ -4,11 +4,15 @@ import cn.hutool.core.util.StrUtil;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.libre.ai.modules.rag.core.consts.EmbedConst;
+import org.libre.ai.modules.rag.core.ingest.IngestJobRunner;
+import org.libre.ai.modules.rag.core.ingest.IngestSpills;
 import org.libre.ai.modules.rag.core.service.LangEmbeddingService;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.dto.EmbeddingResult;
+import org.libre.ai.modules.rag.dto.IngestJobStatus;
 import org.libre.ai.modules.rag.entity.AigcDocs;
 import org.libre.ai.modules.rag.entity.AigcDocsSlice;
+import org.libre.ai.modules.rag.entity.AigcIngestJob;
 import org.libre.ai.modules.rag.entity.AigcOss;
 import org.libre.ai.modules.rag.exception.ServiceException;
 import org.libre.ai.modules.rag.mapper.AigcDocsMapper;
@@ -19,6 +23,7 @@ import org.libre.ai.modules.rag.utils.R;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
 import java.util.concurrent.Executors;
 
 @Slf4j
@@ -37,6 +42,10 @@ public class EmbeddingEndpoint {
 
 	private final EmbeddingService embeddingService;
 
+	private final IngestJobRunner ingestJobRunner;
+
+	private final IngestSpills ingestSpills;
+
 	@PostMapping("/text")
 	public R text(@RequestBody AigcDocs data) {
 		if (StrUtil.isBlankIfStr(data.getContent())) {
@@ -74,7 +83,8 @@ public class EmbeddingEndpoint {
 	// @SaCheckPermission("aigc:embedding:docs")
 	public R docs(MultipartFile file, @PathVariable String knowledgeId) {
 		String userId = "admin";
-		AigcOss oss = aigcOssService.upload(file, userId);
+		AigcOss oss = aigcOssService.create(file.getOriginalFilename(), file.getContentType(), file.getSize(),
+				userId);
 		AigcDocs data = new AigcDocs().setName(oss.getOriginalFilename())
 			.setSliceStatus(0)
 			.setUrl(oss.getUrl())
@@ -83,8 +93,18 @@ public class EmbeddingEndpoint {
 			.setKnowledgeId(knowledgeId);
 		aigcKnowledgeService.addDocs(data);
 
-		embeddingService.embedDocsSlice(data, oss.getUrl());
-		return R.ok();
+		// 本地副本刷盘、入库任务记录上传状态后才返回，上传到对象存储在后台执行，入库任务直接解析本地副本
+		Path spill = ingestSpills.spill(data.getId(), file);
+		AigcIngestJob job;
+		try {
+			job = ingestJobRunner.submit(data, oss.getUrl(), spill, oss);
+		}
+		catch (RuntimeException e) {
+			ingestSpills.discard(data.getId());
+			throw e;
+		}
+		ingestSpills.upload(data.getId(), oss);
+		return R.ok(IngestJobStatus.of(job));
 	}
 
 	@GetMapping("/re-embed/{docsId}")
@@ -98,13 +118,22 @@ public class EmbeddingEndpoint {
 			text(docs);
 		}
 		if (EmbedConst.ORIGIN_TYPE_UPLOAD.equals(docs.getType())) {
-			// clear before re-embed
-			embeddingService.clearDocSlices(docsId);
-			embeddingService.embedDocsSlice(docs, docs.getUrl());
+			// 只重新向量化有变化的切片，不再出现的切片在任务完成后删除
+			return R.ok(IngestJobStatus.of(ingestJobRunner.submit(docs, docs.getUrl())));
 		}
 		return R.ok();
 	}
 
+	@GetMapping("/jobs/{id}")
+	public R job(@PathVariable String id) {
+		return R.ok(IngestJobStatus.of(ingestJobRunner.getJob(id)));
+	}
+
+	@GetMapping("/jobs/docs/{docsId}")
+	public R docsJob(@PathVariable String docsId) {
+		return R.ok(IngestJobStatus.of(ingestJobRunner.getLatestJob(docsId)));
+	}
+
 	@PostMapping("/search")
 	public R search(@RequestBody AigcDocs data) {
 		log.info("Embedding search request - knowledgeId: {}, content: {}", data.getKnowledgeId(), data.getContent());
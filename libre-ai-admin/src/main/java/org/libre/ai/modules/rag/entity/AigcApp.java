@@ -56,6 +56,16 @@ public class AigcApp implements Serializable {
 	 */
 	private String userPromptTemplate;
 
+	/**
+	 * 上下文保留的消息条数上限（会话未设置时使用）
+	 */
+	private Integer maxContextCount;
+
+	/**
+	 * 上下文保留消息的 Token 总数上限（会话未设置时使用）
+	 */
+	private Integer maxTokens;
+
 	/**
 	 * 应用描述
 	 */
@@ -57,7 +57,7 @@ public class AigcDocs implements Serializable {
 	private Integer sliceNum;
 
 	/**
-	 * 切片状态 (0: 未切片, 1: 已切片)
+	 * 切片状态 (0: 未切片/等待入库, 1: 已切片, 2: 入库中, 3: 入库失败)
 	 */
 	private Integer sliceStatus;
 
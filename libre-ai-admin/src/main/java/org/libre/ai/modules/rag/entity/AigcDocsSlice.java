@@ -49,6 +49,21 @@ public class AigcDocsSlice implements Serializable {
 	 */
 	private String content;
 
+	/**
+	 * 切片内容的 SHA-256
+	 */
+	private String contentHash;
+
+	/**
+	 * 生成向量的模型ID
+	 */
+	private String embedModelId;
+
+	/**
+	 * 向量所在的向量库ID
+	 */
+	private String embedStoreId;
+
 	/**
 	 * 字符数量
 	 */
@@ -71,6 +71,11 @@ public class AigcEmbedStore implements Serializable {
 	 */
 	private Integer dimension;
 
+	/**
+	 * 量化方式（INT8、BINARY），仅量化向量库使用
+	 */
+	private String quantization;
+
 	/**
 	 * 是否启用
 	 */
@@ -0,0 +1,99 @@
+package org.libre.ai.modules.rag.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 文档入库任务
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Data
+@Accessors(chain = true)
+public class AigcIngestJob implements Serializable {
+
+	private static final long serialVersionUID = -4218737491508312217L;
+
+	/**
+	 * 主键
+	 */
+	@TableId(type = IdType.ASSIGN_ID)
+	private String id;
+
+	/**
+	 * 文档ID
+	 */
+	private String docsId;
+
+	/**
+	 * 知识库ID
+	 */
+	private String knowledgeId;
+
+	/**
+	 * 文档链接
+	 */
+	private String url;
+
+	/**
+	 * 任务状态，见 {@link org.libre.ai.modules.rag.core.consts.IngestStatusEnum}
+	 */
+	private String status;
+
+	/**
+	 * 已执行次数
+	 */
+	private Integer attempts;
+
+	/**
+	 * 切片总数
+	 */
+	private Integer chunksTotal;
+
+	/**
+	 * 已向量化的切片数
+	 */
+	private Integer chunksDone;
+
+	/**
+	 * 最近一次失败原因
+	 */
+	private String error;
+
+	/**
+	 * 下次执行时间
+	 */
+	private Date nextRunTime;
+
+	/**
+	 * 上传文件在接收上传的实例上的本地副本路径
+	 */
+	private String spillPath;
+
+	/**
+	 * 上传到对象存储的状态，见 {@link org.libre.ai.modules.rag.core.consts.UploadStatusEnum}，为空表示无需上传
+	 */
+	private String uploadStatus;
+
+	/**
+	 * 上传完成前保存的对象存储信息（JSON），用于重启后重新上传
+	 */
+	private String uploadOss;
+
+	/**
+	 * 创建时间
+	 */
+	private Date createTime;
+
+	/**
+	 * 更新时间
+	 */
+	private Date updateTime;
+
+}
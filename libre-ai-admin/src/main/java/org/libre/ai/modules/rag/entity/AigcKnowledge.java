@@ -45,6 +45,11 @@ public class AigcKnowledge implements Serializable {
 	 */
 	private String des;
 
+	/**
+	 * 是否开启混合检索（关键词 + 向量）
+	 */
+	private Boolean hybridSearch;
+
 	/**
 	 * 创建时间
 	 */
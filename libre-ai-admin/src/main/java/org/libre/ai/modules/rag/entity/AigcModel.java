@@ -54,6 +54,11 @@ public class AigcModel implements Serializable {
 
 	private Integer dimension;
 
+	/**
+	 * 路由分组，同一分组的对话模型视为同一个逻辑模型，请求按延迟和错误率路由到其中一个
+	 */
+	private String routeGroup;
+
 	@Override
 	public String toString() {
 		return "AigcModel{" +
@@ -76,6 +81,7 @@ public class AigcModel implements Serializable {
 			", imageQuality='" + imageQuality + '\'' +
 			", imageStyle='" + imageStyle + '\'' +
 			", dimension=" + dimension +
+			", routeGroup='" + routeGroup + '\'' +
 			'}';
 	}
 
@@ -0,0 +1,20 @@
+package org.libre.ai.modules.rag.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 消息角色
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@Getter
+@AllArgsConstructor
+public enum RoleEnum {
+
+	USER("user"), ASSISTANT("assistant"), SYSTEM("system"),;
+
+	private final String name;
+
+}
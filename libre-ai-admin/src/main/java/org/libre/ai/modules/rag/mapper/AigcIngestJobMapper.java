@@ -0,0 +1,14 @@
+package org.libre.ai.modules.rag.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.libre.ai.modules.rag.entity.AigcIngestJob;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+@Mapper
+public interface AigcIngestJobMapper extends BaseMapper<AigcIngestJob> {
+
+}
@@ -3,6 +3,9 @@ package org.libre.ai.modules.rag.properties;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author tycoding
  * @since 2024/8/21
@@ -16,9 +19,237 @@ public class ChatProperties {
 	 */
 	private Integer memoryMaxMessage = 20;
 
+	/**
+	 * 上下文的 Token 上限，0 表示只按消息条数限制
+	 */
+	private Integer memoryMaxTokens = 0;
+
 	/**
 	 * 前端渲染的消息长度（过长会导致页面渲染卡顿）
 	 */
 	private Integer previewMaxMessage = 100;
 
+	/**
+	 * 流式对话执行器配置
+	 */
+	private Stream stream = new Stream();
+
+	/**
+	 * Agent 缓存配置
+	 */
+	private AgentCache agentCache = new AgentCache();
+
+	/**
+	 * 对话上下文内存存储配置
+	 */
+	private Memory memory = new Memory();
+
+	/**
+	 * 对话消息异步写入配置
+	 */
+	private Persist persist = new Persist();
+
+	/**
+	 * 按模型的自适应并发限制配置
+	 */
+	private ModelLimit modelLimit = new ModelLimit();
+
+	/**
+	 * 模型路由分组配置
+	 */
+	private Routing routing = new Routing();
+
+	@Data
+	public static class Stream {
+
+		/**
+		 * 全局同时进行中的流式对话数量上限
+		 */
+		private int maxConcurrent = 256;
+
+		/**
+		 * 达到上限后允许排队等待的请求数量，超出则直接拒绝
+		 */
+		private int maxQueued = 64;
+
+		/**
+		 * 排队请求等待执行许可的最长时间（毫秒）
+		 */
+		private long queueTimeout = 3000;
+
+		/**
+		 * 默认的流式输出合并配置
+		 */
+		private Coalesce coalesce = new Coalesce();
+
+		/**
+		 * 按接口覆盖的流式输出合并配置，key 为接口名称（chat、api）
+		 */
+		private Map<String, Coalesce> endpoints = new HashMap<>();
+
+		public Coalesce coalesce(String endpoint) {
+			return endpoints.getOrDefault(endpoint, coalesce);
+		}
+
+	}
+
+	@Data
+	public static class Coalesce {
+
+		/**
+		 * 合并窗口（毫秒），窗口内的增量输出合并为一个 SSE 帧发送，0 表示不合并
+		 */
+		private long window = 30;
+
+		/**
+		 * 缓冲的字符数达到该值时立即发送，不等待窗口结束
+		 */
+		private int maxChars = 512;
+
+		public boolean enabled() {
+			return window > 0;
+		}
+
+	}
+
+	@Data
+	public static class AgentCache {
+
+		/**
+		 * 缓存的 Agent 数量上限
+		 */
+		private int maxSize = 256;
+
+		/**
+		 * 缓存过期时间（毫秒），从构建时开始计算，读取不会延长
+		 */
+		private long expire = 30 * 60 * 1000L;
+
+	}
+
+	@Data
+	public static class Memory {
+
+		/**
+		 * 内存中保留的会话数量上限
+		 */
+		private int maxConversations = 10000;
+
+		/**
+		 * 内存中消息的估算字节数上限
+		 */
+		private long maxBytes = 256 * 1024 * 1024L;
+
+		/**
+		 * 会话空闲多久后被淘汰（毫秒）
+		 */
+		private long idleTimeout = 30 * 60 * 1000L;
+
+		/**
+		 * 空闲会话的扫描间隔（毫秒）
+		 */
+		private long sweepInterval = 60 * 1000L;
+
+	}
+
+	@Data
+	public static class Persist {
+
+		/**
+		 * 等待写入的消息队列容量，队列满时同步写入
+		 */
+		private int queueCapacity = 10000;
+
+		/**
+		 * 单次批量写入的消息数量上限
+		 */
+		private int batchSize = 100;
+
+		/**
+		 * 批量写入的时间窗口（毫秒）
+		 */
+		private long flushInterval = 200;
+
+		/**
+		 * 服务关闭时等待队列写完的最长时间（毫秒）
+		 */
+		private long shutdownTimeout = 10 * 1000L;
+
+	}
+
+	@Data
+	public static class ModelLimit {
+
+		/**
+		 * 是否启用按模型的并发限制
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * 初始并发上限
+		 */
+		private int initialLimit = 16;
+
+		/**
+		 * 并发上限的下限，限流时不会低于该值
+		 */
+		private int minLimit = 1;
+
+		/**
+		 * 并发上限的上限
+		 */
+		private int maxLimit = 128;
+
+		/**
+		 * 模型返回 429 或超时时上限的缩小比例
+		 */
+		private double backoffRatio = 0.7;
+
+		/**
+		 * 每个模型允许排队等待的请求数量
+		 */
+		private int maxQueued = 64;
+
+		/**
+		 * 排队等待的最长时间（毫秒）
+		 */
+		private long queueTimeout = 10 * 1000L;
+
+	}
+
+	@Data
+	public static class Routing {
+
+		/**
+		 * 是否启用模型路由分组
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * 首字延迟超过分组 p95 时是否向另一个成员发送对冲请求
+		 */
+		private boolean hedge = false;
+
+		/**
+		 * 对冲请求的最短等待时间（毫秒）
+		 */
+		private long minHedgeDelay = 200;
+
+		/**
+		 * 首字延迟和错误率指数移动平均的平滑系数
+		 */
+		private double alpha = 0.2;
+
+		/**
+		 * 错误率超过该值的成员视为不健康
+		 */
+		private double maxErrorRate = 0.5;
+
+		/**
+		 * 随机分配请求的比例，用于持续更新非最优成员的统计
+		 */
+		private double exploreRatio = 0.05;
+
+	}
+
 }
@@ -0,0 +1,247 @@
+package org.libre.ai.modules.rag.properties;
+
+import lombok.Data;
+import org.libre.ai.modules.rag.core.embedding.onnx.OnnxBiEncoder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+@Data
+@ConfigurationProperties("langchat.embedding")
+public class EmbeddingProperties {
+
+	/**
+	 * 查询向量缓存配置
+	 */
+	private Cache cache = new Cache();
+
+	/**
+	 * 单条向量化请求的合并配置
+	 */
+	private Coalesce coalesce = new Coalesce();
+
+	/**
+	 * 进程内 HNSW 向量库配置
+	 */
+	private Local local = new Local();
+
+	/**
+	 * 内存映射文件向量库配置
+	 */
+	private Mmap mmap = new Mmap();
+
+	/**
+	 * 精确检索向量库配置
+	 */
+	private Flat flat = new Flat();
+
+	/**
+	 * 量化向量库配置
+	 */
+	private Quantized quantized = new Quantized();
+
+	/**
+	 * 进程内 ONNX 向量模型配置
+	 */
+	private Onnx onnx = new Onnx();
+
+	@Data
+	public static class Cache {
+
+		/**
+		 * 是否缓存查询文本的向量
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * 缓存的估算字节数上限
+		 */
+		private long maxBytes = 64 * 1024 * 1024L;
+
+		/**
+		 * 缓存过期时间（毫秒），0 表示不过期
+		 */
+		private long ttl = 0;
+
+	}
+
+	@Data
+	public static class Coalesce {
+
+		/**
+		 * 是否合并并发的单条向量化请求
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * 批次从第一条请求开始的最长等待时间（毫秒）
+		 */
+		private long maxWait = 5;
+
+		/**
+		 * 批次的请求数量上限，凑满后立即发送
+		 */
+		private int maxSize = 16;
+
+		/**
+		 * 按模型覆盖的合并配置，key 为模型ID
+		 */
+		private Map<String, Coalesce> models = new HashMap<>();
+
+		public Coalesce model(String modelId) {
+			return models.getOrDefault(modelId, this);
+		}
+
+	}
+
+	@Data
+	public static class Local {
+
+		/**
+		 * 索引文件的存放目录
+		 */
+		private String path = "./data/vector";
+
+		/**
+		 * 每个节点在上层保留的邻居数量，第 0 层为其两倍
+		 */
+		private int m = 16;
+
+		/**
+		 * 构建索引时的候选集大小
+		 */
+		private int efConstruction = 200;
+
+		/**
+		 * 检索时的候选集大小，越大召回越高、延迟越高
+		 */
+		private int efSearch = 64;
+
+		/**
+		 * 删除（含被覆盖）的节点比例达到该值时重建索引
+		 */
+		private double compactRatio = 0.3;
+
+		/**
+		 * 本地向量库（LOCAL、MMAP、FLAT、QUANTIZED）写入磁盘的间隔（毫秒）
+		 */
+		private long flushInterval = 5000;
+
+	}
+
+	@Data
+	public static class Mmap {
+
+		/**
+		 * 分段文件的存放目录，每个向量库一个子目录
+		 */
+		private String path = "./data/mmap";
+
+		/**
+		 * 每个分段的向量数量上限
+		 */
+		private int segmentRecords = 65536;
+
+		/**
+		 * 每个分段的文本和元数据字节数上限
+		 */
+		private long segmentBytes = 256 * 1024 * 1024L;
+
+		/**
+		 * 已写满的分段中删除比例达到该值时整理
+		 */
+		private double compactRatio = 0.3;
+
+		/**
+		 * 整理检查的间隔（毫秒）
+		 */
+		private long compactInterval = 10 * 60 * 1000L;
+
+	}
+
+	@Data
+	public static class Flat {
+
+		/**
+		 * 数据文件的存放目录
+		 */
+		private String path = "./data/flat";
+
+		/**
+		 * 是否使用 Vector API 计算相似度，需要以 -Psimd 构建并添加启动参数 --add-modules jdk.incubator.vector
+		 */
+		private boolean simd = true;
+
+		/**
+		 * 删除的记录比例达到该值时整理
+		 */
+		private double compactRatio = 0.25;
+
+	}
+
+	@Data
+	public static class Quantized {
+
+		/**
+		 * 数据文件的存放目录
+		 */
+		private String path = "./data/quantized";
+
+		/**
+		 * 粗排候选数量为 maxResults 的倍数，候选再用全精度向量精排
+		 */
+		private int rescoreFactor = 4;
+
+		/**
+		 * 抽样计算 recall@k 的查询比例，0 表示不抽样
+		 */
+		private double recallSampleRate = 0.01;
+
+		/**
+		 * 删除的记录比例达到该值时整理
+		 */
+		private double compactRatio = 0.25;
+
+	}
+
+	@Data
+	public static class Onnx {
+
+		/**
+		 * 模型目录的根目录，模型配置中的模型名称为其下的子目录（或 .onnx 文件），也可以填写绝对路径
+		 */
+		private String path = "./data/models";
+
+		/**
+		 * 推理线程数
+		 */
+		private int threads = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * 单次推理的文本数量上限
+		 */
+		private int maxBatch = 32;
+
+		/**
+		 * 等待推理的文本数量上限，超出时调用方阻塞
+		 */
+		private int queueCapacity = 4096;
+
+		/**
+		 * 单条文本的最大 Token 数，超出时截断
+		 */
+		private int maxLength = 512;
+
+		/**
+		 * 模型输出 token 向量时的池化方式
+		 */
+		private OnnxBiEncoder.Pooling pooling = OnnxBiEncoder.Pooling.MEAN;
+
+	}
+
+}
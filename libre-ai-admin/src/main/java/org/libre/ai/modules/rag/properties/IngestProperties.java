@@ -0,0 +1,79 @@
+package org.libre.ai.modules.rag.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+@Data
+@ConfigurationProperties("langchat.ingest")
+public class IngestProperties {
+
+	/**
+	 * 同时执行的入库任务数量
+	 */
+	private int workers = 2;
+
+	/**
+	 * 扫描待执行任务的间隔（毫秒），新提交的任务会立即唤醒扫描
+	 */
+	private long pollInterval = 5000;
+
+	/**
+	 * 任务的最大执行次数，超出后标记为失败
+	 */
+	private int maxAttempts = 3;
+
+	/**
+	 * 首次重试的等待时间（毫秒），之后每次翻倍
+	 */
+	private long retryBackoff = 30 * 1000L;
+
+	/**
+	 * 重试等待时间的上限（毫秒）
+	 */
+	private long maxRetryBackoff = 10 * 60 * 1000L;
+
+	/**
+	 * 执行中任务刷新更新时间的间隔（毫秒）
+	 */
+	private long heartbeatInterval = 30 * 1000L;
+
+	/**
+	 * 执行中的任务超过该时间未刷新，视为所在服务已中断，重新排队（毫秒）
+	 */
+	private long staleTimeout = 2 * 60 * 1000L;
+
+	/**
+	 * 上传文件本地副本的存放目录，启动时保留未结束或未上传完成的任务引用的副本，删除其余副本
+	 */
+	private String spillDir = "./data/ingest";
+
+	/**
+	 * 流式解析时切分窗口的字符数，解析出的文本累积到该长度后切分输出
+	 */
+	private int parseWindow = 64 * 1024;
+
+	/**
+	 * 单次向量化的切片数量
+	 */
+	private int embedBatchSize = 64;
+
+	/**
+	 * 每个文档同时向量化的批次数量
+	 */
+	private int embedConcurrency = 4;
+
+	/**
+	 * 单次写入向量库的切片数量，每批写入后更新任务进度
+	 */
+	private int storeBatchSize = 256;
+
+	/**
+	 * 流水线各阶段之间队列的容量（批次）
+	 */
+	private int queueCapacity = 8;
+
+}
@@ -0,0 +1,119 @@
+package org.libre.ai.modules.rag.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+@Data
+@ConfigurationProperties("langchat.retrieval")
+public class RetrievalProperties {
+
+	/**
+	 * 混合检索配置
+	 */
+	private Hybrid hybrid = new Hybrid();
+
+	/**
+	 * 检索结果重排配置
+	 */
+	private Rerank rerank = new Rerank();
+
+	/**
+	 * 跨向量库、跨向量模型的联合检索配置
+	 */
+	private Federated federated = new Federated();
+
+	@Data
+	public static class Hybrid {
+
+		/**
+		 * 关键词和向量两路各自召回的候选数量
+		 */
+		private int candidates = 20;
+
+		/**
+		 * 融合后返回的结果数量
+		 */
+		private int maxResults = 3;
+
+		/**
+		 * 排名倒数融合的平滑常数，得分为 1 / (rrfK + 排名)，跨向量库的联合检索合并各路结果时同样使用
+		 */
+		private int rrfK = 60;
+
+		/**
+		 * 内存中关键词索引的切片总数上限，超过时淘汰最久未检索的知识库索引，0 表示不限制
+		 */
+		private int indexMaxSlices = 200000;
+
+	}
+
+	@Data
+	public static class Rerank {
+
+		/**
+		 * 是否启用交叉编码器重排，启用后检索 candidates 条候选，重排后发送 max-results 条给模型
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * 交叉编码器 ONNX 模型文件路径
+		 */
+		private String modelPath;
+
+		/**
+		 * 模型对应的 tokenizer.json 路径
+		 */
+		private String tokenizerPath;
+
+		/**
+		 * 重排前召回的候选数量
+		 */
+		private int candidates = 20;
+
+		/**
+		 * 重排后保留的结果数量
+		 */
+		private int maxResults = 3;
+
+		/**
+		 * 重排得分（0~1）低于该值的结果被丢弃，为空表示不过滤
+		 */
+		private Double minScore;
+
+		/**
+		 * 单次推理的文本对数量
+		 */
+		private int batchSize = 8;
+
+		/**
+		 * 推理线程数
+		 */
+		private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+		/**
+		 * 等待推理的批次数量上限，超出时由调用线程执行
+		 */
+		private int queueCapacity = 64;
+
+		/**
+		 * 文本对的最大 Token 数，超出时截断切片文本
+		 */
+		private int maxLength = 512;
+
+	}
+
+	@Data
+	public static class Federated {
+
+		/**
+		 * 单路检索（含查询向量化）的超时时间（毫秒），超时的一路被忽略，返回其余各路的结果
+		 */
+		private long timeout = 3000;
+
+	}
+
+}
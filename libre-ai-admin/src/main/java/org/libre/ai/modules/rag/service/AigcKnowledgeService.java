@@ -23,10 +23,17 @@ public interface AigcKnowledgeService extends IService<AigcKnowledge> {
 
 	List<String> listSliceVectorIdsOfDoc(String docsId);
 
+	/**
+	 * 文档的切片，不含切片内容
+	 */
+	List<AigcDocsSlice> listSlicesOfDoc(String docsId);
+
 	List<AigcDocs> getDocsByKb(String knowledgeId);
 
 	void removeKnowledge(String knowledgeId);
 
 	void removeSlicesOfDoc(String docsId);
 
+	void removeSlices(String knowledgeId, List<AigcDocsSlice> slices);
+
 }
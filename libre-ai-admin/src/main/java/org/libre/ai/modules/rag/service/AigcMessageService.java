@@ -48,4 +48,9 @@ public interface AigcMessageService extends IService<AigcMessage> {
 
 	List<AigcMessage> getMessages(String conversationId, String userId);
 
+	/**
+	 * 获取会话最近的 limit 条消息，按时间正序返回
+	 */
+	List<AigcMessage> getLatestMessages(String conversationId, int limit);
+
 }
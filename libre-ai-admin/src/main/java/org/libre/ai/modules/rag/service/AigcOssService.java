@@ -4,8 +4,20 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import org.libre.ai.modules.rag.entity.AigcOss;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
+
 public interface AigcOssService extends IService<AigcOss> {
 
 	AigcOss upload(MultipartFile file, String userId);
 
+	/**
+	 * 生成并保存文件记录和访问地址，不上传文件
+	 */
+	AigcOss create(String originalFilename, String contentType, long size, String userId);
+
+	/**
+	 * 上传本地文件到 create 生成的地址，只上传文件，失败后可重复执行
+	 */
+	void upload(AigcOss oss, Path file);
+
 }
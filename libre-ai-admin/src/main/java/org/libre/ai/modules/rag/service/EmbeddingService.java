@@ -1,10 +1,9 @@
 package org.libre.ai.modules.rag.service;
 
+import org.libre.ai.modules.rag.core.ingest.IngestProgress;
+import org.libre.ai.modules.rag.dto.SearchResult;
 import org.libre.ai.modules.rag.entity.AigcDocs;
 
-import java.util.List;
-import java.util.Map;
-
 /**
  * @author tycoding
  * @since 2024/6/6
@@ -13,8 +12,15 @@ public interface EmbeddingService {
 
 	void clearDocSlices(String docsId);
 
-	void embedDocsSlice(AigcDocs data, String url);
+	default void embedDocsSlice(AigcDocs data, String url) {
+		embedDocsSlice(data, url, IngestProgress.NONE);
+	}
+
+	/**
+	 * 文档向量化，每批切片写入向量库后立即保存切片记录。内容、向量模型和向量库都未变化的已有切片直接复用，不再出现的切片在完成后批量删除
+	 */
+	void embedDocsSlice(AigcDocs data, String url, IngestProgress progress);
 
-	List<Map<String, Object>> search(AigcDocs data);
+	SearchResult search(AigcDocs data);
 
 }
@@ -1,10 +1,12 @@
 package org.libre.ai.modules.rag.service.impl;
 
+import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.retrieval.LexicalIndexes;
 import org.libre.ai.modules.rag.entity.AigcDocs;
 import org.libre.ai.modules.rag.entity.AigcDocsSlice;
 import org.libre.ai.modules.rag.entity.AigcKnowledge;
@@ -17,6 +19,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * @author tycoding
@@ -32,6 +35,8 @@ public class AigcKnowledgeServiceImpl extends ServiceImpl<AigcKnowledgeMapper, A
 
 	private final AigcDocsSliceMapper aigcDocsSliceMapper;
 
+	private final LexicalIndexes lexicalIndexes;
+
 	@Override
 	@Transactional
 	public void addDocs(AigcDocs data) {
@@ -49,7 +54,11 @@ public class AigcKnowledgeServiceImpl extends ServiceImpl<AigcKnowledgeMapper, A
 	@Transactional
 	public void addDocsSlice(AigcDocsSlice data) {
 		data.setCreateTime(new Date()).setWordNum(data.getContent().length()).setStatus(1);
+		if (data.getContentHash() == null) {
+			data.setContentHash(DigestUtil.sha256Hex(data.getContent()));
+		}
 		aigcDocsSliceMapper.insert(data);
+		lexicalIndexes.onSliceAdded(data);
 	}
 
 	@Override
@@ -71,6 +80,14 @@ public class AigcKnowledgeServiceImpl extends ServiceImpl<AigcKnowledgeMapper, A
 		return vectorIds;
 	}
 
+	@Override
+	public List<AigcDocsSlice> listSlicesOfDoc(String docsId) {
+		return aigcDocsSliceMapper.selectList(Wrappers.<AigcDocsSlice>lambdaQuery()
+			.select(AigcDocsSlice::getId, AigcDocsSlice::getVectorId, AigcDocsSlice::getContentHash,
+					AigcDocsSlice::getEmbedModelId, AigcDocsSlice::getEmbedStoreId)
+			.eq(AigcDocsSlice::getDocsId, docsId));
+	}
+
 	@Override
 	public List<AigcDocs> getDocsByKb(String knowledgeId) {
 		return aigcDocsMapper.selectList(Wrappers.<AigcDocs>lambdaQuery().eq(AigcDocs::getKnowledgeId, knowledgeId));
@@ -83,6 +100,7 @@ public class AigcKnowledgeServiceImpl extends ServiceImpl<AigcKnowledgeMapper, A
 		// del docs & docsSlice
 		List<String> docsIds = getDocsByKb(knowledgeId).stream().map(AigcDocs::getId).toList();
 		docsIds.forEach(this::removeSlicesOfDoc);
+		lexicalIndexes.invalidate(knowledgeId);
 	}
 
 	@Override
@@ -91,7 +109,20 @@ public class AigcKnowledgeServiceImpl extends ServiceImpl<AigcKnowledgeMapper, A
 		LambdaQueryWrapper<AigcDocsSlice> deleteWrapper = Wrappers.<AigcDocsSlice>lambdaQuery()
 			.eq(AigcDocsSlice::getDocsId, docsId);
 		int count = aigcDocsSliceMapper.delete(deleteWrapper);
+		lexicalIndexes.onDocRemoved(docsId);
 		log.debug("remove all slices of doc: [{}], count: [{}]", docsId, count);
 	}
 
+	@Override
+	@Transactional
+	public void removeSlices(String knowledgeId, List<AigcDocsSlice> slices) {
+		if (slices.isEmpty()) {
+			return;
+		}
+		int count = aigcDocsSliceMapper.deleteByIds(slices.stream().map(AigcDocsSlice::getId).toList());
+		lexicalIndexes.onSlicesRemoved(knowledgeId,
+				slices.stream().map(AigcDocsSlice::getVectorId).filter(Objects::nonNull).toList());
+		log.debug("remove slices of knowledge: [{}], count: [{}]", knowledgeId, count);
+	}
+
 }
@@ -15,6 +15,8 @@ import org.libre.ai.modules.rag.utils.QueryPage;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -136,4 +138,18 @@ public class AigcMessageServiceImpl extends ServiceImpl<AigcMessageMapper, AigcM
 			.getRecords();
 	}
 
+	@Override
+	public List<AigcMessage> getLatestMessages(String conversationId, int limit) {
+		// 不查询总数，只走 (conversation_id, create_time) 索引的一次查询
+		List<AigcMessage> list = new ArrayList<>(baseMapper
+			.selectPage(new Page<>(1, limit, false),
+					Wrappers.<AigcMessage>lambdaQuery()
+						.select(AigcMessage::getRole, AigcMessage::getMessage, AigcMessage::getCreateTime)
+						.eq(AigcMessage::getConversationId, conversationId)
+						.orderByDesc(AigcMessage::getCreateTime))
+			.getRecords());
+		Collections.reverse(list);
+		return list;
+	}
+
 }
@@ -19,6 +19,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Date;
 
 @Slf4j
@@ -35,44 +36,8 @@ public class AigcOssServiceImpl extends ServiceImpl<AigcOssMapper, AigcOss> impl
 		log.info(">>>>>>>>>>>>>> OSS文件上传开始： {}", file.getOriginalFilename());
 
 		try {
-			String ossId = IdUtil.simpleUUID();
-			String dateFolder = DateUtil.format(new Date(), DatePattern.PURE_DATE_PATTERN);
-			String ext = FileUtil.extName(file.getOriginalFilename());
-			String filename = ossId + "." + ext;
-			String objectKey = dateFolder + "/" + filename;
-
-			PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-				.bucket(awsS3Config.getBucketName())
-				.key(objectKey)
-				.contentType(file.getContentType())
-				.contentLength(file.getSize())
-				.build();
-
-			s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
-
-			GetUrlRequest getUrlRequest = GetUrlRequest.builder()
-				.bucket(awsS3Config.getBucketName())
-				.key(objectKey)
-				.build();
-
-			String url = s3Client.utilities().getUrl(getUrlRequest).toString();
-
-			log.info(">>>>>>>>>>>>>> OSS文件上传结束： {} - {}", filename, url);
-
-			AigcOss oss = new AigcOss();
-			oss.setOssId(ossId);
-			oss.setUrl(url);
-			oss.setSize(file.getSize());
-			oss.setFilename(filename);
-			oss.setOriginalFilename(file.getOriginalFilename());
-			oss.setBasePath(awsS3Config.getBucketName());
-			oss.setPath(objectKey);
-			oss.setExt(ext);
-			oss.setContentType(file.getContentType());
-			oss.setPlatform("AWS-S3");
-			oss.setCreateTime(new Date());
-			oss.setUserId(userId);
-
+			AigcOss oss = build(file.getOriginalFilename(), file.getContentType(), file.getSize(), userId);
+			put(oss, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
 			this.save(oss);
 			return oss;
 		}
@@ -82,4 +47,60 @@ public class AigcOssServiceImpl extends ServiceImpl<AigcOssMapper, AigcOss> impl
 		}
 	}
 
+	@Override
+	public AigcOss create(String originalFilename, String contentType, long size, String userId) {
+		AigcOss oss = build(originalFilename, contentType, size, userId);
+		this.save(oss);
+		return oss;
+	}
+
+	@Override
+	public void upload(AigcOss oss, Path file) {
+		log.info(">>>>>>>>>>>>>> OSS文件上传开始： {}", oss.getOriginalFilename());
+		put(oss, RequestBody.fromFile(file));
+	}
+
+	private AigcOss build(String originalFilename, String contentType, long size, String userId) {
+		String ossId = IdUtil.simpleUUID();
+		String dateFolder = DateUtil.format(new Date(), DatePattern.PURE_DATE_PATTERN);
+		String ext = FileUtil.extName(originalFilename);
+		String filename = ossId + "." + ext;
+		String objectKey = dateFolder + "/" + filename;
+
+		GetUrlRequest getUrlRequest = GetUrlRequest.builder()
+			.bucket(awsS3Config.getBucketName())
+			.key(objectKey)
+			.build();
+
+		String url = s3Client.utilities().getUrl(getUrlRequest).toString();
+
+		AigcOss oss = new AigcOss();
+		oss.setOssId(ossId);
+		oss.setUrl(url);
+		oss.setSize(size);
+		oss.setFilename(filename);
+		oss.setOriginalFilename(originalFilename);
+		oss.setBasePath(awsS3Config.getBucketName());
+		oss.setPath(objectKey);
+		oss.setExt(ext);
+		oss.setContentType(contentType);
+		oss.setPlatform("AWS-S3");
+		oss.setCreateTime(new Date());
+		oss.setUserId(userId);
+		return oss;
+	}
+
+	private void put(AigcOss oss, RequestBody body) {
+		PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+			.bucket(awsS3Config.getBucketName())
+			.key(oss.getPath())
+			.contentType(oss.getContentType())
+			.contentLength(oss.getSize())
+			.build();
+
+		s3Client.putObject(putObjectRequest, body);
+
+		log.info(">>>>>>>>>>>>>> OSS文件上传结束： {} - {}", oss.getFilename(), oss.getUrl());
+	}
+
 }
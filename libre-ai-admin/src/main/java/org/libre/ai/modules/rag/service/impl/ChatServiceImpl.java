@@ -4,16 +4,22 @@ import cn.hutool.core.util.StrUtil;
 import dev.langchain4j.data.image.Image;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.service.TokenStream;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.memory.ChatMemoryFactory;
+import org.libre.ai.modules.rag.core.persist.AigcMessageWriter;
 import org.libre.ai.modules.rag.core.service.LangChatService;
+import org.libre.ai.modules.rag.core.service.impl.TieredChatMemoryStore;
+import org.libre.ai.modules.rag.core.stream.StreamCancellation;
+import org.libre.ai.modules.rag.core.stream.StreamCancellations;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.dto.ChatResponse;
 import org.libre.ai.modules.rag.dto.ImageRequest;
 import org.libre.ai.modules.rag.entity.AigcApp;
 import org.libre.ai.modules.rag.entity.AigcMessage;
 import org.libre.ai.modules.rag.entity.AigcOss;
-import org.libre.ai.modules.rag.service.AigcMessageService;
+import org.libre.ai.modules.rag.enums.RoleEnum;
 import org.libre.ai.modules.rag.service.ChatService;
 import org.libre.ai.modules.rag.store.AppStore;
 import org.libre.ai.modules.rag.utils.StreamEmitter;
@@ -31,10 +37,16 @@ public class ChatServiceImpl implements ChatService {
 
 	private final LangChatService langChatService;
 
-	private final AigcMessageService aigcMessageService;
+	private final AigcMessageWriter aigcMessageWriter;
 
 	private final AppStore appStore;
 
+	private final ChatMemoryFactory chatMemoryFactory;
+
+	private final TieredChatMemoryStore chatMemoryStore;
+
+	private final StreamCancellations streamCancellations;
+
 	@Override
 	public void chat(ChatRequest req) {
 		StreamEmitter emitter = req.getEmitter();
@@ -47,31 +59,47 @@ public class ChatServiceImpl implements ChatService {
 				req.setModelId(app.getModelId());
 				req.setSystemPrompt(app.getSystemPrompt());
 				req.setKnowledgeIds(app.getKnowledgeIds());
+				if (StrUtil.isNotBlank(req.getConversationId())) {
+					chatMemoryFactory.useApp(req.getConversationId(), app.getId());
+				}
 			}
 		}
 
+		// load history before saving this turn's message, otherwise it would be loaded twice
+		chatMemoryStore.hydrate(req.getConversationId());
+
 		// save user message
-		// req.setRole(RoleEnum.USER.getName());
+		req.setRole(RoleEnum.USER.getName());
 		saveMessage(req, 0, 0);
 
+		// client disconnect cancels the upstream generation
+		StreamCancellation cancellation = streamCancellations.create();
+		emitter.onClose(cancellation::cancel);
+
 		try {
-			langChatService.chat(req).onPartialResponse(e -> {
+			TokenStream tokenStream = langChatService.chat(req).onPartialResponse(e -> {
+				cancellation.partial();
 				text.append(e);
-				emitter.send(new ChatResponse(e));
+				emitter.partial(e, ChatResponse::new);
 			}).onCompleteResponse((e) -> {
 				TokenUsage tokenUsage = e.tokenUsage();
+				cancellation.complete(tokenUsage);
 				ChatResponse res = new ChatResponse(tokenUsage.totalTokenCount(), startTime);
 				emitter.send(res);
 				emitter.complete();
 
 				// save assistant message
 				req.setMessage(text.toString());
-				// req.setRole(RoleEnum.ASSISTANT.getName());
+				req.setRole(RoleEnum.ASSISTANT.getName());
 				saveMessage(req, tokenUsage.inputTokenCount(), tokenUsage.outputTokenCount());
 			}).onError((e) -> {
+				if (cancellation.isCancelled()) {
+					return;
+				}
 				emitter.error(e.getMessage());
 				throw new RuntimeException(e.getMessage());
-			}).start();
+			});
+			cancellation.bind(tokenStream::start);
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -87,7 +115,7 @@ public class ChatServiceImpl implements ChatService {
 			// message.setIp(ServletUtil.getIpAddr());
 			message.setPromptTokens(inputToken);
 			message.setTokens(outputToken);
-			aigcMessageService.addMessage(message);
+			aigcMessageWriter.write(message);
 		}
 	}
 
@@ -4,18 +4,27 @@ import cn.hutool.core.util.StrUtil;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.ContentMetadata;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.filter.Filter;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.consts.EmbedConst;
+import org.libre.ai.modules.rag.core.ingest.IngestProgress;
+import org.libre.ai.modules.rag.core.ingest.SliceReuse;
 import org.libre.ai.modules.rag.core.provider.EmbeddingProvider;
+import org.libre.ai.modules.rag.core.provider.EmbeddingStoreFactory;
+import org.libre.ai.modules.rag.core.retrieval.HybridContentRetriever;
+import org.libre.ai.modules.rag.core.retrieval.KnowledgeRetrieverFactory;
 import org.libre.ai.modules.rag.core.service.LangEmbeddingService;
 import org.libre.ai.modules.rag.dto.ChatRequest;
 import org.libre.ai.modules.rag.dto.EmbeddingResult;
+import org.libre.ai.modules.rag.dto.SearchResult;
 import org.libre.ai.modules.rag.entity.AigcDocs;
 import org.libre.ai.modules.rag.entity.AigcDocsSlice;
+import org.libre.ai.modules.rag.entity.AigcKnowledge;
 import org.libre.ai.modules.rag.mapper.AigcDocsMapper;
 import org.libre.ai.modules.rag.service.AigcKnowledgeService;
 import org.libre.ai.modules.rag.service.EmbeddingService;
@@ -23,11 +32,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
 import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.RRF_SCORE;
 
 /**
  * @author tycoding
@@ -40,12 +51,16 @@ public class EmbeddingServiceImpl implements EmbeddingService {
 
 	private final EmbeddingProvider embeddingProvider;
 
+	private final EmbeddingStoreFactory embeddingStoreFactory;
+
 	private final LangEmbeddingService langEmbeddingService;
 
 	private final AigcKnowledgeService aigcKnowledgeService;
 
 	private final AigcDocsMapper aigcDocsMapper;
 
+	private final KnowledgeRetrieverFactory knowledgeRetrieverFactory;
+
 	@Override
 	@Transactional
 	public void clearDocSlices(String docsId) {
@@ -65,24 +80,90 @@ public class EmbeddingServiceImpl implements EmbeddingService {
 	}
 
 	@Override
-	public void embedDocsSlice(AigcDocs data, String url) {
+	public void embedDocsSlice(AigcDocs data, String url, IngestProgress progress) {
+		AigcKnowledge knowledge = aigcKnowledgeService.getById(data.getKnowledgeId());
+		String embedModelId = knowledge.getEmbedModelId();
+		String embedStoreId = knowledge.getEmbedStoreId();
+
+		// 向量模型和向量库都未变化的切片按内容哈希复用，其余的在完成后删除
+		SliceReuse reuse = new SliceReuse(aigcKnowledgeService.listSlicesOfDoc(data.getId()), embedModelId,
+				embedStoreId);
 		List<EmbeddingResult> list = langEmbeddingService.embeddingDocs(
-				new ChatRequest().setDocsName(data.getName()).setKnowledgeId(data.getKnowledgeId()).setUrl(url));
-		list.forEach(i -> {
-			aigcKnowledgeService.addDocsSlice(new AigcDocsSlice().setKnowledgeId(data.getKnowledgeId())
-				.setDocsId(data.getId())
-				.setVectorId(i.getVectorId())
-				.setName(data.getName())
-				.setContent(i.getText()));
-		});
+				new ChatRequest().setDocsId(data.getId())
+					.setDocsName(data.getName())
+					.setKnowledgeId(data.getKnowledgeId())
+					.setUrl(url),
+				new IngestProgress() {
+					@Override
+					public boolean onSegment(TextSegment segment) {
+						return !reuse.take(segment.text());
+					}
+
+					@Override
+					public void onSplit(int total, int skipped) {
+						progress.onSplit(total, skipped);
+					}
+
+					@Override
+					public void onStored(List<EmbeddingResult> batch) {
+						batch.forEach(i -> aigcKnowledgeService.addDocsSlice(new AigcDocsSlice()
+							.setKnowledgeId(data.getKnowledgeId())
+							.setDocsId(data.getId())
+							.setVectorId(i.getVectorId())
+							.setName(data.getName())
+							.setContent(i.getText())
+							.setContentHash(SliceReuse.hash(i.getText()))
+							.setEmbedModelId(embedModelId)
+							.setEmbedStoreId(embedStoreId)));
+						progress.onStored(batch);
+					}
+				});
 
-		aigcKnowledgeService.updateDocs(new AigcDocs().setId(data.getId()).setSliceStatus(1).setSliceNum(list.size()));
+		List<AigcDocsSlice> stale = reuse.stale();
+		removeSlices(data.getKnowledgeId(), stale);
+		log.info("文档向量化完成，docsId={}, 新增 {} 个切片，复用 {} 个切片，删除 {} 个切片", data.getId(), list.size(),
+				reuse.kept(), stale.size());
+
+		aigcKnowledgeService.updateDocs(new AigcDocs().setId(data.getId())
+			.setSliceStatus(EmbedConst.SLICE_STATUS_DONE)
+			.setSliceNum(list.size() + reuse.kept()));
+	}
+
+	/**
+	 * 批量删除切片和对应的向量，向量按所在的向量库分组删除
+	 */
+	private void removeSlices(String knowledgeId, List<AigcDocsSlice> slices) {
+		if (slices.isEmpty()) {
+			return;
+		}
+		Map<String, List<String>> vectorIdsByStore = new HashMap<>();
+		for (AigcDocsSlice slice : slices) {
+			if (slice.getVectorId() != null) {
+				vectorIdsByStore.computeIfAbsent(StrUtil.nullToEmpty(slice.getEmbedStoreId()), k -> new ArrayList<>())
+					.add(slice.getVectorId());
+			}
+		}
+		vectorIdsByStore.forEach((storeId, vectorIds) -> {
+			// 历史切片没有记录向量库，按知识库当前的向量库删除
+			if (storeId.isEmpty() || !embeddingStoreFactory.containsEmbeddingStore(storeId)) {
+				embeddingProvider.getEmbeddingStore(knowledgeId).removeAll(vectorIds);
+			}
+			else {
+				embeddingStoreFactory.getEmbeddingStore(storeId).removeAll(vectorIds);
+			}
+		});
+		aigcKnowledgeService.removeSlices(knowledgeId, slices);
 	}
 
 	@Override
-	public List<Map<String, Object>> search(AigcDocs data) {
+	public SearchResult search(AigcDocs data) {
 		if (StrUtil.isBlank(data.getKnowledgeId()) || StrUtil.isBlank(data.getContent())) {
-			return List.of();
+			return new SearchResult().setResults(List.of());
+		}
+
+		HybridContentRetriever hybrid = knowledgeRetrieverFactory.createHybrid(List.of(data.getKnowledgeId()));
+		if (hybrid != null) {
+			return hybridSearch(hybrid, data.getContent());
 		}
 
 		EmbeddingModel embeddingModel = embeddingProvider.getEmbeddingModel(data.getKnowledgeId());
@@ -100,7 +181,26 @@ public class EmbeddingServiceImpl implements EmbeddingService {
 			map.put("score", i.score());
 			result.add(map);
 		});
-		return result;
+		return new SearchResult().setResults(result);
+	}
+
+	/**
+	 * 混合检索的结果，score 为融合后的得分，vectorScore 为向量检索的相似度，两路检索各自的耗时（毫秒）随结果返回一次
+	 */
+	private SearchResult hybridSearch(HybridContentRetriever retriever, String content) {
+		HybridContentRetriever.Result hybrid = retriever.search(content);
+		List<Map<String, Object>> result = new ArrayList<>();
+		hybrid.contents().forEach(i -> {
+			TextSegment embedded = i.textSegment();
+			Map<String, Object> map = embedded.metadata().toMap();
+			map.put("text", embedded.text());
+			map.put("score", embedded.metadata().getDouble(RRF_SCORE));
+			map.put("vectorScore", i.metadata().get(ContentMetadata.SCORE));
+			result.add(map);
+		});
+		return new SearchResult().setResults(result)
+			.setVectorLatency(hybrid.vectorMillis())
+			.setLexicalLatency(hybrid.lexicalMillis());
 	}
 
 }
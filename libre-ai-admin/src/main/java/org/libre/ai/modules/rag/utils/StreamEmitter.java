@@ -1,63 +1,238 @@
 package org.libre.ai.modules.rag.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.libre.ai.modules.rag.core.stream.ChatStreamExecutor;
+import org.libre.ai.modules.rag.properties.ChatProperties;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * @author tycoding
  * @since 2024/1/30
  */
+@Slf4j
 public class StreamEmitter {
 
+	/**
+	 * 合并窗口到期的定时器，所有连接共用，只负责把发送交给 FLUSH_EXECUTOR
+	 */
+	private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "sse-coalesce-flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * 在虚拟线程上发送到期的缓冲内容，慢连接的阻塞发送不影响其他连接
+	 */
+	private static final ExecutorService FLUSH_EXECUTOR = Executors
+		.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-coalesce-flush-", 0).factory());
+
 	private final SseEmitter emitter;
 
-	public StreamEmitter() {
-		emitter = new SseEmitter(5 * 60 * 1000L);
-	}
+	private final ReentrantLock lock = new ReentrantLock();
 
-	public SseEmitter get() {
-		return emitter;
-	}
+	private final StringBuilder buffer = new StringBuilder();
+
+	private ChatProperties.Coalesce coalesce;
+
+	private Function<String, Object> frame;
 
-	public SseEmitter streaming(final ExecutorService executor, Runnable func) {
-		// ExecutorService executor = Executors.newSingleThreadExecutor();
+	private ScheduledFuture<?> scheduledFlush;
+
+	private long lastFlush;
+
+	private boolean firstSent;
+
+	private final List<Runnable> closeHooks = new CopyOnWriteArrayList<>();
+
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	public StreamEmitter() {
+		emitter = new SseEmitter(5 * 60 * 1000L);
 
 		emitter.onCompletion(() -> {
-			System.out.println("SseEmitter 完成");
-			executor.shutdownNow();
+			log.debug("SseEmitter 完成");
+			close();
 		});
 
 		emitter.onError((e) -> {
-			System.out.println("SseEmitter 出现错误: " + e.getMessage());
-			executor.shutdownNow();
+			log.warn("SseEmitter 出现错误: {}", e.getMessage());
+			close();
 		});
 
 		emitter.onTimeout(() -> {
-			System.out.println("SseEmitter 超时");
+			log.warn("SseEmitter 超时");
 			emitter.complete();
-			executor.shutdownNow();
+			close();
 		});
-		executor.execute(() -> {
+	}
+
+	public SseEmitter get() {
+		return emitter;
+	}
+
+	/**
+	 * 开启增量输出合并：窗口内的增量输出合并为一个 SSE 帧，减少序列化、帧和 flush 次数。 第一段输出总是立即发送，不影响首字延迟。
+	 */
+	public StreamEmitter coalesce(ChatProperties.Coalesce coalesce) {
+		this.coalesce = coalesce != null && coalesce.enabled() ? coalesce : null;
+		return this;
+	}
+
+	/**
+	 * 发送一段增量输出
+	 * @param frame 把（合并后的）文本包装为发送对象
+	 */
+	public void partial(String text, Function<String, Object> frame) {
+		if (coalesce == null) {
+			write(frame.apply(text));
+			return;
+		}
+
+		lock.lock();
+		try {
+			this.frame = frame;
+			buffer.append(text);
+			long now = System.currentTimeMillis();
+			if (!firstSent || buffer.length() >= coalesce.getMaxChars() || now - lastFlush >= coalesce.getWindow()) {
+				firstSent = true;
+				flush();
+			}
+			else if (scheduledFlush == null) {
+				long delay = Math.max(coalesce.getWindow() - (now - lastFlush), 1);
+				scheduledFlush = FLUSHER.schedule(() -> FLUSH_EXECUTOR.execute(this::scheduledFlush), delay,
+						TimeUnit.MILLISECONDS);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void scheduledFlush() {
+		lock.lock();
+		try {
+			scheduledFlush = null;
+			flush();
+		}
+		catch (Exception e) {
+			log.debug("SseEmitter 合并输出发送失败: {}", e.getMessage());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 发送缓冲中的增量输出，调用方需持有锁
+	 */
+	private void flush() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		lastFlush = System.currentTimeMillis();
+		if (buffer.isEmpty() || closed.get()) {
+			return;
+		}
+		String text = buffer.toString();
+		buffer.setLength(0);
+		write(frame.apply(text));
+	}
+
+	/**
+	 * 发送结束帧、错误等非增量内容前，先把缓冲的增量输出发出去，保证顺序
+	 */
+	private void drain() {
+		if (coalesce == null) {
+			return;
+		}
+		lock.lock();
+		try {
+			flush();
+		}
+		catch (Exception e) {
+			log.debug("SseEmitter 合并输出发送失败: {}", e.getMessage());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public SseEmitter streaming(final ChatStreamExecutor executor, Runnable func) {
+		boolean accepted = executor.execute(this, () -> {
 			try {
 				func.run();
 			}
 			catch (Exception e) {
-				System.out.println("捕获到异常: " + e.getMessage());
+				log.error("流式对话执行异常: {}", e.getMessage());
 				emitter.completeWithError(e);
-				Thread.currentThread().interrupt();
-			}
-			finally {
-				if (!executor.isShutdown()) {
-					executor.shutdownNow();
-				}
 			}
 		});
+		if (!accepted) {
+			error(ChatStreamExecutor.REJECTED_CODE, "当前对话请求过多，请稍后再试");
+		}
 		return emitter;
 	}
 
+	/**
+	 * 注册连接关闭（完成、异常、超时）时的回调，连接已关闭时立即执行
+	 */
+	public void onClose(Runnable hook) {
+		closeHooks.add(hook);
+		if (closed.get()) {
+			hook.run();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed.get();
+	}
+
+	private void close() {
+		if (closed.compareAndSet(false, true)) {
+			if (coalesce != null) {
+				lock.lock();
+				try {
+					if (scheduledFlush != null) {
+						scheduledFlush.cancel(false);
+						scheduledFlush = null;
+					}
+					buffer.setLength(0);
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+			closeHooks.forEach(hook -> {
+				try {
+					hook.run();
+				}
+				catch (Exception e) {
+					log.warn("SseEmitter 关闭回调执行失败: {}", e.getMessage());
+				}
+			});
+		}
+	}
+
 	public void send(Object obj) {
+		drain();
+		write(obj);
+	}
+
+	private void write(Object obj) {
 		try {
 			emitter.send(obj);
 		}
@@ -67,10 +242,12 @@ public class StreamEmitter {
 	}
 
 	public void complete() {
+		drain();
 		emitter.complete();
 	}
 
 	public void error(String message) {
+		drain();
 		try {
 			emitter.send("Error: " + message);
 			emitter.complete();
@@ -80,4 +257,18 @@ public class StreamEmitter {
 		}
 	}
 
+	/**
+	 * 以结构化的 error 事件返回错误信息，便于前端按错误码处理
+	 */
+	public void error(int code, String message) {
+		drain();
+		try {
+			emitter.send(SseEmitter.event().name("error").data(R.fail(code, message)));
+			emitter.complete();
+		}
+		catch (IOException | IllegalStateException e) {
+			log.warn("SseEmitter 发送错误信息失败: {}", e.getMessage());
+		}
+	}
+
 }
@@ -0,0 +1,75 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class KnowledgeFiltersTest {
+
+	@Test
+	void equalTo() {
+		assertEquals(Set.of("k1"), KnowledgeFilters.knowledgeIds(metadataKey(KNOWLEDGE).isEqualTo("k1")));
+	}
+
+	@Test
+	void isIn() {
+		Filter filter = metadataKey(KNOWLEDGE).isIn(List.of("k1", "k2"));
+		assertEquals(Set.of("k1", "k2"), KnowledgeFilters.knowledgeIds(filter));
+	}
+
+	@Test
+	void andIntersects() {
+		Filter filter = metadataKey(KNOWLEDGE).isIn(List.of("k1", "k2"))
+			.and(metadataKey(KNOWLEDGE).isEqualTo("k2"))
+			.and(metadataKey("docsId").isEqualTo("d1"));
+		assertEquals(Set.of("k2"), KnowledgeFilters.knowledgeIds(filter));
+	}
+
+	@Test
+	void orUnites() {
+		Filter filter = metadataKey(KNOWLEDGE).isEqualTo("k1").or(metadataKey(KNOWLEDGE).isIn(List.of("k2")));
+		assertEquals(Set.of("k1", "k2"), KnowledgeFilters.knowledgeIds(filter));
+	}
+
+	@Test
+	void unrestricted() {
+		assertNull(KnowledgeFilters.knowledgeIds(null));
+		assertNull(KnowledgeFilters.knowledgeIds(metadataKey("docsId").isEqualTo("d1")));
+		assertNull(KnowledgeFilters.knowledgeIds(
+				metadataKey(KNOWLEDGE).isEqualTo("k1").or(metadataKey("docsId").isEqualTo("d1"))));
+		assertNull(KnowledgeFilters.knowledgeIds(metadataKey(KNOWLEDGE).isNotEqualTo("k1")));
+	}
+
+	@Test
+	void tagMask() {
+		Map<String, Integer> tagIds = Map.of("k1", 0, "k2", 1, "k3", 2);
+
+		boolean[] mask = KnowledgeFilters.tagMask(Set.of("k1", "k3", "missing"), tagIds);
+		assertTrue(KnowledgeFilters.allowed(mask, 0));
+		assertFalse(KnowledgeFilters.allowed(mask, 1));
+		assertTrue(KnowledgeFilters.allowed(mask, 2));
+		assertFalse(KnowledgeFilters.allowed(mask, -1));
+		assertFalse(KnowledgeFilters.isEmpty(mask));
+
+		assertTrue(KnowledgeFilters.isEmpty(KnowledgeFilters.tagMask(Set.of("missing"), tagIds)));
+
+		assertNull(KnowledgeFilters.tagMask(null, tagIds));
+		assertTrue(KnowledgeFilters.allowed(null, -1));
+		assertFalse(KnowledgeFilters.isEmpty(null));
+	}
+
+}
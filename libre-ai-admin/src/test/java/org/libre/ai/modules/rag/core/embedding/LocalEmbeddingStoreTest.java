@@ -0,0 +1,245 @@
+package org.libre.ai.modules.rag.core.embedding;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.libre.ai.modules.rag.core.consts.QuantizationEnum;
+import org.libre.ai.modules.rag.core.embedding.flat.FlatEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.hnsw.HnswEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.mmap.MappedEmbeddingStore;
+import org.libre.ai.modules.rag.core.embedding.quant.QuantizedEmbeddingStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 各本地向量库存储格式（FLAT、QUANTIZED、MMAP、HNSW）共同的写入、检索、删除和重新加载行为
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+class LocalEmbeddingStoreTest {
+
+	private static final int DIMENSION = 8;
+
+	private static final int COUNT = 40;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void searchReturnsNearestOfKnowledge() {
+		for (Format format : formats()) {
+			LocalEmbeddingStore store = format.open(dir);
+			List<float[]> vectors = fill(store);
+
+			List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+				.queryEmbedding(Embedding.from(vectors.get(6)))
+				.maxResults(5)
+				.filter(metadataKey(KNOWLEDGE).isEqualTo("k0"))
+				.build()).matches();
+
+			assertEquals("id-6", matches.getFirst().embeddingId(), format.name());
+			assertEquals(5, matches.size(), format.name());
+			assertTrue(matches.stream().allMatch(m -> "k0".equals(m.embedded().metadata().getString(KNOWLEDGE))),
+					format.name());
+			assertEquals("text-6", matches.getFirst().embedded().text(), format.name());
+			store.close();
+		}
+	}
+
+	@Test
+	void removalsSurviveReload() {
+		for (Format format : formats()) {
+			LocalEmbeddingStore store = format.open(dir);
+			fill(store);
+			store.removeAll(List.of("id-0", "id-1", "id-2"));
+			store.removeAll(metadataKey(KNOWLEDGE).isEqualTo("k1"));
+			store.close();
+
+			LocalEmbeddingStore reloaded = format.open(dir);
+			Set<String> expected = IntStream.range(3, COUNT)
+				.filter(i -> i % 2 == 0)
+				.mapToObj(i -> "id-" + i)
+				.collect(Collectors.toCollection(TreeSet::new));
+			assertEquals(expected, ids(reloaded), format.name());
+			reloaded.close();
+		}
+	}
+
+	/**
+	 * 写入已存在的ID时覆盖旧记录，检索和重新加载后都只有新记录
+	 */
+	@Test
+	void addAllWithExistingIdReplacesRecord() {
+		for (Format format : formats()) {
+			LocalEmbeddingStore store = format.open(dir);
+			List<float[]> vectors = fill(store);
+			float[] vector = vectors.get(6);
+			store.addAll(List.of("id-6", "id-6"), List.of(Embedding.from(vector), Embedding.from(vector)),
+					List.of(TextSegment.from("text-6a", new Metadata().put(KNOWLEDGE, "k1")),
+							TextSegment.from("text-6b", new Metadata().put(KNOWLEDGE, "k1"))));
+			assertEquals(COUNT, ids(store).size(), format.name());
+			store.close();
+
+			LocalEmbeddingStore reloaded = format.open(dir);
+			List<EmbeddingMatch<TextSegment>> matches = reloaded.search(EmbeddingSearchRequest.builder()
+				.queryEmbedding(Embedding.from(vector))
+				.maxResults(COUNT)
+				.build()).matches();
+			assertEquals(COUNT, matches.size(), format.name());
+			assertEquals(List.of("text-6b"), matches.stream()
+				.filter(m -> "id-6".equals(m.embeddingId()))
+				.map(m -> m.embedded().text())
+				.toList(), format.name());
+			assertEquals("k1", matches.getFirst().embedded().metadata().getString(KNOWLEDGE), format.name());
+			reloaded.close();
+		}
+	}
+
+	@Test
+	void compactKeepsLiveRecords() {
+		for (Format format : formats()) {
+			LocalEmbeddingStore store = format.open(dir);
+			fill(store);
+			List<String> removed = IntStream.range(0, COUNT)
+				.filter(i -> i % 4 != 0)
+				.mapToObj(i -> "id-" + i)
+				.toList();
+			store.removeAll(removed);
+			store.compact();
+			Set<String> live = ids(store);
+			store.close();
+
+			LocalEmbeddingStore reloaded = format.open(dir);
+			assertEquals(COUNT / 4, live.size(), format.name());
+			assertEquals(live, ids(reloaded), format.name());
+			reloaded.close();
+		}
+	}
+
+	/**
+	 * 写盘中途退出时留下的临时文件不影响加载，以上一次完整写入的数据为准
+	 */
+	@Test
+	void leftoverTemporaryFileIsIgnored() throws IOException {
+		for (Format format : formats()) {
+			LocalEmbeddingStore store = format.open(dir);
+			fill(store);
+			store.close();
+			Files.write(format.tmp(dir), new byte[] { 1, 2, 3 });
+
+			LocalEmbeddingStore reloaded = format.open(dir);
+			assertEquals(COUNT, ids(reloaded).size(), format.name());
+			reloaded.close();
+		}
+	}
+
+	@Test
+	void removeAllLeavesEmptyStoreAfterReload() {
+		for (Format format : formats()) {
+			LocalEmbeddingStore store = format.open(dir);
+			fill(store);
+			store.removeAll();
+			store.close();
+
+			LocalEmbeddingStore reloaded = format.open(dir);
+			assertTrue(ids(reloaded).isEmpty(), format.name());
+			fill(reloaded);
+			assertEquals(COUNT, ids(reloaded).size(), format.name());
+			reloaded.close();
+		}
+	}
+
+	private static List<Format> formats() {
+		return List.of(new Format("FLAT", d -> new FlatEmbeddingStore(d.resolve("store.flat"), DIMENSION, false, 0.25),
+				d -> d.resolve("store.flat.tmp")),
+				new Format("QUANTIZED_INT8", d -> quantized(d, QuantizationEnum.INT8), d -> d.resolve("int8.q.tmp")),
+				new Format("QUANTIZED_BINARY", d -> quantized(d, QuantizationEnum.BINARY),
+						d -> d.resolve("binary.q.tmp")),
+				new Format("MMAP", d -> new MappedEmbeddingStore(d.resolve("mmap"), DIMENSION, 8, 1 << 16, 0.3),
+						d -> d.resolve("mmap").resolve("99999999.vec.tmp")),
+				new Format("HNSW",
+						d -> new HnswEmbeddingStore(d.resolve("store.hnsw"), DIMENSION, 8, 64, 64, 0.3),
+						d -> d.resolve("store.hnsw.tmp")));
+	}
+
+	private static LocalEmbeddingStore quantized(Path dir, QuantizationEnum quantization) {
+		String name = quantization.name().toLowerCase();
+		return new QuantizedEmbeddingStore(dir.resolve(name + ".q"), DIMENSION, quantization, COUNT, 0, 0.25,
+				new CompositeMeterRegistry());
+	}
+
+	/**
+	 * 写入 COUNT 条正分量的向量，偶数编号属于 k0，奇数编号属于 k1
+	 */
+	private static List<float[]> fill(LocalEmbeddingStore store) {
+		Random random = new Random(42);
+		List<float[]> vectors = new ArrayList<>();
+		List<String> ids = new ArrayList<>();
+		List<Embedding> embeddings = new ArrayList<>();
+		List<TextSegment> segments = new ArrayList<>();
+		for (int i = 0; i < COUNT; i++) {
+			float[] vector = new float[DIMENSION];
+			for (int j = 0; j < DIMENSION; j++) {
+				vector[j] = 0.05f + random.nextFloat();
+			}
+			vectors.add(vector);
+			ids.add("id-" + i);
+			embeddings.add(Embedding.from(vector));
+			segments.add(TextSegment.from("text-" + i, new Metadata().put(KNOWLEDGE, "k" + i % 2)));
+		}
+		store.addAll(ids, embeddings, segments);
+		return vectors;
+	}
+
+	/**
+	 * 向量库中全部记录的ID
+	 */
+	private static Set<String> ids(LocalEmbeddingStore store) {
+		float[] query = new float[DIMENSION];
+		Arrays.fill(query, 1);
+		return store
+			.search(EmbeddingSearchRequest.builder()
+				.queryEmbedding(Embedding.from(query))
+				.maxResults(COUNT * 2)
+				.build())
+			.matches()
+			.stream()
+			.map(EmbeddingMatch::embeddingId)
+			.collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	private record Format(String name, Function<Path, LocalEmbeddingStore> factory, Function<Path, Path> tmpFile) {
+
+		LocalEmbeddingStore open(Path dir) {
+			return factory.apply(dir.resolve(name));
+		}
+
+		Path tmp(Path dir) {
+			return tmpFile.apply(dir.resolve(name));
+		}
+
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.libre.ai.modules.rag.core.embedding.flat;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * 精确检索向量库的检索耗时，对比标量与 SIMD 点积
+ *
+ * 不在 mvn test 中运行，通过 main 方法启动；SIMD 需要以 -Psimd 编译测试类，未加载 Vector API 时 simd=true 同样回退到标量计算。
+ *
+ * @author libre
+ * @since 2026/10/17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class FlatEmbeddingStoreBenchmark {
+
+	private static final int KNOWLEDGE_COUNT = 10;
+
+	@Param({ "100000" })
+	int size;
+
+	@Param({ "768" })
+	int dimension;
+
+	@Param({ "false", "true" })
+	boolean simd;
+
+	private Path dir;
+
+	private FlatEmbeddingStore store;
+
+	private Embedding query;
+
+	private Filter filter;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("flat-benchmark");
+		store = new FlatEmbeddingStore(dir.resolve("flat.vec"), dimension, simd, 0.25);
+		Random random = new Random(42);
+		int batch = 1000;
+		for (int start = 0; start < size; start += batch) {
+			List<String> ids = new ArrayList<>(batch);
+			List<Embedding> embeddings = new ArrayList<>(batch);
+			List<TextSegment> segments = new ArrayList<>(batch);
+			for (int i = start; i < Math.min(size, start + batch); i++) {
+				ids.add(String.valueOf(i));
+				embeddings.add(Embedding.from(randomVector(random)));
+				segments.add(TextSegment.from("segment " + i, Metadata.from(KNOWLEDGE, "k" + i % KNOWLEDGE_COUNT)));
+			}
+			store.addAll(ids, embeddings, segments);
+		}
+		query = Embedding.from(randomVector(random));
+		filter = metadataKey(KNOWLEDGE).isIn(List.of("k1", "k2"));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		store.removeAll();
+		store.close();
+		try (var files = Files.list(dir)) {
+			for (Path file : files.toList()) {
+				Files.deleteIfExists(file);
+			}
+		}
+		Files.deleteIfExists(dir);
+	}
+
+	@Benchmark
+	public EmbeddingSearchResult<TextSegment> search() {
+		return store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(10).build());
+	}
+
+	@Benchmark
+	public EmbeddingSearchResult<TextSegment> searchWithKnowledgeFilter() {
+		return store
+			.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(10).filter(filter).build());
+	}
+
+	private float[] randomVector(Random random) {
+		float[] vector = new float[dimension];
+		for (int i = 0; i < dimension; i++) {
+			vector[i] = (float) random.nextGaussian();
+		}
+		return vector;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(FlatEmbeddingStoreBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.libre.ai.modules.rag.core.embedding.flat;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.libre.ai.modules.rag.core.consts.EmbedConst.KNOWLEDGE;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class FlatEmbeddingStoreTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void searchWithKnowledgeIsIn() {
+		FlatEmbeddingStore store = new FlatEmbeddingStore(dir.resolve("flat.vec"), 2, false, 0.25);
+		add(store, "a", "k1", 1, 0);
+		add(store, "b", "k2", 0.9f, 0.1f);
+		add(store, "c", "k3", 0.8f, 0.2f);
+
+		List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+			.queryEmbedding(Embedding.from(new float[] { 1, 0 }))
+			.maxResults(10)
+			.filter(metadataKey(KNOWLEDGE).isIn(List.of("k1", "k3")))
+			.build()).matches();
+
+		assertEquals(List.of("a", "c"), matches.stream().map(EmbeddingMatch::embeddingId).toList());
+	}
+
+	@Test
+	void searchWithUnknownKnowledge() {
+		FlatEmbeddingStore store = new FlatEmbeddingStore(dir.resolve("flat.vec"), 2, false, 0.25);
+		add(store, "a", "k1", 1, 0);
+
+		assertTrue(store.search(EmbeddingSearchRequest.builder()
+			.queryEmbedding(Embedding.from(new float[] { 1, 0 }))
+			.filter(metadataKey(KNOWLEDGE).isIn(List.of("k2")))
+			.build()).matches().isEmpty());
+	}
+
+	@Test
+	void reloadAfterFlush() {
+		Path file = dir.resolve("flat.vec");
+		FlatEmbeddingStore store = new FlatEmbeddingStore(file, 2, false, 0.25);
+		add(store, "a", "k1", 1, 0);
+		add(store, "b", "k2", 0, 1);
+		store.remove("a");
+		store.close();
+
+		FlatEmbeddingStore reloaded = new FlatEmbeddingStore(file, 2, false, 0.25);
+		Set<String> ids = reloaded.search(EmbeddingSearchRequest.builder()
+			.queryEmbedding(Embedding.from(new float[] { 1, 1 }))
+			.maxResults(10)
+			.build()).matches().stream().map(EmbeddingMatch::embeddingId).collect(Collectors.toSet());
+		assertEquals(Set.of("b"), ids);
+	}
+
+	/**
+	 * 以 simd profile 构建并加载 Vector API 时比较 SIMD 与标量结果，否则两者都是标量计算
+	 */
+	@Test
+	void simdMatchesScalar() {
+		FlatEmbeddingStore scalar = new FlatEmbeddingStore(dir.resolve("scalar.vec"), 37, false, 0.25);
+		FlatEmbeddingStore simd = new FlatEmbeddingStore(dir.resolve("simd.vec"), 37, true, 0.25);
+		Random random = new Random(7);
+		for (int i = 0; i < 200; i++) {
+			float[] vector = new float[37];
+			for (int j = 0; j < vector.length; j++) {
+				vector[j] = (float) random.nextGaussian();
+			}
+			add(scalar, String.valueOf(i), "k" + i % 3, vector);
+			add(simd, String.valueOf(i), "k" + i % 3, vector);
+		}
+		float[] query = new float[37];
+		for (int j = 0; j < query.length; j++) {
+			query[j] = (float) random.nextGaussian();
+		}
+		EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+			.queryEmbedding(Embedding.from(query))
+			.maxResults(20)
+			.build();
+
+		List<EmbeddingMatch<TextSegment>> expected = scalar.search(request).matches();
+		List<EmbeddingMatch<TextSegment>> actual = simd.search(request).matches();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).score(), actual.get(i).score(), 1e-5);
+		}
+	}
+
+	private static void add(FlatEmbeddingStore store, String id, String knowledgeId, float... vector) {
+		store.addAll(List.of(id), List.of(Embedding.from(vector)),
+				List.of(TextSegment.from(id, Metadata.from(KNOWLEDGE, knowledgeId))));
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.libre.ai.modules.rag.core.embedding.quant;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.libre.ai.modules.rag.core.consts.QuantizationEnum;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class QuantizedEmbeddingStoreTest {
+
+	private static final int DIMENSION = 8;
+
+	@TempDir
+	Path dir;
+
+	/**
+	 * 精确检索与检索请求使用同样的最低相似度，低于阈值的记录不计入召回率的分母
+	 */
+	@Test
+	void recallSampleAppliesMinScore() throws InterruptedException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		QuantizedEmbeddingStore store = new QuantizedEmbeddingStore(dir.resolve("recall.q"), DIMENSION,
+				QuantizationEnum.INT8, 4, 1, 0.25, registry);
+		List<String> ids = new ArrayList<>();
+		List<Embedding> embeddings = new ArrayList<>();
+		List<TextSegment> segments = new ArrayList<>();
+		for (int i = 0; i < DIMENSION; i++) {
+			float[] vector = new float[DIMENSION];
+			vector[i] = 1;
+			// 其余记录与查询方向相近但相似度低于阈值，只有 id-0 满足最低相似度
+			vector[0] += i == 0 ? 0 : 1.8f / i;
+			ids.add("id-" + i);
+			embeddings.add(Embedding.from(vector));
+			segments.add(TextSegment.from("text-" + i));
+		}
+		store.addAll(ids, embeddings, segments);
+
+		float[] query = new float[DIMENSION];
+		query[0] = 1;
+		List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+			.queryEmbedding(Embedding.from(query))
+			.maxResults(5)
+			.minScore(0.99)
+			.build()).matches();
+		assertEquals(List.of("id-0"), matches.stream().map(EmbeddingMatch::embeddingId).toList());
+
+		DistributionSummary recall = registry.get("langchat.embedding.quantized.recall").summary();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (recall.count() == 0) {
+			assertTrue(System.currentTimeMillis() < deadline, "timeout");
+			Thread.sleep(5);
+		}
+		assertEquals(1.0, recall.max());
+		store.close();
+	}
+
+}
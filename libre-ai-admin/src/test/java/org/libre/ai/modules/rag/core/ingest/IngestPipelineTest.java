@@ -0,0 +1,178 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.libre.ai.modules.rag.core.embedding.flat.FlatEmbeddingStore;
+import org.libre.ai.modules.rag.dto.EmbeddingResult;
+import org.libre.ai.modules.rag.entity.AigcDocsSlice;
+import org.libre.ai.modules.rag.properties.IngestProperties;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class IngestPipelineTest {
+
+	private static final List<String> TEXTS = List.of("a", "b", "c", "d", "e", "f");
+
+	@TempDir
+	Path dir;
+
+	private final List<String> embedded = new CopyOnWriteArrayList<>();
+
+	@Test
+	void allSegmentsAreEmbeddedAndStoredInBatches() throws Exception {
+		IngestPipeline pipeline = pipeline();
+		int[] split = new int[1];
+		List<Integer> batches = new CopyOnWriteArrayList<>();
+
+		List<EmbeddingResult> results = pipeline.run(source(), model(), store(-1), new IngestProgress() {
+			@Override
+			public void onSplit(int total, int skipped) {
+				split[0] = total;
+			}
+
+			@Override
+			public void onStored(List<EmbeddingResult> batch) {
+				batches.add(batch.size());
+			}
+		});
+
+		assertEquals(TEXTS, embedded.stream().sorted().toList());
+		assertEquals(TEXTS, results.stream().map(EmbeddingResult::getText).sorted().toList());
+		assertEquals(6, split[0]);
+		assertEquals(List.of(2, 2, 2), batches);
+	}
+
+	@Test
+	void storeFailureStopsThePipeline() {
+		IngestPipeline pipeline = pipeline();
+		List<EmbeddingResult> stored = new CopyOnWriteArrayList<>();
+
+		// 第二次写入向量库失败，只有第一批切片回调为已写入
+		assertThrows(IllegalStateException.class, () -> pipeline.run(source(), model(), store(1), new IngestProgress() {
+			@Override
+			public void onStored(List<EmbeddingResult> batch) {
+				stored.addAll(batch);
+			}
+		}));
+		assertEquals(2, stored.size());
+	}
+
+	@Test
+	void reusedSegmentsAreNotEmbedded() throws Exception {
+		IngestPipeline pipeline = pipeline();
+		int[] split = new int[2];
+		SliceReuse reuse = new SliceReuse(List.of(slice("b"), slice("d")), "m1", "s1");
+
+		List<EmbeddingResult> results = pipeline.run(source(), model(), store(-1), new IngestProgress() {
+			@Override
+			public boolean onSegment(TextSegment segment) {
+				return !reuse.take(segment.text());
+			}
+
+			@Override
+			public void onSplit(int total, int skipped) {
+				split[0] = total;
+				split[1] = skipped;
+			}
+		});
+
+		assertEquals(List.of("a", "c", "e", "f"), embedded.stream().sorted().toList());
+		assertEquals(4, results.size());
+		assertEquals(6, split[0]);
+		assertEquals(2, split[1]);
+		assertEquals(0, reuse.stale().size());
+	}
+
+	@Test
+	void retryReusesSlicesStoredBeforeFailure() throws Exception {
+		IngestPipeline pipeline = pipeline();
+		List<AigcDocsSlice> slices = new CopyOnWriteArrayList<>();
+		IngestProgress record = new IngestProgress() {
+			@Override
+			public void onStored(List<EmbeddingResult> batch) {
+				batch.forEach(i -> slices.add(new AigcDocsSlice().setVectorId(i.getVectorId())
+					.setContentHash(SliceReuse.hash(i.getText()))
+					.setEmbedModelId("m1")
+					.setEmbedStoreId("s1")));
+			}
+		};
+
+		// 第二次写入向量库失败，第一批切片已经保存
+		assertThrows(IllegalStateException.class, () -> pipeline.run(source(), model(), store(1), record));
+		assertEquals(2, slices.size());
+
+		embedded.clear();
+		SliceReuse reuse = new SliceReuse(List.copyOf(slices), "m1", "s1");
+		List<EmbeddingResult> results = pipeline.run(source(), model(), store(-1), new IngestProgress() {
+			@Override
+			public boolean onSegment(TextSegment segment) {
+				return !reuse.take(segment.text());
+			}
+		});
+
+		assertEquals(4, results.size());
+		assertEquals(4, embedded.size());
+		assertEquals(2, reuse.kept());
+		assertEquals(0, reuse.stale().size());
+	}
+
+	private IngestPipeline pipeline() {
+		IngestProperties properties = new IngestProperties();
+		properties.setEmbedBatchSize(2);
+		properties.setEmbedConcurrency(1);
+		properties.setStoreBatchSize(2);
+		return new IngestPipeline(properties, new CompositeMeterRegistry());
+	}
+
+	private static SegmentSource source() {
+		return sink -> TEXTS.forEach(text -> sink.accept(TextSegment.from(text)));
+	}
+
+	private EmbeddingModel model() {
+		return new EmbeddingModel() {
+			@Override
+			public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+				segments.forEach(segment -> embedded.add(segment.text()));
+				return Response.from(segments.stream()
+					.map(segment -> Embedding.from(new float[] { segment.text().charAt(0), 1 }))
+					.toList());
+			}
+		};
+	}
+
+	/**
+	 * 第 failAt 次（从 0 开始）批量写入时失败，failAt 为负数时不失败
+	 */
+	private FlatEmbeddingStore store(int failAt) {
+		AtomicInteger calls = new AtomicInteger();
+		return new FlatEmbeddingStore(dir.resolve("ingest-" + System.nanoTime() + ".vec"), 2, false, 0.25) {
+			@Override
+			public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+				if (calls.getAndIncrement() == failAt) {
+					throw new IllegalStateException("store failed");
+				}
+				return super.addAll(embeddings, segments);
+			}
+		};
+	}
+
+	private static AigcDocsSlice slice(String text) {
+		return new AigcDocsSlice().setContentHash(SliceReuse.hash(text)).setEmbedModelId("m1").setEmbedStoreId("s1");
+	}
+
+}
@@ -0,0 +1,215 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.libre.ai.modules.rag.core.consts.IngestStatusEnum;
+import org.libre.ai.modules.rag.core.consts.UploadStatusEnum;
+import org.libre.ai.modules.rag.entity.AigcDocs;
+import org.libre.ai.modules.rag.entity.AigcIngestJob;
+import org.libre.ai.modules.rag.entity.AigcOss;
+import org.libre.ai.modules.rag.mapper.AigcDocsMapper;
+import org.libre.ai.modules.rag.mapper.AigcIngestJobMapper;
+import org.libre.ai.modules.rag.properties.IngestProperties;
+import org.libre.ai.modules.rag.service.AigcOssService;
+import org.libre.ai.modules.rag.service.EmbeddingService;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class IngestSpillsTest {
+
+	@TempDir
+	Path dir;
+
+	private final List<AigcIngestJob> jobs = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger uploads = new AtomicInteger();
+
+	private final AigcIngestJobMapper jobMapper = mock(AigcIngestJobMapper.class);
+
+	private final AigcOssService ossService = mock(AigcOssService.class);
+
+	private volatile int failures;
+
+	private IngestProperties properties;
+
+	private IngestSpills spills;
+
+	@BeforeEach
+	void setUp() {
+		if (TableInfoHelper.getTableInfo(AigcIngestJob.class) == null) {
+			TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""),
+					AigcIngestJob.class);
+		}
+		properties = new IngestProperties();
+		properties.setSpillDir(dir.toString());
+		properties.setRetryBackoff(10);
+		properties.setMaxRetryBackoff(20);
+		when(jobMapper.selectList(any())).thenAnswer(invocation -> List.copyOf(jobs));
+		doAnswer(invocation -> {
+			if (uploads.incrementAndGet() <= failures) {
+				throw new IllegalStateException("upload failed");
+			}
+			return null;
+		}).when(ossService).upload(any(AigcOss.class), any(Path.class));
+		spills = new IngestSpills(properties, jobMapper, ossService);
+	}
+
+	@AfterEach
+	void tearDown() {
+		spills.destroy();
+	}
+
+	/**
+	 * 重启时保留未结束任务和等待上传的任务引用的副本，删除其余副本，并继续未完成的上传
+	 */
+	@Test
+	void initKeepsReferencedSpillsAndResumesUpload() throws IOException {
+		Path running = file("running.pdf");
+		Path failed = file("failed.pdf");
+		Path finished = file("finished.pdf");
+		Path orphan = file("orphan.pdf");
+		jobs.add(job("d-running", running, IngestStatusEnum.RUNNING, UploadStatusEnum.DONE));
+		jobs.add(job("d-failed", failed, IngestStatusEnum.FAILED, UploadStatusEnum.PENDING));
+		jobs.add(job("d-finished", finished, IngestStatusEnum.SUCCEEDED, UploadStatusEnum.DONE));
+
+		spills.init();
+
+		assertEquals(running, spills.local("d-running"));
+		assertTrue(Files.exists(running));
+		assertFalse(Files.exists(finished));
+		assertFalse(Files.exists(orphan));
+		assertNull(spills.local("d-finished"));
+		// 任务已结束，上传完成后删除副本
+		await(() -> !Files.exists(failed));
+		assertEquals(1, uploads.get());
+		verify(jobMapper).update(any(), any());
+	}
+
+	/**
+	 * 上传失败后在后台重试；任务结束时上传还未完成则保留副本，上传完成后再删除
+	 */
+	@Test
+	void releaseKeepsSpillUntilUploadSucceeds() throws IOException {
+		failures = 2;
+		Path pending = file("pending.pdf");
+		jobs.add(job("d-pending", pending, IngestStatusEnum.PENDING, UploadStatusEnum.PENDING));
+		spills.init();
+
+		spills.release("d-pending");
+		assertTrue(Files.exists(pending) || uploads.get() == 3);
+
+		await(() -> !Files.exists(pending));
+		assertEquals(3, uploads.get());
+		verify(jobMapper).update(any(), any());
+		assertNull(spills.local("d-pending"));
+	}
+
+	@Test
+	void awaitUploadWaitsForRunningAttempt() throws IOException {
+		Path pending = file("pending.pdf");
+		jobs.add(job("d-pending", pending, IngestStatusEnum.RUNNING, UploadStatusEnum.PENDING));
+		spills.init();
+
+		assertNotNull(spills.local("d-pending"));
+		spills.awaitUpload("d-pending");
+		assertEquals(1, uploads.get());
+		spills.release("d-pending");
+		assertFalse(Files.exists(pending));
+	}
+
+	/**
+	 * 接收上传的实例在上传完成前退出后，其他实例上的任务只推迟到 staleTimeout，之后标记为失败
+	 */
+	@Test
+	void pendingUploadWithoutSpillFailsAfterStaleTimeout() {
+		spills.init();
+		AigcDocsMapper docsMapper = mock(AigcDocsMapper.class);
+		EmbeddingService embeddingService = mock(EmbeddingService.class);
+		when(docsMapper.selectById(any())).thenReturn(new AigcDocs().setId("d-lost"));
+		IngestJobRunner runner = new IngestJobRunner(properties, jobMapper, docsMapper, embeddingService, spills,
+				new SimpleMeterRegistry());
+
+		AigcIngestJob recent = job("d-lost", dir.resolve("lost.pdf"), IngestStatusEnum.RUNNING,
+				UploadStatusEnum.PENDING)
+			.setId("j-recent")
+			.setCreateTime(new Date());
+		runner.run(recent);
+		verify(jobMapper).update(any(), any());
+		verify(jobMapper, never()).updateById(any(AigcIngestJob.class));
+
+		AigcIngestJob stale = job("d-lost", dir.resolve("lost.pdf"), IngestStatusEnum.RUNNING,
+				UploadStatusEnum.PENDING)
+			.setId("j-stale")
+			.setCreateTime(new Date(System.currentTimeMillis() - properties.getStaleTimeout() - 1));
+		runner.run(stale);
+		ArgumentCaptor<AigcIngestJob> updated = ArgumentCaptor.forClass(AigcIngestJob.class);
+		verify(jobMapper, atLeastOnce()).updateById(updated.capture());
+		assertEquals(List.of(IngestStatusEnum.FAILED.name()),
+				updated.getAllValues().stream().map(AigcIngestJob::getStatus).toList());
+		verify(embeddingService, never()).embedDocsSlice(any(), any(), any());
+	}
+
+	private Path file(String name) throws IOException {
+		return Files.write(dir.resolve(name), new byte[] { 1, 2, 3 });
+	}
+
+	private static AigcIngestJob job(String docsId, Path path, IngestStatusEnum status, UploadStatusEnum upload) {
+		AigcIngestJob job = new AigcIngestJob().setDocsId(docsId)
+			.setStatus(status.name())
+			.setSpillPath(path.toString())
+			.setUploadStatus(upload.name());
+		if (upload == UploadStatusEnum.PENDING) {
+			AigcOss oss = new AigcOss();
+			oss.setUrl("http://oss/" + path.getFileName());
+			job.setUploadOss(JSONUtil.toJsonStr(oss));
+		}
+		return job;
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timeout");
+			try {
+				Thread.sleep(5);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+}
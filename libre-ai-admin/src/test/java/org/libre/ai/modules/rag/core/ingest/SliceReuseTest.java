@@ -0,0 +1,65 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.libre.ai.modules.rag.entity.AigcDocsSlice;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class SliceReuseTest {
+
+	@Test
+	void unchangedSlicesAreReusedOnce() {
+		SliceReuse reuse = new SliceReuse(List.of(slice("1", "a", "m1", "s1"), slice("2", "a", "m1", "s1"),
+				slice("3", "b", "m1", "s1")), "m1", "s1");
+
+		assertTrue(reuse.take("a"));
+		assertTrue(reuse.take("a"));
+		// 内容相同的切片已全部匹配
+		assertFalse(reuse.take("a"));
+		assertFalse(reuse.take("c"));
+
+		assertEquals(2, reuse.kept());
+		assertEquals(List.of("3"), ids(reuse.stale()));
+	}
+
+	@Test
+	void slicesOfAnotherModelOrStoreAreStale() {
+		SliceReuse reuse = new SliceReuse(List.of(slice("1", "a", "m0", "s1"), slice("2", "a", "m1", "s0"),
+				slice("3", "a", "m1", "s1")), "m1", "s1");
+
+		assertTrue(reuse.take("a"));
+		assertFalse(reuse.take("a"));
+		assertEquals(List.of("1", "2"), ids(reuse.stale()));
+	}
+
+	@Test
+	void slicesWithoutHashAreStale() {
+		AigcDocsSlice legacy = slice("1", "a", "m1", "s1").setContentHash(null);
+		SliceReuse reuse = new SliceReuse(List.of(legacy), "m1", "s1");
+
+		assertFalse(reuse.take("a"));
+		assertEquals(0, reuse.kept());
+		assertEquals(List.of("1"), ids(reuse.stale()));
+	}
+
+	private static AigcDocsSlice slice(String id, String content, String embedModelId, String embedStoreId) {
+		return new AigcDocsSlice().setId(id)
+			.setVectorId("v" + id)
+			.setContentHash(SliceReuse.hash(content))
+			.setEmbedModelId(embedModelId)
+			.setEmbedStoreId(embedStoreId);
+	}
+
+	private static List<String> ids(List<AigcDocsSlice> slices) {
+		return slices.stream().map(AigcDocsSlice::getId).sorted().toList();
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.libre.ai.modules.rag.core.ingest;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class StreamingSegmenterTest {
+
+	@Test
+	void keepsParagraphBreakAfterCarriedRemainder() {
+		List<TextSegment> segments = new ArrayList<>();
+		StreamingSegmenter segmenter = new StreamingSegmenter(DocumentSplitters.recursive(40, 0), new Metadata(), 60,
+				segments::add);
+
+		append(segmenter, "First paragraph has some words.\n\nSecond paragraph ends here.\n\n");
+		append(segmenter, "Third paragraph follows.");
+		segmenter.finish();
+
+		List<String> texts = segments.stream().map(TextSegment::text).toList();
+		assertFalse(texts.stream().anyMatch(text -> text.contains("here.Third")), texts.toString());
+		assertEquals(List.of("First paragraph has some words.", "Second paragraph ends here.",
+				"Third paragraph follows."), texts);
+	}
+
+	@Test
+	void numbersSegmentsInOrder() {
+		List<TextSegment> segments = new ArrayList<>();
+		StreamingSegmenter segmenter = new StreamingSegmenter(DocumentSplitters.recursive(30, 0), new Metadata(), 50,
+				segments::add);
+		for (int i = 0; i < 20; i++) {
+			append(segmenter, "Paragraph number " + i + ".\n\n");
+		}
+		segmenter.finish();
+
+		assertEquals(segments.size(), segmenter.count());
+		for (int i = 0; i < segments.size(); i++) {
+			assertEquals(String.valueOf(i), segments.get(i).metadata().getString("index"));
+		}
+		String joined = String.join(" ", segments.stream().map(TextSegment::text).toList());
+		for (int i = 0; i < 20; i++) {
+			assertFalse(joined.contains("Paragraph number " + i + ".Paragraph"), joined);
+		}
+	}
+
+	private static void append(StreamingSegmenter segmenter, String text) {
+		segmenter.append(text.toCharArray(), 0, text.length());
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.libre.ai.modules.rag.core.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.libre.ai.modules.rag.core.service.impl.TieredChatMemoryStore;
+import org.libre.ai.modules.rag.entity.AigcApp;
+import org.libre.ai.modules.rag.entity.AigcConversation;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.service.AigcMessageService;
+import org.libre.ai.modules.rag.store.AppStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class ChatMemoryFactoryTest {
+
+	private final AigcMessageService aigcMessageService = mock(AigcMessageService.class);
+
+	private final AppStore appStore = mock(AppStore.class);
+
+	private final ChatProperties chatProperties = new ChatProperties();
+
+	private final ChatMemoryFactory factory = new ChatMemoryFactory(mock(TieredChatMemoryStore.class),
+			aigcMessageService, appStore, chatProperties);
+
+	@AfterEach
+	void tearDown() {
+		factory.destroy();
+	}
+
+	/**
+	 * 新建的会话不再带有默认容量，使用所在应用的设置
+	 */
+	@Test
+	void appBudgetAppliesToNewConversation() {
+		when(aigcMessageService.getConversation("c1")).thenReturn(new AigcConversation().setId("c1"));
+		when(appStore.get("a1")).thenReturn(new AigcApp().setId("a1").setMaxContextCount(50).setMaxTokens(4000));
+
+		factory.useApp("c1", "a1");
+
+		assertEquals(new ChatMemoryBudget(50, 4000), factory.budget("c1"));
+	}
+
+	@Test
+	void conversationSettingOverridesApp() {
+		when(aigcMessageService.getConversation("c1"))
+			.thenReturn(new AigcConversation().setId("c1").setMaxContextCount(5).setMaxTokens(1000));
+		when(appStore.get("a1")).thenReturn(new AigcApp().setId("a1").setMaxContextCount(50).setMaxTokens(4000));
+
+		factory.useApp("c1", "a1");
+
+		assertEquals(new ChatMemoryBudget(5, 1000), factory.budget("c1"));
+	}
+
+	@Test
+	void globalBudgetAppliesWithoutAppOrConversationSetting() {
+		when(aigcMessageService.getConversation("c1")).thenReturn(new AigcConversation().setId("c1"));
+
+		assertEquals(new ChatMemoryBudget(chatProperties.getMemoryMaxMessage(), chatProperties.getMemoryMaxTokens()),
+				factory.budget("c1"));
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.libre.ai.modules.rag.core.persist;
+
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.libre.ai.modules.rag.entity.AigcMessage;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+import org.libre.ai.modules.rag.service.AigcMessageService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class AigcMessageWriterTest {
+
+	private final List<AigcMessage> saved = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private AigcMessageWriter writer;
+
+	@AfterEach
+	void tearDown() {
+		if (writer != null) {
+			writer.destroy();
+		}
+	}
+
+	@Test
+	void failedBatchIsRetriedUntilWritten() throws InterruptedException {
+		failures.set(2);
+		writer = writer(20);
+		writer.write(message("c1", "a"));
+		writer.write(message("c1", "b"));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (saved.size() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(List.of("a", "b"), texts(saved).stream().sorted().toList());
+		assertEquals(0, writer.getRetrying());
+	}
+
+	@Test
+	void flushWritesPendingMessagesOfConversation() {
+		// 时间窗口很长，只有 flush 会立即写入
+		writer = writer(60_000);
+		writer.write(message("c1", "a"));
+		writer.write(message("c2", "b"));
+
+		writer.flush("c1");
+
+		assertTrue(texts(saved).contains("a"), texts(saved).toString());
+	}
+
+	@Test
+	void discardDropsEarlierMessagesOnly() throws InterruptedException {
+		writer = writer(60_000);
+		writer.write(message("c1", "before"));
+		writer.write(message("c2", "other"));
+		writer.discard("c1");
+		Thread.sleep(2);
+		writer.write(message("c1", "after"));
+
+		writer.flush("c1");
+		writer.flush("c2");
+
+		List<String> texts = texts(saved);
+		assertTrue(texts.contains("after") && texts.contains("other"), texts.toString());
+		assertTrue(!texts.contains("before"), texts.toString());
+	}
+
+	@Test
+	void remainingMessagesAreWrittenOnShutdown() {
+		writer = writer(60_000);
+		writer.write(message("c1", "a"));
+		writer.destroy();
+		writer = null;
+
+		assertEquals(List.of("a"), texts(saved));
+	}
+
+	private AigcMessageWriter writer(long flushInterval) {
+		ChatProperties properties = new ChatProperties();
+		properties.getPersist().setFlushInterval(flushInterval);
+		properties.getPersist().setShutdownTimeout(100);
+		return new AigcMessageWriter(service(), properties, new CompositeMeterRegistry());
+	}
+
+	@SuppressWarnings("unchecked")
+	private AigcMessageService service() {
+		AigcMessageService service = mock(AigcMessageService.class);
+		when(service.saveBatch(anyCollection(), anyInt())).thenAnswer(invocation -> {
+			failWhileUnavailable();
+			saved.addAll((Collection<AigcMessage>) invocation.getArgument(0));
+			return true;
+		});
+		when(service.save(any())).thenAnswer(invocation -> {
+			failWhileUnavailable();
+			saved.add(invocation.getArgument(0));
+			return true;
+		});
+		return service;
+	}
+
+	private void failWhileUnavailable() {
+		if (failures.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+			throw new IllegalStateException("database unavailable");
+		}
+	}
+
+	private static AigcMessage message(String conversationId, String text) {
+		AigcMessage message = new AigcMessage();
+		message.setConversationId(conversationId);
+		message.setMessage(text);
+		return message;
+	}
+
+	private static List<String> texts(List<AigcMessage> messages) {
+		return messages.stream().map(AigcMessage::getMessage).toList();
+	}
+
+}
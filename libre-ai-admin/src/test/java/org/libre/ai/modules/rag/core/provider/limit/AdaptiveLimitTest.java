@@ -0,0 +1,34 @@
+package org.libre.ai.modules.rag.core.provider.limit;
+
+import org.junit.jupiter.api.Test;
+import org.libre.ai.modules.rag.properties.ChatProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class AdaptiveLimitTest {
+
+	@Test
+	void concurrentDropsShrinkOncePerWindow() throws InterruptedException {
+		AdaptiveLimit limit = new AdaptiveLimit(new ChatProperties.ModelLimit());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(limit.acquire());
+		}
+
+		// 同一次过载中一起失败的请求只缩小一次：16 * 0.7
+		for (int i = 0; i < 10; i++) {
+			limit.release(AdaptiveLimit.Outcome.DROPPED);
+		}
+		assertEquals(11, limit.getLimit());
+
+		// 缩小时在执行的请求都已结束，新的过载信号再次缩小：11.2 * 0.7
+		assertTrue(limit.acquire());
+		limit.release(AdaptiveLimit.Outcome.DROPPED);
+		assertEquals(7, limit.getLimit());
+	}
+
+}
@@ -0,0 +1,75 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class FederatedContentRetrieverTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void mergesLegsByRankNotByNormalizedScore() {
+		// 第一路得分集中在高位，第二路分布很散；按各路归一化合并时第二路的末位会排在第一路的第二位之前
+		ContentRetriever first = leg(content("a1", 0.92), content("a2", 0.91), content("a3", 0.90));
+		ContentRetriever second = leg(content("b1", 0.80), content("b2", 0.30), content("b3", 0.29));
+
+		List<Content> merged = retriever(6, first, second).retrieve(Query.from("q"));
+
+		assertEquals(List.of("a1", "b1", "a2", "b2", "a3", "b3"), ids(merged));
+		assertEquals(0.30, merged.get(3).metadata().get(ContentMetadata.SCORE));
+	}
+
+	@Test
+	void sameContentInSeveralLegsIsFusedOnce() {
+		ContentRetriever first = leg(content("a", 0.9), content("b", 0.8));
+		ContentRetriever second = leg(content("c", 0.95), content("b", 0.7));
+
+		assertEquals(List.of("b", "c", "a"), ids(retriever(3, first, second).retrieve(Query.from("q"))));
+	}
+
+	@Test
+	void failedLegIsSkipped() {
+		ContentRetriever broken = query -> {
+			throw new IllegalStateException("down");
+		};
+
+		assertEquals(List.of("a"), ids(retriever(3, leg(content("a", 0.5)), broken).retrieve(Query.from("q"))));
+	}
+
+	private FederatedContentRetriever retriever(int maxResults, ContentRetriever... retrievers) {
+		List<FederatedContentRetriever.Leg> legs = Arrays.stream(retrievers)
+			.map(retriever -> FederatedContentRetriever.Leg.of(List.of("k"), retriever))
+			.toList();
+		return new FederatedContentRetriever(legs, maxResults, 60, 1000, Runnable::run,
+				registry.counter("timeouts"), registry.counter("failures"));
+	}
+
+	private static ContentRetriever leg(Content... contents) {
+		return query -> List.of(contents);
+	}
+
+	private static Content content(String id, double score) {
+		return Content.from(TextSegment.from(id),
+				Map.of(ContentMetadata.SCORE, score, ContentMetadata.EMBEDDING_ID, id));
+	}
+
+	private static List<String> ids(List<Content> contents) {
+		return contents.stream().map(content -> content.textSegment().text()).toList();
+	}
+
+}
@@ -0,0 +1,167 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.libre.ai.modules.rag.entity.AigcDocsSlice;
+import org.libre.ai.modules.rag.mapper.AigcDocsSliceMapper;
+import org.libre.ai.modules.rag.properties.RetrievalProperties;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class LexicalIndexesTest {
+
+	private final Map<String, List<AigcDocsSlice>> table = new ConcurrentHashMap<>();
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private final RetrievalProperties properties = new RetrievalProperties();
+
+	private volatile CountDownLatch loadStarted;
+
+	private volatile CountDownLatch releaseLoad;
+
+	private LexicalIndexes indexes;
+
+	@BeforeEach
+	void setUp() {
+		if (TableInfoHelper.getTableInfo(AigcDocsSlice.class) == null) {
+			TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""),
+					AigcDocsSlice.class);
+		}
+		indexes = new LexicalIndexes(mapper(), properties);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	void sliceAddedDuringLoadIsKept() throws Exception {
+		table.put("k1", List.of(slice("k1", "d1", "v1", "apple banana")));
+		loadStarted = new CountDownLatch(1);
+		releaseLoad = new CountDownLatch(1);
+
+		CompletableFuture<List<LexicalIndex.Hit>> search = CompletableFuture
+			.supplyAsync(() -> indexes.search("k1", List.of("cherry"), 10));
+		assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+		// 加载查询已经执行，之后写入的切片不在查询结果中
+		indexes.onSliceAdded(slice("k1", "d2", "v2", "cherry"));
+		releaseLoad.countDown();
+
+		assertEquals(List.of("v2"), vectorIds(search.get(5, TimeUnit.SECONDS)));
+		assertEquals(List.of("v1"), vectorIds(indexes.search("k1", List.of("apple"), 10)));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	void docRemovedDuringLoadIsSkipped() throws Exception {
+		table.put("k1", List.of(slice("k1", "d1", "v1", "apple"), slice("k1", "d2", "v2", "apple")));
+		loadStarted = new CountDownLatch(1);
+		releaseLoad = new CountDownLatch(1);
+
+		CompletableFuture<List<LexicalIndex.Hit>> search = CompletableFuture
+			.supplyAsync(() -> indexes.search("k1", List.of("apple"), 10));
+		assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+		indexes.onDocRemoved("d1");
+		releaseLoad.countDown();
+
+		assertEquals(List.of("v2"), vectorIds(search.get(5, TimeUnit.SECONDS)));
+	}
+
+	@Test
+	void updatesApplyAfterCommit() {
+		table.put("k1", List.of(slice("k1", "d1", "v1", "apple")));
+		indexes.search("k1", List.of("apple"), 10);
+
+		TransactionSynchronizationManager.initSynchronization();
+		indexes.onSliceAdded(slice("k1", "d2", "v2", "apple"));
+		assertEquals(List.of("v1"), vectorIds(indexes.search("k1", List.of("apple"), 10)));
+
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		synchronizations.forEach(TransactionSynchronization::afterCommit);
+		assertEquals(2, indexes.search("k1", List.of("apple"), 10).size());
+	}
+
+	@Test
+	void leastRecentlySearchedIndexIsEvicted() {
+		properties.getHybrid().setIndexMaxSlices(2);
+		table.put("k1", List.of(slice("k1", "d1", "v1", "apple")));
+		table.put("k2", List.of(slice("k2", "d2", "v2", "apple")));
+		table.put("k3", List.of(slice("k3", "d3", "v3", "apple")));
+
+		indexes.search("k1", List.of("apple"), 10);
+		indexes.search("k2", List.of("apple"), 10);
+		indexes.search("k1", List.of("apple"), 10);
+		indexes.search("k3", List.of("apple"), 10);
+		assertEquals(3, loads.get());
+
+		// k2 最久未检索，被淘汰后重新加载
+		indexes.search("k1", List.of("apple"), 10);
+		assertEquals(3, loads.get());
+		indexes.search("k2", List.of("apple"), 10);
+		assertEquals(4, loads.get());
+	}
+
+	private AigcDocsSliceMapper mapper() {
+		AigcDocsSliceMapper mapper = mock(AigcDocsSliceMapper.class);
+		when(mapper.selectList(any())).thenAnswer(invocation -> {
+			loads.incrementAndGet();
+			AbstractWrapper<?, ?, ?> wrapper = invocation.getArgument(0);
+			// 条件的参数在生成 SQL 片段时写入
+			wrapper.getSqlSegment();
+			Map<String, Object> params = wrapper.getParamNameValuePairs();
+			List<AigcDocsSlice> rows = table.entrySet()
+				.stream()
+				.filter(e -> params.containsValue(e.getKey()))
+				.flatMap(e -> e.getValue().stream())
+				.toList();
+			if (loadStarted != null) {
+				loadStarted.countDown();
+				releaseLoad.await(5, TimeUnit.SECONDS);
+			}
+			return rows;
+		});
+		return mapper;
+	}
+
+	private static AigcDocsSlice slice(String knowledgeId, String docsId, String vectorId, String content) {
+		AigcDocsSlice slice = new AigcDocsSlice();
+		slice.setKnowledgeId(knowledgeId);
+		slice.setDocsId(docsId);
+		slice.setVectorId(vectorId);
+		slice.setContent(content);
+		return slice;
+	}
+
+	private static List<String> vectorIds(List<LexicalIndex.Hit> hits) {
+		return hits.stream().map(LexicalIndex.Hit::vectorId).sorted().toList();
+	}
+
+}
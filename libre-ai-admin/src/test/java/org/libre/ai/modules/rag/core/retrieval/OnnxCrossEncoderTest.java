@@ -0,0 +1,45 @@
+package org.libre.ai.modules.rag.core.retrieval;
+
+import org.junit.jupiter.api.Test;
+import org.libre.ai.modules.rag.exception.ServiceException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author libre
+ * @since 2026/10/17
+ */
+class OnnxCrossEncoderTest {
+
+	@Test
+	void singleLogit() {
+		assertEquals(0.5, OnnxCrossEncoder.relevance(new float[] { 0 }), 1e-9);
+		assertEquals(1 / (1 + Math.exp(-2)), OnnxCrossEncoder.relevance(new float[] { 2 }), 1e-6);
+	}
+
+	@Test
+	void twoLogitsUseSoftmaxOfRelevantClass() {
+		float[] logits = { 1.5f, -0.5f };
+		double expected = Math.exp(-0.5) / (Math.exp(1.5) + Math.exp(-0.5));
+		assertEquals(expected, OnnxCrossEncoder.relevance(logits), 1e-6);
+		// 相关类 logit 为负但高于不相关类时仍应判为相关
+		assertTrue(OnnxCrossEncoder.relevance(new float[] { -3, -1 }) > 0.5);
+	}
+
+	@Test
+	void rankOneOutputIsOneLogitPerPair() {
+		double[] scores = OnnxCrossEncoder.scores(new float[] { 0, 2 });
+		assertEquals(0.5, scores[0], 1e-9);
+		assertEquals(1 / (1 + Math.exp(-2)), scores[1], 1e-6);
+		assertEquals(OnnxCrossEncoder.relevance(new float[] { -3, -1 }),
+				OnnxCrossEncoder.scores(new float[][] { { -3, -1 } })[0], 1e-9);
+	}
+
+	@Test
+	void unsupportedWidth() {
+		assertThrows(ServiceException.class, () -> OnnxCrossEncoder.relevance(new float[] { 0, 1, 2 }));
+	}
+
+}